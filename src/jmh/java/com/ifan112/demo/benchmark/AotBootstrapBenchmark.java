@@ -0,0 +1,75 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.DemoSpringContextConfiguration;
+import com.ifan112.demo.sc.aot.AotBootstrap;
+import com.ifan112.demo.sc.beans.DemoListableBeanFactory;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比反射解析配置类与使用构建时生成的初始化器时，DemoSpringContextConfiguration的冷启动耗时
+ *
+ * 每个fork只启动一次context，即类加载、注解解析都是第一次发生。
+ * 需要使用aot profile构建：mvn -P jmh,aot clean package，启动时的内存分配使用 -prof gc 查看。
+ *
+ * mode参数：
+ * REFLECTIVE  设置demo.sc.aot.enabled=false，由ConfigurationClassPostProcessor扫描包、解析配置类
+ * AOT         由生成的DemoSpringContextConfigurationAotInitializer注册bean定义
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class AotBootstrapBenchmark {
+
+    @Param({"REFLECTIVE", "AOT"})
+    public String mode;
+
+    private PrintStream originalOut;
+
+    private AnnotationConfigApplicationContext context;
+
+    @Setup
+    public void setUp() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        Configurator.setLevel("audit", Level.OFF);
+        if ("REFLECTIVE".equals(mode)) {
+            System.setProperty("demo.sc.aot.enabled", "false");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        System.clearProperty("demo.sc.aot.enabled");
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public AnnotationConfigApplicationContext startup() {
+        context = new AnnotationConfigApplicationContext(new DemoListableBeanFactory());
+        boolean aot = AotBootstrap.register(context, DemoSpringContextConfiguration.class);
+        if (aot != "AOT".equals(mode)) {
+            throw new IllegalStateException("没有使用生成的初始化器，请使用 -P jmh,aot 构建");
+        }
+        context.refresh();
+        return context;
+    }
+}
@@ -0,0 +1,91 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.DemoSpringContextConfiguration;
+import com.ifan112.demo.sc.service.UserService;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比切面在同步打印和异步环形缓冲区两种方式下，调用被代理服务的开销
+ *
+ * advice参数：
+ * SYNC         原先的方式，在调用线程上打印到System.out
+ * ASYNC_DROP   异步方式，缓冲区写满时丢弃
+ * ASYNC_BLOCK  异步方式，缓冲区写满时阻塞调用线程
+ *
+ * System.out被替换为丢弃输出的PrintStream（仍然保留其内部的锁），audit日志记录器被关闭，
+ * 因此测量的是调用线程上的开销，而不是终端输出的速度。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuditAdviceBenchmark {
+
+    @Param({"SYNC", "ASYNC_DROP", "ASYNC_BLOCK"})
+    public String advice;
+
+    private PrintStream originalOut;
+
+    private AnnotationConfigApplicationContext context;
+
+    private UserService userService;
+
+    @Setup
+    public void setUp() {
+        String mode = advice.startsWith("ASYNC") ? "ASYNC" : "SYNC";
+        System.setProperty("demo.sc.audit.mode", mode);
+        if (advice.endsWith("BLOCK")) {
+            System.setProperty("demo.sc.audit.overflow-policy", "BLOCK");
+        } else {
+            System.setProperty("demo.sc.audit.overflow-policy", "DROP");
+        }
+
+        originalOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        Configurator.setLevel("audit", Level.OFF);
+
+        context = new AnnotationConfigApplicationContext(DemoSpringContextConfiguration.class);
+        userService = context.getBean(UserService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object createUser_1thread() {
+        return userService.createUser("一凡", "无", 22);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object createUser_8threads() {
+        return userService.createUser("一凡", "无", 22);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Object createUser_32threads() {
+        return userService.createUser("一凡", "无", 22);
+    }
+}
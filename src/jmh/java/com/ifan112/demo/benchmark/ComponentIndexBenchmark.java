@@ -0,0 +1,81 @@
+package com.ifan112.demo.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.annotation.ClassPathBeanDefinitionScanner;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比扫描classpath与读取组件索引两种方式下，context的启动耗时
+ *
+ * 在临时目录中生成components个带有@Component注解的类，以及对应的META-INF/spring.components索引文件。
+ * 每次启动都使用新的类加载器，避免类加载和索引缓存的影响。
+ *
+ * mode参数：
+ * SCAN   隐藏索引文件，ClassPathBeanDefinitionScanner遍历并解析包下的每个class文件
+ * INDEX  暴露索引文件，直接从索引中读取候选组件
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ComponentIndexBenchmark {
+
+    private static final String PACKAGE = "com.ifan112.demo.synthetic";
+
+    @Param({"10", "1000", "10000"})
+    public int components;
+
+    @Param({"SCAN", "INDEX"})
+    public String mode;
+
+    private Path classesDir;
+
+    private GenericApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        classesDir = Files.createTempDirectory("component-index");
+        Path index = classesDir.resolve(SyntheticClasses.COMPONENT_INDEX);
+        Files.createDirectories(index.getParent());
+        try (Writer writer = Files.newBufferedWriter(index, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < components; i++) {
+                String className = PACKAGE + ".Component" + i;
+                SyntheticClasses.writeClass(classesDir, className, "org/springframework/stereotype/Component", 0);
+                writer.write(className + "=org.springframework.stereotype.Component\n");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        SyntheticClasses.deleteRecursively(classesDir);
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() {
+        context.close();
+    }
+
+    @Benchmark
+    public GenericApplicationContext startup() {
+        context = new GenericApplicationContext();
+        context.setClassLoader(SyntheticClasses.classLoader(classesDir, "INDEX".equals(mode)));
+        AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+
+        // 扫描器在创建时根据context的类加载器加载组件索引，因此必须在设置类加载器之后创建
+        ClassPathBeanDefinitionScanner scanner = new ClassPathBeanDefinitionScanner(context);
+        scanner.scan(PACKAGE);
+        context.refresh();
+        return context;
+    }
+}
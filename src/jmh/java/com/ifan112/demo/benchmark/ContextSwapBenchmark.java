@@ -0,0 +1,111 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.DemoSpringContextConfiguration;
+import com.ifan112.demo.sc.service.MessageService;
+import com.ifan112.demo.sc.swap.SwappableContextHolder;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 持续调用MessageService.send时，单次调用的耗时分布（p99、p99.9、最大值）
+ *
+ * mode参数：
+ * DIRECT    直接调用context中的bean
+ * HOLDER    通过SwappableContextHolder的代理调用，不切换context
+ * SWAPPING  通过代理调用，同时后台线程每隔swapIntervalMillis毫秒切换一次context（创建、预热新context，等待旧context上的调用结束后关闭它）
+ *
+ * 结束时打印完成的切换次数。任何一次调用失败（例如落在已关闭的context上）都会使测试失败。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 4)
+@Fork(1)
+@Threads(4)
+public class ContextSwapBenchmark {
+
+    private static final String MESSAGE = "消息";
+
+    @Param({"DIRECT", "HOLDER", "SWAPPING"})
+    public String mode;
+
+    @Param({"500"})
+    public int swapIntervalMillis;
+
+    private PrintStream originalOut;
+
+    private SwappableContextHolder holder;
+
+    private MessageService messageService;
+
+    private final AtomicInteger swaps = new AtomicInteger();
+
+    private volatile boolean running;
+
+    private Thread swapper;
+
+    @Setup
+    public void setUp() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        Configurator.setLevel("audit", Level.OFF);
+        Configurator.setLevel("startup", Level.OFF);
+        Configurator.setLevel("warmup", Level.OFF);
+
+        holder = new SwappableContextHolder(() -> new AnnotationConfigApplicationContext(DemoSpringContextConfiguration.class));
+        holder.start();
+        messageService = "DIRECT".equals(mode)
+                ? holder.getContext().getBean(MessageService.class) : holder.getProxy(MessageService.class);
+
+        if ("SWAPPING".equals(mode)) {
+            running = true;
+            swapper = new Thread(this::swapLoop, "swapper");
+            swapper.setDaemon(true);
+            swapper.start();
+        }
+    }
+
+    private void swapLoop() {
+        while (running) {
+            holder.swap().join();
+            swaps.incrementAndGet();
+            try {
+                Thread.sleep(swapIntervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        running = false;
+        if (swapper != null) {
+            swapper.join();
+            originalOut.printf("%n完成了%d次context切换，当前为第%d代%n", swaps.get(), holder.getGeneration());
+        }
+        holder.close();
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public boolean send() {
+        return messageService.send(MESSAGE);
+    }
+}
@@ -0,0 +1,71 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.aop.DirectDispatchAopProxyFactory;
+import com.ifan112.demo.sc.entity.User;
+import com.ifan112.demo.sc.service.UserService;
+import com.ifan112.demo.sc.service.impl.UserServiceImpl;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.aop.aspectj.AspectJExpressionPointcutAdvisor;
+import org.springframework.aop.framework.ProxyFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量只有部分方法被增强的Jdk动态代理上，有advice和没有advice的方法的单次调用耗时
+ *
+ * UserService的代理只对createUser应用一个直接proceed的MethodInterceptor，getUser(String)没有任何advice。
+ *
+ * proxy参数：
+ * NONE    直接调用UserServiceImpl
+ * JDK     spring默认的JdkDynamicAopProxy
+ * DIRECT  DirectDispatchAopProxy（demo.sc.aop.direct-dispatch），每个方法的分派方式和advice链只在第一次调用时确定
+ *
+ * unadvised与NONE之间的差距是代理本身的开销，advised与unadvised之间的差距是MethodInvocation和advice链的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectDispatchBenchmark {
+
+    @Param({"NONE", "JDK", "DIRECT"})
+    public String proxy;
+
+    private UserService userService;
+
+    @Setup
+    public void setUp() {
+        UserServiceImpl target = new UserServiceImpl();
+        target.createUser("一凡", "无", 22);
+
+        if ("NONE".equals(proxy)) {
+            userService = target;
+            return;
+        }
+
+        AspectJExpressionPointcutAdvisor advisor = new AspectJExpressionPointcutAdvisor();
+        advisor.setExpression("execution(* com.ifan112.demo.sc.service.UserService.createUser(..))");
+        advisor.setAdvice((MethodInterceptor) invocation -> invocation.proceed());
+
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setInterfaces(UserService.class);
+        proxyFactory.addAdvisor(advisor);
+        if ("DIRECT".equals(proxy)) {
+            proxyFactory.setAopProxyFactory(new DirectDispatchAopProxyFactory());
+        }
+        userService = (UserService) proxyFactory.getProxy();
+    }
+
+    @Benchmark
+    public User advised() {
+        return userService.createUser("一凡", "无", 22);
+    }
+
+    @Benchmark
+    public User unadvised() {
+        return userService.getUser("一凡");
+    }
+}
@@ -0,0 +1,102 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.event.TypeIndexedApplicationEventMulticaster;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比SimpleApplicationEventMulticaster与TypeIndexedApplicationEventMulticaster查找监听器的开销
+ *
+ * 注册listeners个监听器，平均分布在8种事件类型上，另外有一个像ApplicationContextEventListener一样接收所有事件的监听器。
+ * 每次调用依次发布events个（默认一千万个）混合类型的事件，监听器本身只做一次计数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EventDispatchBenchmark {
+
+    public enum Multicaster {
+        SIMPLE, INDEXED
+    }
+
+    @Param({"SIMPLE", "INDEXED"})
+    public Multicaster multicaster;
+
+    @Param({"100", "500"})
+    public int listeners;
+
+    @Param({"10000000"})
+    public int events;
+
+    private SimpleApplicationEventMulticaster eventMulticaster;
+
+    private ApplicationEvent[] mixedEvents;
+
+    private long received;
+
+    @Setup
+    public void setUp() {
+        eventMulticaster = multicaster == Multicaster.SIMPLE
+                ? new SimpleApplicationEventMulticaster() : new TypeIndexedApplicationEventMulticaster();
+
+        for (int i = 0; i < listeners; i++) {
+            eventMulticaster.addApplicationListener(typedListener(i % 8));
+        }
+        eventMulticaster.addApplicationListener((ApplicationListener<ApplicationEvent>) e -> received++);
+
+        mixedEvents = new ApplicationEvent[]{
+                new Event0(this), new Event1(this), new Event2(this), new Event3(this),
+                new Event4(this), new Event5(this), new Event6(this), new Event7(this)
+        };
+    }
+
+    @Benchmark
+    public long publish() {
+        ApplicationEvent[] mixed = mixedEvents;
+        for (int i = 0; i < events; i++) {
+            eventMulticaster.multicastEvent(mixed[i & 7]);
+        }
+        return received;
+    }
+
+    /**
+     * lambda表达式无法保留泛型信息，multicaster会认为它接收所有事件，因此每种事件类型使用一个具体的监听器类
+     */
+    private ApplicationListener<?> typedListener(int type) {
+        switch (type) {
+            case 0: return new Listener0();
+            case 1: return new Listener1();
+            case 2: return new Listener2();
+            case 3: return new Listener3();
+            case 4: return new Listener4();
+            case 5: return new Listener5();
+            case 6: return new Listener6();
+            default: return new Listener7();
+        }
+    }
+
+    public static class Event0 extends ApplicationEvent { public Event0(Object source) { super(source); } }
+    public static class Event1 extends ApplicationEvent { public Event1(Object source) { super(source); } }
+    public static class Event2 extends ApplicationEvent { public Event2(Object source) { super(source); } }
+    public static class Event3 extends ApplicationEvent { public Event3(Object source) { super(source); } }
+    public static class Event4 extends ApplicationEvent { public Event4(Object source) { super(source); } }
+    public static class Event5 extends ApplicationEvent { public Event5(Object source) { super(source); } }
+    public static class Event6 extends ApplicationEvent { public Event6(Object source) { super(source); } }
+    public static class Event7 extends ApplicationEvent { public Event7(Object source) { super(source); } }
+
+    public class Listener0 implements ApplicationListener<Event0> { public void onApplicationEvent(Event0 e) { received++; } }
+    public class Listener1 implements ApplicationListener<Event1> { public void onApplicationEvent(Event1 e) { received++; } }
+    public class Listener2 implements ApplicationListener<Event2> { public void onApplicationEvent(Event2 e) { received++; } }
+    public class Listener3 implements ApplicationListener<Event3> { public void onApplicationEvent(Event3 e) { received++; } }
+    public class Listener4 implements ApplicationListener<Event4> { public void onApplicationEvent(Event4 e) { received++; } }
+    public class Listener5 implements ApplicationListener<Event5> { public void onApplicationEvent(Event5 e) { received++; } }
+    public class Listener6 implements ApplicationListener<Event6> { public void onApplicationEvent(Event6 e) { received++; } }
+    public class Listener7 implements ApplicationListener<Event7> { public void onApplicationEvent(Event7 e) { received++; } }
+}
@@ -0,0 +1,139 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.event.AsyncApplicationEventMulticaster;
+import com.ifan112.demo.sc.event.BatchApplicationListener;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对比默认的SimpleApplicationEventMulticaster与AsyncApplicationEventMulticaster发布事件的吞吐量和延迟
+ *
+ * context中注册listeners个监听器，每个监听器处理一个事件消耗listenerWork个单位的cpu。
+ * SampleTime模式输出发布事件耗时的分布，包括p0.99。
+ *
+ * multicaster取值：
+ * SIMPLE       默认的同步multicaster
+ * ASYNC        异步multicaster，监听器逐个处理事件
+ * ASYNC_BATCH  异步multicaster，监听器实现BatchApplicationListener，一次处理一批事件，每批只消耗一次listenerWork
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventMulticasterBenchmark {
+
+    public enum Multicaster {
+        SIMPLE, ASYNC, ASYNC_BATCH
+    }
+
+    @Param({"SIMPLE", "ASYNC", "ASYNC_BATCH"})
+    public Multicaster multicaster;
+
+    @Param({"4"})
+    public int listeners;
+
+    @Param({"200"})
+    public int listenerWork;
+
+    @Param({"1024"})
+    public int queueCapacity;
+
+    private final LongAdder delivered = new LongAdder();
+
+    private GenericApplicationContext context;
+
+    @Setup
+    public void setUp() {
+        context = new GenericApplicationContext();
+        if (multicaster == Multicaster.SIMPLE) {
+            context.registerBean(AbstractApplicationContext.APPLICATION_EVENT_MULTICASTER_BEAN_NAME,
+                    SimpleApplicationEventMulticaster.class);
+        } else {
+            context.registerBean(AbstractApplicationContext.APPLICATION_EVENT_MULTICASTER_BEAN_NAME,
+                    AsyncApplicationEventMulticaster.class,
+                    () -> new AsyncApplicationEventMulticaster(queueCapacity, listeners));
+        }
+        for (int i = 0; i < listeners; i++) {
+            if (multicaster == Multicaster.ASYNC_BATCH) {
+                context.registerBean("listener" + i, BatchListener.class, () -> new BatchListener(listenerWork, delivered));
+            } else {
+                context.registerBean("listener" + i, SingleListener.class, () -> new SingleListener(listenerWork, delivered));
+            }
+        }
+        context.refresh();
+    }
+
+    @TearDown(Level.Iteration)
+    public void awaitDelivered() {
+        Object bean = context.getBean(AbstractApplicationContext.APPLICATION_EVENT_MULTICASTER_BEAN_NAME);
+        if (bean instanceof AsyncApplicationEventMulticaster) {
+            while (((AsyncApplicationEventMulticaster) bean).getPendingEvents() > 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    @TearDown
+    public void close() {
+        context.close();
+    }
+
+    @Benchmark
+    public void publish() {
+        context.publishEvent(new DomainEvent(this));
+    }
+
+
+    public static class DomainEvent extends ApplicationEvent {
+
+        public DomainEvent(Object source) {
+            super(source);
+        }
+    }
+
+    public static class SingleListener implements ApplicationListener<DomainEvent> {
+
+        private final int work;
+        private final LongAdder delivered;
+
+        public SingleListener(int work, LongAdder delivered) {
+            this.work = work;
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void onApplicationEvent(DomainEvent event) {
+            Blackhole.consumeCPU(work);
+            delivered.increment();
+        }
+    }
+
+    public static class BatchListener implements BatchApplicationListener<DomainEvent> {
+
+        private final int work;
+        private final LongAdder delivered;
+
+        public BatchListener(int work, LongAdder delivered) {
+            this.work = work;
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void onApplicationEvents(List<DomainEvent> events) {
+            // 模拟批量处理：每批只付出一次固定开销，每个事件只付出很小的增量开销
+            Blackhole.consumeCPU(work + events.size());
+            delivered.add(events.size());
+        }
+    }
+}
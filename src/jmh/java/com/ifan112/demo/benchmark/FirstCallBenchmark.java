@@ -0,0 +1,99 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.DemoSpringContextConfiguration;
+import com.ifan112.demo.sc.order.OrderSnapshot;
+import com.ifan112.demo.sc.service.OrderService;
+import com.ifan112.demo.sc.warmup.WarmUpCallback;
+import com.ifan112.demo.sc.warmup.WarmUpCoordinator;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * context刷新之后第一个请求的耗时：获取OrderService并查询一次订单快照
+ *
+ * warmUp=off       不启用WarmUpCoordinator，第一个请求触发OrderServiceFactoryBean.getObject()
+ * warmUp=beans     等待WarmUpCoordinator提前获取FactoryBean的产品之后再发出请求
+ * warmUp=callback  另外注册一个WarmUpCallback，反复调用getOrderSnapshot()使其被JIT编译
+ *
+ * 每次迭代都创建一个新的context，只测量第一次调用，因此使用SingleShotTime并进行较多次迭代。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(3)
+public class FirstCallBenchmark {
+
+    @Param({"off", "beans", "callback"})
+    public String warmUp;
+
+    private PrintStream originalOut;
+
+    private AnnotationConfigApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        Configurator.setLevel("audit", org.apache.logging.log4j.Level.OFF);
+        Configurator.setLevel("warmup", org.apache.logging.log4j.Level.OFF);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws InterruptedException {
+        System.setProperty("demo.sc.warmup.enabled", String.valueOf(!"off".equals(warmUp)));
+        context = new AnnotationConfigApplicationContext();
+        context.register(DemoSpringContextConfiguration.class);
+        if ("callback".equals(warmUp)) {
+            context.registerBean(SnapshotWarmUpCallback.class);
+        }
+        context.refresh();
+        System.clearProperty("demo.sc.warmup.enabled");
+
+        WarmUpCoordinator coordinator = context.getBeanProvider(WarmUpCoordinator.class).getIfAvailable();
+        if (coordinator != null && !coordinator.awaitWarm(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("预热超时");
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        context.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public OrderSnapshot firstCall() {
+        return context.getBean(OrderService.class).getOrderSnapshot();
+    }
+
+    public static class SnapshotWarmUpCallback implements WarmUpCallback {
+
+        @Override
+        public void warmUp(ApplicationContext context) {
+            OrderService orderService = context.getBean(OrderService.class);
+            for (int i = 0; i < 20_000; i++) {
+                orderService.getOrderSnapshot();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.order.IdempotencyFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IdempotencyFilter.tryAcquire的耗时分布
+ *
+ * duplicate  查询一个已经写入过的请求，即客户端重试
+ * fresh      写入一个新的请求，过滤器已满时淘汰最早过期的条目
+ * fingerprint 由用户名、商品id和客户端令牌计算指纹的耗时
+ *
+ * 过滤器在Setup中被写满，capacity设置其条目数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdempotencyFilterBenchmark {
+
+    @Param({"65536", "16777216"})
+    public int capacity;
+
+    private IdempotencyFilter filter;
+
+    private long now;
+
+    private long next;
+
+    @Setup
+    public void setUp() {
+        filter = new IdempotencyFilter(capacity, TimeUnit.HOURS.toMillis(1));
+        now = System.currentTimeMillis();
+        for (long i = 0; i < capacity; i++) {
+            filter.tryAcquire(IdempotencyFilter.fingerprint("用户", i, "token"), now);
+        }
+        next = capacity;
+    }
+
+    @Benchmark
+    public boolean duplicate() {
+        // 只重试最近写入的一半请求，它们不会被fresh淘汰
+        long i = next - 1 - ThreadLocalRandom.current().nextInt(capacity / 2);
+        return filter.tryAcquire(IdempotencyFilter.fingerprint("用户", i, "token"), now);
+    }
+
+    @Benchmark
+    public boolean fresh() {
+        return filter.tryAcquire(IdempotencyFilter.fingerprint("用户", next++, "token"), now);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return IdempotencyFilter.fingerprint("用户", next, "token");
+    }
+}
@@ -0,0 +1,81 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.order.IdempotencyFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向IdempotencyFilter写入一亿个不同的请求
+ *
+ * 主结果是平均每个请求tryAcquire（包括计算指纹）的耗时。写入之后在同一次调用中统计辅助结果：
+ * retainedPercent      最近写入的capacity / 2个请求中，重试时仍能被识别为重复请求的百分比
+ * falsePositivesPerMillion 一百万个从未写入过的请求中，被误判为重复请求的个数
+ * bytesPerKey          过滤器占用的堆外内存除以写入的请求个数
+ *
+ * 过滤器的内存与写入的请求个数无关，已写满时的查询耗时分布参考IdempotencyFilterBenchmark。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:MaxDirectMemorySize=2g")
+@OperationsPerInvocation(IdempotencyFilterScaleBenchmark.KEYS)
+public class IdempotencyFilterScaleBenchmark {
+
+    static final int KEYS = 100_000_000;
+
+    private static final int PROBES = 1_000_000;
+
+    @Param({"16777216", "67108864"})
+    public int capacity;
+
+    private IdempotencyFilter filter;
+
+    private long now;
+
+    /**
+     * 一次调用就超过了每轮的时间，每轮只调用一次，每次使用新的过滤器
+     */
+    @Setup(Level.Invocation)
+    public void setUp() {
+        filter = new IdempotencyFilter(capacity, TimeUnit.HOURS.toMillis(1));
+        now = System.currentTimeMillis();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public double retainedPercent;
+
+        public long falsePositivesPerMillion;
+
+        public double bytesPerKey;
+    }
+
+    @Benchmark
+    public void fill(Counters counters) {
+        for (long i = 0; i < KEYS; i++) {
+            filter.tryAcquire(IdempotencyFilter.fingerprint("用户", i, "token"), now);
+        }
+
+        long recent = capacity / 2;
+        long retained = 0;
+        for (long i = KEYS - recent; i < KEYS; i++) {
+            if (filter.contains(IdempotencyFilter.fingerprint("用户", i, "token"), now)) {
+                retained++;
+            }
+        }
+        long falsePositives = 0;
+        for (long i = 0; i < PROBES; i++) {
+            if (filter.contains(IdempotencyFilter.fingerprint("其他用户", i, "token"), now)) {
+                falsePositives++;
+            }
+        }
+        counters.retainedPercent = retained * 100.0 / recent;
+        counters.falsePositivesPerMillion = falsePositives * 1_000_000L / PROBES;
+        counters.bytesPerKey = (double) filter.getMemoryBytes() / KEYS;
+    }
+}
@@ -0,0 +1,89 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.inflight.InFlightCounter;
+import com.ifan112.demo.sc.inflight.InFlightTracker;
+import com.ifan112.demo.sc.service.impl.UserServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 64个线程同时调用同一个bean时，记录进行中调用的开销
+ *
+ * 每次操作模拟一次调用：进入、执行少量计算（Blackhole.consumeCPU）、离开。
+ *
+ * mode参数：
+ * BASELINE       不计数
+ * SINGLE_ATOMIC  所有线程共用一个AtomicLong，进入时还要读取一个volatile的开关
+ * LONG_ADDER     LongAdder加减，同样读取开关
+ * STRIPED        InFlightTracker.enter/exit，按线程分段计数
+ *
+ * 结束时检查计数已经回到0。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@Threads(64)
+public class InFlightTrackerBenchmark {
+
+    private static final long WORK_TOKENS = 20;
+
+    @Param({"BASELINE", "SINGLE_ATOMIC", "LONG_ADDER", "STRIPED"})
+    public String mode;
+
+    private final AtomicLong atomic = new AtomicLong();
+
+    private final LongAdder adder = new LongAdder();
+
+    private volatile boolean accepting = true;
+
+    private InFlightTracker tracker;
+
+    @Setup
+    public void setUp() {
+        tracker = new InFlightTracker();
+    }
+
+    @TearDown
+    public void tearDown() {
+        long remaining = atomic.get() + adder.sum() + tracker.getInFlightCount();
+        if (remaining != 0) {
+            throw new IllegalStateException("测试结束时计数没有回到0：" + remaining);
+        }
+    }
+
+    @Benchmark
+    public void invoke() {
+        switch (mode) {
+            case "SINGLE_ATOMIC":
+                atomic.incrementAndGet();
+                if (!accepting) {
+                    throw new IllegalStateException();
+                }
+                Blackhole.consumeCPU(WORK_TOKENS);
+                atomic.decrementAndGet();
+                break;
+            case "LONG_ADDER":
+                adder.increment();
+                if (!accepting) {
+                    throw new IllegalStateException();
+                }
+                Blackhole.consumeCPU(WORK_TOKENS);
+                adder.decrement();
+                break;
+            case "STRIPED":
+                InFlightCounter counter = tracker.enter(UserServiceImpl.class);
+                Blackhole.consumeCPU(WORK_TOKENS);
+                tracker.exit(counter);
+                break;
+            default:
+                Blackhole.consumeCPU(WORK_TOKENS);
+        }
+    }
+}
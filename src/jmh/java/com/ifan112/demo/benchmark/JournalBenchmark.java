@@ -0,0 +1,70 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.journal.ForcePolicy;
+import com.ifan112.demo.sc.journal.MappedJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MappedJournal追加记录的吞吐量
+ *
+ * forceInterval为0时不主动刷盘（NONE），为1时每条记录刷盘（EVERY_RECORD），否则每forceInterval条记录刷盘一次。
+ * 主结果是每秒追加的消息条数，辅助结果megabytes是每秒写入的MB数（包括8字节的记录头）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+
+    @Param({"0", "1", "64", "4096"})
+    public int forceInterval;
+
+    @Param({"128"})
+    public int payloadSize;
+
+    @Param({"67108864"})
+    public int segmentSize;
+
+    private Path directory;
+
+    private MappedJournal journal;
+
+    private byte[] payload;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        ForcePolicy policy = forceInterval == 0 ? ForcePolicy.NONE
+                : forceInterval == 1 ? ForcePolicy.EVERY_RECORD : ForcePolicy.EVERY_N_RECORDS;
+        journal = new MappedJournal(directory, segmentSize, policy, forceInterval);
+        payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        journal.close();
+        SyntheticClasses.deleteRecursively(directory);
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public double megabytes;
+    }
+
+    @Benchmark
+    public void append(Counters counters) throws IOException {
+        journal.append(payload);
+        counters.megabytes += (payloadSize + 8) / 1e6;
+    }
+}
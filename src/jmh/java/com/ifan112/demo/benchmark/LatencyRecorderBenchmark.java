@@ -0,0 +1,82 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.latency.LatencyRecorder;
+import com.ifan112.demo.sc.latency.MethodLatency;
+import com.ifan112.demo.sc.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MethodLatency.record的开销，即切面在每次调用上记录耗时的成本（不含两次System.nanoTime()）
+ *
+ * record      单线程记录
+ * record4     4个线程同时记录同一个方法，每个线程写入自己的直方图
+ * nanoTime    对照：切面为了计算耗时调用的System.nanoTime()
+ *
+ * intervalMillis为后台切换区间的间隔，0表示不切换；切换时记录线程需要等待翻转完成。
+ * 记录的值在0到约2秒之间按对数分布，覆盖直方图的大部分桶。结束时检查确实记录到了耗时。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class LatencyRecorderBenchmark {
+
+    @Param({"0", "10"})
+    public long intervalMillis;
+
+    private LatencyRecorder recorder;
+
+    private MethodLatency latency;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        recorder = new LatencyRecorder(intervalMillis, false);
+        recorder.afterPropertiesSet();
+        latency = recorder.get(UserService.class.getMethod("createUser", String.class, String.class, int.class), null);
+    }
+
+    @TearDown
+    public void tearDown(BenchmarkParams params) {
+        recorder.rollover();
+        recorder.destroy();
+        if (!params.getBenchmark().endsWith(".nanoTime") && latency.getTotalCount() == 0) {
+            throw new IllegalStateException("没有记录到任何耗时");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Values {
+
+        private long seed = System.nanoTime() | 1;
+
+        long next() {
+            long x = seed;
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            seed = x;
+            return (x & 0xFFFF) << ((x >>> 59) & 15);
+        }
+    }
+
+    @Benchmark
+    public void record(Values values) {
+        latency.record(values.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void record4(Values values) {
+        latency.record(values.next());
+    }
+
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
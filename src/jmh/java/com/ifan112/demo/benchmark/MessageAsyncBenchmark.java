@@ -0,0 +1,86 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.DemoSpringContextConfiguration;
+import com.ifan112.demo.sc.service.MessageService;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比阻塞的send与sendAsync，调用线程上的耗时分布
+ *
+ * send            调用线程等待消息写入System.out
+ * sendAsync       调用线程提交后立即返回，只测量提交的耗时
+ * sendAsyncJoin   提交后等待结果，即端到端的耗时
+ *
+ * 下游的System.out被替换为每次写入额外耗时writeMicros微秒的PrintStream，模拟较慢的I/O。
+ * 队列已满时sendAsync返回的future以异常结束，不影响调用线程的耗时。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class MessageAsyncBenchmark {
+
+    @Param({"50"})
+    public int writeMicros;
+
+    private PrintStream originalOut;
+
+    private AnnotationConfigApplicationContext context;
+
+    private MessageService messageService;
+
+    @Setup
+    public void setUp() {
+        originalOut = System.out;
+        long writeNanos = TimeUnit.MICROSECONDS.toNanos(writeMicros);
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                long deadline = System.nanoTime() + writeNanos;
+                while (System.nanoTime() < deadline) {
+                    // 忙等，模拟较慢的I/O
+                }
+            }
+        }));
+        Configurator.setLevel("audit", Level.OFF);
+
+        context = new AnnotationConfigApplicationContext(DemoSpringContextConfiguration.class);
+        messageService = context.getBean(MessageService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public boolean send() {
+        return messageService.send("消息");
+    }
+
+    @Benchmark
+    public CompletableFuture<Boolean> sendAsync() {
+        return messageService.sendAsync("消息");
+    }
+
+    @Benchmark
+    public Boolean sendAsyncJoin() {
+        return messageService.sendAsync("消息").join();
+    }
+}
@@ -0,0 +1,112 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.DemoSpringContextConfiguration;
+import com.ifan112.demo.sc.service.MessageService;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过代理调用MessageService发送消息的吞吐量，结果中的messages是每微秒发送的消息条数
+ *
+ * sendBatch          单个线程，每次调用sendBatch发送batchSize条消息
+ * send_8threads      8个线程逐条调用send，关闭pipelined发送
+ * pipelined_8threads 8个线程逐条调用send，开启pipelined发送，每批最多batchSize条
+ *
+ * System.out被替换为丢弃输出的PrintStream，audit日志记录器被关闭。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageSendBenchmark {
+
+    @Param({"1", "16", "256", "4096"})
+    public int batchSize;
+
+    private PrintStream originalOut;
+
+    private AnnotationConfigApplicationContext directContext;
+
+    private AnnotationConfigApplicationContext pipelinedContext;
+
+    private MessageService directService;
+
+    private MessageService pipelinedService;
+
+    private List<String> batch;
+
+    @Setup
+    public void setUp() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        Configurator.setLevel("audit", Level.OFF);
+
+        System.setProperty("demo.sc.message.batch-size", String.valueOf(batchSize));
+        System.setProperty("demo.sc.message.pipelined", "false");
+        directContext = new AnnotationConfigApplicationContext(DemoSpringContextConfiguration.class);
+        directService = directContext.getBean(MessageService.class);
+
+        System.setProperty("demo.sc.message.pipelined", "true");
+        pipelinedContext = new AnnotationConfigApplicationContext(DemoSpringContextConfiguration.class);
+        pipelinedService = pipelinedContext.getBean(MessageService.class);
+        System.clearProperty("demo.sc.message.pipelined");
+        System.clearProperty("demo.sc.message.batch-size");
+
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add("消息" + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        directContext.close();
+        pipelinedContext.close();
+        System.setOut(originalOut);
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long messages;
+    }
+
+    @Benchmark
+    public List<Boolean> sendBatch(Counters counters) {
+        counters.messages += batchSize;
+        return directService.sendBatch(batch);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean send_8threads(Counters counters) {
+        counters.messages++;
+        return directService.send("消息");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean pipelined_8threads(Counters counters) {
+        counters.messages++;
+        return pipelinedService.send("消息");
+    }
+}
@@ -0,0 +1,91 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.order.OrderEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderEngine提交订单的吞吐量
+ *
+ * submit           单个线程不断提交订单，订单分布在users个用户和goods个商品上
+ * mixed            一个线程提交订单的同时，另一个线程不断查询单个商品的订单数，观察查询对写入的影响
+ *
+ * 每次迭代结束时等待sequencer线程处理完所有已提交的订单，因此吞吐量包含了统计数据的更新。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderEngineBenchmark {
+
+    @Param({"65536"})
+    public int ringSize;
+
+    @Param({"10000"})
+    public int users;
+
+    @Param({"100000"})
+    public int goods;
+
+    private OrderEngine engine;
+
+    private String[] usernames;
+
+    private volatile long lastSequence = -1;
+
+    @Setup
+    public void setUp() {
+        engine = new OrderEngine(ringSize, 1024);
+        usernames = new String[users];
+        for (int i = 0; i < users; i++) {
+            usernames[i] = "user-" + i;
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void awaitProcessed() {
+        if (lastSequence >= 0) {
+            engine.awaitProcessed(lastSequence);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next;
+    }
+
+    @Benchmark
+    public long submit(Cursor cursor) {
+        return doSubmit(cursor);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public long mixed_submit(Cursor cursor) {
+        return doSubmit(cursor);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public long mixed_query(Cursor cursor) {
+        return engine.getGoodOrderCount(cursor.next++ % goods);
+    }
+
+    private long doSubmit(Cursor cursor) {
+        int i = cursor.next++;
+        long sequence = engine.submit(usernames[i % users], i % goods);
+        lastSequence = sequence;
+        return sequence;
+    }
+}
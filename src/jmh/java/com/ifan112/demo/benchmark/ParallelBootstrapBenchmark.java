@@ -0,0 +1,191 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.beans.DemoListableBeanFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比串行与并行预实例化单例bean时，context刷新的耗时
+ *
+ * 注册beans个互不依赖、构造耗时constructMillis毫秒的单例bean，
+ * 以及每4个一组、通过构造器依赖前一个bean的依赖链，验证依赖关系被正确处理。
+ * 另外注册4组按类型@Autowired注入的bean：每组的Consumer构造之后按类型注入同组的Provider，
+ * 注入时会判断所有bean的类型，包括其它线程正在创建的bean，验证并行创建时不会互相等待。
+ *
+ * parallelism为1时即DefaultListableBeanFactory的默认行为。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ParallelBootstrapBenchmark {
+
+    @Param({"1", "4", "8"})
+    public int parallelism;
+
+    @Param({"32"})
+    public int beans;
+
+    @Param({"20"})
+    public int constructMillis;
+
+    private GenericApplicationContext context;
+
+    @TearDown(Level.Invocation)
+    public void close() {
+        context.close();
+    }
+
+    @Benchmark
+    public GenericApplicationContext refresh() {
+        DemoListableBeanFactory beanFactory = new DemoListableBeanFactory();
+        beanFactory.setPreInstantiationParallelism(parallelism);
+
+        context = new GenericApplicationContext(beanFactory);
+        AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+        for (int i = 0; i < beans; i++) {
+            context.registerBean("slowBean" + i, SlowBean.class, () -> new SlowBean(constructMillis));
+        }
+        for (int i = 0; i < beans / 4; i++) {
+            String previous = i % 4 == 0 ? null : "chainedBean" + (i - 1);
+            context.registerBean("chainedBean" + i, ChainedBean.class, () -> new ChainedBean(
+                    previous == null ? null : context.getBean(previous, ChainedBean.class), constructMillis));
+            if (previous != null) {
+                context.getBeanDefinition("chainedBean" + i).setDependsOn(previous);
+            }
+        }
+        context.registerBean("provider1", Provider1.class, Provider1::new);
+        context.registerBean("provider2", Provider2.class, Provider2::new);
+        context.registerBean("provider3", Provider3.class, Provider3::new);
+        context.registerBean("provider4", Provider4.class, Provider4::new);
+        context.registerBean("consumer1", Consumer1.class, () -> new Consumer1(constructMillis));
+        context.registerBean("consumer2", Consumer2.class, () -> new Consumer2(constructMillis));
+        context.registerBean("consumer3", Consumer3.class, () -> new Consumer3(constructMillis));
+        context.registerBean("consumer4", Consumer4.class, () -> new Consumer4(constructMillis));
+        context.refresh();
+
+        for (AutowiringBean consumer : context.getBeansOfType(AutowiringBean.class).values()) {
+            if (consumer.getProvider() == null) {
+                throw new IllegalStateException("@Autowired字段没有被注入");
+            }
+        }
+        return context;
+    }
+
+
+    public static class SlowBean {
+
+        public SlowBean(int constructMillis) {
+            sleep(constructMillis);
+        }
+    }
+
+    public static class ChainedBean {
+
+        private final ChainedBean previous;
+
+        public ChainedBean(ChainedBean previous, int constructMillis) {
+            this.previous = previous;
+            sleep(constructMillis);
+        }
+
+        public ChainedBean getPrevious() {
+            return previous;
+        }
+    }
+
+    public static class Provider1 {
+    }
+
+    public static class Provider2 {
+    }
+
+    public static class Provider3 {
+    }
+
+    public static class Provider4 {
+    }
+
+    public abstract static class AutowiringBean {
+
+        AutowiringBean(int constructMillis) {
+            sleep(constructMillis);
+        }
+
+        public abstract Object getProvider();
+    }
+
+    public static class Consumer1 extends AutowiringBean {
+
+        @Autowired
+        private Provider1 provider;
+
+        public Consumer1(int constructMillis) {
+            super(constructMillis);
+        }
+
+        @Override
+        public Object getProvider() {
+            return provider;
+        }
+    }
+
+    public static class Consumer2 extends AutowiringBean {
+
+        @Autowired
+        private Provider2 provider;
+
+        public Consumer2(int constructMillis) {
+            super(constructMillis);
+        }
+
+        @Override
+        public Object getProvider() {
+            return provider;
+        }
+    }
+
+    public static class Consumer3 extends AutowiringBean {
+
+        @Autowired
+        private Provider3 provider;
+
+        public Consumer3(int constructMillis) {
+            super(constructMillis);
+        }
+
+        @Override
+        public Object getProvider() {
+            return provider;
+        }
+    }
+
+    public static class Consumer4 extends AutowiringBean {
+
+        @Autowired
+        private Provider4 provider;
+
+        public Consumer4(int constructMillis) {
+            super(constructMillis);
+        }
+
+        @Override
+        public Object getProvider() {
+            return provider;
+        }
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.xml.BinaryBeanDefinitionReader;
+import com.ifan112.demo.sc.xml.PrecompiledXmlApplicationContext;
+import com.ifan112.demo.sc.xml.XmlBeanDefinitionCompiler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比解析XML与读取预编译的bean定义文件时，5000个bean的加载和context刷新耗时
+ *
+ * 生成的XML中每个bean有两个属性，其中一个引用前一个bean，每10个bean有一个别名，并且包含&lt;aop:aspectj-autoproxy/&gt;，
+ * 需要XSD校验和命名空间处理。启动前先比较两种方式得到的bean定义和别名是否相同。
+ *
+ * mode参数：
+ * XML     XmlBeanDefinitionReader解析XML；刷新时设置demo.sc.xml.precompiled=false
+ * BINARY  BinaryBeanDefinitionReader读取XmlBeanDefinitionCompiler生成的文件，包括检查XML是否被修改
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(2)
+public class PrecompiledXmlBenchmark {
+
+    @Param({"5000"})
+    public int beans;
+
+    @Param({"XML", "BINARY"})
+    public String mode;
+
+    private Path directory;
+
+    private String location;
+
+    private FileSystemResource binary;
+
+    private PrecompiledXmlApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = Files.createTempDirectory("precompiled-xml");
+        Path xml = directory.resolve("beans.xml");
+        Files.write(xml, xml(beans).getBytes(StandardCharsets.UTF_8));
+        location = xml.toUri().toString();
+        binary = new FileSystemResource(directory.resolve("beans.xml.bin").toFile());
+        new XmlBeanDefinitionCompiler().compile(location, binary.getFile().toPath());
+
+        DefaultListableBeanFactory parsed = new DefaultListableBeanFactory();
+        new XmlBeanDefinitionReader(parsed).loadBeanDefinitions(location);
+        DefaultListableBeanFactory precompiled = new DefaultListableBeanFactory();
+        new BinaryBeanDefinitionReader(precompiled).loadBeanDefinitions(binary);
+        if (!Arrays.equals(parsed.getBeanDefinitionNames(), precompiled.getBeanDefinitionNames())) {
+            throw new IllegalStateException("预编译的bean名称与XML不同");
+        }
+        for (String beanName : parsed.getBeanDefinitionNames()) {
+            if (!sameDefinition(parsed, precompiled, beanName)
+                    || !Arrays.equals(parsed.getAliases(beanName), precompiled.getAliases(beanName))) {
+                throw new IllegalStateException("预编译的bean定义与XML不同：" + beanName);
+            }
+        }
+
+        if ("XML".equals(mode)) {
+            System.setProperty("demo.sc.xml.precompiled", "false");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        System.clearProperty("demo.sc.xml.precompiled");
+        SyntheticClasses.deleteRecursively(directory);
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() {
+        if (context != null) {
+            context.close();
+            context = null;
+        }
+    }
+
+    @Benchmark
+    public DefaultListableBeanFactory load() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        if ("XML".equals(mode)) {
+            new XmlBeanDefinitionReader(beanFactory).loadBeanDefinitions(location);
+        } else if (new BinaryBeanDefinitionReader(beanFactory).loadBeanDefinitionsIfUpToDate(binary) < 0) {
+            throw new IllegalStateException("预编译的文件已经过期");
+        }
+        return beanFactory;
+    }
+
+    @Benchmark
+    public PrecompiledXmlApplicationContext refresh() {
+        context = new PrecompiledXmlApplicationContext(location);
+        if (context.getPrecompiledLocationCount() != ("BINARY".equals(mode) ? 1 : 0)) {
+            throw new IllegalStateException("没有按照" + mode + "方式加载bean定义");
+        }
+        return context;
+    }
+
+    /**
+     * 构造参数、属性值和方法覆盖在第一次获取时才创建，比较之前先都获取一次
+     */
+    private static boolean sameDefinition(DefaultListableBeanFactory left, DefaultListableBeanFactory right,
+                                          String beanName) {
+        AbstractBeanDefinition leftDefinition = (AbstractBeanDefinition) left.getBeanDefinition(beanName);
+        AbstractBeanDefinition rightDefinition = (AbstractBeanDefinition) right.getBeanDefinition(beanName);
+        for (AbstractBeanDefinition definition : Arrays.asList(leftDefinition, rightDefinition)) {
+            definition.getConstructorArgumentValues();
+            definition.getPropertyValues();
+            definition.getMethodOverrides();
+        }
+        return leftDefinition.equals(rightDefinition)
+                && String.valueOf(leftDefinition).equals(String.valueOf(rightDefinition));
+    }
+
+    private static String xml(int beans) {
+        StringBuilder xml = new StringBuilder(beans * 200);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<beans xmlns=\"http://www.springframework.org/schema/beans\"\n");
+        xml.append("       xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+        xml.append("       xmlns:aop=\"http://www.springframework.org/schema/aop\"\n");
+        xml.append("       xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans.xsd\n");
+        xml.append("                           http://www.springframework.org/schema/aop http://www.springframework.org/schema/aop/spring-aop.xsd\">\n\n");
+        xml.append("    <aop:aspectj-autoproxy/>\n\n");
+        for (int i = 0; i < beans; i++) {
+            xml.append("    <bean id=\"bean").append(i).append('"');
+            if (i % 10 == 0) {
+                xml.append(" name=\"alias").append(i).append('"');
+            }
+            xml.append(" class=\"").append(XmlBean.class.getName()).append("\">\n");
+            xml.append("        <property name=\"name\" value=\"bean").append(i).append("\"/>\n");
+            if (i > 0) {
+                xml.append("        <property name=\"previous\" ref=\"bean").append(i - 1).append("\"/>\n");
+            }
+            xml.append("    </bean>\n");
+        }
+        xml.append("</beans>\n");
+        return xml.toString();
+    }
+
+
+    public static class XmlBean {
+
+        private String name;
+
+        private XmlBean previous;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public XmlBean getPrevious() {
+            return previous;
+        }
+
+        public void setPrevious(XmlBean previous) {
+            this.previous = previous;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.ApplicationAspectConfiguration;
+import com.ifan112.demo.sc.DemoSpringContextConfiguration;
+import com.ifan112.demo.sc.entity.User;
+import com.ifan112.demo.sc.service.MessageService;
+import com.ifan112.demo.sc.service.UserService;
+import com.ifan112.demo.sc.service.impl.TestServiceImpl;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.FilterType;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量代理方式对每次方法调用的开销
+ *
+ * proxy参数：
+ * NONE   不启用AOP，从context中获取到的是原始的bean
+ * JDK    当前的配置DemoSpringContextConfiguration，实现了接口的bean使用Jdk动态代理，TestServiceImpl使用CGLIB代理
+ * CGLIB  proxyTargetClass=true，所有被代理的bean都使用CGLIB代理
+ * FROZEN  设置demo.sc.aop.frozen=true，所有代理都是冻结的CGLIB代理，每个方法的advice链在生成代理类时确定，参考FrozenProxyConfigurer
+ *
+ * 后三种方式都会执行当前的@Around和@AfterReturning advice。
+ * 服务实现中打印到System.out的内容被丢弃，audit日志记录器被关闭。
+ *
+ * 每次调用分配的字节数通过gc profiler获取：
+ * java -jar target/benchmarks.jar ProxyDispatchBenchmark -prof gc
+ * 结果中的gc.alloc.rate.norm即为bytes/op。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProxyDispatchBenchmark {
+
+    @Param({"NONE", "JDK", "CGLIB", "FROZEN"})
+    public String proxy;
+
+    private PrintStream originalOut;
+
+    private AnnotationConfigApplicationContext context;
+
+    private UserService userService;
+
+    private MessageService messageService;
+
+    private TestServiceImpl testService;
+
+    @Setup
+    public void setUp() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        Configurator.setLevel("audit", Level.OFF);
+
+        switch (proxy) {
+            case "NONE":
+                context = new AnnotationConfigApplicationContext(NoProxyConfiguration.class);
+                break;
+            case "CGLIB":
+                context = new AnnotationConfigApplicationContext(ClassProxyConfiguration.class);
+                break;
+            case "FROZEN":
+                System.setProperty("demo.sc.aop.frozen", "true");
+                context = new AnnotationConfigApplicationContext(DemoSpringContextConfiguration.class);
+                System.clearProperty("demo.sc.aop.frozen");
+                break;
+            default:
+                context = new AnnotationConfigApplicationContext(DemoSpringContextConfiguration.class);
+        }
+
+        userService = context.getBean(UserService.class);
+        messageService = context.getBean(MessageService.class);
+        testService = context.getBean(TestServiceImpl.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public User createUser() {
+        return userService.createUser("一凡", "无", 22);
+    }
+
+    @Benchmark
+    public boolean send() {
+        return messageService.send("Hello World!");
+    }
+
+    @Benchmark
+    public void test() {
+        testService.test();
+    }
+
+
+    /**
+     * 不启用AOP，也不注册切面
+     */
+    @Configuration
+    @ComponentScan(value = "com.ifan112.demo.sc", excludeFilters = @ComponentScan.Filter(
+            type = FilterType.ASSIGNABLE_TYPE,
+            classes = {DemoSpringContextConfiguration.class, ApplicationAspectConfiguration.class}))
+    static class NoProxyConfiguration {
+    }
+
+    /**
+     * 与DemoSpringContextConfiguration相同，但是强制使用CGLIB代理
+     */
+    @Configuration
+    @EnableAspectJAutoProxy(proxyTargetClass = true)
+    @ComponentScan(value = "com.ifan112.demo.sc", excludeFilters = @ComponentScan.Filter(
+            type = FilterType.ASSIGNABLE_TYPE,
+            classes = DemoSpringContextConfiguration.class))
+    static class ClassProxyConfiguration {
+    }
+}
@@ -0,0 +1,119 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.ApplicationAspectConfiguration;
+import com.ifan112.demo.sc.aop.ShadowMatchCacheConfigurer;
+import com.ifan112.demo.sc.audit.AuditLogger;
+import com.ifan112.demo.sc.inflight.InFlightTracker;
+import com.ifan112.demo.sc.latency.LatencyRecorder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Import;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 5000个合成的服务类下，context的启动耗时
+ *
+ * 合成类位于com.ifan112.demo.sc.service.impl包中，每个类有methods个方法，其中每matchEvery个类名以ServiceImpl结尾，
+ * 会被ApplicationAspectConfiguration的切点匹配并创建代理，其余的类名以Service结尾，需要逐个方法匹配后才能确定不被代理。
+ *
+ * mode参数：
+ * NONE  默认的AnnotationAwareAspectJAutoProxyCreator
+ * COLD  启用demo.sc.aop.shadow-cache，每次启动前删除缓存文件，即第一次启动
+ * WARM  启用demo.sc.aop.shadow-cache，缓存文件已由之前的启动写入
+ *
+ * 每次启动都使用新的类加载器，避免AspectJ按类加载器缓存的反射信息的影响。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ShadowMatchCacheBenchmark {
+
+    private static final String PACKAGE = "com.ifan112.demo.sc.service.impl";
+
+    @Param({"5000"})
+    public int classes;
+
+    @Param({"20"})
+    public int methods;
+
+    @Param({"10"})
+    public int matchEvery;
+
+    @Param({"NONE", "COLD", "WARM"})
+    public String mode;
+
+    private Path classesDir;
+
+    private Path cacheFile;
+
+    private AnnotationConfigApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        classesDir = Files.createTempDirectory("shadow-match");
+        for (int i = 0; i < classes; i++) {
+            SyntheticClasses.writeClass(classesDir, className(i), null, methods);
+        }
+        cacheFile = classesDir.resolve("shadow-match.cache");
+        if (!"NONE".equals(mode)) {
+            System.setProperty("demo.sc.aop.shadow-cache", cacheFile.toString());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        System.clearProperty("demo.sc.aop.shadow-cache");
+        SyntheticClasses.deleteRecursively(classesDir);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() throws IOException {
+        if ("COLD".equals(mode)) {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() {
+        context.close();
+    }
+
+    @Benchmark
+    public AnnotationConfigApplicationContext startup() {
+        context = new AnnotationConfigApplicationContext();
+        context.setClassLoader(SyntheticClasses.classLoader(classesDir, false));
+        context.register(AopConfiguration.class);
+        for (int i = 0; i < classes; i++) {
+            GenericBeanDefinition definition = new GenericBeanDefinition();
+            definition.setBeanClassName(className(i));
+            context.registerBeanDefinition("synthetic" + i, definition);
+        }
+        context.refresh();
+        return context;
+    }
+
+    private String className(int i) {
+        return PACKAGE + ".Synthetic" + i + (i % matchEvery == 0 ? "ServiceImpl" : "Service");
+    }
+
+
+    /**
+     * 只包含切面及其依赖，不扫描包
+     */
+    @Configuration
+    @EnableAspectJAutoProxy
+    @Import({ApplicationAspectConfiguration.class, AuditLogger.class, InFlightTracker.class, LatencyRecorder.class,
+            ShadowMatchCacheConfigurer.class})
+    static class AopConfiguration {
+    }
+}
@@ -0,0 +1,106 @@
+package com.ifan112.demo.benchmark;
+
+import org.springframework.asm.AnnotationVisitor;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.stream.Stream;
+
+/**
+ * 基准测试使用的合成类
+ *
+ * 使用spring-core中重新打包的ASM直接生成class文件，不需要编译器。
+ */
+final class SyntheticClasses {
+
+    static final String COMPONENT_INDEX = "META-INF/spring.components";
+
+    private SyntheticClasses() {
+    }
+
+    /**
+     * 在dir下生成一个带有无参构造器的public类
+     *
+     * @param annotation 类上的注解，例如org/springframework/stereotype/Component，为null时不加注解
+     * @param methods    额外生成的public void方法的个数，方法体为空
+     */
+    static void writeClass(Path dir, String className, String annotation, int methods) {
+        String internalName = className.replace('.', '/');
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null);
+
+        if (annotation != null) {
+            AnnotationVisitor av = cw.visitAnnotation("L" + annotation + ";", true);
+            av.visitEnd();
+        }
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        for (int i = 0; i < methods; i++) {
+            mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "method" + i, "(Ljava/lang/String;J)V", null, null);
+            mv.visitCode();
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+
+        try {
+            Path file = dir.resolve(internalName + ".class");
+            Files.createDirectories(file.getParent());
+            Files.write(file, cw.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void deleteRecursively(Path dir) {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 加载dir下合成类的类加载器
+     *
+     * @param exposeIndex 是否暴露dir下的组件索引。为false时，包括父加载器在内的所有组件索引都不可见，
+     *                    context只能回退到扫描classpath
+     */
+    static ClassLoader classLoader(Path dir, boolean exposeIndex) {
+        try {
+            return new URLClassLoader(new URL[]{dir.toUri().toURL()}, SyntheticClasses.class.getClassLoader()) {
+                @Override
+                public Enumeration<URL> getResources(String name) throws IOException {
+                    if (COMPONENT_INDEX.equals(name)) {
+                        return exposeIndex ? findResources(name) : Collections.emptyEnumeration();
+                    }
+                    return super.getResources(name);
+                }
+            };
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.DemoSpringContextConfiguration;
+import com.ifan112.demo.sc.beans.DemoListableBeanFactory;
+import com.ifan112.demo.sc.service.MessageService;
+import com.ifan112.demo.sc.service.OrderService;
+import com.ifan112.demo.sc.service.UserService;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比开启与关闭类型缓存时，context.getBean(Class)的吞吐量
+ *
+ * 每次调用依次按类型获取MessageService、OrderService（FactoryBean的产品）和UserService。
+ * 默认实现的开销与bean的个数成正比，extraBeans设置额外注册的普通单例bean的个数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypeLookupBenchmark {
+
+    @Param({"false", "true"})
+    public boolean typeCache;
+
+    @Param({"0", "500"})
+    public int extraBeans;
+
+    private PrintStream originalOut;
+
+    private AnnotationConfigApplicationContext context;
+
+    @Setup
+    public void setUp() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        Configurator.setLevel("audit", Level.OFF);
+
+        DemoListableBeanFactory beanFactory = new DemoListableBeanFactory();
+        beanFactory.setResolvedTypeCacheEnabled(typeCache);
+        context = new AnnotationConfigApplicationContext(beanFactory);
+        context.register(DemoSpringContextConfiguration.class);
+        for (int i = 0; i < extraBeans; i++) {
+            context.registerBean("extraBean" + i, ExtraBean.class);
+        }
+        context.refresh();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void getBean_1thread(Blackhole blackhole) {
+        lookup(blackhole);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void getBean_8threads(Blackhole blackhole) {
+        lookup(blackhole);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void getBean_64threads(Blackhole blackhole) {
+        lookup(blackhole);
+    }
+
+    private void lookup(Blackhole blackhole) {
+        blackhole.consume(context.getBean(MessageService.class));
+        blackhole.consume(context.getBean(OrderService.class));
+        blackhole.consume(context.getBean(UserService.class));
+    }
+
+
+    public static class ExtraBean {
+    }
+}
@@ -0,0 +1,75 @@
+package com.ifan112.demo.benchmark;
+
+import com.ifan112.demo.sc.entity.User;
+import com.ifan112.demo.sc.service.impl.UserServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserServiceImpl并发创建和查询用户的吞吐量
+ *
+ * 每个线程在自己的一组名称上循环创建和查询用户，同名用户被替换。
+ * 这组用户在开始测量之前已经全部创建，查询总是命中，创建总是替换已有的用户。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserStoreBenchmark {
+
+    private static final int KEYS = 1024;
+
+    private UserServiceImpl userService;
+
+    @Setup
+    public void setUp() {
+        userService = new UserServiceImpl();
+    }
+
+    @State(Scope.Thread)
+    public static class Names {
+
+        private static int threads;
+
+        final String[] names = new String[KEYS];
+
+        int next;
+
+        @Setup
+        public void setUp(UserStoreBenchmark benchmark) {
+            int thread;
+            synchronized (Names.class) {
+                thread = threads++;
+            }
+            for (int i = 0; i < KEYS; i++) {
+                names[i] = "user-" + thread + "-" + i;
+                benchmark.userService.createUser(names[i], "无", 22);
+            }
+        }
+
+        String next() {
+            return names[next++ & (KEYS - 1)];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public User createUser_1thread(Names names) {
+        return userService.createUser(names.next(), "无", 22);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public User createUser_8threads(Names names) {
+        return userService.createUser(names.next(), "无", 22);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public User getUser_8threads(Names names) {
+        return userService.getUser(names.next());
+    }
+}
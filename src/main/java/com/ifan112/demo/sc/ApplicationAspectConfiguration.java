@@ -1,14 +1,22 @@
 package com.ifan112.demo.sc;
 
+import com.ifan112.demo.sc.audit.AuditLogger;
+import com.ifan112.demo.sc.audit.MethodMetadata;
+import com.ifan112.demo.sc.audit.MethodMetadataCache;
+import com.ifan112.demo.sc.inflight.InFlightCounter;
+import com.ifan112.demo.sc.inflight.InFlightTracker;
+import com.ifan112.demo.sc.latency.LatencyRecorder;
+import com.ifan112.demo.sc.latency.MethodLatency;
+import org.aopalliance.intercept.MethodInvocation;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.aop.interceptor.ExposeInvocationInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
-
 /**
  * 应用切面的配置
  *
@@ -17,12 +25,33 @@ import java.util.Arrays;
  *
  * @Component 表明这是一个可被context扫描并管理的组件。这个注解不可缺少。
  *
+ * 方法调用的日志交给{@link AuditLogger}记录，默认以异步批量的方式输出，避免每次调用都争抢System.out上的锁。
+ *
+ * 方法名称等元数据在方法第一次被调用时计算，并按方法和目标类缓存在{@link MethodMetadataCache}中。
+ * 此后每次调用，advice都直接从当前的MethodInvocation中取出被调用的方法和参数数组，
+ * 不再通过point.getSignature()和point.getArgs()创建Signature对象和复制参数数组。
+ *
+ * 每次调用在{@link InFlightTracker}中按目标类计数，context停止时等待进行中的调用结束，并拒绝新的调用，
+ * 容器的生命周期回调除外。
+ *
+ * 每次调用的耗时按方法记录在{@link LatencyRecorder}中，通过JMX导出各区间的p50、p99、p999和最大值。
  */
 
 @Aspect
 @Component
 public class ApplicationAspectConfiguration {
 
+    @Autowired
+    private AuditLogger auditLogger;
+
+    @Autowired
+    private InFlightTracker inFlightTracker;
+
+    @Autowired
+    private LatencyRecorder latencyRecorder;
+
+    private final MethodMetadataCache metadataCache = new MethodMetadataCache();
+
     /**
      * 定义切点。
      *
@@ -40,19 +69,39 @@ public class ApplicationAspectConfiguration {
      */
     @Around("servicePointCut()")
     public Object logArgs(ProceedingJoinPoint point) {
-        System.out.println(point.getSignature().getName() + "方法开始执行！！参数：" + Arrays.toString(point.getArgs()));
+        // ExposeInvocationInterceptor总是位于advice链的最前面，它将当前的MethodInvocation保存在ThreadLocal中
+        MethodInvocation invocation = ExposeInvocationInterceptor.currentInvocation();
+        Object target = invocation.getThis();
+        Class<?> targetClass = target == null ? null : target.getClass();
+        MethodMetadata metadata = metadataCache.get(invocation.getMethod(), targetClass);
+        MethodLatency latency = latencyRecorder.get(invocation.getMethod(), targetClass);
+        Object[] args = invocation.getArguments();
+
+        // context已停止时在这里抛出RejectedExecutionException，不记录调用日志；destroy()等生命周期回调总是被放行
+        InFlightCounter counter = inFlightTracker.enter(
+                targetClass == null ? invocation.getMethod().getDeclaringClass() : targetClass,
+                !metadata.isLifecycleCallback());
+        auditLogger.logStart(metadata, args);
+        long start = System.nanoTime();
         try {
             Object result = point.proceed();
-            System.out.println(point.getSignature().getName() + "方法执行结束！！结果：" + result);
+            auditLogger.logInvocation(metadata, args, result);
             return result;
         } catch (Throwable throwable) {
+            auditLogger.logFailure(metadata, args, throwable);
             throwable.printStackTrace();
+        } finally {
+            latency.record(System.nanoTime() - start);
+            inFlightTracker.exit(counter);
         }
         return null;
     }
 
     @AfterReturning(value = "servicePointCut()", returning = "retVal")
     public void afterReturning(Object retVal) {
-        System.out.println("afterReturning --- " + retVal);
+        // 与logArgs相同，从当前的MethodInvocation取得方法，命中缓存时不分配对象
+        MethodInvocation invocation = ExposeInvocationInterceptor.currentInvocation();
+        Object target = invocation.getThis();
+        auditLogger.logReturning(metadataCache.get(invocation.getMethod(), target == null ? null : target.getClass()), retVal);
     }
 }
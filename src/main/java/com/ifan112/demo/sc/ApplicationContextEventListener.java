@@ -21,6 +21,9 @@ import org.springframework.stereotype.Component;
  * 2. 在context启动时的 {@link org.springframework.context.event.ContextStartedEvent} 事件
  * 3. 在context停止时的 {@link org.springframework.context.event.ContextStoppedEvent} 事件
  * 4. 在context关闭时的 {@link org.springframework.context.event.ContextClosedEvent} 事件
+ *
+ * 以上事件总是在发布线程上同步送达。启用{@link com.ifan112.demo.sc.event.AsyncApplicationEventMulticaster}时，
+ * 其它事件在后台线程上按发布顺序送达。
  */
 
 @Component
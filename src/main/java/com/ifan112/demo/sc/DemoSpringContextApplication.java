@@ -1,17 +1,30 @@
 package com.ifan112.demo.sc;
 
+import com.ifan112.demo.sc.aop.DirectDispatchAopProxy;
+import com.ifan112.demo.sc.aot.AotBootstrap;
+import com.ifan112.demo.sc.beans.DemoListableBeanFactory;
 import com.ifan112.demo.sc.entity.User;
+import com.ifan112.demo.sc.latency.LatencyRecorder;
 import com.ifan112.demo.sc.service.ApplicationContextAwareService;
 import com.ifan112.demo.sc.service.MessageService;
 import com.ifan112.demo.sc.service.OrderService;
 import com.ifan112.demo.sc.service.UserService;
 import com.ifan112.demo.sc.service.impl.OrderServiceFactoryBean;
 import com.ifan112.demo.sc.service.impl.TestServiceImpl;
+import com.ifan112.demo.sc.startup.StartupRecorder;
+import com.ifan112.demo.sc.swap.SwappableContextHolder;
+import com.ifan112.demo.sc.warmup.WarmUpCoordinator;
+import com.ifan112.demo.sc.xml.PrecompiledXmlApplicationContext;
 import org.junit.Assert;
+import org.springframework.aop.framework.Advised;
 import org.springframework.context.annotation.*;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 
 public class DemoSpringContextApplication {
@@ -21,10 +34,12 @@ public class DemoSpringContextApplication {
         // 1. ClassPathXmlApplication 或 FileSystemXmlApplicationContext 通过读取并解析xml文件来初始化spring容器
         // 与AnnotationConfigApplicationContext相比，它们不必解析注解的配置类或者扫描包，所有关于bean的配置都在xml中声明
         // ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("classpath:application-context.xml");
+        // 使用aot profile构建时会生成application-context.xml.bin，PrecompiledXmlApplicationContext直接读取它，XML被修改之后仍然解析XML
+        // ClassPathXmlApplicationContext context = new PrecompiledXmlApplicationContext("classpath:application-context.xml");
 
         // 2. 构造AnnotationConfigApplicationContext时传入注解的配置类或者扫描包参数，直接初始化spring容器
         // 2.1
-        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(DemoSpringContextConfiguration.class);
+        // AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(DemoSpringContextConfiguration.class);
         // 2.2
         // AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext("com.king.onlyone");
 
@@ -38,9 +53,25 @@ public class DemoSpringContextApplication {
         // 3.2 context.scan("com.king.onlyone");
         // context.refresh();
 
+        // 3.3 参考createContext()
+        AnnotationConfigApplicationContext context = createContext();
+
 
         System.out.println("\n// ---------------------------------------- spring context ------------------------------------------ //\n");
 
+        // 生成的初始化器直接注册bean定义，不会注册ConfigurationClassPostProcessor
+        boolean aot = !context.containsBeanDefinition(AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME);
+        System.out.println("bean定义由" + (aot ? "构建时生成的初始化器" : "ConfigurationClassPostProcessor") + "注册。");
+
+
+        // context刷新之后，WarmUpCoordinator在后台线程上提前获取FactoryBean的产品和懒加载的单例，完成后发布ContextWarmedEvent
+        // 设置系统属性demo.sc.warmup.enabled=false时不启用
+        WarmUpCoordinator warmUpCoordinator = context.getBeanProvider(WarmUpCoordinator.class).getIfAvailable();
+        if (warmUpCoordinator != null) {
+            Assert.assertTrue(awaitWarm(warmUpCoordinator));
+            Assert.assertTrue(warmUpCoordinator.getLastEvent().getWarmedBeans().contains("orderService"));
+        }
+
 
         MessageService messageService = context.getBean(MessageService.class);
         // 对于非FactoryBean的bean，在context初始化时就会初始化
@@ -48,13 +79,33 @@ public class DemoSpringContextApplication {
         boolean result = messageService.send("Hello World!");
         Assert.assertTrue(result);
 
-        // FactoryBean即使是单例模式，也只有在获取的时候才会初始化
+        // 一次发送一批消息，结果与消息一一对应
+        List<Boolean> batchResults = messageService.sendBatch(Arrays.asList("第一条消息", "第二条消息"));
+        Assert.assertEquals(Arrays.asList(true, true), batchResults);
+
+        // 在后台executor上发送，调用线程不被阻塞
+        Assert.assertTrue(messageService.sendAsync("异步发送的消息").join());
+
+        // FactoryBean即使是单例模式，也只有在获取的时候才会初始化。这里的OrderService已经由预热线程获取过了
         OrderService orderService = context.getBean(OrderService.class);
         OrderService orderService2 = (OrderService) context.getBean("orderService");
         orderService.newOrder("用户名", 12345);
+        // 订单由订单引擎异步处理，稍等片刻后可以查询到
+        for (int i = 0; i < 100 && orderService.getOrderCount("用户名") == 0; i++) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        Assert.assertEquals(1, orderService.getGoodOrderCount(12345));
+        Assert.assertEquals(1, orderService.getOrderSnapshot().getTotalOrders());
+
+        // 带有客户端令牌的请求，设置系统属性demo.sc.order.idempotency.capacity后，重复的请求会被拒绝
+        Assert.assertTrue(orderService.newOrder("用户名", 12345, "token-1"));
+        boolean retried = orderService.newOrder("用户名", 12345, "token-1");
+        Assert.assertEquals(Integer.getInteger("demo.sc.order.idempotency.capacity", 0) == 0, retried);
 
         // 断言使用FactoryBean方式获取到的OrderService对象是同一个，即单例
         Assert.assertEquals(orderService.hashCode(), orderService2.hashCode());
+        // 再次按类型获取，开启类型缓存时命中缓存，结果仍然是同一个对象
+        Assert.assertSame(orderService, context.getBean(OrderService.class));
 
 
         // 可以通过名称&orderService和OrderServiceFactoryBean类型，从context中获取到OrderServiceFactoryBean对象
@@ -78,7 +129,16 @@ public class DemoSpringContextApplication {
         // 它代理了UserServiceImpl，并且按照配置会对UserServiceImpl的方法进行拦截操作
         UserService userService = context.getBean(UserService.class);
 
-        Assert.assertTrue("userService并不是Jdk生成的动态代理类", Proxy.isProxyClass(userService.getClass()));
+        // 设置系统属性demo.sc.aop.frozen=true时，所有代理都是冻结的CGLIB代理，参考FrozenProxyConfigurer
+        if (Boolean.getBoolean("demo.sc.aop.frozen")) {
+            Assert.assertTrue("userService并不是CGLIB生成的代理类", userService.getClass().getName().contains("CGLIB"));
+            Assert.assertTrue(((Advised) userService).isFrozen());
+        } else {
+            Assert.assertTrue("userService并不是Jdk生成的动态代理类", Proxy.isProxyClass(userService.getClass()));
+            // 设置系统属性demo.sc.aop.direct-dispatch=true时，每个方法的分派方式和advice链在第一次调用时确定，参考DirectDispatchConfigurer
+            Assert.assertEquals(Boolean.getBoolean("demo.sc.aop.direct-dispatch"),
+                    Proxy.getInvocationHandler(userService) instanceof DirectDispatchAopProxy);
+        }
 
         userService.createUser("一凡", "无", 22);
 
@@ -97,12 +157,24 @@ public class DemoSpringContextApplication {
 
 
 
+        System.out.println("\n// ---------------------------------------- 方法耗时统计 ---------------------------------------- //\n");
+
+        // 切面把每次调用的耗时写入调用线程的直方图，LatencyRecorder每隔demo.sc.latency.interval-millis毫秒合并一次，
+        // 并以com.ifan112.demo.sc:type=MethodLatency注册MBean，可以用jconsole查看。这里手动结束当前区间后直接读取
+        LatencyRecorder latencyRecorder = context.getBean(LatencyRecorder.class);
+        latencyRecorder.rollover();
+        latencyRecorder.getMethodLatencies().forEach(latency -> System.out.println(latency.getMethod() + "：总计" + latency.getTotalCount()
+                + "次，p50=" + latency.getP50Nanos() + "ns，p99=" + latency.getP99Nanos() + "ns，max=" + latency.getMaxNanos() + "ns"));
+
+
+
 
 
         System.out.println("\n// ---------------------------------------- context生命周期方法 ---------------------------------------- //\n");
 
         // 停止context
         // 之后，可以通过即调用context.start()再次启动context
+        // InFlightTracker最先停止：等待进行中的服务调用结束，之后的调用被拒绝（设置demo.sc.inflight.policy=QUEUE时等待context重新启动）
         context.stop();
 
         // 再次启动之前已经关闭的context
@@ -115,6 +187,8 @@ public class DemoSpringContextApplication {
         // 可以正常调用服务
         boolean secondResult = secondMessageService.send("context在关闭之后又重新启动了");
         Assert.assertTrue(secondResult);
+        // context.stop()关闭了异步发送的executor，context.start()重新创建
+        Assert.assertTrue(secondMessageService.sendAsync("context重新启动之后的异步消息").join());
 
 
         // 关闭context
@@ -134,5 +208,91 @@ public class DemoSpringContextApplication {
         // context.start()并不会刷新context内部的bean，start前后context中的bean是相同的
         // context.refresh()会刷新context内部的bean，重新解析bean定义，重新构造bean。刷新前后context中的bean是不同的
 
+
+
+
+
+        System.out.println("\n// ---------------------------------------- xml配置的context ---------------------------------------- //\n");
+
+        // 使用aot profile构建时，application-context.xml已经被编译为application-context.xml.bin，PrecompiledXmlApplicationContext直接读取它；
+        // 否则与ClassPathXmlApplicationContext相同，解析XML
+        PrecompiledXmlApplicationContext xmlContext = new PrecompiledXmlApplicationContext("classpath:application-context.xml");
+        System.out.println("application-context.xml" + (xmlContext.getPrecompiledLocationCount() == 1 ? "从预编译的文件中读取。" : "被解析。"));
+        // 同一次aot构建生成的初始化器没有过期时，预编译的文件也是最新的
+        if (aot) {
+            Assert.assertEquals(1, xmlContext.getPrecompiledLocationCount());
+        }
+
+        // 切面的依赖由<context:annotation-config/>注入，被代理的服务可以正常调用
+        UserService xmlUserService = xmlContext.getBean(UserService.class);
+        Assert.assertTrue(Proxy.isProxyClass(xmlUserService.getClass()));
+        xmlUserService.createUser("一凡", "无", 22);
+        Assert.assertEquals(22, xmlUserService.getUser().getAge());
+        Assert.assertTrue(xmlContext.getBean(MessageService.class).send("xml配置的context中的消息"));
+        xmlContext.close();
+
+
+
+
+
+        System.out.println("\n// ---------------------------------------- context热切换 ---------------------------------------- //\n");
+
+        // 切换期间新旧context同时存在，不能打开同一个消息日志目录，参考MappedJournal
+        if (!System.getProperty("demo.sc.journal.dir", "").isEmpty()) {
+            System.out.println("设置了demo.sc.journal.dir，跳过。");
+            return;
+        }
+
+        // 要使用新的配置而又不中断服务，可以由SwappableContextHolder在后台创建并预热新的context，
+        // 把服务代理切换到新context中的bean，等待旧context上进行中的调用结束之后再关闭它
+        SwappableContextHolder contextHolder = new SwappableContextHolder(DemoSpringContextApplication::createContext);
+        contextHolder.start();
+        MessageService swappableMessageService = contextHolder.getProxy(MessageService.class);
+        UserService swappableUserService = contextHolder.getProxy(UserService.class);
+        OrderService swappableOrderService = contextHolder.getProxy(OrderService.class);
+        Assert.assertTrue(swappableMessageService.send("切换之前的消息"));
+        swappableOrderService.newOrder("用户名", 12345);
+        for (int i = 0; i < 100 && swappableOrderService.getOrderCount("用户名") == 0; i++) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        Assert.assertEquals(1, swappableOrderService.getOrderSnapshot().getTotalOrders());
+
+        // 旧的context已经关闭，代理不变，调用落在新context中的bean上
+        contextHolder.swap().join();
+        Assert.assertTrue(swappableMessageService.send("切换之后的消息"));
+        swappableUserService.createUser("一凡", "无", 22);
+        Assert.assertEquals(22, swappableUserService.getUser().getAge());
+        // 新context中的订单引擎是新建的，之前的订单不在其中
+        Assert.assertEquals(0, swappableOrderService.getOrderSnapshot().getTotalOrders());
+
+        contextHolder.close();
+    }
+
+    /**
+     * 创建并刷新DemoSpringContextConfiguration的context
+     */
+    private static AnnotationConfigApplicationContext createContext() {
+        // 在refresh之前注册StartupRecorder，记录刷新过程中各阶段以及每个bean的创建耗时
+        // 使用自定义的beanFactory，设置系统属性demo.sc.bootstrap.parallelism大于1时，并行创建互不依赖的单例bean
+        // 设置系统属性demo.sc.beans.type-cache=true时，缓存getBean(Class)按类型查找到的单例
+        DemoListableBeanFactory beanFactory = new DemoListableBeanFactory();
+        beanFactory.setPreInstantiationParallelism(Integer.getInteger("demo.sc.bootstrap.parallelism", 1));
+        beanFactory.setResolvedTypeCacheEnabled(Boolean.getBoolean("demo.sc.beans.type-cache"));
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        // 使用aot profile构建时，由生成的DemoSpringContextConfigurationAotInitializer直接注册bean定义，不再扫描包和解析配置类
+        // 没有生成或者已经过期时，与context.register(DemoSpringContextConfiguration.class)相同
+        AotBootstrap.register(context, DemoSpringContextConfiguration.class);
+        StartupRecorder.attach(context);
+        context.refresh();
+        return context;
+    }
+
+    private static boolean awaitWarm(WarmUpCoordinator warmUpCoordinator) {
+        try {
+            return warmUpCoordinator.awaitWarm(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 }
@@ -1,10 +1,15 @@
 package com.ifan112.demo.sc;
 
+import com.ifan112.demo.sc.condition.ConditionalOnProperty;
+import com.ifan112.demo.sc.event.AsyncApplicationEventMulticaster;
+import com.ifan112.demo.sc.event.TypeIndexedApplicationEventMulticaster;
 import com.ifan112.demo.sc.service.impl.OrderServiceFactoryBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.core.env.Environment;
 
 /**
  * 应用配置类
@@ -23,6 +28,9 @@ import org.springframework.context.annotation.EnableAspectJAutoProxy;
  * @ComponentScan 设置context需要扫描的bean路径。context会调用ClassPathBeanDefinitionScanner对指定包下的class文件进行
  *               扫描，以字节流的方式，依照class文件规范读取文件内容。获取类名、父类、实现接口、注解、方法等等信息。如果该class
  *               代表的是组件，则将该bean注入到context中。此后，context将会初始化这些bean，并注入相关依赖。
+ *                         编译时spring-context-indexer会生成组件索引META-INF/spring.components（参考pom.xml）。
+ *               存在该索引时，ClassPathBeanDefinitionScanner直接从索引中读取该包下的候选组件，不再遍历和解析class文件；
+ *               索引不存在时，回退到扫描classpath。
  */
 
 @Configuration
@@ -43,4 +51,30 @@ public class DemoSpringContextConfiguration {
         return new OrderServiceFactoryBean();
     }
 
+    /**
+     * 声明异步投递事件的multicaster，设置系统属性 demo.sc.event.async=true 时启用
+     *
+     * bean的名称必须是applicationEventMulticaster，context才会用它替换默认的SimpleApplicationEventMulticaster。
+     * 它在其它单例bean之前被创建，此时@Value中的占位符还不能被解析，因此直接从Environment中读取属性。
+     * demo.sc.event.queue-capacity 每个监听器队列的容量，默认1024；
+     * demo.sc.event.threads 不支持虚拟线程时投递线程池的大小，默认为cpu个数。
+     */
+    @Bean(name = AbstractApplicationContext.APPLICATION_EVENT_MULTICASTER_BEAN_NAME)
+    @ConditionalOnProperty(name = "demo.sc.event.async")
+    public AsyncApplicationEventMulticaster applicationEventMulticaster(Environment environment) {
+        int queueCapacity = environment.getProperty("demo.sc.event.queue-capacity", Integer.class, 1024);
+        int threads = environment.getProperty("demo.sc.event.threads", Integer.class,
+                Runtime.getRuntime().availableProcessors());
+        return new AsyncApplicationEventMulticaster(queueCapacity, threads);
+    }
+
+    /**
+     * 未启用异步投递时，使用按事件类型索引监听器的multicaster替换默认的SimpleApplicationEventMulticaster
+     */
+    @Bean(name = AbstractApplicationContext.APPLICATION_EVENT_MULTICASTER_BEAN_NAME)
+    @ConditionalOnProperty(name = "demo.sc.event.async", havingValue = "false", matchIfMissing = true)
+    public TypeIndexedApplicationEventMulticaster typeIndexedApplicationEventMulticaster() {
+        return new TypeIndexedApplicationEventMulticaster();
+    }
+
 }
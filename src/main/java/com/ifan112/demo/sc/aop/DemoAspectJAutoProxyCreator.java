@@ -0,0 +1,174 @@
+package com.ifan112.demo.sc.aop;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.IntroductionAdvisor;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.PointcutAdvisor;
+import org.springframework.aop.aspectj.AbstractAspectJAdvice;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.aspectj.annotation.AnnotationAwareAspectJAutoProxyCreator;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 使用{@link ShadowMatchCache}缓存切点匹配结果的AnnotationAwareAspectJAutoProxyCreator
+ *
+ * 每个bean创建之后，父类都要用AspectJ把每个advisor的切点与bean类的每个方法逐一匹配，以决定是否需要创建代理。
+ * bean很多时，这部分占了context刷新的大部分时间。
+ *
+ * 这里对AspectJ表达式切点的匹配结果按 (bean类, 切点) 缓存，并在单例都创建完成后以及context关闭时写入文件。
+ * 下次启动时，class文件没有变化的类直接使用文件中的结果。
+ * 存在IntroductionAdvisor，或者切点依赖bean名称（bean()）、引用了其它类中的具名切点时，仍然交给父类处理。
+ *
+ * 由{@link ShadowMatchCacheConfigurer}替换@EnableAspectJAutoProxy注册的代理创建器。
+ *
+ * directDispatch为true时，基于接口的代理由{@link DirectDispatchAopProxy}实现，参考{@link DirectDispatchConfigurer}。
+ */
+@SuppressWarnings("serial")
+public class DemoAspectJAutoProxyCreator extends AnnotationAwareAspectJAutoProxyCreator
+        implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger LOGGER = LogManager.getLogger("aop");
+
+    private ShadowMatchCache shadowMatchCache;
+
+    private boolean directDispatch;
+
+    /**
+     * 缓存文件的路径，为空时不使用缓存
+     */
+    public void setShadowMatchCacheFile(String shadowMatchCacheFile) {
+        if (shadowMatchCacheFile == null || shadowMatchCacheFile.trim().isEmpty()) {
+            this.shadowMatchCache = null;
+            return;
+        }
+        Path file = Paths.get(shadowMatchCacheFile.trim());
+        ShadowMatchCache cache = new ShadowMatchCache(file);
+        try {
+            cache.load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取切点匹配缓存失败：" + file, e);
+        }
+        this.shadowMatchCache = cache;
+    }
+
+    public ShadowMatchCache getShadowMatchCache() {
+        return this.shadowMatchCache;
+    }
+
+    public void setDirectDispatch(boolean directDispatch) {
+        this.directDispatch = directDispatch;
+    }
+
+    @Override
+    protected void customizeProxyFactory(ProxyFactory proxyFactory) {
+        if (this.directDispatch) {
+            proxyFactory.setAopProxyFactory(new DirectDispatchAopProxyFactory());
+        }
+    }
+
+    @Override
+    protected List<Advisor> findAdvisorsThatCanApply(List<Advisor> candidateAdvisors, Class<?> beanClass,
+                                                     String beanName) {
+        if (this.shadowMatchCache == null || candidateAdvisors.isEmpty()) {
+            return super.findAdvisorsThatCanApply(candidateAdvisors, beanClass, beanName);
+        }
+        for (Advisor candidate : candidateAdvisors) {
+            if (candidate instanceof IntroductionAdvisor) {
+                return super.findAdvisorsThatCanApply(candidateAdvisors, beanClass, beanName);
+            }
+        }
+
+        // 不能缓存的advisor交给父类，由父类设置ProxyCreationContext中当前的bean名称
+        List<Advisor> uncached = new ArrayList<>();
+        Map<Advisor, Boolean> decided = new IdentityHashMap<>();
+        for (Advisor candidate : candidateAdvisors) {
+            Boolean matches = canApply(candidate, beanClass);
+            if (matches == null) {
+                uncached.add(candidate);
+            } else {
+                decided.put(candidate, matches);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            for (Advisor advisor : super.findAdvisorsThatCanApply(uncached, beanClass, beanName)) {
+                decided.put(advisor, Boolean.TRUE);
+            }
+        }
+
+        List<Advisor> eligibleAdvisors = new ArrayList<>();
+        for (Advisor candidate : candidateAdvisors) {
+            if (Boolean.TRUE.equals(decided.get(candidate))) {
+                eligibleAdvisors.add(candidate);
+            }
+        }
+        return eligibleAdvisors;
+    }
+
+    /**
+     * @return 是否匹配，不能缓存时返回null
+     */
+    private Boolean canApply(Advisor advisor, Class<?> beanClass) {
+        if (!(advisor instanceof PointcutAdvisor) || !(advisor.getAdvice() instanceof AbstractAspectJAdvice)) {
+            return null;
+        }
+        Pointcut pointcut = ((PointcutAdvisor) advisor).getPointcut();
+        String expression = pointcut instanceof AspectJExpressionPointcut
+                ? ((AspectJExpressionPointcut) pointcut).getExpression() : null;
+        Class<?> aspectClass = ((AbstractAspectJAdvice) advisor.getAdvice()).getAspectJAdviceMethod().getDeclaringClass();
+        if (expression == null || expression.contains("bean(") || !this.shadowMatchCache.isCacheable(aspectClass, expression)) {
+            return null;
+        }
+
+        Boolean cached = this.shadowMatchCache.get(beanClass, aspectClass, expression);
+        if (cached != null) {
+            return cached;
+        }
+        boolean matches = AopUtils.canApply(advisor, beanClass);
+        this.shadowMatchCache.put(beanClass, aspectClass, expression, matches);
+        return matches;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        save();
+    }
+
+    /**
+     * 保存此后创建的prototype和懒加载的bean的匹配结果
+     */
+    @Override
+    public void destroy() {
+        save();
+        if (this.shadowMatchCache != null) {
+            this.shadowMatchCache.clearClassHashes();
+        }
+    }
+
+    private void save() {
+        if (this.shadowMatchCache == null) {
+            return;
+        }
+        try {
+            this.shadowMatchCache.save();
+            LOGGER.debug("切点匹配缓存：命中{}，未命中{}，共{}个条目", this.shadowMatchCache.getHits(),
+                    this.shadowMatchCache.getMisses(), this.shadowMatchCache.size());
+        } catch (IOException e) {
+            // 缓存只影响启动速度，写入失败不影响context
+            LOGGER.warn("写入切点匹配缓存失败", e);
+        }
+    }
+}
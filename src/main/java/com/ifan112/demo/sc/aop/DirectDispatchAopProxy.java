@@ -0,0 +1,305 @@
+package com.ifan112.demo.sc.aop;
+
+import org.springframework.aop.AopInvocationException;
+import org.springframework.aop.RawTargetAccess;
+import org.springframework.aop.TargetSource;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.AdvisedSupport;
+import org.springframework.aop.framework.AdvisedSupportListener;
+import org.springframework.aop.framework.AopConfigException;
+import org.springframework.aop.framework.AopProxy;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.aop.framework.ProxyCreatorSupport;
+import org.springframework.aop.framework.ReflectiveMethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.DecoratingProxy;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按方法预先确定分派方式的Jdk动态代理
+ *
+ * spring的JdkDynamicAopProxy在每次调用时，都要依次判断方法是不是equals、hashCode、DecoratingProxy和Advised中的方法，
+ * 再以方法为键在AdvisedSupport的缓存中查找advice链，即使这个方法没有任何advice。
+ *
+ * 这里在每个方法第一次被调用时就确定它的分派方式，以及以目标类计算出的advice链，之后按方法对象直接取出：
+ * 没有advice的方法直接反射调用目标对象，不查找advice链，也不创建MethodInvocation；
+ * 有advice的方法直接使用缓存的advice链创建MethodInvocation。
+ *
+ * 代理的Method对象由Proxy生成的类持有，每个方法始终是同一个对象，因此按对象本身（IdentityHashMap）查找。
+ * 添加或移除advisor时（AdvisedSupportListener.adviceChanged）清空缓存；
+ * TargetSource返回的目标对象的类与计算advice链时不同时，仍然向AdvisedSupport查找advice链。
+ * TargetSource的获取与释放、返回值的处理都与JdkDynamicAopProxy相同。
+ * AopContext.setCurrentProxy不是public的，exposeProxy=true的代理仍然由JdkDynamicAopProxy实现，参考{@link DirectDispatchAopProxyFactory}。
+ */
+public class DirectDispatchAopProxy implements AopProxy, InvocationHandler {
+
+    private final AdvisedSupport advised;
+
+    private boolean equalsDefined;
+
+    private boolean hashCodeDefined;
+
+    /**
+     * 方法 -> 分派方式，写时复制
+     */
+    private volatile Map<Method, MethodDispatch> dispatches = Collections.emptyMap();
+
+    public DirectDispatchAopProxy(AdvisedSupport config) {
+        if (config.getAdvisors().length == 0 && config.getTargetSource() == AdvisedSupport.EMPTY_TARGET_SOURCE) {
+            throw new AopConfigException("No advisors and no TargetSource specified");
+        }
+        this.advised = config;
+        if (config instanceof ProxyCreatorSupport) {
+            ((ProxyCreatorSupport) config).addListener(new AdvisedSupportListener() {
+                @Override
+                public void activated(AdvisedSupport advised) {
+                }
+
+                @Override
+                public void adviceChanged(AdvisedSupport advised) {
+                    clearDispatches();
+                }
+            });
+        }
+    }
+
+    @Override
+    public Object getProxy() {
+        return getProxy(ClassUtils.getDefaultClassLoader());
+    }
+
+    @Override
+    public Object getProxy(ClassLoader classLoader) {
+        Class<?>[] proxiedInterfaces = AopProxyUtils.completeProxiedInterfaces(this.advised);
+        if (!this.advised.isInterfaceProxied(DecoratingProxy.class)) {
+            proxiedInterfaces = Arrays.copyOf(proxiedInterfaces, proxiedInterfaces.length + 1);
+            proxiedInterfaces[proxiedInterfaces.length - 1] = DecoratingProxy.class;
+        }
+        for (Class<?> proxiedInterface : proxiedInterfaces) {
+            for (Method method : proxiedInterface.getDeclaredMethods()) {
+                this.equalsDefined |= AopUtils.isEqualsMethod(method);
+                this.hashCodeDefined |= AopUtils.isHashCodeMethod(method);
+            }
+        }
+        return Proxy.newProxyInstance(classLoader, proxiedInterfaces, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        MethodDispatch dispatch = this.dispatches.get(method);
+        if (dispatch == null) {
+            dispatch = resolve(proxy, method);
+        }
+
+        switch (dispatch.kind) {
+            case EQUALS:
+                return equals(args[0]);
+            case HASH_CODE:
+                return hashCode();
+            case DECORATED_CLASS:
+                return AopProxyUtils.ultimateTargetClass(this.advised);
+            case ADVISED:
+                if (!this.advised.isOpaque()) {
+                    return AopUtils.invokeJoinpointUsingReflection(this.advised, method, args);
+                }
+                break;
+            default:
+        }
+
+        TargetSource targetSource = this.advised.getTargetSource();
+        Object target = null;
+        try {
+            target = targetSource.getTarget();
+            Class<?> targetClass = (target != null ? target.getClass() : null);
+            List<Object> chain = targetClass == dispatch.targetClass ? dispatch.chain
+                    : this.advised.getInterceptorsAndDynamicInterceptionAdvice(method, targetClass);
+
+            Object retVal;
+            if (chain.isEmpty()) {
+                Object[] argsToUse = dispatch.varArgs ? adaptVarArgs(method, args) : args;
+                retVal = AopUtils.invokeJoinpointUsingReflection(target, method, argsToUse);
+            } else {
+                retVal = new DispatchMethodInvocation(proxy, target, method, args, targetClass, chain).proceed();
+            }
+
+            if (retVal != null && retVal == target && dispatch.mayReturnProxy) {
+                retVal = proxy;
+            } else if (retVal == null && dispatch.primitiveReturn) {
+                throw new AopInvocationException(
+                        "Null return value from advice does not match primitive return type for: " + method);
+            }
+            return retVal;
+        } finally {
+            if (target != null && !targetSource.isStatic()) {
+                targetSource.releaseTarget(target);
+            }
+        }
+    }
+
+    /**
+     * 与AopProxyUtils.adaptArgumentsIfNecessary相同：可变参数传入的数组类型与方法声明的不同时，复制为声明的类型
+     */
+    private static Object[] adaptVarArgs(Method method, Object[] args) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (args == null || parameterTypes.length != args.length) {
+            return args;
+        }
+        int varArgIndex = parameterTypes.length - 1;
+        Class<?> varArgType = parameterTypes[varArgIndex];
+        Object varArgs = args[varArgIndex];
+        if (!varArgType.isArray() || !(varArgs instanceof Object[]) || varArgType.isInstance(varArgs)) {
+            return args;
+        }
+        Object[] adapted = args.clone();
+        int length = Array.getLength(varArgs);
+        Object array = Array.newInstance(varArgType.getComponentType(), length);
+        System.arraycopy(varArgs, 0, array, 0, length);
+        adapted[varArgIndex] = array;
+        return adapted;
+    }
+
+    /**
+     * 确定方法的分派方式并加入缓存
+     */
+    private synchronized MethodDispatch resolve(Object proxy, Method method) {
+        MethodDispatch dispatch = this.dispatches.get(method);
+        if (dispatch != null) {
+            return dispatch;
+        }
+
+        Class<?> declaringClass = method.getDeclaringClass();
+        DispatchKind kind;
+        if (!this.equalsDefined && AopUtils.isEqualsMethod(method)) {
+            kind = DispatchKind.EQUALS;
+        } else if (!this.hashCodeDefined && AopUtils.isHashCodeMethod(method)) {
+            kind = DispatchKind.HASH_CODE;
+        } else if (declaringClass == DecoratingProxy.class) {
+            kind = DispatchKind.DECORATED_CLASS;
+        } else if (declaringClass.isInterface() && declaringClass.isAssignableFrom(Advised.class)) {
+            kind = DispatchKind.ADVISED;
+        } else {
+            kind = DispatchKind.TARGET;
+        }
+
+        Class<?> targetClass = this.advised.getTargetSource().getTargetClass();
+        List<Object> chain = this.advised.getInterceptorsAndDynamicInterceptionAdvice(method, targetClass);
+        Class<?> returnType = method.getReturnType();
+        dispatch = new MethodDispatch(kind, targetClass, chain,
+                returnType != Object.class && returnType.isInstance(proxy)
+                        && !RawTargetAccess.class.isAssignableFrom(declaringClass),
+                returnType != void.class && returnType.isPrimitive(), method.isVarArgs());
+
+        Map<Method, MethodDispatch> copy = new IdentityHashMap<>(this.dispatches);
+        copy.put(method, dispatch);
+        this.dispatches = copy;
+        return dispatch;
+    }
+
+    private synchronized void clearDispatches() {
+        this.dispatches = Collections.emptyMap();
+    }
+
+    /**
+     * 已经确定分派方式的方法个数
+     */
+    public int getDispatchCount() {
+        return this.dispatches.size();
+    }
+
+    /**
+     * 与JdkDynamicAopProxy相同：接口、advisor和TargetSource都相同的代理相等
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (other == null) {
+            return false;
+        }
+        DirectDispatchAopProxy otherProxy;
+        if (other instanceof DirectDispatchAopProxy) {
+            otherProxy = (DirectDispatchAopProxy) other;
+        } else if (Proxy.isProxyClass(other.getClass())
+                && Proxy.getInvocationHandler(other) instanceof DirectDispatchAopProxy) {
+            otherProxy = (DirectDispatchAopProxy) Proxy.getInvocationHandler(other);
+        } else {
+            return false;
+        }
+        return AopProxyUtils.equalsInProxy(this.advised, otherProxy.advised);
+    }
+
+    @Override
+    public int hashCode() {
+        return DirectDispatchAopProxy.class.hashCode() * 13 + this.advised.getTargetSource().hashCode();
+    }
+
+
+    private enum DispatchKind {
+
+        EQUALS,
+
+        HASH_CODE,
+
+        DECORATED_CLASS,
+
+        /**
+         * Advised接口中的方法，代理不是opaque时由AdvisedSupport处理
+         */
+        ADVISED,
+
+        TARGET
+    }
+
+    private static final class MethodDispatch {
+
+        final DispatchKind kind;
+
+        /**
+         * 计算advice链时使用的目标类
+         */
+        final Class<?> targetClass;
+
+        final List<Object> chain;
+
+        /**
+         * 目标方法返回this时是否替换为代理
+         */
+        final boolean mayReturnProxy;
+
+        final boolean primitiveReturn;
+
+        final boolean varArgs;
+
+        MethodDispatch(DispatchKind kind, Class<?> targetClass, List<Object> chain,
+                       boolean mayReturnProxy, boolean primitiveReturn, boolean varArgs) {
+            this.kind = kind;
+            this.targetClass = targetClass;
+            this.chain = chain;
+            this.mayReturnProxy = mayReturnProxy;
+            this.primitiveReturn = primitiveReturn;
+            this.varArgs = varArgs;
+        }
+    }
+
+    /**
+     * ReflectiveMethodInvocation的构造方法不是public的
+     */
+    private static final class DispatchMethodInvocation extends ReflectiveMethodInvocation {
+
+        DispatchMethodInvocation(Object proxy, Object target, Method method, Object[] arguments,
+                                 Class<?> targetClass, List<Object> chain) {
+            super(proxy, target, method, arguments, targetClass, chain);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.ifan112.demo.sc.aop;
+
+import org.springframework.aop.SpringProxy;
+import org.springframework.aop.framework.AdvisedSupport;
+import org.springframework.aop.framework.AopProxy;
+import org.springframework.aop.framework.AopProxyFactory;
+import org.springframework.aop.framework.DefaultAopProxyFactory;
+
+/**
+ * 基于接口的代理使用{@link DirectDispatchAopProxy}，其它情况与DefaultAopProxyFactory相同
+ *
+ * exposeProxy=true时需要调用AopContext.setCurrentProxy，它只对spring自己的代理可见，这时也交给DefaultAopProxyFactory。
+ */
+public class DirectDispatchAopProxyFactory implements AopProxyFactory {
+
+    private final AopProxyFactory defaultFactory = new DefaultAopProxyFactory();
+
+    @Override
+    public AopProxy createAopProxy(AdvisedSupport config) {
+        if (config.isOptimize() || config.isProxyTargetClass() || config.isExposeProxy()
+                || hasNoUserSuppliedProxyInterfaces(config)) {
+            return this.defaultFactory.createAopProxy(config);
+        }
+        return new DirectDispatchAopProxy(config);
+    }
+
+    private static boolean hasNoUserSuppliedProxyInterfaces(AdvisedSupport config) {
+        Class<?>[] interfaces = config.getProxiedInterfaces();
+        return interfaces.length == 0 || (interfaces.length == 1 && SpringProxy.class.isAssignableFrom(interfaces[0]));
+    }
+}
@@ -0,0 +1,34 @@
+package com.ifan112.demo.sc.aop;
+
+import com.ifan112.demo.sc.condition.ConditionalOnProperty;
+import org.springframework.aop.config.AopConfigUtils;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * 设置系统属性 demo.sc.aop.direct-dispatch=true 时，用{@link DemoAspectJAutoProxyCreator}
+ * 替换@EnableAspectJAutoProxy注册的代理创建器，基于接口的代理改由{@link DirectDispatchAopProxy}实现
+ *
+ * UserServiceImpl等实现了接口的bean仍然是Jdk动态代理，没有advice的方法直接调用目标对象。
+ * 同时设置demo.sc.aop.frozen=true时所有代理都是CGLIB代理，这里的设置不再起作用。
+ */
+@Component
+@ConditionalOnProperty(name = "demo.sc.aop.direct-dispatch")
+public class DirectDispatchConfigurer implements BeanDefinitionRegistryPostProcessor {
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
+        if (registry.containsBeanDefinition(AopConfigUtils.AUTO_PROXY_CREATOR_BEAN_NAME)) {
+            BeanDefinition definition = registry.getBeanDefinition(AopConfigUtils.AUTO_PROXY_CREATOR_BEAN_NAME);
+            definition.setBeanClassName(DemoAspectJAutoProxyCreator.class.getName());
+            definition.getPropertyValues().add("directDispatch", Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+    }
+}
@@ -0,0 +1,52 @@
+package com.ifan112.demo.sc.aop;
+
+import com.ifan112.demo.sc.condition.ConditionalOnProperty;
+import org.springframework.aop.config.AopConfigUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * 冻结的CGLIB代理，设置系统属性 demo.sc.aop.frozen=true 时启用
+ *
+ * 默认配置下，UserServiceImpl等实现了接口的bean使用Jdk动态代理。每次调用都要在AdvisedSupport的缓存中
+ * 查找该方法的advice链，创建ReflectiveMethodInvocation，通过Method.invoke反射调用每个advice方法和目标方法。
+ *
+ * 这里修改@EnableAspectJAutoProxy注册的AnnotationAwareAspectJAutoProxyCreator的bean定义：
+ * 1. proxyTargetClass=true，所有代理都由CGLIB在创建代理时生成子类的字节码；
+ * 2. frozen=true，代理创建之后不能再添加或移除advisor；
+ * 3. aspectJAdvisorFactory，使用{@link LambdaAspectJAdvisorFactory}，通过LambdaMetafactory生成的类调用advice方法，不再反射调用。
+ *
+ * 代理被冻结并且目标是单例时，CglibAopProxy在生成子类时就为每个方法确定好回调：
+ * 被增强的方法各自绑定一个FixedChainStaticTargetInterceptor，持有预先计算好的advice链，不再按方法查找；
+ * 没有被增强的方法直接分派到目标对象上；目标方法通过CGLIB生成的FastClass调用，不再经过反射。
+ * 每个方法的调用点只会看到一种回调，便于JIT内联。
+ *
+ * advice仍然是同一组AspectJ拦截器，ProceedingJoinPoint、ExposeInvocationInterceptor等语义保持不变。
+ *
+ * 这并不是直接分派：被增强的方法每次调用仍然创建CglibMethodInvocation并沿advice链逐个调用拦截器，
+ * @Around advice每次还要创建MethodInvocationProceedingJoinPoint。省去的只是按方法查找advice链，
+ * 以及对advice方法和目标方法的反射调用。
+ */
+@Component
+@ConditionalOnProperty(name = "demo.sc.aop.frozen")
+public class FrozenProxyConfigurer implements BeanDefinitionRegistryPostProcessor {
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
+        if (registry.containsBeanDefinition(AopConfigUtils.AUTO_PROXY_CREATOR_BEAN_NAME)) {
+            BeanDefinition definition = registry.getBeanDefinition(AopConfigUtils.AUTO_PROXY_CREATOR_BEAN_NAME);
+            definition.getPropertyValues().add("proxyTargetClass", Boolean.TRUE);
+            definition.getPropertyValues().add("frozen", Boolean.TRUE);
+            definition.getPropertyValues().add("aspectJAdvisorFactory",
+                    new LambdaAspectJAdvisorFactory(registry instanceof BeanFactory ? (BeanFactory) registry : null));
+        }
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+    }
+}
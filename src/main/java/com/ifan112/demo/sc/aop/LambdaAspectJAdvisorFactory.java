@@ -0,0 +1,227 @@
+package com.ifan112.demo.sc.aop;
+
+import org.aopalliance.aop.Advice;
+import org.aopalliance.intercept.MethodInvocation;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.aspectj.AbstractAspectJAdvice;
+import org.springframework.aop.aspectj.AspectInstanceFactory;
+import org.springframework.aop.aspectj.AspectJAfterReturningAdvice;
+import org.springframework.aop.aspectj.AspectJAroundAdvice;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.aspectj.AspectJMethodBeforeAdvice;
+import org.springframework.aop.aspectj.MethodInvocationProceedingJoinPoint;
+import org.springframework.aop.aspectj.annotation.MetadataAwareAspectInstanceFactory;
+import org.springframework.aop.aspectj.annotation.ReflectiveAspectJAdvisorFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.util.StringUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * 通过LambdaMetafactory调用advice方法的AspectJAdvisorFactory
+ *
+ * 默认的ReflectiveAspectJAdvisorFactory创建的advice在每次调用时，都要查找JoinPointMatch、
+ * 按参数绑定创建参数数组，再通过Method.invoke反射调用advice方法。
+ *
+ * 这里在创建advisor时，通过LambdaMetafactory为advice方法生成一个实现了AdviceInvoker等接口的类，
+ * 调用它就是直接调用advice方法。每个advice对象持有自己的invoker，调用点是单态的，可以被JIT内联。
+ *
+ * 只处理参数简单、不需要绑定的advice：
+ * 1. @Around，唯一的参数是ProceedingJoinPoint，并且有返回值；
+ * 2. @AfterReturning，没有参数，或者唯一的参数是Object类型的returning；
+ * 3. @Before，没有参数。
+ * 其它advice、以及advice方法不可访问时，仍然使用父类创建的反射调用的advice。
+ *
+ * 生成的advice是spring对应advice类的子类，仍然使用MethodInvocationProceedingJoinPoint，
+ * advice的排序、ExposeInvocationInterceptor以及ProceedingJoinPoint的语义都与原来相同。
+ *
+ * 替换的只是advice方法的反射调用，并不会为代理生成直接分派的代码：每次调用仍然沿拦截器链逐个调用advice，
+ * 代理仍然为每次调用创建MethodInvocation，@Around advice仍然为每次调用创建MethodInvocationProceedingJoinPoint。
+ */
+@SuppressWarnings("serial")
+public class LambdaAspectJAdvisorFactory extends ReflectiveAspectJAdvisorFactory {
+
+    public LambdaAspectJAdvisorFactory(BeanFactory beanFactory) {
+        super(beanFactory);
+    }
+
+    @Override
+    public Advice getAdvice(Method candidateAdviceMethod, AspectJExpressionPointcut expressionPointcut,
+                            MetadataAwareAspectInstanceFactory aspectInstanceFactory, int declarationOrder,
+                            String aspectName) {
+
+        // 由父类完成校验，无法生成时直接使用父类创建的advice
+        Advice advice = super.getAdvice(candidateAdviceMethod, expressionPointcut, aspectInstanceFactory,
+                declarationOrder, aspectName);
+        if (advice == null || Modifier.isStatic(candidateAdviceMethod.getModifiers())) {
+            return advice;
+        }
+
+        AbstractAspectJAdvice generated;
+        try {
+            generated = createLambdaAdvice(advice, candidateAdviceMethod, expressionPointcut, aspectInstanceFactory);
+        } catch (Throwable e) {
+            // advice方法对当前类不可访问，或者不在同一个类加载器中
+            return advice;
+        }
+        if (generated == null) {
+            return advice;
+        }
+
+        generated.setAspectName(aspectName);
+        generated.setDeclarationOrder(declarationOrder);
+        String[] argNames = this.parameterNameDiscoverer.getParameterNames(candidateAdviceMethod);
+        if (argNames != null) {
+            generated.setArgumentNamesFromStringArray(argNames);
+        }
+        AfterReturning afterReturning = candidateAdviceMethod.getAnnotation(AfterReturning.class);
+        if (afterReturning != null && StringUtils.hasText(afterReturning.returning())) {
+            generated.setReturningName(afterReturning.returning());
+        }
+        generated.calculateArgumentBindings();
+        return generated;
+    }
+
+    private static AbstractAspectJAdvice createLambdaAdvice(Advice advice, Method method, AspectJExpressionPointcut pointcut,
+                                                 AspectInstanceFactory aspectInstanceFactory) throws Throwable {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+
+        if (advice instanceof AspectJAroundAdvice) {
+            if (parameterTypes.length == 1 && parameterTypes[0] == ProceedingJoinPoint.class
+                    && method.getReturnType() != void.class) {
+                AroundInvoker invoker = generate(AroundInvoker.class, method,
+                        MethodType.methodType(Object.class, Object.class, ProceedingJoinPoint.class));
+                return new LambdaAroundAdvice(method, pointcut, aspectInstanceFactory, invoker);
+            }
+        } else if (advice instanceof AspectJAfterReturningAdvice) {
+            AfterReturning annotation = method.getAnnotation(AfterReturning.class);
+            boolean returning = annotation != null && StringUtils.hasText(annotation.returning());
+            if (parameterTypes.length == 0 && !returning) {
+                NoArgInvoker invoker = generate(NoArgInvoker.class, method,
+                        MethodType.methodType(void.class, Object.class));
+                return new LambdaAfterReturningAdvice(method, pointcut, aspectInstanceFactory, null, invoker);
+            }
+            if (parameterTypes.length == 1 && parameterTypes[0] == Object.class && returning) {
+                ReturningInvoker invoker = generate(ReturningInvoker.class, method,
+                        MethodType.methodType(void.class, Object.class, Object.class));
+                return new LambdaAfterReturningAdvice(method, pointcut, aspectInstanceFactory, invoker, null);
+            }
+        } else if (advice instanceof AspectJMethodBeforeAdvice) {
+            if (parameterTypes.length == 0) {
+                NoArgInvoker invoker = generate(NoArgInvoker.class, method,
+                        MethodType.methodType(void.class, Object.class));
+                return new LambdaBeforeAdvice(method, pointcut, aspectInstanceFactory, invoker);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 生成调用method的invokerType实例
+     *
+     * @param samType invokerType中唯一的抽象方法的类型，第一个参数是切面对象
+     */
+    private static <T> T generate(Class<T> invokerType, Method method, MethodType samType) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle target = lookup.unreflect(method);
+        MethodType instantiatedType = target.type().wrap();
+        if (samType.returnType() == void.class) {
+            instantiatedType = instantiatedType.changeReturnType(void.class);
+        }
+        CallSite callSite = LambdaMetafactory.metafactory(lookup, "invoke", MethodType.methodType(invokerType),
+                samType, target, instantiatedType);
+        return invokerType.cast(callSite.getTarget().invoke());
+    }
+
+
+    @FunctionalInterface
+    interface AroundInvoker {
+
+        Object invoke(Object aspect, ProceedingJoinPoint joinPoint) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface ReturningInvoker {
+
+        void invoke(Object aspect, Object returnValue) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface NoArgInvoker {
+
+        void invoke(Object aspect) throws Throwable;
+    }
+
+
+    static class LambdaAroundAdvice extends AspectJAroundAdvice {
+
+        private final transient AroundInvoker invoker;
+
+        LambdaAroundAdvice(Method method, AspectJExpressionPointcut pointcut,
+                             AspectInstanceFactory aspectInstanceFactory, AroundInvoker invoker) {
+            super(method, pointcut, aspectInstanceFactory);
+            this.invoker = invoker;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation mi) throws Throwable {
+            if (!(mi instanceof ProxyMethodInvocation)) {
+                throw new IllegalStateException("MethodInvocation is not a Spring ProxyMethodInvocation: " + mi);
+            }
+            ProceedingJoinPoint joinPoint = new MethodInvocationProceedingJoinPoint((ProxyMethodInvocation) mi);
+            return this.invoker.invoke(getAspectInstanceFactory().getAspectInstance(), joinPoint);
+        }
+    }
+
+    static class LambdaAfterReturningAdvice extends AspectJAfterReturningAdvice {
+
+        private final transient ReturningInvoker returningInvoker;
+
+        private final transient NoArgInvoker noArgInvoker;
+
+        LambdaAfterReturningAdvice(Method method, AspectJExpressionPointcut pointcut,
+                                     AspectInstanceFactory aspectInstanceFactory,
+                                     ReturningInvoker returningInvoker, NoArgInvoker noArgInvoker) {
+            super(method, pointcut, aspectInstanceFactory);
+            this.returningInvoker = returningInvoker;
+            this.noArgInvoker = noArgInvoker;
+        }
+
+        /**
+         * returning的类型是Object，任何返回值（包括null）都会触发advice，与父类的判断结果相同
+         */
+        @Override
+        public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+            Object aspect = getAspectInstanceFactory().getAspectInstance();
+            if (this.returningInvoker != null) {
+                this.returningInvoker.invoke(aspect, returnValue);
+            } else {
+                this.noArgInvoker.invoke(aspect);
+            }
+        }
+    }
+
+    static class LambdaBeforeAdvice extends AspectJMethodBeforeAdvice {
+
+        private final transient NoArgInvoker invoker;
+
+        LambdaBeforeAdvice(Method method, AspectJExpressionPointcut pointcut,
+                             AspectInstanceFactory aspectInstanceFactory, NoArgInvoker invoker) {
+            super(method, pointcut, aspectInstanceFactory);
+            this.invoker = invoker;
+        }
+
+        @Override
+        public void before(Method method, Object[] args, Object target) throws Throwable {
+            this.invoker.invoke(getAspectInstanceFactory().getAspectInstance());
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.ifan112.demo.sc.aop;
+
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.weaver.patterns.AbstractPatternNodeVisitor;
+import org.aspectj.weaver.patterns.PatternParser;
+import org.aspectj.weaver.patterns.ReferencePointcut;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * 切点匹配结果的持久化缓存
+ *
+ * 每个条目是 (bean类名, 切面类名, 切点表达式) -> (class文件的散列值, 是否匹配)。
+ * 散列值由bean类和切面类及其父类、接口的class文件内容计算得出，切面类中具名切点的定义变化时散列值也会变化。
+ * 引用了其它类中定义的具名切点（例如com.example.Pointcuts.service()）的表达式，那些类的变化不会反映在散列值中，
+ * 因此不被缓存，参考{@link #isCacheable(Class, String)}。
+ * 下次启动时，只要这些class文件都没有变化，就直接使用缓存的结果，不再由AspectJ逐个方法地匹配。
+ *
+ * 文件格式为UTF-8文本，每行一个条目，字段之间用制表符分隔：
+ * <pre>
+ * 类名	切面类名	切点表达式	散列值（16进制）	1或0
+ * </pre>
+ * 找不到class文件的类（例如CGLIB运行时生成的类）不被缓存。
+ */
+public class ShadowMatchCache {
+
+    private static final String HEADER = "# demo.sc shadow match cache v1";
+
+    /**
+     * 无法计算散列值的类
+     */
+    private static final long UNCACHEABLE = 0;
+
+    private final Path file;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, Long> classHashes = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * (切面类名, 切点表达式) -> 是否可以缓存
+     */
+    private final Map<String, Boolean> cacheablePointcuts = new ConcurrentHashMap<>();
+
+    /**
+     * 每次put时递增，与最近一次写入文件时的值不同时说明有新的条目
+     */
+    private final AtomicLong modifications = new AtomicLong();
+
+    private long savedModifications;
+
+    public ShadowMatchCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 读取缓存文件，文件不存在或者格式不正确时从空的缓存开始
+     */
+    public void load() throws IOException {
+        this.entries.clear();
+        try (BufferedReader reader = Files.newBufferedReader(this.file, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                return;
+            }
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] fields = line.split("\t");
+                if (fields.length == 5) {
+                    this.entries.put(key(fields[0], key(fields[1], fields[2])),
+                            new Entry(Long.parseUnsignedLong(fields[3], 16), "1".equals(fields[4])));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // 第一次启动
+        } catch (NumberFormatException e) {
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * 有新的条目时，先写入临时文件再替换原来的文件
+     *
+     * 只有替换成功之后才认为已经保存，写入失败时下次仍会重试；写入期间新增的条目由下一次save写入。
+     */
+    public synchronized void save() throws IOException {
+        long modifications = this.modifications.get();
+        if (modifications == this.savedModifications) {
+            return;
+        }
+        Path parent = this.file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, this.file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.write('\n');
+                for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+                    writer.write(entry.getKey());
+                    writer.write('\t');
+                    writer.write(Long.toHexString(entry.getValue().hash));
+                    writer.write('\t');
+                    writer.write(entry.getValue().matches ? '1' : '0');
+                    writer.write('\n');
+                }
+            }
+            Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        this.savedModifications = modifications;
+    }
+
+    /**
+     * 是否有尚未写入文件的条目
+     */
+    public boolean isDirty() {
+        return this.modifications.get() != this.savedModifications;
+    }
+
+    /**
+     * @return 缓存的匹配结果，没有缓存或者class文件已经变化时返回null
+     */
+    public Boolean get(Class<?> beanClass, Class<?> aspectClass, String pointcut) {
+        long hash = hash(beanClass, aspectClass);
+        if (hash != UNCACHEABLE) {
+            Entry entry = this.entries.get(key(beanClass.getName(), key(aspectClass.getName(), pointcut)));
+            if (entry != null && entry.hash == hash) {
+                this.hits.increment();
+                return entry.matches;
+            }
+        }
+        this.misses.increment();
+        return null;
+    }
+
+    public void put(Class<?> beanClass, Class<?> aspectClass, String pointcut, boolean matches) {
+        long hash = hash(beanClass, aspectClass);
+        if (hash != UNCACHEABLE) {
+            this.entries.put(key(beanClass.getName(), key(aspectClass.getName(), pointcut)), new Entry(hash, matches));
+            this.modifications.incrementAndGet();
+        }
+    }
+
+    /**
+     * 释放class文件散列值的缓存，避免持有已经不再使用的类
+     */
+    public void clearClassHashes() {
+        this.classHashes.clear();
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * 切点不能包含分隔字段和条目的字符，也不能直接或者通过切面中的具名切点间接引用其它类中定义的具名切点
+     */
+    boolean isCacheable(Class<?> aspectClass, String pointcut) {
+        if (pointcut == null || pointcut.indexOf('\t') >= 0 || pointcut.indexOf('\n') >= 0 || pointcut.indexOf('\r') >= 0) {
+            return false;
+        }
+        return this.cacheablePointcuts.computeIfAbsent(key(aspectClass.getName(), pointcut),
+                key -> referencesOnlyOwnPointcuts(aspectClass, pointcut, new HashSet<>()));
+    }
+
+    /**
+     * 解析表达式，其中的具名切点引用都没有指定类型时，逐个查找切面类（及其父类）中的定义并检查；无法解析时返回false
+     */
+    private static boolean referencesOnlyOwnPointcuts(Class<?> aspectClass, String pointcut, Set<String> visited) {
+        Set<String> references = new LinkedHashSet<>();
+        boolean[] outside = new boolean[1];
+        try {
+            // 与AspectJExpressionPointcut相同，允许用and、or、not代替&&、||、!
+            String expression = StringUtils.replace(pointcut, " and ", " && ");
+            expression = StringUtils.replace(expression, " or ", " || ");
+            expression = StringUtils.replace(expression, " not ", " ! ");
+            new PatternParser(expression).parsePointcut().traverse(new AbstractPatternNodeVisitor() {
+                @Override
+                public Object visit(ReferencePointcut node, Object data) {
+                    if (node.onTypeSymbolic != null) {
+                        outside[0] = true;
+                    } else {
+                        references.add(node.name);
+                    }
+                    return data;
+                }
+            }, null);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (outside[0]) {
+            return false;
+        }
+        for (String name : references) {
+            if (!visited.add(name)) {
+                continue;
+            }
+            boolean found = false;
+            for (Method method : ReflectionUtils.getAllDeclaredMethods(aspectClass)) {
+                Pointcut definition = method.getAnnotation(Pointcut.class);
+                if (definition != null && method.getName().equals(name)) {
+                    found = true;
+                    if (!referencesOnlyOwnPointcuts(aspectClass, definition.value(), visited)) {
+                        return false;
+                    }
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long hash(Class<?> beanClass, Class<?> aspectClass) {
+        long beanHash = this.classHashes.computeIfAbsent(beanClass, ShadowMatchCache::hierarchyHash);
+        long aspectHash = this.classHashes.computeIfAbsent(aspectClass, ShadowMatchCache::hierarchyHash);
+        if (beanHash == UNCACHEABLE || aspectHash == UNCACHEABLE) {
+            return UNCACHEABLE;
+        }
+        long hash = beanHash * 31 + aspectHash;
+        return hash == UNCACHEABLE ? 1 : hash;
+    }
+
+    /**
+     * 类及其父类、接口的class文件的CRC32和总长度，jdk中的类不参与计算
+     */
+    private static long hierarchyHash(Class<?> clazz) {
+        Set<Class<?>> hierarchy = new LinkedHashSet<>();
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            hierarchy.add(current);
+        }
+        hierarchy.addAll(ClassUtils.getAllInterfacesForClassAsSet(clazz));
+
+        CRC32 crc = new CRC32();
+        long length = 0;
+        byte[] buffer = new byte[8192];
+        for (Class<?> type : hierarchy) {
+            ClassLoader classLoader = type.getClassLoader();
+            if (classLoader == null || type.getName().startsWith("java.")) {
+                continue;
+            }
+            try (InputStream in = classLoader.getResourceAsStream(ClassUtils.convertClassNameToResourcePath(
+                    type.getName()) + ClassUtils.CLASS_FILE_SUFFIX)) {
+                if (in == null) {
+                    return UNCACHEABLE;
+                }
+                for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                    crc.update(buffer, 0, n);
+                    length += n;
+                }
+            } catch (IOException e) {
+                return UNCACHEABLE;
+            }
+        }
+        return crc.getValue() << 32 | (length & 0xffffffffL) | 1;
+    }
+
+    private static String key(String first, String second) {
+        return first + '\t' + second;
+    }
+
+    private static final class Entry {
+
+        final long hash;
+
+        final boolean matches;
+
+        Entry(long hash, boolean matches) {
+            this.hash = hash;
+            this.matches = matches;
+        }
+    }
+}
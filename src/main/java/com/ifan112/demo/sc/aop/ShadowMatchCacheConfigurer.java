@@ -0,0 +1,42 @@
+package com.ifan112.demo.sc.aop;
+
+import org.springframework.aop.config.AopConfigUtils;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * 设置系统属性 demo.sc.aop.shadow-cache=文件路径 时，用{@link DemoAspectJAutoProxyCreator}
+ * 替换@EnableAspectJAutoProxy注册的AnnotationAwareAspectJAutoProxyCreator，把切点匹配结果缓存到该文件中
+ *
+ * 只替换bean定义的类名，@EnableAspectJAutoProxy以及{@link FrozenProxyConfigurer}设置的属性保持不变。
+ */
+@Component
+public class ShadowMatchCacheConfigurer implements BeanDefinitionRegistryPostProcessor, EnvironmentAware {
+
+    private String shadowMatchCacheFile;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.shadowMatchCacheFile = environment.getProperty("demo.sc.aop.shadow-cache");
+    }
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
+        if (this.shadowMatchCacheFile == null || this.shadowMatchCacheFile.trim().isEmpty()
+                || !registry.containsBeanDefinition(AopConfigUtils.AUTO_PROXY_CREATOR_BEAN_NAME)) {
+            return;
+        }
+        BeanDefinition definition = registry.getBeanDefinition(AopConfigUtils.AUTO_PROXY_CREATOR_BEAN_NAME);
+        definition.setBeanClassName(DemoAspectJAutoProxyCreator.class.getName());
+        definition.getPropertyValues().add("shadowMatchCacheFile", this.shadowMatchCacheFile);
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+    }
+}
@@ -0,0 +1,59 @@
+package com.ifan112.demo.sc.aot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.BeanUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ClassUtils;
+
+/**
+ * 注册配置类时优先使用构建时生成的初始化器
+ *
+ * 使用aot profile构建时（mvn -P aot compile），{@link AotBootstrapGenerator}为配置类生成名为“配置类名 + AotInitializer”的初始化器。
+ * 存在该初始化器并且没有过期时，由它直接注册bean定义；否则仍然注册配置类，由ConfigurationClassPostProcessor解析。
+ *
+ * 设置系统属性 demo.sc.aot.enabled=false 时总是使用反射的方式。
+ */
+public final class AotBootstrap {
+
+    private static final Logger LOGGER = LogManager.getLogger("startup");
+
+    static final String INITIALIZER_SUFFIX = "AotInitializer";
+
+    private AotBootstrap() {
+    }
+
+    /**
+     * 在context刷新之前调用，代替context.register(configClass)
+     *
+     * @return 是否使用了生成的初始化器
+     */
+    public static boolean register(AnnotationConfigApplicationContext context, Class<?> configClass) {
+        AotContextInitializer initializer = load(context.getEnvironment(), context.getClassLoader(), configClass);
+        if (initializer == null) {
+            context.register(configClass);
+            return false;
+        }
+        initializer.initialize(context);
+        return true;
+    }
+
+    private static AotContextInitializer load(Environment environment, ClassLoader classLoader, Class<?> configClass) {
+        if ("false".equalsIgnoreCase(environment.getProperty("demo.sc.aot.enabled"))) {
+            return null;
+        }
+        String initializerClassName = configClass.getName() + INITIALIZER_SUFFIX;
+        if (!ClassUtils.isPresent(initializerClassName, classLoader)) {
+            return null;
+        }
+
+        AotContextInitializer initializer = (AotContextInitializer) BeanUtils.instantiateClass(
+                ClassUtils.resolveClassName(initializerClassName, classLoader));
+        if (!initializer.isUpToDate(environment, classLoader)) {
+            LOGGER.warn("{}生成之后class文件或者条件中的属性发生了变化，改为解析配置类", initializerClassName);
+            return null;
+        }
+        return initializer;
+    }
+}
@@ -0,0 +1,474 @@
+package com.ifan112.demo.sc.aot;
+
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Lookup;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.AnnotatedBeanDefinitionReader;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.annotation.ConfigurationClassPostProcessor;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.core.type.StandardMethodMetadata;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 构建时解析配置类，生成直接注册bean定义的初始化器源码
+ *
+ * 与context刷新时一样，由ConfigurationClassPostProcessor完成包扫描、配置类解析和条件判断，
+ * 然后把得到的每个bean定义输出为普通的java代码：
+ * 1. 组件使用 类名::new 作为instance supplier，不再通过反射查找和调用构造方法；
+ * 2. @Bean方法生成直接调用配置类方法的lambda，参数按类型从beanFactory中获取；
+ * 3. 不能直接调用的（构造方法注入、非public、带有@Lookup、参数带有注解等）以及spring的基础设施bean，
+ *    仍然输出类名或者工厂方法名，由beanFactory反射创建。
+ * 字段上的@Autowired、@Value以及切面的解析仍然在运行时完成。
+ *
+ * 条件中读取的属性和它们在构建时的值一起写入初始化器，运行时属性值不同时回退到反射的方式。
+ *
+ * 由pom.xml中的aot profile在compile阶段调用：
+ * <pre>
+ * java AotBootstrapGenerator 输出目录 配置类...
+ * </pre>
+ */
+public class AotBootstrapGenerator {
+
+    private static final String INDENT = "        ";
+
+    private final Class<?> configClass;
+
+    private final String packageName;
+
+    private final String className;
+
+    public AotBootstrapGenerator(Class<?> configClass) {
+        this.configClass = configClass;
+        this.packageName = ClassUtils.getPackageName(configClass);
+        this.className = configClass.getSimpleName() + AotBootstrap.INITIALIZER_SUFFIX;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("用法：AotBootstrapGenerator 输出目录 配置类...");
+            System.exit(1);
+        }
+        Path outputDirectory = Paths.get(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            Class<?> configClass = ClassUtils.forName(args[i], AotBootstrapGenerator.class.getClassLoader());
+            Path file = new AotBootstrapGenerator(configClass).generate(outputDirectory);
+            System.out.println("生成初始化器：" + file);
+        }
+    }
+
+    /**
+     * 把初始化器写入outputDirectory下对应包的目录中
+     */
+    public Path generate(Path outputDirectory) throws IOException {
+        Path file = outputDirectory.resolve(ClassUtils.convertClassNameToResourcePath(this.packageName))
+                .resolve(this.className + ".java");
+        Files.createDirectories(file.getParent());
+        Files.write(file, generate().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * @return 初始化器的源码
+     */
+    public String generate() {
+        RecordingEnvironment environment = new RecordingEnvironment();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        GenericApplicationContext context = new GenericApplicationContext(beanFactory);
+        context.setEnvironment(environment);
+        new AnnotatedBeanDefinitionReader(context, environment).register(this.configClass);
+
+        ConfigurationClassPostProcessor processor = new ConfigurationClassPostProcessor();
+        processor.setEnvironment(environment);
+        processor.setResourceLoader(context);
+        processor.setBeanClassLoader(context.getClassLoader());
+        processor.postProcessBeanDefinitionRegistry(beanFactory);
+
+        Set<String> sourceClassNames = new LinkedHashSet<>();
+        sourceClassNames.add(this.configClass.getName());
+        StringBuilder definitions = new StringBuilder();
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            if (AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME.equals(beanName)) {
+                continue;
+            }
+            AbstractBeanDefinition definition = (AbstractBeanDefinition) beanFactory.getBeanDefinition(beanName);
+            Class<?> sourceClass = appendDefinition(definitions, beanFactory, beanName, definition);
+            if (!sourceClass.getName().startsWith("org.springframework.")) {
+                sourceClassNames.add(sourceClass.getName());
+            }
+        }
+
+        String[] classNames = sourceClassNames.toArray(new String[0]);
+        long fingerprint = AotContextInitializer.fingerprint(context.getClassLoader(), classNames);
+
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(this.packageName).append(";\n\n");
+        source.append("import ").append(AotContextInitializer.class.getName()).append(";\n");
+        source.append("import ").append(DefaultListableBeanFactory.class.getName()).append(";\n");
+        source.append("import ").append(RootBeanDefinition.class.getName()).append(";\n\n");
+        source.append("import java.util.LinkedHashMap;\n");
+        source.append("import java.util.Map;\n\n");
+        source.append("/**\n");
+        source.append(" * 由").append(AotBootstrapGenerator.class.getSimpleName()).append("根据")
+                .append(this.configClass.getSimpleName()).append("生成，不要手工修改\n");
+        source.append(" */\n");
+        source.append("public class ").append(this.className).append(" extends ")
+                .append(AotContextInitializer.class.getSimpleName()).append(" {\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public long getFingerprint() {\n");
+        source.append(INDENT).append("return ").append(fingerprint).append("L;\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public String[] getSourceClassNames() {\n");
+        source.append(INDENT).append("return new String[]{\n");
+        for (String name : classNames) {
+            source.append(INDENT).append("        ").append(literal(name)).append(",\n");
+        }
+        source.append(INDENT).append("};\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public Map<String, String> getConditionProperties() {\n");
+        source.append(INDENT).append("Map<String, String> properties = new LinkedHashMap<>();\n");
+        for (Map.Entry<String, String> entry : environment.properties.entrySet()) {
+            source.append(INDENT).append("properties.put(").append(literal(entry.getKey())).append(", ")
+                    .append(literal(entry.getValue())).append(");\n");
+        }
+        source.append(INDENT).append("return properties;\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    protected void registerBeanDefinitions(")
+                .append(DefaultListableBeanFactory.class.getSimpleName()).append(" beanFactory) {\n");
+        source.append(INDENT).append(RootBeanDefinition.class.getSimpleName())
+                .append(" definition;\n");
+        source.append(definitions);
+        source.append("    }\n");
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * 输出一个bean定义
+     *
+     * @return 定义这个bean的类，即bean类或者工厂方法所在的类
+     */
+    private Class<?> appendDefinition(StringBuilder code, DefaultListableBeanFactory beanFactory, String beanName,
+                                      AbstractBeanDefinition definition) {
+        if (!definition.getConstructorArgumentValues().isEmpty() || !definition.getQualifiers().isEmpty()) {
+            throw new IllegalStateException("不支持带有构造参数或者限定符的bean定义：" + beanName);
+        }
+
+        code.append('\n');
+        Class<?> sourceClass;
+        if (definition.getFactoryMethodName() != null) {
+            Method factoryMethod = resolveFactoryMethod(beanFactory, beanName, definition);
+            sourceClass = factoryMethod.getDeclaringClass();
+            code.append(INDENT).append("definition = new ")
+                    .append(RootBeanDefinition.class.getSimpleName()).append("();\n");
+            if (isAccessible(factoryMethod.getReturnType())) {
+                code.append(INDENT).append("definition.setTargetType(")
+                        .append(factoryMethod.getReturnType().getCanonicalName()).append(".class);\n");
+            }
+            String invocation = factoryMethodInvocation(definition, factoryMethod);
+            if (invocation != null) {
+                code.append(INDENT).append("definition.setInstanceSupplier(() -> ").append(invocation).append(");\n");
+            } else {
+                if (definition.getFactoryBeanName() != null) {
+                    code.append(INDENT).append("definition.setFactoryBeanName(")
+                            .append(literal(definition.getFactoryBeanName())).append(");\n");
+                } else {
+                    code.append(INDENT).append("definition.setBeanClassName(")
+                            .append(literal(sourceClass.getName())).append(");\n");
+                }
+                code.append(INDENT).append("definition.setUniqueFactoryMethodName(")
+                        .append(literal(definition.getFactoryMethodName())).append(");\n");
+            }
+        } else {
+            sourceClass = ClassUtils.resolveClassName(definition.getBeanClassName(), beanFactory.getBeanClassLoader());
+            code.append(INDENT).append("definition = new ")
+                    .append(RootBeanDefinition.class.getSimpleName()).append('(');
+            if (isAccessible(sourceClass)) {
+                code.append(sourceClass.getCanonicalName()).append(".class");
+                if (canInstantiateDirectly(sourceClass, definition)) {
+                    code.append(", ").append(sourceClass.getCanonicalName()).append("::new");
+                }
+            } else {
+                code.append(literal(sourceClass.getName()));
+            }
+            code.append(");\n");
+        }
+
+        appendAttributes(code, definition);
+
+        code.append(INDENT);
+        if (definition.getRole() == BeanDefinition.ROLE_INFRASTRUCTURE) {
+            code.append("registerIfAbsent(beanFactory, ").append(literal(beanName)).append(", definition);\n");
+        } else {
+            code.append("beanFactory.registerBeanDefinition(").append(literal(beanName)).append(", definition);\n");
+        }
+        return sourceClass;
+    }
+
+    private void appendAttributes(StringBuilder code, AbstractBeanDefinition definition) {
+        String scope = definition.getScope();
+        if (scope != null && !scope.isEmpty() && !BeanDefinition.SCOPE_SINGLETON.equals(scope)) {
+            code.append(INDENT).append("definition.setScope(").append(literal(scope)).append(");\n");
+        }
+        if (definition.isLazyInit()) {
+            code.append(INDENT).append("definition.setLazyInit(true);\n");
+        }
+        if (definition.isPrimary()) {
+            code.append(INDENT).append("definition.setPrimary(true);\n");
+        }
+        if (!definition.isAutowireCandidate()) {
+            code.append(INDENT).append("definition.setAutowireCandidate(false);\n");
+        }
+        if (definition.isSynthetic()) {
+            code.append(INDENT).append("definition.setSynthetic(true);\n");
+        }
+        if (definition.getRole() != BeanDefinition.ROLE_APPLICATION) {
+            code.append(INDENT).append("definition.setRole(").append(definition.getRole()).append(");\n");
+        }
+        if (definition.getAutowireMode() != AbstractBeanDefinition.AUTOWIRE_NO) {
+            code.append(INDENT).append("definition.setAutowireMode(").append(definition.getAutowireMode()).append(");\n");
+        }
+        if (definition.getDependsOn() != null) {
+            code.append(INDENT).append("definition.setDependsOn(");
+            String[] dependsOn = definition.getDependsOn();
+            for (int i = 0; i < dependsOn.length; i++) {
+                code.append(i == 0 ? "" : ", ").append(literal(dependsOn[i]));
+            }
+            code.append(");\n");
+        }
+        if (definition.getInitMethodName() != null) {
+            code.append(INDENT).append("definition.setInitMethodName(")
+                    .append(literal(definition.getInitMethodName())).append(");\n");
+        }
+        if (!definition.isEnforceInitMethod()) {
+            code.append(INDENT).append("definition.setEnforceInitMethod(false);\n");
+        }
+        if (definition.getDestroyMethodName() != null) {
+            code.append(INDENT).append("definition.setDestroyMethodName(")
+                    .append(literal(definition.getDestroyMethodName())).append(");\n");
+        }
+        if (!definition.isEnforceDestroyMethod()) {
+            code.append(INDENT).append("definition.setEnforceDestroyMethod(false);\n");
+        }
+        for (PropertyValue propertyValue : definition.getPropertyValues().getPropertyValueList()) {
+            code.append(INDENT).append("definition.getPropertyValues().add(")
+                    .append(literal(propertyValue.getName())).append(", ")
+                    .append(valueLiteral(propertyValue.getName(), propertyValue.getValue())).append(");\n");
+        }
+    }
+
+    private static Method resolveFactoryMethod(DefaultListableBeanFactory beanFactory, String beanName,
+                                               AbstractBeanDefinition definition) {
+        if (definition instanceof AnnotatedBeanDefinition) {
+            MethodMetadata metadata = ((AnnotatedBeanDefinition) definition).getFactoryMethodMetadata();
+            if (metadata instanceof StandardMethodMetadata) {
+                return ((StandardMethodMetadata) metadata).getIntrospectedMethod();
+            }
+        }
+
+        String factoryClassName = definition.getFactoryBeanName() != null
+                ? beanFactory.getBeanDefinition(definition.getFactoryBeanName()).getBeanClassName()
+                : definition.getBeanClassName();
+        Class<?> factoryClass = ClassUtils.resolveClassName(factoryClassName, beanFactory.getBeanClassLoader());
+        List<Method> candidates = new ArrayList<>();
+        ReflectionUtils.doWithMethods(factoryClass, candidates::add,
+                method -> method.getName().equals(definition.getFactoryMethodName()));
+        if (candidates.size() != 1) {
+            throw new IllegalStateException("无法确定bean " + beanName + "的工厂方法：" + candidates);
+        }
+        return candidates.get(0);
+    }
+
+    /**
+     * @return 调用工厂方法的表达式，不能直接调用时返回null
+     */
+    private String factoryMethodInvocation(AbstractBeanDefinition definition, Method factoryMethod) {
+        Class<?> declaringClass = factoryMethod.getDeclaringClass();
+        if (!isAccessible(declaringClass) || !isAccessible(factoryMethod) || throwsCheckedException(factoryMethod)) {
+            return null;
+        }
+
+        StringBuilder invocation = new StringBuilder();
+        if (Modifier.isStatic(factoryMethod.getModifiers())) {
+            invocation.append(declaringClass.getCanonicalName());
+        } else {
+            invocation.append("beanFactory.getBean(").append(literal(definition.getFactoryBeanName())).append(", ")
+                    .append(declaringClass.getCanonicalName()).append(".class)");
+        }
+        invocation.append('.').append(factoryMethod.getName()).append('(');
+        Parameter[] parameters = factoryMethod.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            Parameter parameter = parameters[i];
+            Class<?> type = parameter.getType();
+            // 这些参数需要按照DependencyDescriptor解析
+            if (parameter.getAnnotations().length > 0 || !(parameter.getParameterizedType() instanceof Class)
+                    || type.isPrimitive() || type.isArray() || Collection.class.isAssignableFrom(type)
+                    || Map.class.isAssignableFrom(type) || type == Optional.class
+                    || type.getName().startsWith("org.springframework.beans.factory.ObjectProvider")
+                    || type.getName().startsWith("org.springframework.beans.factory.ObjectFactory")
+                    || !isAccessible(type)) {
+                return null;
+            }
+            invocation.append(i == 0 ? "" : ", ").append("beanFactory.getBean(")
+                    .append(type.getCanonicalName()).append(".class)");
+        }
+        return invocation.append(')').toString();
+    }
+
+    /**
+     * 与AutowiredAnnotationBeanPostProcessor的判断一致：没有@Autowired构造方法、没有@Lookup方法时，使用无参构造方法创建
+     *
+     * instance supplier优先于bean类，因此只为应用自己的bean生成。
+     */
+    private boolean canInstantiateDirectly(Class<?> beanClass, AbstractBeanDefinition definition) {
+        // 基础设施bean可能在运行时被BeanDefinitionRegistryPostProcessor替换类名，例如ShadowMatchCacheConfigurer
+        if (definition.getRole() == BeanDefinition.ROLE_INFRASTRUCTURE || beanClass.isInterface()
+                || Modifier.isAbstract(beanClass.getModifiers()) || definition.hasMethodOverrides()) {
+            return false;
+        }
+        Constructor<?> defaultConstructor = null;
+        for (Constructor<?> constructor : beanClass.getDeclaredConstructors()) {
+            if (hasInjectAnnotation(constructor.getAnnotations())) {
+                return false;
+            }
+            if (constructor.getParameterCount() == 0) {
+                defaultConstructor = constructor;
+            }
+        }
+        if (defaultConstructor == null || !isAccessible(defaultConstructor)
+                || throwsCheckedException(defaultConstructor)) {
+            return false;
+        }
+        boolean[] lookup = new boolean[1];
+        ReflectionUtils.doWithMethods(beanClass, method -> lookup[0] = true,
+                method -> method.isAnnotationPresent(Lookup.class));
+        return !lookup[0];
+    }
+
+    private static boolean hasInjectAnnotation(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation.annotationType() == Autowired.class
+                    || annotation.annotationType().getName().equals("javax.inject.Inject")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean throwsCheckedException(Executable executable) {
+        for (Class<?> exceptionType : executable.getExceptionTypes()) {
+            if (!RuntimeException.class.isAssignableFrom(exceptionType) && !Error.class.isAssignableFrom(exceptionType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 生成的初始化器与配置类在同一个包中，可以访问public以及同一个包中非private的类和成员
+     */
+    private boolean isAccessible(Class<?> type) {
+        for (Class<?> current = type; current != null; current = current.getEnclosingClass()) {
+            if (current.getCanonicalName() == null || Modifier.isPrivate(current.getModifiers())
+                    || (!Modifier.isPublic(current.getModifiers())
+                    && !ClassUtils.getPackageName(current).equals(this.packageName))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAccessible(Member member) {
+        int modifiers = member.getModifiers();
+        return Modifier.isPublic(modifiers) || (!Modifier.isPrivate(modifiers) && !Modifier.isProtected(modifiers)
+                && ClassUtils.getPackageName(member.getDeclaringClass()).equals(this.packageName));
+    }
+
+    private String valueLiteral(String name, Object value) {
+        if (value == null || value instanceof String) {
+            return literal((String) value);
+        }
+        if (value instanceof Boolean || value instanceof Integer) {
+            return value.toString();
+        }
+        if (value instanceof Long) {
+            return value + "L";
+        }
+        if (value instanceof Class && isAccessible((Class<?>) value)) {
+            return ((Class<?>) value).getCanonicalName() + ".class";
+        }
+        if (value instanceof Enum && isAccessible(((Enum<?>) value).getDeclaringClass())) {
+            return ((Enum<?>) value).getDeclaringClass().getCanonicalName() + '.' + ((Enum<?>) value).name();
+        }
+        throw new IllegalStateException("不支持的属性值：" + name + "=" + value);
+    }
+
+    static String literal(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+
+    /**
+     * 记录条件判断时读取的属性
+     */
+    private static final class RecordingEnvironment extends StandardEnvironment {
+
+        final Map<String, String> properties = new TreeMap<>();
+
+        @Override
+        public String getProperty(String key) {
+            String value = super.getProperty(key);
+            this.properties.put(key, value);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.ifan112.demo.sc.aot;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ClassUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * {@link AotBootstrapGenerator}生成的初始化器的父类
+ *
+ * 子类直接向beanFactory注册构建时解析出的bean定义，不再注册ConfigurationClassPostProcessor，
+ * 因此context刷新时不再扫描包、解析配置类、判断条件，也不再用CGLIB增强配置类。
+ *
+ * 生成之后，如果组件索引（META-INF/spring.components）、配置类或者bean类的class文件发生了变化，
+ * 或者条件中用到的属性与生成时的值不同，{@link #isUpToDate(Environment, ClassLoader)}返回false，
+ * 这时应当回退到反射的方式，参考{@link AotBootstrap}。
+ */
+public abstract class AotContextInitializer implements ApplicationContextInitializer<GenericApplicationContext> {
+
+    static final String COMPONENTS_RESOURCE_LOCATION = "META-INF/spring.components";
+
+    /**
+     * 生成时的组件索引和class文件的散列值
+     */
+    public abstract long getFingerprint();
+
+    /**
+     * 参与计算散列值的类，即配置类和所有bean类
+     */
+    public abstract String[] getSourceClassNames();
+
+    /**
+     * 生成时条件中用到的属性以及它们的值，不存在的属性值为null
+     */
+    public abstract Map<String, String> getConditionProperties();
+
+    protected abstract void registerBeanDefinitions(DefaultListableBeanFactory beanFactory);
+
+    public boolean isUpToDate(Environment environment, ClassLoader classLoader) {
+        for (Map.Entry<String, String> entry : getConditionProperties().entrySet()) {
+            if (!Objects.equals(environment.getProperty(entry.getKey()), entry.getValue())) {
+                return false;
+            }
+        }
+        return fingerprint(classLoader, getSourceClassNames()) == getFingerprint();
+    }
+
+    @Override
+    public void initialize(GenericApplicationContext context) {
+        DefaultListableBeanFactory beanFactory = context.getDefaultListableBeanFactory();
+        if (beanFactory.containsBeanDefinition(AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME)) {
+            beanFactory.removeBeanDefinition(AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME);
+        }
+        registerBeanDefinitions(beanFactory);
+    }
+
+    /**
+     * AnnotationConfigApplicationContext在构造时已经注册了的处理器不再重复注册
+     */
+    protected static void registerIfAbsent(DefaultListableBeanFactory beanFactory, String beanName,
+                                           BeanDefinition definition) {
+        if (!beanFactory.containsBeanDefinition(beanName)) {
+            beanFactory.registerBeanDefinition(beanName, definition);
+        }
+    }
+
+    /**
+     * 组件索引中的条目（忽略注释行，其中有生成时间）以及各个类的class文件的CRC32，找不到的class文件不参与计算
+     */
+    static long fingerprint(ClassLoader classLoader, String[] classNames) {
+        CRC32 crc = new CRC32();
+        try {
+            // 索引由Properties写出，条目的顺序不固定
+            Set<String> entries = new TreeSet<>();
+            Enumeration<URL> indexes = classLoader.getResources(COMPONENTS_RESOURCE_LOCATION);
+            while (indexes.hasMoreElements()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        indexes.nextElement().openStream(), StandardCharsets.UTF_8))) {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        if (!line.startsWith("#")) {
+                            entries.add(line);
+                        }
+                    }
+                }
+            }
+            for (String entry : entries) {
+                crc.update(entry.getBytes(StandardCharsets.UTF_8));
+            }
+
+            byte[] buffer = new byte[8192];
+            for (String className : classNames) {
+                try (InputStream in = classLoader.getResourceAsStream(
+                        ClassUtils.convertClassNameToResourcePath(className) + ClassUtils.CLASS_FILE_SUFFIX)) {
+                    if (in == null) {
+                        continue;
+                    }
+                    for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                        crc.update(buffer, 0, n);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,36 @@
+package com.ifan112.demo.sc.audit;
+
+import org.springframework.util.ObjectUtils;
+
+/**
+ * 把一个方法参数追加到StringBuilder中的格式化函数
+ *
+ * 按参数的声明类型预先选定，避免后台线程在格式化时反复判断参数类型。
+ */
+@FunctionalInterface
+interface ArgumentFormatter {
+
+    ArgumentFormatter DEFAULT = (arg, out) -> out.append(arg);
+
+    ArgumentFormatter STRING = (arg, out) -> {
+        if (arg == null) {
+            out.append("null");
+        } else {
+            out.append('\'').append((String) arg).append('\'');
+        }
+    };
+
+    ArgumentFormatter ARRAY = (arg, out) -> out.append(ObjectUtils.nullSafeToString(arg));
+
+    void format(Object arg, StringBuilder out);
+
+    static ArgumentFormatter forType(Class<?> type) {
+        if (type == String.class) {
+            return STRING;
+        }
+        if (type.isArray()) {
+            return ARRAY;
+        }
+        return DEFAULT;
+    }
+}
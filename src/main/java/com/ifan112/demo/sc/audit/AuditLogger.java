@@ -0,0 +1,205 @@
+package com.ifan112.demo.sc.audit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 切面使用的方法调用日志记录器
+ *
+ * 在ASYNC模式下，调用线程只把方法元数据、参数和结果的引用写入预分配的{@link AuditRingBuffer}，
+ * 后台线程批量取出记录，格式化后一次性交给名为audit的log4j2日志记录器输出（参考log4j2.xml）。
+ * 这样调用线程不再争抢System.out上的全局锁。
+ *
+ * 在SYNC模式下，或者后台线程已经停止之后，保持原先直接打印到System.out的行为。
+ *
+ * 支持的系统属性：
+ * demo.sc.audit.mode             SYNC 或 ASYNC，默认ASYNC
+ * demo.sc.audit.capacity         环形缓冲区的槽位数，必须是2的幂，默认8192
+ * demo.sc.audit.batch-size       后台线程每批最多处理的记录数，默认256
+ * demo.sc.audit.overflow-policy  缓冲区写满时的处理策略，DROP 或 BLOCK，默认DROP
+ */
+
+@Component
+public class AuditLogger implements InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LogManager.getLogger("audit");
+
+    @Value("${demo.sc.audit.mode:ASYNC}")
+    private AuditMode mode = AuditMode.ASYNC;
+
+    @Value("${demo.sc.audit.capacity:8192}")
+    private int capacity = 8192;
+
+    @Value("${demo.sc.audit.batch-size:256}")
+    private int batchSize = 256;
+
+    @Value("${demo.sc.audit.overflow-policy:DROP}")
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private AuditRingBuffer ringBuffer;
+
+    private Thread drainer;
+
+    private volatile boolean running;
+
+    public AuditLogger() {
+    }
+
+    public AuditLogger(AuditMode mode, int capacity, int batchSize, OverflowPolicy overflowPolicy) {
+        this.mode = mode;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (this.mode != AuditMode.ASYNC) {
+            return;
+        }
+        this.ringBuffer = new AuditRingBuffer(this.capacity, this.overflowPolicy);
+        this.running = true;
+        this.drainer = new Thread(new Drainer(), "audit-drainer");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * 方法开始执行时调用。只有同步输出时才需要在此时打印参数，异步模式下参数随{@link #logInvocation}
+     * 或{@link #logFailure}一起记录
+     */
+    public void logStart(MethodMetadata method, Object[] args) {
+        if (!this.running) {
+            System.out.println(method.getName() + "方法开始执行！！参数：" + Arrays.toString(args));
+        }
+    }
+
+    /**
+     * 方法执行结束时调用，记录本次调用的参数和结果
+     */
+    public void logInvocation(MethodMetadata method, Object[] args, Object result) {
+        if (!this.running) {
+            System.out.println(method.getName() + "方法执行结束！！结果：" + result);
+            return;
+        }
+        publish(AuditRecord.AROUND, method, args, result);
+    }
+
+    /**
+     * 方法抛出异常时调用，记录本次调用的参数和异常
+     */
+    public void logFailure(MethodMetadata method, Object[] args, Throwable throwable) {
+        if (!this.running) {
+            System.out.println(method.getName() + "方法执行异常！！异常：" + throwable);
+            return;
+        }
+        publish(AuditRecord.FAILED, method, args, throwable);
+    }
+
+    /**
+     * 记录一次正常返回的结果
+     */
+    public void logReturning(MethodMetadata method, Object result) {
+        if (!this.running) {
+            System.out.println("afterReturning --- " + method.getName() + "：" + result);
+            return;
+        }
+        publish(AuditRecord.AFTER_RETURNING, method, null, result);
+    }
+
+    private void publish(int kind, MethodMetadata method, Object[] args, Object result) {
+        if (!this.ringBuffer.publish(kind, method, args, result)) {
+            this.dropped.increment();
+        }
+    }
+
+    public AuditMode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * 在DROP策略下，因缓冲区已满而被丢弃的记录数
+     */
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * 停止后台线程。停止前会把缓冲区中剩余的记录全部输出
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (this.drainer == null) {
+            return;
+        }
+        this.running = false;
+        LockSupport.unpark(this.drainer);
+        this.drainer.join(TimeUnit.SECONDS.toMillis(5));
+        this.drainer = null;
+    }
+
+
+    /**
+     * 后台线程，批量消费缓冲区中的记录
+     *
+     * 每一批记录被格式化到同一个复用的StringBuilder中，只调用一次log4j2输出。
+     * 缓冲区为空时，等待时间从1微秒逐步退避到1毫秒。
+     */
+    private class Drainer implements Runnable, AuditRingBuffer.RecordHandler {
+
+        private final StringBuilder buffer = new StringBuilder(4096);
+
+        @Override
+        public void run() {
+            long idleNanos = 1000;
+            while (running || !ringBuffer.isEmpty()) {
+                int count = ringBuffer.drain(this, batchSize);
+                if (count > 0) {
+                    flush();
+                    idleNanos = 1000;
+                } else if (running) {
+                    LockSupport.parkNanos(idleNanos);
+                    idleNanos = Math.min(idleNanos << 1, TimeUnit.MILLISECONDS.toNanos(1));
+                } else {
+                    // 已停止但还有生产者尚未完成发布，稍等片刻
+                    Thread.yield();
+                }
+            }
+        }
+
+        @Override
+        public void handle(AuditRecord record) {
+            if (this.buffer.length() > 0) {
+                this.buffer.append(System.lineSeparator());
+            }
+            if (record.kind == AuditRecord.AFTER_RETURNING) {
+                this.buffer.append("afterReturning --- ").append(record.method.getName()).append('：').append(record.result);
+                return;
+            }
+            this.buffer.append(record.method.getName()).append("方法开始执行！！参数：");
+            record.method.formatArguments(record.args, this.buffer);
+            this.buffer.append(System.lineSeparator()).append(record.method.getName());
+            if (record.kind == AuditRecord.AROUND) {
+                this.buffer.append("方法执行结束！！结果：").append(record.result);
+            } else {
+                this.buffer.append("方法执行异常！！异常：").append(record.result);
+            }
+        }
+
+        private void flush() {
+            LOGGER.info(this.buffer.toString());
+            this.buffer.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.ifan112.demo.sc.audit;
+
+/**
+ * 切面记录方法调用日志的方式
+ *
+ * 通过系统属性 demo.sc.audit.mode 设置，默认为ASYNC。
+ */
+public enum AuditMode {
+
+    /**
+     * 同步模式，在调用线程上直接通过System.out打印，即原先的处理方式
+     */
+    SYNC,
+
+    /**
+     * 异步模式，调用线程只把记录写入环形缓冲区，由后台线程批量格式化后通过log4j2输出
+     */
+    ASYNC
+}
@@ -0,0 +1,33 @@
+package com.ifan112.demo.sc.audit;
+
+/**
+ * 环形缓冲区中的一个槽位
+ *
+ * 槽位在缓冲区创建时一次性分配，此后被反复复用。调用线程只负责填充字段，
+ * 格式化字符串的工作全部交给后台线程完成。
+ */
+final class AuditRecord {
+
+    static final int AROUND = 0;
+    static final int AFTER_RETURNING = 1;
+    /**
+     * 方法抛出了异常，result中是异常
+     */
+    static final int FAILED = 2;
+
+    /**
+     * 已发布到该槽位的序号。消费线程以它判断槽位中的数据是否可读
+     */
+    volatile long sequence = -1;
+
+    int kind;
+    MethodMetadata method;
+    Object[] args;
+    Object result;
+
+    void clear() {
+        this.method = null;
+        this.args = null;
+        this.result = null;
+    }
+}
@@ -0,0 +1,111 @@
+package com.ifan112.demo.sc.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 预分配槽位的多生产者、单消费者环形缓冲区
+ *
+ * 生产者通过CAS争抢序号，填充对应槽位后以volatile写的方式发布序号；
+ * 唯一的消费者（后台线程）按序号顺序读取槽位，读取完成后推进消费游标，释放槽位。
+ *
+ * 整个过程没有锁，生产者在正常路径上也不会分配任何对象。
+ */
+final class AuditRingBuffer {
+
+    private final AuditRecord[] records;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * 下一个可被生产者申请的序号
+     */
+    private final AtomicLong producerCursor = new AtomicLong();
+
+    /**
+     * 下一个待消费的序号，只由消费线程写入
+     */
+    private volatile long consumerCursor;
+
+    AuditRingBuffer(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity必须是2的幂：" + capacity);
+        }
+        this.records = new AuditRecord[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.records[i] = new AuditRecord();
+        }
+        this.mask = capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * 发布一条记录
+     *
+     * @return 在DROP策略下缓冲区已满时返回false，其余情况返回true
+     */
+    boolean publish(int kind, MethodMetadata method, Object[] args, Object result) {
+        long sequence = claim();
+        if (sequence < 0) {
+            return false;
+        }
+
+        AuditRecord record = this.records[(int) sequence & this.mask];
+        record.kind = kind;
+        record.method = method;
+        record.args = args;
+        record.result = result;
+        record.sequence = sequence;
+        return true;
+    }
+
+    private long claim() {
+        int capacity = this.records.length;
+        while (true) {
+            long current = this.producerCursor.get();
+            if (current - this.consumerCursor >= capacity) {
+                if (this.overflowPolicy == OverflowPolicy.DROP) {
+                    return -1;
+                }
+                LockSupport.parkNanos(1000);
+                continue;
+            }
+            if (this.producerCursor.compareAndSet(current, current + 1)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * 消费最多maxBatch条已发布的记录，只能由唯一的消费线程调用
+     *
+     * @return 本次消费的记录条数
+     */
+    int drain(RecordHandler handler, int maxBatch) {
+        long next = this.consumerCursor;
+        int count = 0;
+        while (count < maxBatch) {
+            AuditRecord record = this.records[(int) next & this.mask];
+            if (record.sequence != next) {
+                break;
+            }
+            handler.handle(record);
+            record.clear();
+            next++;
+            count++;
+        }
+        if (count > 0) {
+            this.consumerCursor = next;
+        }
+        return count;
+    }
+
+    boolean isEmpty() {
+        return this.consumerCursor == this.producerCursor.get();
+    }
+
+    interface RecordHandler {
+
+        void handle(AuditRecord record);
+    }
+}
@@ -0,0 +1,127 @@
+package com.ifan112.demo.sc.audit;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * 被代理方法的元数据
+ *
+ * 在方法第一次被调用时创建，此后由{@link MethodMetadataCache}缓存。
+ * 方法名称、参数名称以及参数的格式化函数都是预先计算好的，切面在每次调用时不再需要获取Signature对象。
+ *
+ * 同时记录该方法是否是容器的生命周期回调，例如DisposableBean.destroy()、Lifecycle.stop()以及AutoCloseable.close()。
+ */
+public final class MethodMetadata {
+
+    private static final ParameterNameDiscoverer PARAMETER_NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    /**
+     * 容器在创建、启动、停止和销毁bean时调用的接口，SmartLifecycle包含了Lifecycle的方法
+     */
+    private static final Class<?>[] LIFECYCLE_INTERFACES = {
+            InitializingBean.class, DisposableBean.class, SmartLifecycle.class, AutoCloseable.class};
+
+    private final String name;
+
+    private final String[] parameterNames;
+
+    private final ArgumentFormatter[] formatters;
+
+    private final boolean lifecycleCallback;
+
+    private MethodMetadata(String name, String[] parameterNames, ArgumentFormatter[] formatters,
+                           boolean lifecycleCallback) {
+        this.name = name;
+        this.parameterNames = parameterNames;
+        this.formatters = formatters;
+        this.lifecycleCallback = lifecycleCallback;
+    }
+
+    /**
+     * 创建方法的元数据
+     *
+     * 对于Jdk动态代理，method是接口上声明的方法，接口方法没有参数名称信息，
+     * 因此参数名称从目标类上对应的方法中获取。获取不到时使用arg0、arg1……
+     *
+     * @param method      被代理的方法
+     * @param targetClass 目标类，可以为null
+     */
+    static MethodMetadata create(Method method, Class<?> targetClass) {
+        Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+        Class<?>[] parameterTypes = method.getParameterTypes();
+
+        String[] parameterNames = PARAMETER_NAME_DISCOVERER.getParameterNames(specificMethod);
+        if (parameterNames == null || parameterNames.length != parameterTypes.length) {
+            parameterNames = new String[parameterTypes.length];
+            for (int i = 0; i < parameterNames.length; i++) {
+                parameterNames[i] = "arg" + i;
+            }
+        }
+
+        ArgumentFormatter[] formatters = new ArgumentFormatter[parameterTypes.length];
+        for (int i = 0; i < formatters.length; i++) {
+            formatters[i] = ArgumentFormatter.forType(parameterTypes[i]);
+        }
+
+        return new MethodMetadata(method.getName().intern(), parameterNames, formatters,
+                isLifecycleCallback(specificMethod));
+    }
+
+    private static boolean isLifecycleCallback(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        for (Class<?> callbackInterface : LIFECYCLE_INTERFACES) {
+            if (callbackInterface.isAssignableFrom(declaringClass)
+                    && ClassUtils.hasMethod(callbackInterface, method.getName(), method.getParameterTypes())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String[] getParameterNames() {
+        return this.parameterNames.clone();
+    }
+
+    /**
+     * 是否是容器的生命周期回调。context停止之后，销毁被代理的prototype bean时仍然会调用它们
+     */
+    public boolean isLifecycleCallback() {
+        return this.lifecycleCallback;
+    }
+
+    /**
+     * 以 [name=value, ...] 的形式把参数追加到out中
+     */
+    void formatArguments(Object[] args, StringBuilder out) {
+        out.append('[');
+        int count = args == null ? 0 : args.length;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            if (i < this.formatters.length) {
+                out.append(this.parameterNames[i]).append('=');
+                this.formatters[i].format(args[i], out);
+            } else {
+                ArgumentFormatter.DEFAULT.format(args[i], out);
+            }
+        }
+        out.append(']');
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
@@ -0,0 +1,49 @@
+package com.ifan112.demo.sc.audit;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 以(被代理方法, 目标类)为key的{@link MethodMetadata}缓存
+ *
+ * 同一个接口方法可能由多个目标类实现，参数名称取自各目标类上的方法，因此不能只按方法缓存。
+ * 缓存分为两级，先按目标类、再按方法查找，命中时只有两次ConcurrentHashMap的无锁读取，不需要为组合key分配对象。
+ * targetClass为null时按方法的声明类查找，二者得到的元数据相同。
+ *
+ * 这里没有使用computeIfAbsent，因为在jdk8中，即使key已经存在，computeIfAbsent也可能对所在的桶加锁。
+ */
+public class MethodMetadataCache {
+
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Method, MethodMetadata>> cache = new ConcurrentHashMap<>(16);
+
+    public MethodMetadata get(Method method, Class<?> targetClass) {
+        Class<?> key = targetClass != null ? targetClass : method.getDeclaringClass();
+        ConcurrentMap<Method, MethodMetadata> methods = this.cache.get(key);
+        if (methods == null) {
+            methods = new ConcurrentHashMap<>(16);
+            ConcurrentMap<Method, MethodMetadata> existing = this.cache.putIfAbsent(key, methods);
+            if (existing != null) {
+                methods = existing;
+            }
+        }
+
+        MethodMetadata metadata = methods.get(method);
+        if (metadata == null) {
+            metadata = MethodMetadata.create(method, targetClass);
+            MethodMetadata existing = methods.putIfAbsent(method, metadata);
+            if (existing != null) {
+                metadata = existing;
+            }
+        }
+        return metadata;
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentMap<Method, MethodMetadata> methods : this.cache.values()) {
+            size += methods.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,19 @@
+package com.ifan112.demo.sc.audit;
+
+/**
+ * 环形缓冲区写满时的处理策略
+ *
+ * 通过系统属性 demo.sc.audit.overflow-policy 设置，默认为DROP。
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 丢弃当前记录，调用线程不会被阻塞。被丢弃的记录数可以通过{@link AuditLogger#getDroppedCount()}获取
+     */
+    DROP,
+
+    /**
+     * 阻塞调用线程，直到后台线程消费出空闲的槽位
+     */
+    BLOCK
+}
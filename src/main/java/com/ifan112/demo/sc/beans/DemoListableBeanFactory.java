@@ -0,0 +1,459 @@
+package com.ifan112.demo.sc.beans;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.SmartFactoryBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanReference;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.NamedBeanHolder;
+import org.springframework.beans.factory.config.RuntimeBeanNameReference;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.ApplicationListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 支持并行预实例化单例bean、缓存按类型查找结果的beanFactory
+ *
+ * 默认行为与DefaultListableBeanFactory相同。通过{@link #setPreInstantiationParallelism(int)}设置大于1的并行度后，
+ * preInstantiateSingletons按以下步骤执行：
+ *
+ * 1. 按注册顺序依次创建所有ApplicationListener类型的bean，保证监听器被ApplicationListenerDetector发现的顺序是确定的。
+ * 2. 通过{@link BeanDependencyResolver}根据@DependsOn、构造器参数、@Autowired/@Resource/@Inject字段和方法、
+ *    @Bean方法参数等信息建立bean之间的依赖关系，把有依赖关系的bean划分到同一个分组中。
+ * 3. 在有界的ForkJoinPool上并发处理各个分组，同一分组内的bean按注册顺序依次创建。
+ * 4. 回到当前线程，依次创建需要提前初始化的SmartFactoryBean的产品，调用SmartInitializingSingleton回调。
+ *
+ * DefaultSingletonBeanRegistry在创建单例时持有singletonObjects上的全局锁，这会使并行创建退化为串行。
+ * 因此在第3步期间，{@link #getSingleton(String, ObjectFactory)}改为按bean名称加锁；
+ * 通过getBean获取另一个线程正在创建的bean时，不会以提前暴露的引用返回，而是等待其创建完成；
+ * 只判断类型的查找（allowEarlyReference为false）从不等待，参考{@link #getSingleton(String, boolean)}。
+ *
+ * 注意：依赖关系只能从bean定义和类的注解中推断。如果bean在构造或初始化期间通过getBean等方式隐式地获取了
+ * 另一分组中的bean，并且两者互相依赖，可能导致死锁。这种情况下不要开启并行预实例化。
+ *
+ * 通过{@link #setResolvedTypeCacheEnabled(boolean)}开启按类型查找单例的缓存后，{@link #getBean(Class)}的结果
+ * 会以请求的类型为key保存在ConcurrentHashMap中。默认实现每次都要遍历所有bean名称、判断类型、处理FactoryBean，
+ * 并在获取单例时进入同步代码块；命中缓存后只是一次无锁的Map读取。
+ *
+ * 只有在bean定义已被冻结（context刷新完成之前的finishBeanFactoryInitialization中）之后，并且找到的bean是单例时才会缓存。
+ * FactoryBean按其isSingleton()判断，因此getBean(OrderService.class)缓存的是FactoryBean创建的单例产品，
+ * getBean(OrderServiceFactoryBean.class)缓存的是FactoryBean本身；按名称获取（例如"&orderService"）不经过该缓存。
+ * 注册或移除bean定义、注册或销毁单例时，缓存被整体清空。
+ */
+public class DemoListableBeanFactory extends DefaultListableBeanFactory {
+
+    private int preInstantiationParallelism = 1;
+
+    /**
+     * 是否处于并行预实例化阶段
+     */
+    private volatile boolean parallelPhase;
+
+    private final Map<String, Object> creationLocks = new ConcurrentHashMap<>();
+
+    private final Map<String, Thread> creatingThreads = new ConcurrentHashMap<>();
+
+    private boolean resolvedTypeCacheEnabled;
+
+    /**
+     * 请求的类型 -> 唯一匹配的单例bean（或其代理、FactoryBean的产品）
+     */
+    private final Map<Class<?>, Object> resolvedTypeCache = new ConcurrentHashMap<>(64);
+
+    /**
+     * 每次清空缓存时递增，用于丢弃在清空之前查找到的结果
+     */
+    private final AtomicLong resolvedTypeGeneration = new AtomicLong();
+
+    public int getPreInstantiationParallelism() {
+        return preInstantiationParallelism;
+    }
+
+    /**
+     * 设置并行预实例化单例bean的线程数，小于等于1时不开启
+     */
+    public void setPreInstantiationParallelism(int preInstantiationParallelism) {
+        this.preInstantiationParallelism = preInstantiationParallelism;
+    }
+
+    public boolean isResolvedTypeCacheEnabled() {
+        return resolvedTypeCacheEnabled;
+    }
+
+    /**
+     * 是否缓存{@link #getBean(Class)}按类型查找到的单例bean
+     */
+    public void setResolvedTypeCacheEnabled(boolean resolvedTypeCacheEnabled) {
+        this.resolvedTypeCacheEnabled = resolvedTypeCacheEnabled;
+        clearResolvedTypeCache();
+    }
+
+    @Override
+    public <T> T getBean(Class<T> requiredType) throws BeansException {
+        if (!this.resolvedTypeCacheEnabled) {
+            return super.getBean(requiredType);
+        }
+
+        Object cached = this.resolvedTypeCache.get(requiredType);
+        if (cached != null) {
+            return requiredType.cast(cached);
+        }
+
+        // 定义尚未冻结时，bean的类型和数量还可能改变，不缓存
+        if (!isConfigurationFrozen()) {
+            return super.getBean(requiredType);
+        }
+
+        long expectedGeneration = this.resolvedTypeGeneration.get();
+        NamedBeanHolder<T> holder;
+        try {
+            holder = resolveNamedBean(requiredType);
+        } catch (NoSuchBeanDefinitionException e) {
+            // 可能定义在父beanFactory中，交给默认实现处理
+            return super.getBean(requiredType);
+        }
+
+        String beanName = holder.getBeanName();
+        if (isSingleton(beanName) && !isCurrentlyInCreation(beanName)) {
+            this.resolvedTypeCache.put(requiredType, holder.getBeanInstance());
+            // 查找期间缓存被清空过，放入的结果可能已经过期
+            if (this.resolvedTypeGeneration.get() != expectedGeneration) {
+                this.resolvedTypeCache.remove(requiredType);
+            }
+        }
+        return holder.getBeanInstance();
+    }
+
+    /**
+     * 缓存中的类型数
+     */
+    public int getResolvedTypeCacheSize() {
+        return this.resolvedTypeCache.size();
+    }
+
+    private void clearResolvedTypeCache() {
+        this.resolvedTypeGeneration.incrementAndGet();
+        this.resolvedTypeCache.clear();
+    }
+
+    @Override
+    public void registerBeanDefinition(String beanName, BeanDefinition beanDefinition) throws BeanDefinitionStoreException {
+        super.registerBeanDefinition(beanName, beanDefinition);
+        clearResolvedTypeCache();
+    }
+
+    @Override
+    public void removeBeanDefinition(String beanName) throws NoSuchBeanDefinitionException {
+        super.removeBeanDefinition(beanName);
+        clearResolvedTypeCache();
+    }
+
+    @Override
+    public void registerSingleton(String beanName, Object singletonObject) throws IllegalStateException {
+        super.registerSingleton(beanName, singletonObject);
+        clearResolvedTypeCache();
+    }
+
+    @Override
+    public void destroySingleton(String beanName) {
+        // 销毁期间其它线程可能把即将销毁的单例重新放入缓存，销毁之后再清空一次
+        clearResolvedTypeCache();
+        super.destroySingleton(beanName);
+        clearResolvedTypeCache();
+    }
+
+    @Override
+    public void destroySingletons() {
+        clearResolvedTypeCache();
+        super.destroySingletons();
+        clearResolvedTypeCache();
+    }
+
+    @Override
+    public void preInstantiateSingletons() throws BeansException {
+        if (this.preInstantiationParallelism <= 1) {
+            super.preInstantiateSingletons();
+            return;
+        }
+
+        List<String> beanNames = new ArrayList<>(Arrays.asList(getBeanDefinitionNames()));
+
+        List<String> candidates = new ArrayList<>();
+        for (String beanName : beanNames) {
+            RootBeanDefinition bd = getMergedLocalBeanDefinition(beanName);
+            if (!bd.isAbstract() && bd.isSingleton() && !bd.isLazyInit()) {
+                candidates.add(beanName);
+            }
+        }
+
+        // 1. 监听器按注册顺序创建
+        Set<String> listeners = new HashSet<>(Arrays.asList(getBeanNamesForType(ApplicationListener.class, true, false)));
+        for (String beanName : candidates) {
+            if (listeners.contains(beanName)) {
+                instantiate(beanName);
+            }
+        }
+
+        // 2. 划分分组
+        List<List<String>> groups = new BeanDependencyResolver(this).group(candidates);
+
+        // 3. 并行创建
+        ForkJoinPool pool = new ForkJoinPool(this.preInstantiationParallelism, this::newWorkerThread, null, false);
+        this.parallelPhase = true;
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(groups.size());
+            for (List<String> group : groups) {
+                tasks.add(pool.submit(() -> group.forEach(this::instantiate)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BeanCreationException("并行预实例化单例bean时被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BeansException) {
+                throw (BeansException) e.getCause();
+            }
+            throw new BeanCreationException("并行预实例化单例bean失败", e.getCause());
+        } finally {
+            this.parallelPhase = false;
+            pool.shutdown();
+            this.creationLocks.clear();
+        }
+
+        // 4. 提前初始化的FactoryBean产品和SmartInitializingSingleton回调
+        for (String beanName : candidates) {
+            if (isFactoryBean(beanName)) {
+                Object factory = getBean(FACTORY_BEAN_PREFIX + beanName);
+                if (factory instanceof SmartFactoryBean && ((SmartFactoryBean<?>) factory).isEagerInit()) {
+                    getBean(beanName);
+                }
+            }
+        }
+        for (String beanName : beanNames) {
+            Object singletonInstance = getSingleton(beanName);
+            if (singletonInstance instanceof SmartInitializingSingleton) {
+                ((SmartInitializingSingleton) singletonInstance).afterSingletonsInstantiated();
+            }
+        }
+    }
+
+    private void instantiate(String beanName) {
+        if (isFactoryBean(beanName)) {
+            // FactoryBean的产品在获取时持有全局锁，留到第4步创建
+            getBean(FACTORY_BEAN_PREFIX + beanName);
+        } else {
+            getBean(beanName);
+        }
+    }
+
+    private ForkJoinWorkerThread newWorkerThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("bean-bootstrap-" + thread.getPoolIndex());
+        thread.setContextClassLoader(getBeanClassLoader());
+        return thread;
+    }
+
+    @Override
+    public Object getSingleton(String beanName, ObjectFactory<?> singletonFactory) {
+        if (!this.parallelPhase) {
+            return super.getSingleton(beanName, singletonFactory);
+        }
+
+        synchronized (this.creationLocks.computeIfAbsent(beanName, name -> new Object())) {
+            Object singletonObject = getSingleton(beanName, false);
+            if (singletonObject != null) {
+                return singletonObject;
+            }
+
+            this.creatingThreads.put(beanName, Thread.currentThread());
+            beforeSingletonCreation(beanName);
+            try {
+                singletonObject = singletonFactory.getObject();
+            } catch (IllegalStateException ex) {
+                singletonObject = getSingleton(beanName, false);
+                if (singletonObject == null) {
+                    throw ex;
+                }
+                return singletonObject;
+            } finally {
+                afterSingletonCreation(beanName);
+                this.creatingThreads.remove(beanName);
+            }
+            addSingleton(beanName, singletonObject);
+            return singletonObject;
+        }
+    }
+
+    /**
+     * 在并行阶段，如果该bean正在被另一个线程创建，等待其创建完成，而不是返回提前暴露的引用
+     *
+     * 只有allowEarlyReference为true，即getBean真正需要这个bean时才等待。
+     * allowEarlyReference为false的调用来自isTypeMatch、isFactoryBean、getType等类型判断，
+     * 按类型注入时会对所有bean逐个判断，调用线程此时通常持有自己正在创建的bean的锁，
+     * 如果在这里等待另一个线程，而那个线程也在判断当前线程正在创建的bean的类型，两者就会互相等待。
+     * 因此这类调用从不等待：返回已经创建完成的单例或者已经提前暴露的引用，没有时返回null，由调用方按bean定义推断类型。
+     */
+    @Override
+    protected Object getSingleton(String beanName, boolean allowEarlyReference) {
+        if (!this.parallelPhase || !allowEarlyReference) {
+            return super.getSingleton(beanName, allowEarlyReference);
+        }
+        while (true) {
+            awaitCreationByOtherThread(beanName);
+            Object singletonObject = super.getSingleton(beanName, true);
+            // 拿到的是提前暴露的引用，并且它属于另一个线程，那么该线程是在上面的检查之后才开始创建的，重新等待
+            if (singletonObject != null && !containsSingleton(beanName) && isCreatedByOtherThread(beanName)) {
+                continue;
+            }
+            return singletonObject;
+        }
+    }
+
+    private boolean isCreatedByOtherThread(String beanName) {
+        Thread creator = this.creatingThreads.get(beanName);
+        return creator != null && creator != Thread.currentThread();
+    }
+
+    private void awaitCreationByOtherThread(String beanName) {
+        if (isCreatedByOtherThread(beanName)) {
+            Object lock = this.creationLocks.get(beanName);
+            if (lock != null) {
+                synchronized (lock) {
+                    // 仅等待创建线程释放锁
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 根据bean定义和bean类上的注解推断bean之间的依赖关系
+     */
+    static class BeanDependencyResolver {
+
+        private final DemoListableBeanFactory beanFactory;
+
+        /**
+         * 并查集，key为bean名称，value为父节点
+         */
+        private final Map<String, String> parents = new LinkedHashMap<>();
+
+        BeanDependencyResolver(DemoListableBeanFactory beanFactory) {
+            this.beanFactory = beanFactory;
+        }
+
+        /**
+         * 把有直接或间接依赖关系的bean划分到同一分组中，分组内保持注册顺序
+         */
+        List<List<String>> group(List<String> beanNames) {
+            for (String beanName : beanNames) {
+                find(beanName);
+                for (String dependency : dependenciesOf(beanName)) {
+                    union(beanName, dependency);
+                }
+            }
+
+            Map<String, List<String>> groups = new LinkedHashMap<>();
+            for (String beanName : beanNames) {
+                groups.computeIfAbsent(find(beanName), root -> new ArrayList<>()).add(beanName);
+            }
+            return new ArrayList<>(groups.values());
+        }
+
+        Set<String> dependenciesOf(String beanName) {
+            Set<String> dependencies = new HashSet<>();
+            RootBeanDefinition bd = this.beanFactory.getMergedLocalBeanDefinition(beanName);
+
+            if (bd.getDependsOn() != null) {
+                for (String dependsOn : bd.getDependsOn()) {
+                    dependencies.add(this.beanFactory.transformedBeanName(dependsOn));
+                }
+            }
+
+            // xml中通过ref声明的依赖
+            for (PropertyValue value : bd.getPropertyValues().getPropertyValueList()) {
+                addReference(value.getValue(), dependencies);
+            }
+            ConstructorArgumentValues args = bd.getConstructorArgumentValues();
+            for (ConstructorArgumentValues.ValueHolder holder : args.getIndexedArgumentValues().values()) {
+                addReference(holder.getValue(), dependencies);
+            }
+            for (ConstructorArgumentValues.ValueHolder holder : args.getGenericArgumentValues()) {
+                addReference(holder.getValue(), dependencies);
+            }
+
+            // @Bean方法所在的配置类，以及方法参数
+            if (bd.getFactoryBeanName() != null) {
+                dependencies.add(bd.getFactoryBeanName());
+            }
+
+            for (Class<?> type : InjectionPoints.typesOf(bd, this.beanFactory.getBeanClassLoader(), this::factoryClassOf)) {
+                dependencies.addAll(Arrays.asList(this.beanFactory.getBeanNamesForType(type, true, false)));
+            }
+
+            dependencies.remove(beanName);
+            return dependencies;
+        }
+
+        private Class<?> factoryClassOf(String factoryBeanName) {
+            if (!this.beanFactory.containsBeanDefinition(factoryBeanName)) {
+                return null;
+            }
+            RootBeanDefinition factoryDefinition = this.beanFactory.getMergedLocalBeanDefinition(factoryBeanName);
+            return InjectionPoints.resolveClass(factoryDefinition, this.beanFactory.getBeanClassLoader());
+        }
+
+        private void addReference(Object value, Set<String> dependencies) {
+            if (value instanceof BeanReference) {
+                dependencies.add(this.beanFactory.transformedBeanName(((BeanReference) value).getBeanName()));
+            } else if (value instanceof RuntimeBeanNameReference) {
+                dependencies.add(((RuntimeBeanNameReference) value).getBeanName());
+            }
+        }
+
+        private String find(String name) {
+            String parent = this.parents.get(name);
+            if (parent == null) {
+                this.parents.put(name, name);
+                return name;
+            }
+            if (parent.equals(name)) {
+                return name;
+            }
+            String root = find(parent);
+            this.parents.put(name, root);
+            return root;
+        }
+
+        private void union(String a, String b) {
+            String rootA = find(a);
+            String rootB = find(b);
+            if (!rootA.equals(rootB)) {
+                this.parents.put(rootB, rootA);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.ifan112.demo.sc.beans;
+
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 在bean实例化之前，根据bean类和@Bean方法的声明推断它可能注入的依赖类型
+ *
+ * 推断是保守的：所有构造器的参数、带有@Autowired、@Inject或@Resource注解的字段和方法参数，
+ * 以及同名的所有@Bean方法的参数都会被计入。集合、Map、Optional、ObjectProvider等类型取其元素类型。
+ */
+final class InjectionPoints {
+
+    private static final List<String> INJECTION_ANNOTATIONS = Arrays.asList(
+            "org.springframework.beans.factory.annotation.Autowired",
+            "javax.inject.Inject",
+            "javax.annotation.Resource");
+
+    private InjectionPoints() {
+    }
+
+    static Set<Class<?>> typesOf(AbstractBeanDefinition bd, ClassLoader classLoader,
+                                 Function<String, Class<?>> factoryClassResolver) {
+        Set<Class<?>> types = new HashSet<>();
+
+        if (bd.getFactoryMethodName() != null) {
+            Class<?> factoryClass = bd.getFactoryBeanName() != null
+                    ? factoryClassResolver.apply(bd.getFactoryBeanName())
+                    : resolveClass(bd, classLoader);
+            if (factoryClass != null) {
+                for (Method method : ReflectionUtils.getUniqueDeclaredMethods(factoryClass)) {
+                    if (method.getName().equals(bd.getFactoryMethodName())) {
+                        addParameterTypes(method, types);
+                    }
+                }
+            }
+            return types;
+        }
+
+        Class<?> beanClass = resolveClass(bd, classLoader);
+        if (beanClass == null) {
+            return types;
+        }
+
+        for (Constructor<?> constructor : beanClass.getDeclaredConstructors()) {
+            addParameterTypes(constructor, types);
+        }
+        ReflectionUtils.doWithFields(beanClass, field -> {
+            if (isInjectionPoint(field)) {
+                addType(ResolvableType.forField(field), types);
+            }
+        });
+        ReflectionUtils.doWithMethods(beanClass, method -> {
+            if (isInjectionPoint(method)) {
+                addParameterTypes(method, types);
+            }
+        });
+        return types;
+    }
+
+    static Class<?> resolveClass(AbstractBeanDefinition bd, ClassLoader classLoader) {
+        if (bd.hasBeanClass()) {
+            return bd.getBeanClass();
+        }
+        String className = bd.getBeanClassName();
+        if (className == null || !ClassUtils.isPresent(className, classLoader)) {
+            return null;
+        }
+        return ClassUtils.resolveClassName(className, classLoader);
+    }
+
+    private static boolean isInjectionPoint(AnnotatedElement element) {
+        for (Annotation annotation : element.getAnnotations()) {
+            if (INJECTION_ANNOTATIONS.contains(annotation.annotationType().getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addParameterTypes(Executable executable, Set<Class<?>> types) {
+        for (int i = 0; i < executable.getParameterCount(); i++) {
+            addType(ResolvableType.forMethodParameter(MethodParameter.forExecutable(executable, i)), types);
+        }
+    }
+
+    private static void addType(ResolvableType type, Set<Class<?>> types) {
+        Class<?> raw = type.resolve();
+        if (raw == null) {
+            return;
+        }
+        if (raw.isArray()) {
+            addType(type.getComponentType(), types);
+            return;
+        }
+        if (Collection.class.isAssignableFrom(raw) || Optional.class == raw
+                || raw.getName().equals("org.springframework.beans.factory.ObjectFactory")
+                || raw.getName().equals("org.springframework.beans.factory.ObjectProvider")
+                || raw.getName().equals("javax.inject.Provider")) {
+            addType(type.getGeneric(0), types);
+            return;
+        }
+        if (Map.class.isAssignableFrom(raw)) {
+            addType(type.getGeneric(1), types);
+            return;
+        }
+        if (raw == Object.class || raw.isPrimitive() || ClassUtils.isPrimitiveWrapper(raw) || raw == String.class) {
+            return;
+        }
+        types.add(raw);
+    }
+}
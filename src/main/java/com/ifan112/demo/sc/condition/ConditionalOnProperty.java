@@ -0,0 +1,37 @@
+package com.ifan112.demo.sc.condition;
+
+import org.springframework.context.annotation.Conditional;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 只有当Environment中的属性等于指定值时才注册该bean
+ *
+ * 属性可以来自系统属性或环境变量，例如 -Ddemo.sc.event.async=true。
+ * 用法参考README中Condition相关用法一节。
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Documented
+@Conditional(OnPropertyCondition.class)
+public @interface ConditionalOnProperty {
+
+    /**
+     * 属性名称
+     */
+    String name();
+
+    /**
+     * 期望的属性值，忽略大小写
+     */
+    String havingValue() default "true";
+
+    /**
+     * 属性不存在时是否注册该bean
+     */
+    boolean matchIfMissing() default false;
+}
@@ -0,0 +1,27 @@
+package com.ifan112.demo.sc.condition;
+
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+import java.util.Map;
+
+/**
+ * {@link ConditionalOnProperty}的判断逻辑
+ */
+class OnPropertyCondition implements Condition {
+
+    @Override
+    public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        Map<String, Object> attributes = metadata.getAnnotationAttributes(ConditionalOnProperty.class.getName());
+        if (attributes == null) {
+            return true;
+        }
+
+        String value = context.getEnvironment().getProperty((String) attributes.get("name"));
+        if (value == null) {
+            return (Boolean) attributes.get("matchIfMissing");
+        }
+        return value.trim().equalsIgnoreCase((String) attributes.get("havingValue"));
+    }
+}
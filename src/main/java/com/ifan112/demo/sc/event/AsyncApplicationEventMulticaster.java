@@ -0,0 +1,231 @@
+package com.ifan112.demo.sc.event;
+
+import com.ifan112.demo.sc.support.ExecutorServices;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ApplicationContextEvent;
+import org.springframework.core.ResolvableType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 异步、可批量投递事件的multicaster
+ *
+ * context在初始化时查找名为applicationEventMulticaster的bean，找到后用它替换默认的SimpleApplicationEventMulticaster。
+ * 参考{@link org.springframework.context.support.AbstractApplicationContext#initApplicationEventMulticaster()}。
+ *
+ * 1. context生命周期事件（refreshed、started、stopped、closed）仍然在发布线程上同步、按顺序投递。
+ * 2. 其它事件放入每个监听器各自的有界队列后立即返回。队列已满时，发布线程被阻塞，直到监听器消费出空位。
+ *    监听器在投递线程上再发布事件时不会被阻塞：队列可能只能由它自己或者同样被阻塞的投递线程消费，等待会造成死锁。
+ *    此时队列已满的事件直接在当前线程上投递，不保证与队列中积压的事件之间的顺序。
+ * 3. 每个监听器同一时刻最多只有一个投递任务在执行，因此单个监听器收到的事件仍然是有序的；
+ *    慢的监听器只会让自己的队列积压，不会拖慢发布线程和其它监听器。
+ * 4. 实现了{@link BatchApplicationListener}的监听器一次收到队列中积压的一批事件。
+ * 5. 匹配事件的监听器通过父类{@link TypeIndexedApplicationEventMulticaster}的索引查找。
+ * 6. 监听器被移除时，它的队列随之被移除，已经在队列中的事件仍然会被投递。
+ *
+ * 投递任务运行在{@link ExecutorServices#newExecutor(String, int)}创建的executor上，
+ * 支持虚拟线程时使用虚拟线程，否则使用固定大小的线程池。
+ */
+public class AsyncApplicationEventMulticaster extends TypeIndexedApplicationEventMulticaster implements DisposableBean {
+
+    /**
+     * 一个投递任务最多连续处理的批次数，之后把线程让给其它监听器
+     */
+    private static final int MAX_BATCHES_PER_TASK = 16;
+
+    private final ExecutorService executor;
+
+    private final int queueCapacity;
+
+    private final Map<ApplicationListener<?>, ListenerChannel> channels = new ConcurrentHashMap<>();
+
+    /**
+     * 当前线程正在投递事件时，指向对应的队列
+     */
+    private final ThreadLocal<ListenerChannel> delivering = new ThreadLocal<>();
+
+    public AsyncApplicationEventMulticaster(int queueCapacity, int threads) {
+        this.queueCapacity = queueCapacity;
+        this.executor = ExecutorServices.newExecutor("event-multicaster", threads);
+    }
+
+    @Override
+    public void multicastEvent(ApplicationEvent event, ResolvableType eventType) {
+        if (event instanceof ApplicationContextEvent) {
+            super.multicastEvent(event, eventType);
+            return;
+        }
+
+        for (ApplicationListener<?> listener : retrieveListeners(event, eventType)) {
+            this.channels.computeIfAbsent(listener, ListenerChannel::new).offer(event);
+        }
+    }
+
+    /**
+     * 等待所有队列中的事件投递完毕，然后关闭executor
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        this.executor.shutdown();
+        this.executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void removeApplicationListener(ApplicationListener<?> listener) {
+        super.removeApplicationListener(listener);
+        pruneChannels();
+    }
+
+    @Override
+    public void removeApplicationListenerBean(String listenerBeanName) {
+        super.removeApplicationListenerBean(listenerBeanName);
+        pruneChannels();
+    }
+
+    @Override
+    public void removeAllListeners() {
+        super.removeAllListeners();
+        this.channels.clear();
+    }
+
+    /**
+     * 移除已不再注册的监听器的队列。监听器bean只记录了名称，这里与当前所有监听器的实例比较
+     */
+    private void pruneChannels() {
+        if (!this.channels.isEmpty()) {
+            this.channels.keySet().retainAll(new HashSet<>(getApplicationListeners()));
+        }
+    }
+
+    /**
+     * 当前积压在所有监听器队列中的事件个数
+     */
+    public int getPendingEvents() {
+        int pending = 0;
+        for (ListenerChannel channel : this.channels.values()) {
+            pending += channel.queue.size();
+        }
+        return pending;
+    }
+
+    /**
+     * 监听器队列的个数
+     */
+    public int getListenerChannels() {
+        return this.channels.size();
+    }
+
+
+    /**
+     * 单个监听器的事件队列
+     */
+    private class ListenerChannel implements Runnable {
+
+        private final ApplicationListener<?> listener;
+
+        private final BlockingQueue<ApplicationEvent> queue;
+
+        private final int maxBatchSize;
+
+        /**
+         * 是否已经提交了投递任务
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        ListenerChannel(ApplicationListener<?> listener) {
+            this.listener = listener;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.maxBatchSize = listener instanceof BatchApplicationListener
+                    ? Math.max(1, ((BatchApplicationListener<?>) listener).getMaxBatchSize()) : 1;
+        }
+
+        void offer(ApplicationEvent event) {
+            if (delivering.get() != null) {
+                if (!this.queue.offer(event)) {
+                    deliver(Collections.singletonList(event));
+                    return;
+                }
+            } else {
+                try {
+                    this.queue.put(event);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (this.scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // executor已经关闭，在发布线程上投递
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            List<ApplicationEvent> batch = new ArrayList<>(this.maxBatchSize);
+            // executor已关闭时run()在发布线程上执行，结束后恢复
+            ListenerChannel previous = delivering.get();
+            delivering.set(this);
+            try {
+                for (int i = 0; i < MAX_BATCHES_PER_TASK; i++) {
+                    if (this.queue.drainTo(batch, this.maxBatchSize) == 0) {
+                        break;
+                    }
+                    deliver(batch);
+                    batch.clear();
+                }
+            } finally {
+                if (previous == null) {
+                    delivering.remove();
+                } else {
+                    delivering.set(previous);
+                }
+            }
+
+            this.scheduled.set(false);
+            // 在重置标志之前放入的事件可能没有触发新的投递任务，这里再检查一次
+            if (!this.queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void deliver(List<ApplicationEvent> batch) {
+            try {
+                if (this.listener instanceof BatchApplicationListener) {
+                    ((BatchApplicationListener) this.listener).onApplicationEvents(batch);
+                } else {
+                    for (ApplicationEvent event : batch) {
+                        invokeListener(this.listener, event);
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (getErrorHandler() == null) {
+                    Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+                } else {
+                    getErrorHandler().handleError(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.ifan112.demo.sc.event;
+
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 可以一次接收一批事件的监听器
+ *
+ * 使用{@link AsyncApplicationEventMulticaster}时，队列中积压的事件会被合并成一批，一次性交给该监听器处理。
+ * 使用其它multicaster时，事件仍然逐个通过onApplicationEvent送达。
+ */
+public interface BatchApplicationListener<E extends ApplicationEvent> extends ApplicationListener<E> {
+
+    void onApplicationEvents(List<E> events);
+
+    /**
+     * 每批事件的最大个数
+     */
+    default int getMaxBatchSize() {
+        return 64;
+    }
+
+    @Override
+    default void onApplicationEvent(E event) {
+        onApplicationEvents(Collections.singletonList(event));
+    }
+}
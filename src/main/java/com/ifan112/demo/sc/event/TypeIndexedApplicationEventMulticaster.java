@@ -0,0 +1,203 @@
+package com.ifan112.demo.sc.event;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.PayloadApplicationEvent;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.ResolvableTypeProvider;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+
+/**
+ * 按事件类型预先计算好监听器数组的multicaster
+ *
+ * 默认的SimpleApplicationEventMulticaster在每次发布事件时，都要解析事件的ResolvableType、创建缓存key，
+ * 并把匹配的监听器复制到一个新的集合中。监听器很多、事件类型也很多时，这部分开销占了发布事件的大部分时间。
+ *
+ * 这里维护一个写时复制的索引：事件类 -> 事件源类 -> 监听器数组。
+ * 某个类型的事件第一次发布时，仍然由父类按泛型解析出匹配的监听器，结果被放入索引；
+ * 此后发布同一类型的事件只需要两次HashMap查找，然后遍历数组，不再有反射和内存分配。
+ * 只有在添加或移除监听器时，整个索引才会被清空。
+ *
+ * 以下情况不使用索引，交给父类处理：
+ * 1. PayloadApplicationEvent以及实现了ResolvableTypeProvider的事件，它们匹配的监听器取决于泛型参数，而不只是事件类；
+ * 2. 事件类或事件源类不能被安全地缓存（由其它类加载器加载）；
+ * 3. 存在非单例的监听器bean，每次发布事件都需要从beanFactory重新获取。
+ */
+public class TypeIndexedApplicationEventMulticaster extends SimpleApplicationEventMulticaster {
+
+    private static final ApplicationListener<?>[] NO_LISTENERS = new ApplicationListener<?>[0];
+
+    private final Object indexMonitor = new Object();
+
+    private final Set<String> listenerBeanNames = new CopyOnWriteArraySet<>();
+
+    /**
+     * 事件类 -> 事件源类 -> 监听器数组，两层Map都只在indexMonitor保护下整体替换，不会被原地修改
+     */
+    private volatile Map<Class<?>, Map<Class<?>, ApplicationListener<?>[]>> index = Collections.emptyMap();
+
+    /**
+     * 每次添加或移除监听器时递增，用于丢弃基于旧监听器集合计算出的结果
+     */
+    private volatile long generation;
+
+    private ClassLoader beanClassLoader;
+
+    private BeanFactory beanFactory;
+
+    public TypeIndexedApplicationEventMulticaster() {
+    }
+
+    public TypeIndexedApplicationEventMulticaster(BeanFactory beanFactory) {
+        setBeanFactory(beanFactory);
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        super.setBeanClassLoader(classLoader);
+        this.beanClassLoader = classLoader;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        super.setBeanFactory(beanFactory);
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void multicastEvent(ApplicationEvent event, ResolvableType eventType) {
+        Executor executor = getTaskExecutor();
+        for (ApplicationListener<?> listener : retrieveListeners(event, eventType)) {
+            if (executor != null) {
+                executor.execute(() -> invokeListener(listener, event));
+            } else {
+                invokeListener(listener, event);
+            }
+        }
+    }
+
+    /**
+     * 返回匹配该事件的监听器，调用方不能修改返回的数组
+     */
+    protected ApplicationListener<?>[] retrieveListeners(ApplicationEvent event, ResolvableType eventType) {
+        Class<?> eventClass = event.getClass();
+        Class<?> sourceClass = event.getSource().getClass();
+
+        Map<Class<?>, ApplicationListener<?>[]> bySource = this.index.get(eventClass);
+        if (bySource != null) {
+            ApplicationListener<?>[] listeners = bySource.get(sourceClass);
+            if (listeners != null) {
+                return listeners;
+            }
+        }
+
+        long expectedGeneration = this.generation;
+        ResolvableType type = (eventType != null ? eventType : ResolvableType.forInstance(event));
+        ApplicationListener<?>[] listeners = toArray(getApplicationListeners(event, type));
+        if (isIndexable(event, type)) {
+            putIndex(eventClass, sourceClass, listeners, expectedGeneration);
+        }
+        return listeners;
+    }
+
+    private boolean isIndexable(ApplicationEvent event, ResolvableType eventType) {
+        if (event instanceof PayloadApplicationEvent || event instanceof ResolvableTypeProvider) {
+            return false;
+        }
+        if (eventType.resolve() != event.getClass()) {
+            return false;
+        }
+        // 与父类相同，没有设置类加载器时认为总是可以缓存
+        if (this.beanClassLoader != null && (!ClassUtils.isCacheSafe(event.getClass(), this.beanClassLoader)
+                || !ClassUtils.isCacheSafe(event.getSource().getClass(), this.beanClassLoader))) {
+            return false;
+        }
+        for (String beanName : this.listenerBeanNames) {
+            try {
+                if (this.beanFactory == null || !this.beanFactory.isSingleton(beanName)) {
+                    return false;
+                }
+            } catch (NoSuchBeanDefinitionException e) {
+                // 监听器bean已被移除，父类同样会忽略它
+            }
+        }
+        return true;
+    }
+
+    private void putIndex(Class<?> eventClass, Class<?> sourceClass, ApplicationListener<?>[] listeners,
+                          long expectedGeneration) {
+        synchronized (this.indexMonitor) {
+            if (this.generation != expectedGeneration) {
+                return;
+            }
+            Map<Class<?>, ApplicationListener<?>[]> bySource =
+                    new HashMap<>(this.index.getOrDefault(eventClass, Collections.emptyMap()));
+            bySource.put(sourceClass, listeners);
+            Map<Class<?>, Map<Class<?>, ApplicationListener<?>[]>> newIndex = new HashMap<>(this.index);
+            newIndex.put(eventClass, bySource);
+            this.index = newIndex;
+        }
+    }
+
+    private static ApplicationListener<?>[] toArray(Collection<ApplicationListener<?>> listeners) {
+        return listeners.isEmpty() ? NO_LISTENERS : listeners.toArray(NO_LISTENERS);
+    }
+
+    /**
+     * 已被索引的事件类的个数
+     */
+    public int getIndexedEventTypes() {
+        return this.index.size();
+    }
+
+    private void invalidate() {
+        synchronized (this.indexMonitor) {
+            this.generation++;
+            this.index = Collections.emptyMap();
+        }
+    }
+
+    @Override
+    public void addApplicationListener(ApplicationListener<?> listener) {
+        super.addApplicationListener(listener);
+        invalidate();
+    }
+
+    @Override
+    public void addApplicationListenerBean(String listenerBeanName) {
+        super.addApplicationListenerBean(listenerBeanName);
+        this.listenerBeanNames.add(listenerBeanName);
+        invalidate();
+    }
+
+    @Override
+    public void removeApplicationListener(ApplicationListener<?> listener) {
+        super.removeApplicationListener(listener);
+        invalidate();
+    }
+
+    @Override
+    public void removeApplicationListenerBean(String listenerBeanName) {
+        super.removeApplicationListenerBean(listenerBeanName);
+        this.listenerBeanNames.remove(listenerBeanName);
+        invalidate();
+    }
+
+    @Override
+    public void removeAllListeners() {
+        super.removeAllListeners();
+        this.listenerBeanNames.clear();
+        invalidate();
+    }
+}
@@ -0,0 +1,17 @@
+package com.ifan112.demo.sc.inflight;
+
+/**
+ * context停止之后，对新调用的处理方式
+ */
+public enum AdmissionPolicy {
+
+    /**
+     * 立即抛出RejectedExecutionException
+     */
+    REJECT,
+
+    /**
+     * 在调用线程上等待context重新启动，超时后抛出RejectedExecutionException
+     */
+    QUEUE
+}
@@ -0,0 +1,57 @@
+package com.ifan112.demo.sc.inflight;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段的进行中调用计数器
+ *
+ * 计数分散在多个槽位上，每个线程按线程id固定使用其中一个，调用开始时加1、结束时减1，
+ * 一次调用的加减总是落在同一个槽位上。相邻槽位之间间隔STRIDE个long（128字节），避免不同线程的槽位位于同一缓存行。
+ * sum()逐个读取槽位，调用仍在进入时得到的不是某一时刻的精确值；停止接收新调用之后，它会随调用结束减少到0。
+ */
+public final class InFlightCounter {
+
+    private static final int STRIDE = 16;
+
+    private static final int STRIPES = stripes();
+
+    private final String name;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);
+
+    InFlightCounter(String name) {
+        this.name = name;
+    }
+
+    private static int stripes() {
+        int stripes = Math.max(Runtime.getRuntime().availableProcessors() * 2, 16);
+        return Integer.highestOneBit(stripes - 1) << 1;
+    }
+
+    private static int index() {
+        return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIDE;
+    }
+
+    void increment() {
+        this.cells.getAndIncrement(index());
+    }
+
+    void decrement() {
+        this.cells.getAndDecrement(index());
+    }
+
+    /**
+     * 进行中的调用个数
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += this.cells.get(i * STRIDE);
+        }
+        return sum;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+}
@@ -0,0 +1,253 @@
+package com.ifan112.demo.sc.inflight;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 记录被切面增强的bean上进行中的调用，context停止时等待它们结束
+ *
+ * ApplicationAspectConfiguration在每次调用前后调用{@link #enter(Class)}和{@link #exit(InFlightCounter)}，
+ * 计数按目标类分开，由{@link InFlightCounter}分段记录，调用线程之间不争抢同一个缓存行。
+ *
+ * 作为phase最大的SmartLifecycle，context.stop()和context.close()时它最先停止：
+ * 先关闭入口，之后开始的调用按照{@link AdmissionPolicy}被拒绝或者等待重新启动；
+ * 再等待已经开始的调用结束，最多等待drain-timeout-millis毫秒，超时后记录仍在进行的调用并继续停止其他组件。
+ * context.start()重新打开入口，唤醒等待中的调用。
+ *
+ * 只有线程最外层的调用经过入口检查。进行中的调用再调用其他被增强的bean（嵌套调用）时，
+ * 该线程已经持有一个计数，stop()正在等待它结束，因此嵌套调用总是被放行，不会因为入口关闭而失败或者等待。
+ * 调用深度记录在ThreadLocal中。
+ *
+ * 容器的生命周期回调（例如context关闭时销毁被代理的prototype bean，调用它的destroy()）
+ * 通过{@link #enter(Class, boolean)}进入，同样被计数但不检查入口，否则这些bean在停止之后就无法被销毁。
+ *
+ * 支持的系统属性：
+ * demo.sc.inflight.policy                停止之后新调用的处理方式，默认REJECT
+ * demo.sc.inflight.drain-timeout-millis  等待进行中的调用结束的最长时间，默认10000
+ * demo.sc.inflight.queue-timeout-millis  QUEUE方式下新调用等待重新启动的最长时间，默认5000
+ */
+@Component
+public class InFlightTracker implements SmartLifecycle, DisposableBean {
+
+    private static final Logger LOGGER = LogManager.getLogger("startup");
+
+    private static final long DRAIN_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Value("${demo.sc.inflight.policy:REJECT}")
+    private AdmissionPolicy policy = AdmissionPolicy.REJECT;
+
+    @Value("${demo.sc.inflight.drain-timeout-millis:10000}")
+    private long drainTimeoutMillis = 10_000;
+
+    @Value("${demo.sc.inflight.queue-timeout-millis:5000}")
+    private long queueTimeoutMillis = 5_000;
+
+    private final List<InFlightCounter> counters = new CopyOnWriteArrayList<>();
+
+    private final ClassValue<InFlightCounter> countersByClass = new ClassValue<InFlightCounter>() {
+        @Override
+        protected InFlightCounter computeValue(Class<?> type) {
+            InFlightCounter counter = new InFlightCounter(type.getName());
+            counters.add(counter);
+            return counter;
+        }
+    };
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * 当前线程在该tracker上进行中的调用层数，大于0时说明是嵌套调用
+     */
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final Object gate = new Object();
+
+    /**
+     * context刷新期间（例如预热）就可能有调用，因此初始为打开状态
+     */
+    private volatile boolean accepting = true;
+
+    private volatile boolean running;
+
+    private volatile boolean terminated;
+
+    public InFlightTracker() {
+    }
+
+    public InFlightTracker(AdmissionPolicy policy, long drainTimeoutMillis, long queueTimeoutMillis) {
+        this.policy = policy;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    /**
+     * 调用开始前调用
+     *
+     * 先增加计数再检查入口：stop()关闭入口之后读到的计数一定包含了所有通过检查的调用。
+     * 嵌套调用只增加计数，不检查入口
+     *
+     * @return 调用结束时传给{@link #exit(InFlightCounter)}的计数器
+     * @throws RejectedExecutionException 入口已关闭，并且按照policy不再等待
+     */
+    public InFlightCounter enter(Class<?> targetClass) {
+        return enter(targetClass, true);
+    }
+
+    /**
+     * 调用开始前调用
+     *
+     * @param gated 为false时只计数，不检查入口，用于容器的生命周期回调
+     * @see #enter(Class)
+     */
+    public InFlightCounter enter(Class<?> targetClass, boolean gated) {
+        InFlightCounter counter = this.countersByClass.get(targetClass);
+        int[] depth = this.depth.get();
+        counter.increment();
+        if (gated && depth[0] == 0) {
+            while (!this.accepting) {
+                counter.decrement();
+                awaitAccepting(targetClass);
+                counter.increment();
+            }
+        }
+        depth[0]++;
+        return counter;
+    }
+
+    /**
+     * 调用结束后调用，与{@link #enter(Class)}或{@link #enter(Class, boolean)}成对出现
+     */
+    public void exit(InFlightCounter counter) {
+        counter.decrement();
+        this.depth.get()[0]--;
+    }
+
+    private void awaitAccepting(Class<?> targetClass) {
+        if (this.policy == AdmissionPolicy.QUEUE && !this.terminated) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.queueTimeoutMillis);
+            synchronized (this.gate) {
+                long remaining;
+                while (!this.accepting && !this.terminated && (remaining = deadline - System.nanoTime()) > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this.gate, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            if (this.accepting) {
+                return;
+            }
+        }
+        this.rejected.increment();
+        throw new RejectedExecutionException(
+                (this.terminated ? "context已关闭，拒绝调用" : "context已停止，拒绝调用") + targetClass.getName());
+    }
+
+    @Override
+    public void start() {
+        synchronized (this.gate) {
+            this.accepting = true;
+            this.running = true;
+            this.gate.notifyAll();
+        }
+    }
+
+    @Override
+    public void stop() {
+        this.accepting = false;
+        this.running = false;
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.drainTimeoutMillis);
+        while (getInFlightCount() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                LOGGER.warn("等待{}毫秒后仍有调用没有结束：{}", this.drainTimeoutMillis, getInFlightCounts());
+                return;
+            }
+            LockSupport.parkNanos(DRAIN_PARK_NANOS);
+        }
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    /**
+     * 最先停止、最后启动，停止时其他组件（例如AsyncMessageSender）仍然可用
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * context关闭之后不会再启动，唤醒所有等待中的调用并拒绝它们
+     */
+    @Override
+    public void destroy() {
+        synchronized (this.gate) {
+            this.accepting = false;
+            this.terminated = true;
+            this.gate.notifyAll();
+        }
+    }
+
+    /**
+     * 所有bean上进行中的调用个数
+     */
+    public long getInFlightCount() {
+        long sum = 0;
+        for (InFlightCounter counter : this.counters) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * 按目标类分别统计的进行中的调用个数，不包含为0的类
+     */
+    public Map<String, Long> getInFlightCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (InFlightCounter counter : this.counters) {
+            long sum = counter.sum();
+            if (sum != 0) {
+                counts.put(counter.getName(), sum);
+            }
+        }
+        return counts;
+    }
+
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    public AdmissionPolicy getPolicy() {
+        return this.policy;
+    }
+}
@@ -0,0 +1,22 @@
+package com.ifan112.demo.sc.journal;
+
+/**
+ * 日志写入后何时把映射内存中的数据强制刷到磁盘
+ */
+public enum ForcePolicy {
+
+    /**
+     * 从不主动刷盘，由操作系统决定何时写回，进程崩溃不会丢数据，但机器掉电可能丢失最近的记录
+     */
+    NONE,
+
+    /**
+     * 每条记录写入后都刷盘
+     */
+    EVERY_RECORD,
+
+    /**
+     * 每写入forceInterval条记录刷盘一次
+     */
+    EVERY_N_RECORDS
+}
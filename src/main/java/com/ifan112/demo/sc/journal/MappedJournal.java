@@ -0,0 +1,356 @@
+package com.ifan112.demo.sc.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的只追加日志
+ *
+ * 日志由目录下若干个大小相同的段文件组成，文件名是段的序号，例如00000000000000000000.journal。
+ * 追加记录只是写入映射的内存，不需要每条记录一次write系统调用；何时刷盘由{@link ForcePolicy}决定。
+ * 当前段剩余的空间放不下下一条记录时，切换到新的段文件。
+ *
+ * 每条记录的格式：
+ * <pre>
+ * | header（int） | crc32（int） | payload（header - 1个字节） |
+ * </pre>
+ * header等于payload的长度加1，因此0表示段文件中尚未写入的部分。
+ * 回放时遇到header为0，或者校验和不一致（写入到一半时进程崩溃），即认为该段已经结束。
+ *
+ * 重新打开已存在的目录时，从最后一个段中最后一条完整记录之后继续追加，之后只写了一部分的记录被清除。
+ * 追加操作是同步的，可以被多个线程调用。
+ *
+ * 打开时锁定目录下的journal.lock文件，同一个目录同时只能被一个MappedJournal（包括其它进程中的）打开。
+ *
+ * 切换段文件和关闭时立即解除旧段的内存映射，不等待GC回收MappedByteBuffer，长时间运行时不会累积大量映射。
+ * 项目以jdk8为编译目标，通过反射调用sun.misc.Unsafe.invokeCleaner（jdk9以上）或DirectBuffer.cleaner()（jdk8），
+ * 都不可用时仍然交给GC。
+ */
+public class MappedJournal implements Closeable {
+
+    private static final String SUFFIX = ".journal";
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final String LOCK_FILE = "journal.lock";
+
+    private static final MethodHandle UNMAP = findUnmap();
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final ForcePolicy forcePolicy;
+
+    private final int forceInterval;
+
+    private final CRC32 crc = new CRC32();
+
+    private final FileChannel lockChannel;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer segment;
+
+    private long segmentIndex;
+
+    private int unforced;
+
+    private boolean closed;
+
+    /**
+     * @param directory     段文件所在的目录，不存在时自动创建
+     * @param segmentSize   每个段文件的大小
+     * @param forcePolicy   刷盘策略
+     * @param forceInterval EVERY_N_RECORDS策略下，每多少条记录刷盘一次
+     */
+    public MappedJournal(Path directory, int segmentSize, ForcePolicy forcePolicy, int forceInterval) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("段文件太小：" + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forcePolicy = forcePolicy;
+        this.forceInterval = Math.max(1, forceInterval);
+
+        Files.createDirectories(directory);
+        this.lockChannel = lock(directory);
+        try {
+            List<Path> segments = listSegments(directory);
+            if (segments.isEmpty()) {
+                openSegment(0);
+            } else {
+                Path last = segments.get(segments.size() - 1);
+                openSegment(segmentIndexOf(last));
+                int end = scanEnd(this.segment);
+                clearTail(this.segment, end);
+                this.segment.position(end);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (this.channel != null) {
+                this.channel.close();
+            }
+            this.lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 锁定目录，锁随返回的channel关闭而释放
+     */
+    private static FileChannel lock(Path directory) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException("日志目录已被其它MappedJournal打开：" + directory);
+        }
+        return channel;
+    }
+
+    /**
+     * 追加一条记录
+     */
+    public synchronized void append(byte[] payload) throws IOException {
+        if (this.closed) {
+            throw new IllegalStateException("日志已关闭：" + this.directory);
+        }
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > this.segmentSize) {
+            throw new IllegalArgumentException("记录长度" + payload.length + "超过了段文件的大小" + this.segmentSize);
+        }
+        if (this.segment.remaining() < recordSize) {
+            roll();
+        }
+
+        this.crc.reset();
+        this.crc.update(payload, 0, payload.length);
+        int position = this.segment.position();
+        // 先写入校验和与内容，最后写入header，回放时不会读到只写了一半的记录
+        this.segment.putInt(position + 4, (int) this.crc.getValue());
+        this.segment.position(position + HEADER_SIZE);
+        this.segment.put(payload);
+        this.segment.putInt(position, payload.length + 1);
+
+        if (this.forcePolicy == ForcePolicy.EVERY_RECORD
+                || (this.forcePolicy == ForcePolicy.EVERY_N_RECORDS && ++this.unforced >= this.forceInterval)) {
+            force();
+        }
+    }
+
+    public void append(String message) throws IOException {
+        append(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 把当前段中尚未刷盘的数据写到磁盘
+     */
+    public synchronized void force() {
+        if (this.closed) {
+            throw new IllegalStateException("日志已关闭：" + this.directory);
+        }
+        this.segment.force();
+        this.unforced = 0;
+    }
+
+    /**
+     * 按写入顺序回放目录下的全部记录
+     */
+    public static void replay(Path directory, Consumer<byte[]> handler) throws IOException {
+        for (Path path : listSegments(directory)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                try {
+                    ByteBuffer slice = buffer.duplicate();
+                    byte[] payload;
+                    while ((payload = readRecord(slice)) != null) {
+                        handler.accept(payload);
+                    }
+                } finally {
+                    unmap(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取buffer当前位置的一条记录，没有完整的记录时返回null
+     */
+    private static byte[] readRecord(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int position = buffer.position();
+        int length = buffer.getInt(position) - 1;
+        if (length < 0 || length > buffer.remaining() - HEADER_SIZE) {
+            return null;
+        }
+        int checksum = buffer.getInt(position + 4);
+        byte[] payload = new byte[length];
+        buffer.position(position + HEADER_SIZE);
+        buffer.get(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            buffer.position(position);
+            return null;
+        }
+        return payload;
+    }
+
+    private static int scanEnd(MappedByteBuffer segment) {
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position(0);
+        while (readRecord(buffer) != null) {
+            // 跳过完整的记录
+        }
+        return buffer.position();
+    }
+
+    /**
+     * 清除end之后残留的字节
+     *
+     * 进程在写入记录的中途崩溃时，header可能仍是0，而校验和与内容已经写入了一部分；也可能header已经写入，内容不完整。
+     * 之后追加的记录如果更短，这些残留的字节就紧跟在它后面，回放时可能被当作一条记录。
+     * 这里先找到最后一个非0的字节，只改写这一段，段文件中从未写入的页面不会因此变脏。
+     */
+    private static void clearTail(MappedByteBuffer segment, int end) {
+        int limit = segment.limit();
+        int last = end - 1;
+        int i = end;
+        for (; i + 8 <= limit; i += 8) {
+            if (segment.getLong(i) != 0) {
+                last = i + 7;
+            }
+        }
+        for (; i < limit; i++) {
+            if (segment.get(i) != 0) {
+                last = i;
+            }
+        }
+        for (i = end; i <= last; i++) {
+            segment.put(i, (byte) 0);
+        }
+    }
+
+    private void roll() throws IOException {
+        this.segment.force();
+        this.unforced = 0;
+        this.channel.close();
+        unmap(this.segment);
+        openSegment(this.segmentIndex + 1);
+    }
+
+    /**
+     * 解除映射之后再访问buffer会导致jvm崩溃，调用方必须保证不再使用它
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (UNMAP == null) {
+            return;
+        }
+        try {
+            UNMAP.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            // 交给GC回收
+        }
+    }
+
+    private static MethodHandle findUnmap() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            // jdk9以上
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return lookup.unreflect(invokeCleaner).bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // jdk8
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = cleaner.getReturnType().getMethod("clean");
+            MethodHandle getCleaner = lookup.unreflect(cleaner);
+            MethodHandle doClean = lookup.unreflect(clean);
+            return MethodHandles.filterReturnValue(getCleaner, doClean)
+                    .asType(MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void openSegment(long index) throws IOException {
+        Path path = this.directory.resolve(String.format("%020d%s", index, SUFFIX));
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        this.segmentIndex = index;
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long segmentIndexOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * 刷盘并关闭当前段文件
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.segment.force();
+            this.channel.close();
+            unmap(this.segment);
+        } finally {
+            this.lockChannel.close();
+        }
+    }
+}
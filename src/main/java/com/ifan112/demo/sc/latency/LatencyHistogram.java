@@ -0,0 +1,121 @@
+package com.ifan112.demo.sc.latency;
+
+import java.util.Arrays;
+
+/**
+ * 记录耗时（纳秒）的对数-线性直方图，与HdrHistogram的桶划分方式相同
+ *
+ * 小于128的值每个值一个桶；此后每个2的幂区间[2^e, 2^(e+1))再均分为64个桶，桶宽为2^(e-6)，
+ * 因此任何值的相对误差都小于1/64。最大可以区分2^36纳秒（约68秒），更大的值计入最后一个桶，最大值单独精确记录。
+ *
+ * 不是线程安全的：每个实例只由一个线程写入，读取和合并在写入停止之后进行，参考{@link ThreadRecorder}。
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int MAX_MAGNITUDE = 36;
+
+    private static final long MAX_TRACKABLE_VALUE = (1L << MAX_MAGNITUDE) - 1;
+
+    static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+
+    private long totalCount;
+
+    private long totalValue;
+
+    private long maxValue;
+
+    static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKET_HALF_COUNT) {
+            return (int) Math.max(value, 0);
+        }
+        if (value > MAX_TRACKABLE_VALUE) {
+            value = MAX_TRACKABLE_VALUE;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * 桶中能够记录的最大值
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < 2 * SUB_BUCKET_HALF_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - shift * SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public void record(long value) {
+        this.counts[indexOf(value)]++;
+        this.totalCount++;
+        this.totalValue += value;
+        if (value > this.maxValue) {
+            this.maxValue = value;
+        }
+    }
+
+    /**
+     * 把other的计数合并到当前直方图中
+     */
+    public void add(LatencyHistogram other) {
+        if (other.totalCount == 0) {
+            return;
+        }
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.totalCount += other.totalCount;
+        this.totalValue += other.totalValue;
+        this.maxValue = Math.max(this.maxValue, other.maxValue);
+    }
+
+    public void reset() {
+        if (this.totalCount == 0) {
+            return;
+        }
+        Arrays.fill(this.counts, 0);
+        this.totalCount = 0;
+        this.totalValue = 0;
+        this.maxValue = 0;
+    }
+
+    /**
+     * 不小于percentile%的记录的值，返回所在桶的上界，但不超过最大值
+     *
+     * @param percentile 0到100之间
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (this.totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * this.totalCount));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += this.counts[i];
+            if (cumulative >= target) {
+                return Math.min(highestEquivalentValue(i), this.maxValue);
+            }
+        }
+        return this.maxValue;
+    }
+
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    public long getMaxValue() {
+        return this.maxValue;
+    }
+
+    public double getMean() {
+        return this.totalCount == 0 ? 0 : (double) this.totalValue / this.totalCount;
+    }
+}
@@ -0,0 +1,261 @@
+package com.ifan112.demo.sc.latency;
+
+import com.ifan112.demo.sc.support.ExecutorServices;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ObjectUtils;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按方法记录被增强方法的耗时，并通过JMX导出
+ *
+ * 切面在方法第一次被调用时由{@link #get(Method, Class)}取得方法对应的{@link MethodLatency}，
+ * 同时在平台MBeanServer上注册它。与MethodMetadataCache相同，按(方法, 目标类)区分，同一个接口方法的不同实现分别统计。此后每次调用只把耗时写入调用线程自己的{@link ThreadRecorder}，线程之间不竞争。
+ * 虚拟线程以及调用次数还不多的线程没有自己的ThreadRecorder，写入方法的{@link SharedRecorder}，
+ * 避免executor中大量短暂的线程各自为每个方法分配直方图。
+ *
+ * 每隔interval-millis毫秒，后台线程调用{@link #rollover()}：依次切换每个线程的记录，把上一个区间的直方图和SharedRecorder按方法合并，
+ * 计算p50、p99、p999和最大值后清空。MBean上看到的是最近一个完整区间的统计值。
+ * 已经结束的线程在最后一次合并之后被移除。
+ *
+ * ObjectName中带有context的id，同一个jvm中的多个context（例如SwappableContextHolder切换期间）各自注册，互不冲突；
+ * context关闭时注销。
+ *
+ * 支持的系统属性：
+ * demo.sc.latency.interval-millis  区间长度，默认10000；小于等于0时不自动切换，只能手动调用rollover()
+ * demo.sc.latency.jmx              是否注册MBean，默认true
+ */
+@Component
+public class LatencyRecorder implements ApplicationContextAware, InitializingBean, DisposableBean {
+
+    private static final Logger LOGGER = LogManager.getLogger("startup");
+
+    static final String DOMAIN = "com.ifan112.demo.sc";
+
+    @Value("${demo.sc.latency.interval-millis:10000}")
+    private long intervalMillis = 10_000;
+
+    @Value("${demo.sc.latency.jmx:true}")
+    private boolean jmxEnabled = true;
+
+    private String contextId = ObjectUtils.getIdentityHexString(this);
+
+    /**
+     * 先按目标类、再按方法查找，targetClass为null时使用方法的声明类。只在register中写入
+     */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Method, MethodLatency>> cache = new ConcurrentHashMap<>(16);
+
+    private final List<MethodLatency> methods = new CopyOnWriteArrayList<>();
+
+    private final List<ThreadRecorder> threadRecorders = new CopyOnWriteArrayList<>();
+
+    /**
+     * ThreadRecorder在线程开始使用它时才登记到threadRecorders中
+     */
+    private final ThreadLocal<ThreadRecorder> currentRecorder = ThreadLocal.withInitial(() -> new ThreadRecorder(Thread.currentThread()));
+
+    private volatile boolean destroyed;
+
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    private ScheduledExecutorService scheduler;
+
+    private long intervalStart = System.nanoTime();
+
+    public LatencyRecorder() {
+    }
+
+    public LatencyRecorder(long intervalMillis, boolean jmxEnabled) {
+        this.intervalMillis = intervalMillis;
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        this.contextId = applicationContext.getId();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (this.intervalMillis > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(ExecutorServices.daemonThreadFactory("latency-rollover"));
+            this.scheduler.scheduleAtFixedRate(this::rollover, this.intervalMillis, this.intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 与MethodMetadataCache相同，命中时只有两次ConcurrentHashMap的读取，不分配对象
+     *
+     * @param method      被代理的方法
+     * @param targetClass 目标类，可以为null
+     */
+    public MethodLatency get(Method method, Class<?> targetClass) {
+        ConcurrentMap<Method, MethodLatency> methods = this.cache.get(targetClass != null ? targetClass : method.getDeclaringClass());
+        MethodLatency latency = methods == null ? null : methods.get(method);
+        if (latency == null) {
+            latency = register(method, targetClass);
+        }
+        return latency;
+    }
+
+    private synchronized MethodLatency register(Method method, Class<?> targetClass) {
+        Class<?> key = targetClass != null ? targetClass : method.getDeclaringClass();
+        ConcurrentMap<Method, MethodLatency> methods = this.cache.get(key);
+        if (methods == null) {
+            methods = new ConcurrentHashMap<>(16);
+            this.cache.put(key, methods);
+        }
+        MethodLatency latency = methods.get(method);
+        if (latency != null) {
+            return latency;
+        }
+
+        String name = methodName(ClassUtils.getUserClass(key), AopUtils.getMostSpecificMethod(method, targetClass));
+        ObjectName objectName = null;
+        if (this.jmxEnabled) {
+            try {
+                objectName = new ObjectName(DOMAIN + ":type=MethodLatency,context=" + ObjectName.quote(this.contextId)
+                        + ",name=" + ObjectName.quote(name));
+            } catch (MalformedObjectNameException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        latency = new MethodLatency(this, this.methods.size(), name, objectName);
+        if (objectName != null) {
+            try {
+                this.mBeanServer.registerMBean(latency, objectName);
+            } catch (JMException e) {
+                LOGGER.warn("注册{}失败：{}", objectName, e.toString());
+            }
+        }
+        this.methods.add(latency);
+        methods.put(method, latency);
+        return latency;
+    }
+
+    /**
+     * 类名使用目标类而不是方法的声明类，继承自同一个父类的方法在不同目标类上的MBean不会重名
+     */
+    private static String methodName(Class<?> targetClass, Method method) {
+        StringBuilder name = new StringBuilder(targetClass.getSimpleName())
+                .append('.').append(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                name.append(',');
+            }
+            name.append(parameterTypes[i].getSimpleName());
+        }
+        return name.append(')').toString();
+    }
+
+    /**
+     * 调用线程自己的ThreadRecorder，虚拟线程、调用次数还不多的线程以及destroy之后返回null，由调用方写入SharedRecorder
+     */
+    ThreadRecorder threadRecorder() {
+        if (this.destroyed || ExecutorServices.isVirtual(Thread.currentThread())) {
+            return null;
+        }
+        ThreadRecorder recorder = this.currentRecorder.get();
+        if (recorder.isActive()) {
+            return recorder;
+        }
+        if (!recorder.activate()) {
+            return null;
+        }
+        this.threadRecorders.add(recorder);
+        return recorder;
+    }
+
+    /**
+     * 结束当前区间：合并各线程在这个区间内的记录，更新所有方法的统计值，然后开始新的区间
+     */
+    public synchronized void rollover() {
+        List<MethodLatency> methods = this.methods;
+        for (ThreadRecorder recorder : this.threadRecorders) {
+            // 在切换之前判断：线程已经结束时，它的所有记录都在这次切换出来的直方图中
+            boolean terminated = !recorder.isThreadAlive();
+            int phase = recorder.flip();
+            for (MethodLatency latency : methods) {
+                LatencyHistogram histogram = recorder.histogram(latency.getId(), phase);
+                if (histogram != null) {
+                    latency.interval.add(histogram);
+                    histogram.reset();
+                }
+            }
+            if (terminated) {
+                this.threadRecorders.remove(recorder);
+            }
+        }
+
+        for (MethodLatency latency : methods) {
+            latency.shared.drainTo(latency.interval);
+        }
+
+        long now = System.nanoTime();
+        long intervalMillis = TimeUnit.NANOSECONDS.toMillis(now - this.intervalStart);
+        this.intervalStart = now;
+        for (MethodLatency latency : methods) {
+            latency.publish(intervalMillis);
+        }
+    }
+
+    /**
+     * 已经记录过的方法，按第一次调用的顺序
+     */
+    public List<MethodLatency> getMethodLatencies() {
+        return this.methods;
+    }
+
+    /**
+     * 使用自己的ThreadRecorder的线程数，包括已经结束、还没有在rollover中移除的线程
+     */
+    public int getThreadRecorderCount() {
+        return this.threadRecorders.size();
+    }
+
+    @Override
+    public void destroy() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+        // 其它线程的ThreadLocal无法在这里清除，先释放它们的直方图；此后的调用不再使用ThreadRecorder
+        this.destroyed = true;
+        this.currentRecorder.remove();
+        for (ThreadRecorder recorder : this.threadRecorders) {
+            recorder.release();
+        }
+        this.threadRecorders.clear();
+        for (MethodLatency latency : this.methods) {
+            ObjectName objectName = latency.getObjectName();
+            if (objectName != null && this.mBeanServer.isRegistered(objectName)) {
+                try {
+                    this.mBeanServer.unregisterMBean(objectName);
+                } catch (JMException e) {
+                    LOGGER.warn("注销{}失败：{}", objectName, e.toString());
+                }
+            }
+        }
+    }
+}
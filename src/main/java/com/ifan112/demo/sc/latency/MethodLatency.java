@@ -0,0 +1,147 @@
+package com.ifan112.demo.sc.latency;
+
+import javax.management.ObjectName;
+
+/**
+ * 一个被增强方法的耗时记录入口，同时作为它的MXBean
+ *
+ * {@link #record(long)}写入调用线程自己的{@link ThreadRecorder}，调用线程没有时写入{@link SharedRecorder}；
+ * {@link LatencyRecorder#rollover()}把各线程上一个区间的记录以及SharedRecorder合并到interval中，计算统计值后清空。
+ */
+public final class MethodLatency implements MethodLatencyMXBean {
+
+    private final LatencyRecorder recorder;
+
+    private final int id;
+
+    private final String method;
+
+    private final ObjectName objectName;
+
+    /**
+     * 只在rollover中访问
+     */
+    final LatencyHistogram interval = new LatencyHistogram();
+
+    /**
+     * 没有自己的ThreadRecorder的线程写入这里
+     */
+    final SharedRecorder shared = new SharedRecorder();
+
+    private volatile long totalCount;
+
+    private volatile Snapshot snapshot = new Snapshot(new LatencyHistogram(), 0);
+
+    MethodLatency(LatencyRecorder recorder, int id, String method, ObjectName objectName) {
+        this.recorder = recorder;
+        this.id = id;
+        this.method = method;
+        this.objectName = objectName;
+    }
+
+    /**
+     * @param nanos 一次调用的耗时
+     */
+    public void record(long nanos) {
+        ThreadRecorder threadRecorder = this.recorder.threadRecorder();
+        if (threadRecorder != null) {
+            threadRecorder.record(this.id, nanos);
+        } else {
+            this.shared.record(nanos);
+        }
+    }
+
+    int getId() {
+        return this.id;
+    }
+
+    ObjectName getObjectName() {
+        return this.objectName;
+    }
+
+    /**
+     * 由interval计算统计值并清空interval
+     */
+    void publish(long intervalMillis) {
+        this.totalCount += this.interval.getTotalCount();
+        this.snapshot = new Snapshot(this.interval, intervalMillis);
+        this.interval.reset();
+    }
+
+    @Override
+    public String getMethod() {
+        return this.method;
+    }
+
+    @Override
+    public long getCount() {
+        return this.snapshot.count;
+    }
+
+    @Override
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return this.snapshot.p50;
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return this.snapshot.p99;
+    }
+
+    @Override
+    public long getP999Nanos() {
+        return this.snapshot.p999;
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return this.snapshot.max;
+    }
+
+    @Override
+    public double getMeanNanos() {
+        return this.snapshot.mean;
+    }
+
+    @Override
+    public long getIntervalMillis() {
+        return this.snapshot.intervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        Snapshot snapshot = this.snapshot;
+        return this.method + "：count=" + snapshot.count + "，p50=" + snapshot.p50 + "ns，p99=" + snapshot.p99
+                + "ns，p999=" + snapshot.p999 + "ns，max=" + snapshot.max + "ns";
+    }
+
+
+    /**
+     * 一个区间的统计值，整体替换，MXBean的各个属性读到的是同一个区间的值
+     */
+    private static final class Snapshot {
+
+        final long count;
+        final long p50;
+        final long p99;
+        final long p999;
+        final long max;
+        final double mean;
+        final long intervalMillis;
+
+        Snapshot(LatencyHistogram histogram, long intervalMillis) {
+            this.count = histogram.getTotalCount();
+            this.p50 = histogram.getValueAtPercentile(50);
+            this.p99 = histogram.getValueAtPercentile(99);
+            this.p999 = histogram.getValueAtPercentile(99.9);
+            this.max = histogram.getMaxValue();
+            this.mean = histogram.getMean();
+            this.intervalMillis = intervalMillis;
+        }
+    }
+}
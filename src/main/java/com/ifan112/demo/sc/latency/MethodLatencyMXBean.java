@@ -0,0 +1,35 @@
+package com.ifan112.demo.sc.latency;
+
+/**
+ * 一个被增强方法的耗时统计，注册在平台MBeanServer上
+ *
+ * ObjectName为 com.ifan112.demo.sc:type=MethodLatency,context=context的id,name=方法
+ *
+ * 除TotalCount外，其余属性都是最近一个完整区间的统计值，每个区间结束时重新计算，单位为纳秒。
+ */
+public interface MethodLatencyMXBean {
+
+    /**
+     * 目标类名.方法名(参数类型)
+     */
+    String getMethod();
+
+    long getCount();
+
+    long getTotalCount();
+
+    long getP50Nanos();
+
+    long getP99Nanos();
+
+    long getP999Nanos();
+
+    long getMaxNanos();
+
+    double getMeanNanos();
+
+    /**
+     * 最近一个区间的实际长度
+     */
+    long getIntervalMillis();
+}
@@ -0,0 +1,53 @@
+package com.ifan112.demo.sc.latency;
+
+/**
+ * 一个方法在没有自己的{@link ThreadRecorder}的线程上的耗时记录
+ *
+ * 虚拟线程、以及调用次数还不多的线程（例如executor中很快就会结束的线程）共用它，
+ * 否则每个(线程, 方法)都要两个直方图，线程结束前这些内存一直不能被回收。
+ *
+ * 按线程id分成若干条纹，每个条纹一个直方图，由各自的锁保护，直方图在条纹第一次被使用时创建。
+ */
+final class SharedRecorder {
+
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final Object[] locks = new Object[STRIPES];
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STRIPES];
+
+    SharedRecorder() {
+        for (int i = 0; i < STRIPES; i++) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    void record(long value) {
+        // 虚拟线程的id是递增分配的，散列之后再取条纹
+        long threadId = Thread.currentThread().getId();
+        int stripe = (int) ((threadId * 0x9E3779B97F4A7C15L) >>> 40) & (STRIPES - 1);
+        synchronized (this.locks[stripe]) {
+            LatencyHistogram histogram = this.histograms[stripe];
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                this.histograms[stripe] = histogram;
+            }
+            histogram.record(value);
+        }
+    }
+
+    /**
+     * 把所有条纹的记录合并到target中并清空
+     */
+    void drainTo(LatencyHistogram target) {
+        for (int i = 0; i < STRIPES; i++) {
+            synchronized (this.locks[i]) {
+                LatencyHistogram histogram = this.histograms[i];
+                if (histogram != null) {
+                    target.add(histogram);
+                    histogram.reset();
+                }
+            }
+        }
+    }
+}
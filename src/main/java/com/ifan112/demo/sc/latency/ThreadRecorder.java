@@ -0,0 +1,125 @@
+package com.ifan112.demo.sc.latency;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 一个线程的耗时记录
+ *
+ * 每个方法有两个直方图，由phase选择当前写入哪一个。只有所属线程写入，{@link LatencyRecorder}在切换区间时读取：
+ * 1. 写入线程先把startSeq加1（volatile写），再读取phase，写入对应的直方图，最后把endSeq设置为与startSeq相同（lazySet）；
+ * 2. 读取线程先翻转phase，再读取startSeq，等待endSeq追上它。此后写入线程只会写入另一个直方图，
+ *    翻转之前选中的直方图可以安全地读取和清空。
+ *
+ * 写入路径上没有CAS，也不与其他线程共享缓存行。
+ *
+ * 线程调用被增强的方法达到{@link #ACTIVATION_CALLS}次之后才开始使用它，在此之前由{@link LatencyRecorder}记录到
+ * {@link SharedRecorder}中：每个(线程, 方法)的两个直方图约占32KB，只为长期存活、频繁调用的线程分配。
+ */
+final class ThreadRecorder {
+
+    private static final AtomicLongFieldUpdater<ThreadRecorder> END_SEQ =
+            AtomicLongFieldUpdater.newUpdater(ThreadRecorder.class, "endSeq");
+
+    static final int ACTIVATION_CALLS = 1024;
+
+    private final Thread thread;
+
+    /**
+     * 以下两个字段只由所属线程访问
+     */
+    private int calls;
+
+    private boolean active;
+
+    private volatile long startSeq;
+
+    private volatile long endSeq;
+
+    private volatile int phase;
+
+    /**
+     * 按方法id索引，每个元素是两个阶段各自的直方图，只由写入线程扩容
+     */
+    private volatile LatencyHistogram[][] slots = new LatencyHistogram[8][];
+
+    ThreadRecorder(Thread thread) {
+        this.thread = thread;
+    }
+
+    /**
+     * 记录一次调用，返回该线程是否已经开始使用自己的直方图。第一次返回true时，调用方需要登记该ThreadRecorder
+     */
+    boolean activate() {
+        if (this.active) {
+            return true;
+        }
+        if (++this.calls < ACTIVATION_CALLS) {
+            return false;
+        }
+        this.active = true;
+        return true;
+    }
+
+    boolean isActive() {
+        return this.active;
+    }
+
+    void record(int id, long value) {
+        long seq = this.startSeq + 1;
+        this.startSeq = seq;
+        LatencyHistogram[][] slots = this.slots;
+        LatencyHistogram[] pair = id < slots.length ? slots[id] : null;
+        if (pair == null) {
+            pair = createSlot(id);
+        }
+        pair[this.phase].record(value);
+        END_SEQ.lazySet(this, seq);
+    }
+
+    private LatencyHistogram[] createSlot(int id) {
+        LatencyHistogram[][] slots = this.slots;
+        if (id >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(id + 1, slots.length * 2));
+        }
+        LatencyHistogram[] pair = {new LatencyHistogram(), new LatencyHistogram()};
+        slots[id] = pair;
+        this.slots = slots;
+        return pair;
+    }
+
+    /**
+     * 翻转phase并等待正在进行的写入结束，只能由一个读取线程调用
+     *
+     * @return 翻转之前的phase，返回之后可以读取和清空{@link #histogram(int, int)}中该phase的直方图
+     */
+    int flip() {
+        int drained = this.phase;
+        this.phase = drained ^ 1;
+        long start = this.startSeq;
+        while (this.endSeq < start) {
+            Thread.yield();
+        }
+        return drained;
+    }
+
+    /**
+     * @return 该线程没有调用过id对应的方法时返回null
+     */
+    LatencyHistogram histogram(int id, int phase) {
+        LatencyHistogram[][] slots = this.slots;
+        LatencyHistogram[] pair = id < slots.length ? slots[id] : null;
+        return pair != null ? pair[phase] : null;
+    }
+
+    /**
+     * 释放所有直方图，之后不能再被读取
+     */
+    void release() {
+        this.slots = new LatencyHistogram[0][];
+    }
+
+    boolean isThreadAlive() {
+        return this.thread.isAlive();
+    }
+}
@@ -0,0 +1,177 @@
+package com.ifan112.demo.sc.message;
+
+import com.ifan112.demo.sc.support.ExecutorServices;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 执行异步发送任务的有界executor
+ *
+ * 底层executor由{@link ExecutorServices#newExecutor(String, int)}创建：支持虚拟线程时每个任务一个虚拟线程，
+ * 否则是固定大小的线程池。两者的任务队列都是无界的，因此通过一个Semaphore限制同时排队和执行中的任务数，
+ * 超出时不阻塞调用线程，返回的CompletableFuture直接以RejectedExecutionException结束。
+ *
+ * 作为SmartLifecycle，它随context刷新而启动；context.stop()和context.close()时等待已提交的任务执行完毕后关闭，
+ * 之后提交的任务被拒绝；context.start()时重新创建executor。
+ *
+ * 支持的系统属性：
+ * demo.sc.message.async-threads   固定大小线程池的线程数，默认为cpu个数
+ * demo.sc.message.async-capacity  同时排队和执行中的任务数上限，默认1024
+ */
+@Component
+public class AsyncMessageSender implements SmartLifecycle {
+
+    @Value("${demo.sc.message.async-threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Value("${demo.sc.message.async-capacity:1024}")
+    private int capacity = 1024;
+
+    private Semaphore permits;
+
+    private volatile ExecutorService executor;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public AsyncMessageSender() {
+    }
+
+    public AsyncMessageSender(int threads, int capacity) {
+        this.threads = threads;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 在executor上执行发送任务
+     */
+    public CompletableFuture<Boolean> submit(Supplier<Boolean> task) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        ExecutorService executor = this.executor;
+        if (executor == null || !this.permits.tryAcquire()) {
+            this.rejected.increment();
+            future.completeExceptionally(new RejectedExecutionException(
+                    executor == null ? "异步发送已停止" : "异步发送队列已满，容量：" + this.capacity));
+            return future;
+        }
+
+        long start = System.nanoTime();
+        this.submitted.increment();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(task.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    this.permits.release();
+                    record(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 与stop()并发时，executor可能刚刚被关闭
+            this.permits.release();
+            this.submitted.decrement();
+            this.rejected.increment();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void record(long latencyNanos) {
+        this.completed.increment();
+        this.totalLatencyNanos.add(latencyNanos);
+        this.maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    /**
+     * 正在排队或执行中的任务数
+     */
+    public long getQueueDepth() {
+        return this.submitted.sum() - this.completed.sum();
+    }
+
+    public long getSubmittedCount() {
+        return this.submitted.sum();
+    }
+
+    public long getCompletedCount() {
+        return this.completed.sum();
+    }
+
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    /**
+     * 从提交到执行完成的平均耗时
+     */
+    public long getAverageLatencyNanos() {
+        long count = this.completed.sum();
+        return count == 0 ? 0 : this.totalLatencyNanos.sum() / count;
+    }
+
+    public long getMaxLatencyNanos() {
+        return this.maxLatencyNanos.get();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (this.executor == null) {
+            // 停止时已等待所有任务执行完毕，许可已全部归还，重新启动时继续使用同一个Semaphore
+            if (this.permits == null) {
+                this.permits = new Semaphore(this.capacity);
+            }
+            this.executor = ExecutorServices.newExecutor("message-sender", this.threads);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        ExecutorService executor = this.executor;
+        if (executor == null) {
+            return;
+        }
+        this.executor = null;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.executor != null;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+}
@@ -0,0 +1,22 @@
+package com.ifan112.demo.sc.message;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 把消息打印到System.out
+ *
+ * 一批消息先拼接到同一个StringBuilder中，只调用一次System.out.print，只获取一次System.out上的锁。
+ */
+public class ConsoleMessageTransport implements MessageTransport {
+
+    @Override
+    public void send(List<String> messages, boolean[] results) {
+        StringBuilder out = new StringBuilder(messages.size() * 32);
+        for (String message : messages) {
+            out.append("发送消息：").append(message).append(System.lineSeparator());
+        }
+        System.out.print(out);
+        Arrays.fill(results, 0, messages.size(), true);
+    }
+}
@@ -0,0 +1,36 @@
+package com.ifan112.demo.sc.message;
+
+import com.ifan112.demo.sc.journal.MappedJournal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * 先把消息追加到{@link MappedJournal}，再交给下游发送
+ *
+ * 追加失败时抛出UncheckedIOException，这批消息不会被发送。
+ */
+public class JournalingMessageTransport implements MessageTransport {
+
+    private final MappedJournal journal;
+
+    private final MessageTransport delegate;
+
+    public JournalingMessageTransport(MappedJournal journal, MessageTransport delegate) {
+        this.journal = journal;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void send(List<String> messages, boolean[] results) {
+        try {
+            for (String message : messages) {
+                this.journal.append(message);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法写入消息日志：" + this.journal.getDirectory(), e);
+        }
+        this.delegate.send(messages, results);
+    }
+}
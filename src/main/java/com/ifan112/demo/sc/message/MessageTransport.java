@@ -0,0 +1,17 @@
+package com.ifan112.demo.sc.message;
+
+import java.util.List;
+
+/**
+ * 消息的下游通道
+ */
+public interface MessageTransport {
+
+    /**
+     * 发送一批消息
+     *
+     * @param messages 待发送的消息
+     * @param results  与messages一一对应，写入每条消息是否发送成功
+     */
+    void send(List<String> messages, boolean[] results);
+}
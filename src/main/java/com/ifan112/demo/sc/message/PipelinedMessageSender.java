@@ -0,0 +1,234 @@
+package com.ifan112.demo.sc.message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 把多个线程并发的send调用合并成批次，交给{@link MessageTransport}发送
+ *
+ * 1. 调用线程把消息放入有界队列后等待发送结果。队列已满说明下游已经饱和，调用线程在放入时被阻塞，形成背压。
+ * 2. 后台线程取出队列中已有的消息，最多maxBatchSize条组成一批。
+ *    lingerNanos大于0时，批次未满的情况下最多再等待这么长时间，以凑成更大的批次；
+ *    为0时不等待，上一批发送期间积压的消息自然组成下一批，单个调用线程不会因此多付出延迟。
+ * 3. 一批发送完成后，把每条消息各自的结果交给对应的调用线程。
+ *
+ * 关闭之后的send调用直接在调用线程上发送。
+ *
+ * 后台线程因为transport抛出的Error等原因异常退出时，已经取出和仍在队列中的消息都以该异常失败，
+ * 之后的send调用直接抛出IllegalStateException，不会再有调用线程一直等待。
+ */
+public class PipelinedMessageSender {
+
+    /**
+     * 调用线程等待结果时，每隔这么长时间检查一次后台线程是否已经退出
+     */
+    private static final long WAIT_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final MessageTransport transport;
+
+    private final BlockingQueue<PendingMessage> queue;
+
+    private final int maxBatchSize;
+
+    private final long lingerNanos;
+
+    private final Thread sender;
+
+    private volatile boolean running = true;
+
+    /**
+     * 后台线程异常退出的原因
+     */
+    private volatile Throwable failure;
+
+    public PipelinedMessageSender(MessageTransport transport, int queueCapacity, int maxBatchSize, long lingerNanos) {
+        this.transport = transport;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = lingerNanos;
+        this.sender = new Thread(this::runSender, "message-sender");
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    /**
+     * 发送一条消息，阻塞到该消息所在的批次发送完成
+     *
+     * @throws IllegalStateException 后台线程已经异常退出
+     */
+    public boolean send(String message) {
+        checkFailure();
+        if (!this.running) {
+            return sendDirectly(message);
+        }
+
+        PendingMessage pending = new PendingMessage(message, Thread.currentThread());
+        try {
+            this.queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return await(pending);
+    }
+
+    private boolean await(PendingMessage pending) {
+        while (pending.state == PendingMessage.WAITING) {
+            LockSupport.parkNanos(pending, WAIT_CHECK_NANOS);
+            // 后台线程在这条消息入队之前已经退出，从队列中取回并直接发送
+            if (pending.state == PendingMessage.WAITING && !this.sender.isAlive() && this.queue.remove(pending)) {
+                checkFailure();
+                return sendDirectly(pending.message);
+            }
+        }
+        if (pending.state == PendingMessage.ABORTED) {
+            throw new IllegalStateException("消息发送线程已异常退出", pending.cause);
+        }
+        return pending.state == PendingMessage.SUCCEEDED;
+    }
+
+    private void checkFailure() {
+        Throwable failure = this.failure;
+        if (failure != null) {
+            throw new IllegalStateException("消息发送线程已异常退出", failure);
+        }
+    }
+
+    private boolean sendDirectly(String message) {
+        List<String> messages = new ArrayList<>(1);
+        messages.add(message);
+        boolean[] results = new boolean[1];
+        this.transport.send(messages, results);
+        return results[0];
+    }
+
+    /**
+     * 停止后台线程，停止前把队列中剩余的消息全部发送
+     */
+    public void close() throws InterruptedException {
+        this.running = false;
+        this.sender.interrupt();
+        this.sender.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void runSender() {
+        List<PendingMessage> batch = new ArrayList<>(this.maxBatchSize);
+        try {
+            sendBatches(batch);
+        } catch (RuntimeException | Error e) {
+            // 先标记失败，之后入队的调用线程会在await中发现后台线程已退出并抛出异常
+            this.failure = e;
+            this.running = false;
+            for (PendingMessage pending : batch) {
+                pending.abort(e);
+            }
+            PendingMessage pending;
+            while ((pending = this.queue.poll()) != null) {
+                pending.abort(e);
+            }
+            throw e;
+        }
+    }
+
+    private void sendBatches(List<PendingMessage> batch) {
+        List<String> messages = new ArrayList<>(this.maxBatchSize);
+        boolean[] results = new boolean[this.maxBatchSize];
+
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                PendingMessage first = this.running ? this.queue.take() : this.queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                this.queue.drainTo(batch, this.maxBatchSize - 1);
+                if (this.lingerNanos > 0) {
+                    linger(batch);
+                }
+            } catch (InterruptedException e) {
+                // close()唤醒了后台线程，继续发送剩余的消息
+                if (batch.isEmpty()) {
+                    continue;
+                }
+            }
+
+            for (PendingMessage pending : batch) {
+                messages.add(pending.message);
+            }
+            try {
+                this.transport.send(messages, results);
+            } catch (RuntimeException e) {
+                for (int i = 0; i < batch.size(); i++) {
+                    results[i] = false;
+                }
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).complete(results[i]);
+                results[i] = false;
+            }
+            batch.clear();
+            messages.clear();
+        }
+    }
+
+    private void linger(List<PendingMessage> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + this.lingerNanos;
+        while (batch.size() < this.maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingMessage next = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            this.queue.drainTo(batch, this.maxBatchSize - batch.size());
+        }
+    }
+
+
+    /**
+     * 等待发送结果的消息
+     */
+    private static class PendingMessage {
+
+        private static final int WAITING = 0;
+        private static final int SUCCEEDED = 1;
+        private static final int FAILED = 2;
+        private static final int ABORTED = 3;
+
+        final String message;
+
+        final Thread waiter;
+
+        volatile int state = WAITING;
+
+        Throwable cause;
+
+        PendingMessage(String message, Thread waiter) {
+            this.message = message;
+            this.waiter = waiter;
+        }
+
+        void complete(boolean success) {
+            this.state = success ? SUCCEEDED : FAILED;
+            LockSupport.unpark(this.waiter);
+        }
+
+        /**
+         * 后台线程异常退出，已经完成的消息不受影响
+         */
+        void abort(Throwable cause) {
+            if (this.state == WAITING) {
+                this.cause = cause;
+                this.state = ABORTED;
+                LockSupport.unpark(this.waiter);
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.ifan112.demo.sc.order;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 堆外、固定内存的重复请求过滤器
+ *
+ * 表保存在一块直接内存中，由若干个桶组成，每个桶有{@link #WAYS}个条目，每个条目16字节：
+ * <pre>
+ * | fingerprint（long） | expireAt（long，毫秒） |
+ * </pre>
+ * key先被计算为64位的指纹（参考{@link #fingerprint(String, long, String)}），按指纹选择桶，只在该桶内查找和插入。
+ *
+ * 1. 桶内存在相同指纹且尚未过期的条目，说明是重复请求；
+ * 2. 否则把指纹写到桶的开头；桶已满时，淘汰最早写入的条目；
+ * 3. 请求处理失败时通过{@link #release(long)}删除它的条目，后面的条目依次前移。
+ *
+ * 所有条目的有效期相同，桶内按写入顺序排列的条目同时也是按过期时间排列的，
+ * 第一个已过期的条目及其之后的条目都可以被覆盖。
+ *
+ * 因此无论有多少个key，占用的内存都是固定的：容量 * 16字节，不会产生GC压力。
+ * 代价是桶已满时较早的key会被提前淘汰，此后该key的重复请求不能被识别；
+ * 不同的key得到相同指纹的概率约为 已保存的key个数 / 2^64，此时后者会被误判为重复请求。
+ *
+ * 桶按条纹锁保护，不同条纹上的桶可以被并发访问。
+ */
+public class IdempotencyFilter {
+
+    /**
+     * 每个桶的条目数，8 * 16字节，正好是两条缓存行
+     */
+    public static final int WAYS = 8;
+
+    private static final int ENTRY_SIZE = 16;
+
+    private static final int STRIPES = 256;
+
+    /**
+     * 单个ByteBuffer最多2GB
+     */
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private final ByteBuffer table;
+
+    private final int bucketMask;
+
+    private final long ttlMillis;
+
+    private final Object[] locks = new Object[STRIPES];
+
+    /**
+     * @param capacity  条目总数，向上取整为2的幂
+     * @param ttlMillis 每个key的有效期
+     */
+    public IdempotencyFilter(int capacity, long ttlMillis) {
+        int entries = Math.max(WAYS, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        if (entries > MAX_CAPACITY) {
+            throw new IllegalArgumentException("容量不能超过" + MAX_CAPACITY + "：" + capacity);
+        }
+        this.table = ByteBuffer.allocateDirect(entries * ENTRY_SIZE).order(ByteOrder.nativeOrder());
+        this.bucketMask = entries / WAYS - 1;
+        this.ttlMillis = ttlMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 记录一次请求
+     *
+     * @return 第一次出现（或上一次已经过期）时返回true，重复请求返回false
+     */
+    public boolean tryAcquire(long fingerprint, long nowMillis) {
+        // 0表示空条目
+        long fp = fingerprint == 0 ? 1 : fingerprint;
+        int bucket = (int) (fp >>> 32) & this.bucketMask;
+        int base = bucket * WAYS * ENTRY_SIZE;
+
+        synchronized (this.locks[bucket & (STRIPES - 1)]) {
+            // 桶内条目按写入顺序排列，第一个是最新的，因此第一个空条目或过期条目之后的条目都不必再检查
+            int victim = WAYS - 1;
+            for (int i = 0; i < WAYS; i++) {
+                int offset = base + i * ENTRY_SIZE;
+                long entry = this.table.getLong(offset);
+                if (entry == 0 || this.table.getLong(offset + 8) <= nowMillis) {
+                    victim = i;
+                    break;
+                }
+                if (entry == fp) {
+                    return false;
+                }
+            }
+            // 把victim之前的条目后移一位，新的条目写到桶的开头；桶已满时淘汰最后一个，即最早写入的条目
+            for (int i = victim; i > 0; i--) {
+                int to = base + i * ENTRY_SIZE;
+                this.table.putLong(to, this.table.getLong(to - ENTRY_SIZE));
+                this.table.putLong(to + 8, this.table.getLong(to - ENTRY_SIZE + 8));
+            }
+            this.table.putLong(base, fp);
+            this.table.putLong(base + 8, nowMillis + this.ttlMillis);
+            return true;
+        }
+    }
+
+    /**
+     * 只查询不写入，key已被记录且尚未过期时返回true
+     */
+    public boolean contains(long fingerprint, long nowMillis) {
+        long fp = fingerprint == 0 ? 1 : fingerprint;
+        int bucket = (int) (fp >>> 32) & this.bucketMask;
+        int base = bucket * WAYS * ENTRY_SIZE;
+
+        synchronized (this.locks[bucket & (STRIPES - 1)]) {
+            for (int i = 0; i < WAYS; i++) {
+                int offset = base + i * ENTRY_SIZE;
+                long entry = this.table.getLong(offset);
+                if (entry == 0 || this.table.getLong(offset + 8) <= nowMillis) {
+                    return false;
+                }
+                if (entry == fp) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 删除一次请求的记录，之后相同的请求不再被视为重复请求。用于请求处理失败、允许客户端重试的情况
+     *
+     * @return 该请求已被记录时返回true
+     */
+    public boolean release(long fingerprint) {
+        long fp = fingerprint == 0 ? 1 : fingerprint;
+        int bucket = (int) (fp >>> 32) & this.bucketMask;
+        int base = bucket * WAYS * ENTRY_SIZE;
+
+        synchronized (this.locks[bucket & (STRIPES - 1)]) {
+            for (int i = 0; i < WAYS; i++) {
+                int offset = base + i * ENTRY_SIZE;
+                long entry = this.table.getLong(offset);
+                if (entry == 0) {
+                    return false;
+                }
+                if (entry != fp) {
+                    continue;
+                }
+                // 把之后的条目前移一位，桶内仍然按写入顺序排列，最后一个条目置空
+                for (int j = i; j < WAYS - 1; j++) {
+                    int to = base + j * ENTRY_SIZE;
+                    this.table.putLong(to, this.table.getLong(to + ENTRY_SIZE));
+                    this.table.putLong(to + 8, this.table.getLong(to + ENTRY_SIZE + 8));
+                }
+                int last = base + (WAYS - 1) * ENTRY_SIZE;
+                this.table.putLong(last, 0);
+                this.table.putLong(last + 8, 0);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public boolean tryAcquire(String username, long goodId, String clientToken) {
+        return tryAcquire(fingerprint(username, goodId, clientToken), System.currentTimeMillis());
+    }
+
+    /**
+     * 条目总数
+     */
+    public int getCapacity() {
+        return (this.bucketMask + 1) * WAYS;
+    }
+
+    /**
+     * 占用的堆外内存字节数
+     */
+    public long getMemoryBytes() {
+        return (long) getCapacity() * ENTRY_SIZE;
+    }
+
+    /**
+     * (username, goodId, clientToken)的64位指纹
+     *
+     * String.hashCode()只有32位，这里按字符计算64位的FNV-1a散列，再与goodId混合。
+     */
+    public static long fingerprint(String username, long goodId, String clientToken) {
+        long h = 0xcbf29ce484222325L;
+        h = hash(h, username);
+        h = (h ^ goodId) * 0x100000001b3L;
+        h = hash(h, clientToken);
+        // 最后做一次混合，使高位和低位都均匀分布
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long hash(long h, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        // 分隔符，避免("ab", "c")与("a", "bc")得到相同的结果
+        return (h ^ 0xff) * 0x100000001b3L;
+    }
+}
@@ -0,0 +1,118 @@
+package com.ifan112.demo.sc.order;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 以long为key的计数器，开放寻址、线性探测，key和计数都以基本类型保存，没有装箱
+ *
+ * 只能由一个线程写入，可以被任意线程并发读取。计数只增不减，计数为0的槽位即为空槽位。
+ * 写入线程通过lazySet发布key和计数；扩容时构建完整的新表后，再通过volatile字段整体替换，
+ * 读取线程只读取一次表的引用，因此总能看到一张完整的表。
+ */
+final class LongCounterMap {
+
+    private volatile Table table;
+
+    private int size;
+
+    LongCounterMap(int initialCapacity) {
+        this.table = new Table(tableSizeFor(initialCapacity));
+    }
+
+    /**
+     * 增加key的计数，只能由写入线程调用
+     */
+    void increment(long key, long delta) {
+        Table t = this.table;
+        int index = t.indexOf(key);
+        long value = t.values.get(index);
+        if (value == 0) {
+            if ((this.size + 1) * 2 > t.capacity()) {
+                t = resize(t);
+                index = t.indexOf(key);
+            }
+            t.keys.lazySet(index, key);
+            this.size++;
+        }
+        t.values.lazySet(index, value + delta);
+    }
+
+    /**
+     * 读取key的计数，不存在时返回0
+     */
+    long get(long key) {
+        Table t = this.table;
+        return t.values.get(t.indexOf(key));
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    void forEach(Visitor visitor) {
+        Table t = this.table;
+        for (int i = 0; i < t.capacity(); i++) {
+            long value = t.values.get(i);
+            if (value != 0) {
+                visitor.visit(t.keys.get(i), value);
+            }
+        }
+    }
+
+    private Table resize(Table old) {
+        Table t = new Table(old.capacity() << 1);
+        for (int i = 0; i < old.capacity(); i++) {
+            long value = old.values.get(i);
+            if (value != 0) {
+                long key = old.keys.get(i);
+                int index = t.indexOf(key);
+                t.keys.lazySet(index, key);
+                t.values.lazySet(index, value);
+            }
+        }
+        this.table = t;
+        return t;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Math.max(16, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    interface Visitor {
+
+        void visit(long key, long value);
+    }
+
+    private static final class Table {
+
+        final AtomicLongArray keys;
+        final AtomicLongArray values;
+        final int mask;
+
+        Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        int capacity() {
+            return this.mask + 1;
+        }
+
+        /**
+         * key所在的槽位，不存在时返回应当插入的空槽位
+         */
+        int indexOf(long key) {
+            int index = hash(key) & this.mask;
+            while (this.values.get(index) != 0 && this.keys.get(index) != key) {
+                index = (index + 1) & this.mask;
+            }
+            return index;
+        }
+    }
+}
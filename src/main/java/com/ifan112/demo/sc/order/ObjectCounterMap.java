@@ -0,0 +1,100 @@
+package com.ifan112.demo.sc.order;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 以对象为key的计数器，计数以基本类型long保存，没有装箱
+ *
+ * 与{@link LongCounterMap}相同，只能由一个线程写入，可以被任意线程并发读取，计数只增不减。
+ */
+final class ObjectCounterMap<K> {
+
+    private volatile Table<K> table;
+
+    private int size;
+
+    ObjectCounterMap(int initialCapacity) {
+        this.table = new Table<>(Math.max(16, Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1));
+    }
+
+    void increment(K key, long delta) {
+        Table<K> t = this.table;
+        int index = t.indexOf(key);
+        long value = t.values.get(index);
+        if (value == 0) {
+            if ((this.size + 1) * 2 > t.capacity()) {
+                t = resize(t);
+                index = t.indexOf(key);
+            }
+            t.keys.lazySet(index, key);
+            this.size++;
+        }
+        t.values.lazySet(index, value + delta);
+    }
+
+    long get(K key) {
+        Table<K> t = this.table;
+        return t.values.get(t.indexOf(key));
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    void forEach(Visitor<K> visitor) {
+        Table<K> t = this.table;
+        for (int i = 0; i < t.capacity(); i++) {
+            long value = t.values.get(i);
+            if (value != 0) {
+                visitor.visit(t.keys.get(i), value);
+            }
+        }
+    }
+
+    private Table<K> resize(Table<K> old) {
+        Table<K> t = new Table<>(old.capacity() << 1);
+        for (int i = 0; i < old.capacity(); i++) {
+            long value = old.values.get(i);
+            if (value != 0) {
+                K key = old.keys.get(i);
+                int index = t.indexOf(key);
+                t.keys.lazySet(index, key);
+                t.values.lazySet(index, value);
+            }
+        }
+        this.table = t;
+        return t;
+    }
+
+    interface Visitor<K> {
+
+        void visit(K key, long value);
+    }
+
+    private static final class Table<K> {
+
+        final AtomicReferenceArray<K> keys;
+        final AtomicLongArray values;
+        final int mask;
+
+        Table(int capacity) {
+            this.keys = new AtomicReferenceArray<>(capacity);
+            this.values = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        int capacity() {
+            return this.mask + 1;
+        }
+
+        int indexOf(K key) {
+            int h = key.hashCode() * 0x9E3779B9;
+            int index = (h ^ (h >>> 16)) & this.mask;
+            while (this.values.get(index) != 0 && !key.equals(this.keys.get(index))) {
+                index = (index + 1) & this.mask;
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.ifan112.demo.sc.order;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 进程内的订单处理引擎
+ *
+ * 1. 调用线程通过{@link #submit(String, long)}申请一个序号，把订单写入预分配的环形缓冲区中对应的槽位，
+ *    然后发布该序号。goodId始终以基本类型long保存，整个过程没有锁，也不分配对象。
+ *    缓冲区已满时，调用线程自旋等待。
+ * 2. 唯一的sequencer线程按序号顺序取出订单，更新按用户和按商品统计的订单数。
+ *    统计数据只由这一个线程写入，保存在基本类型的计数器中（{@link LongCounterMap}、{@link ObjectCounterMap}）。
+ * 3. 单个用户或商品的订单数可以被任意线程直接读取。
+ *    {@link #snapshot()}需要多个计数之间一致，使用seqlock：sequencer线程在处理每一批订单前后各递增一次版本号，
+ *    读取线程在版本号为偶数且读取前后没有变化时才接受结果，否则重试。读取永远不会阻塞sequencer线程。
+ * 4. 处理单个订单时抛出的异常交给sequencer线程的UncaughtExceptionHandler，该订单计入{@link #getFailedOrders()}，
+ *    版本号和消费序号照常推进，sequencer线程不会因此退出。
+ * 5. {@link #close()}之后sequencer线程处理完已经发布的订单再退出。与close()并发的submit可能在sequencer线程退出之后才发布，
+ *    因此submit在发布之后再检查一次，这样的订单不会被处理，submit抛出IllegalStateException，不返回序号。
+ */
+public class OrderEngine implements Closeable {
+
+    /**
+     * 关闭时等待sequencer线程退出的最长时间
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final OrderSlot[] slots;
+
+    private final int mask;
+
+    private final int maxBatch;
+
+    /**
+     * 下一个可被申请的序号
+     */
+    private final AtomicLong producerCursor = new AtomicLong();
+
+    /**
+     * 下一个待处理的序号，只由sequencer线程写入
+     */
+    private volatile long consumerCursor;
+
+    /**
+     * seqlock的版本号，奇数表示sequencer线程正在更新统计数据
+     */
+    private volatile long version;
+
+    private volatile long totalOrders;
+
+    private volatile long failedOrders;
+
+    private final ObjectCounterMap<String> userOrders = new ObjectCounterMap<>(1024);
+
+    private final LongCounterMap goodOrders = new LongCounterMap(1024);
+
+    private final Thread sequencer;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param capacity 环形缓冲区的槽位数，必须是2的幂
+     * @param maxBatch sequencer线程每批最多处理的订单数
+     */
+    public OrderEngine(int capacity, int maxBatch) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity必须是2的幂：" + capacity);
+        }
+        this.slots = new OrderSlot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.slots[i] = new OrderSlot();
+        }
+        this.mask = capacity - 1;
+        this.maxBatch = maxBatch;
+
+        this.sequencer = new Thread(this::runSequencer, "order-sequencer");
+        this.sequencer.setDaemon(true);
+        this.sequencer.start();
+    }
+
+    /**
+     * 提交一个订单
+     *
+     * @return 该订单的序号
+     * @throws IllegalStateException 引擎已关闭，订单不会被处理
+     */
+    public long submit(String username, long goodId) {
+        // 必须在申请序号之前检查：申请到的序号一旦没有发布，sequencer线程和之后的生产者都会一直等待
+        if (username == null) {
+            throw new IllegalArgumentException("username不能为空");
+        }
+        if (!this.running) {
+            throw new IllegalStateException("订单引擎已关闭");
+        }
+        long sequence = this.producerCursor.getAndIncrement();
+        long wrapPoint = sequence - this.slots.length;
+        while (wrapPoint >= this.consumerCursor) {
+            if (!this.running && !this.sequencer.isAlive()) {
+                throw new IllegalStateException("订单引擎已关闭");
+            }
+            Thread.yield();
+        }
+
+        OrderSlot slot = this.slots[(int) sequence & this.mask];
+        slot.username = username;
+        slot.goodId = goodId;
+        slot.sequence = sequence;
+
+        // 通过了上面的检查之后引擎被关闭，sequencer线程可能在申请序号之前就已经看到两个序号相等而退出
+        if (!this.running) {
+            awaitSequencerExit();
+            if (this.consumerCursor <= sequence) {
+                throw new IllegalStateException("订单引擎已关闭");
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * 等待序号及之前的订单全部被处理
+     */
+    public void awaitProcessed(long sequence) {
+        while (this.consumerCursor <= sequence) {
+            LockSupport.parkNanos(1000);
+        }
+    }
+
+    public long getUserOrderCount(String username) {
+        return this.userOrders.get(username);
+    }
+
+    public long getGoodOrderCount(long goodId) {
+        return this.goodOrders.get(goodId);
+    }
+
+    /**
+     * 已处理的订单总数
+     */
+    public long getTotalOrders() {
+        return this.totalOrders;
+    }
+
+    /**
+     * 处理时抛出异常、没有计入统计的订单数
+     */
+    public long getFailedOrders() {
+        return this.failedOrders;
+    }
+
+    /**
+     * 读取所有统计数据的一致快照
+     */
+    public OrderSnapshot snapshot() {
+        while (true) {
+            long before = this.version;
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+
+            long total = this.totalOrders;
+            Map<String, Long> users = new HashMap<>();
+            this.userOrders.forEach(users::put);
+            Map<Long, Long> goods = new HashMap<>();
+            this.goodOrders.forEach(goods::put);
+
+            if (this.version == before) {
+                return new OrderSnapshot(total, users, goods);
+            }
+        }
+    }
+
+    /**
+     * 处理完已提交的订单后停止sequencer线程
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        awaitSequencerExit();
+    }
+
+    private void awaitSequencerExit() {
+        try {
+            this.sequencer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runSequencer() {
+        long idleNanos = 1000;
+        while (this.running || this.consumerCursor != this.producerCursor.get()) {
+            if (drain() > 0) {
+                idleNanos = 1000;
+            } else if (this.running) {
+                LockSupport.parkNanos(idleNanos);
+                idleNanos = Math.min(idleNanos << 1, TimeUnit.MILLISECONDS.toNanos(1));
+            } else {
+                // 已停止但还有生产者尚未完成发布
+                Thread.yield();
+            }
+        }
+    }
+
+    private int drain() {
+        long next = this.consumerCursor;
+        OrderSlot slot = this.slots[(int) next & this.mask];
+        if (slot.sequence != next) {
+            return 0;
+        }
+
+        long v = this.version;
+        this.version = v + 1;
+        int count = 0;
+        int failed = 0;
+        try {
+            while (count < this.maxBatch && slot.sequence == next) {
+                try {
+                    this.userOrders.increment(slot.username, 1);
+                    this.goodOrders.increment(slot.goodId, 1);
+                } catch (RuntimeException | Error e) {
+                    failed++;
+                    Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+                }
+                slot.username = null;
+                next++;
+                count++;
+                slot = this.slots[(int) next & this.mask];
+            }
+        } finally {
+            // 无论如何都要让版本号回到偶数、推进消费序号，否则snapshot()和等待槽位的生产者会一直自旋
+            this.totalOrders += count - failed;
+            this.failedOrders += failed;
+            this.version = v + 2;
+            this.consumerCursor = next;
+        }
+        return count;
+    }
+
+
+    /**
+     * 环形缓冲区中的一个订单槽位
+     */
+    private static final class OrderSlot {
+
+        /**
+         * 槽位中订单的序号，最后写入，用于发布
+         */
+        volatile long sequence = -1;
+
+        String username;
+
+        long goodId;
+    }
+}
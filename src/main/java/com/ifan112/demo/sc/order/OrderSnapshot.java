@@ -0,0 +1,49 @@
+package com.ifan112.demo.sc.order;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 某一时刻订单统计的一致快照
+ */
+public final class OrderSnapshot {
+
+    private final long totalOrders;
+
+    private final Map<String, Long> userOrders;
+
+    private final Map<Long, Long> goodOrders;
+
+    OrderSnapshot(long totalOrders, Map<String, Long> userOrders, Map<Long, Long> goodOrders) {
+        this.totalOrders = totalOrders;
+        this.userOrders = Collections.unmodifiableMap(userOrders);
+        this.goodOrders = Collections.unmodifiableMap(goodOrders);
+    }
+
+    public long getTotalOrders() {
+        return this.totalOrders;
+    }
+
+    /**
+     * 用户名 -> 订单数
+     */
+    public Map<String, Long> getUserOrders() {
+        return this.userOrders;
+    }
+
+    /**
+     * 商品id -> 订单数
+     */
+    public Map<Long, Long> getGoodOrders() {
+        return this.goodOrders;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderSnapshot{" +
+                "totalOrders=" + totalOrders +
+                ", users=" + userOrders.size() +
+                ", goods=" + goodOrders.size() +
+                '}';
+    }
+}
@@ -1,8 +1,19 @@
 package com.ifan112.demo.sc.service;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface MessageService {
 
     boolean send(String msg);
-}
 
+    /**
+     * 一次发送一批消息，返回的列表与参数一一对应，表示每条消息是否发送成功
+     */
+    List<Boolean> sendBatch(List<String> messages);
 
+    /**
+     * 在后台executor上发送消息，不阻塞调用线程。executor已满或已停止时，返回的future以RejectedExecutionException结束
+     */
+    CompletableFuture<Boolean> sendAsync(String msg);
+}
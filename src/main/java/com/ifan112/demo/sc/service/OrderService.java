@@ -1,6 +1,30 @@
 package com.ifan112.demo.sc.service;
 
+import com.ifan112.demo.sc.order.OrderSnapshot;
+
 public interface OrderService {
 
     void newOrder(String username, long goodId);
+
+    /**
+     * 带有客户端令牌的下单请求，同一个(username, goodId, clientToken)的重复请求会被拒绝
+     *
+     * @return 订单被接受时返回true，重复请求返回false
+     */
+    boolean newOrder(String username, long goodId, String clientToken);
+
+    /**
+     * 该用户已被处理的订单数。订单是异步处理的，刚提交的订单可能还没有被计入
+     */
+    long getOrderCount(String username);
+
+    /**
+     * 该商品已被处理的订单数
+     */
+    long getGoodOrderCount(long goodId);
+
+    /**
+     * 所有统计数据的一致快照
+     */
+    OrderSnapshot getOrderSnapshot();
 }
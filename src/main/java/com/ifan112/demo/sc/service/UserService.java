@@ -4,7 +4,25 @@ import com.ifan112.demo.sc.entity.User;
 
 public interface UserService {
 
+    /**
+     * 创建用户并按firstName保存，已存在的同名用户会被替换
+     */
     User createUser(String firstName, String lastName, int age);
 
+    /**
+     * 当前线程最后一次创建的用户
+     */
     User getUser();
+
+    /**
+     * 按firstName获取已保存的用户，不存在时返回null
+     */
+    User getUser(String firstName);
+
+    /**
+     * 按firstName移除用户，返回是否存在该用户
+     */
+    boolean removeUser(String firstName);
+
+    int getUserCount();
 }
@@ -0,0 +1,59 @@
+package com.ifan112.demo.sc.service.impl;
+
+import com.ifan112.demo.sc.order.IdempotencyFilter;
+import com.ifan112.demo.sc.order.OrderSnapshot;
+import com.ifan112.demo.sc.service.OrderService;
+
+/**
+ * 在OrderService之前过滤重复请求的装饰器
+ *
+ * 带有客户端令牌的请求先经过{@link IdempotencyFilter}，在有效期内重复出现的(username, goodId, clientToken)
+ * 直接被拒绝，不会交给被装饰的OrderService；被装饰的OrderService抛出异常时删除该请求的记录，使客户端可以重试。
+ * 其它方法原样委托。
+ */
+public class IdempotentOrderServiceImpl implements OrderService {
+
+    private final OrderService delegate;
+
+    private final IdempotencyFilter filter;
+
+    public IdempotentOrderServiceImpl(OrderService delegate, IdempotencyFilter filter) {
+        this.delegate = delegate;
+        this.filter = filter;
+    }
+
+    @Override
+    public void newOrder(String username, long goodId) {
+        this.delegate.newOrder(username, goodId);
+    }
+
+    @Override
+    public boolean newOrder(String username, long goodId, String clientToken) {
+        long fingerprint = IdempotencyFilter.fingerprint(username, goodId, clientToken);
+        if (!this.filter.tryAcquire(fingerprint, System.currentTimeMillis())) {
+            return false;
+        }
+        try {
+            return this.delegate.newOrder(username, goodId, clientToken);
+        } catch (RuntimeException | Error e) {
+            // 订单没有被接受，客户端的重试不能被当作重复请求
+            this.filter.release(fingerprint);
+            throw e;
+        }
+    }
+
+    @Override
+    public long getOrderCount(String username) {
+        return this.delegate.getOrderCount(username);
+    }
+
+    @Override
+    public long getGoodOrderCount(long goodId) {
+        return this.delegate.getGoodOrderCount(goodId);
+    }
+
+    @Override
+    public OrderSnapshot getOrderSnapshot() {
+        return this.delegate.getOrderSnapshot();
+    }
+}
@@ -1,22 +1,175 @@
 package com.ifan112.demo.sc.service.impl;
 
+import com.ifan112.demo.sc.journal.ForcePolicy;
+import com.ifan112.demo.sc.journal.MappedJournal;
+import com.ifan112.demo.sc.message.AsyncMessageSender;
+import com.ifan112.demo.sc.message.ConsoleMessageTransport;
+import com.ifan112.demo.sc.message.JournalingMessageTransport;
+import com.ifan112.demo.sc.message.MessageTransport;
+import com.ifan112.demo.sc.message.PipelinedMessageSender;
 import com.ifan112.demo.sc.service.MessageService;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.*;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 消息服务
+ *
+ * 消息最终交给{@link MessageTransport}发送，默认打印到System.out。
+ *
+ * sendBatch一次调用发送一批消息，只经过一次代理和切面，下游也只写一次。
+ * 设置系统属性 demo.sc.message.pipelined=true 后，并发的send调用由{@link PipelinedMessageSender}合并成批次发送，
+ * 调用方不需要任何修改。相关的系统属性：
+ * demo.sc.message.batch-size      每批最多的消息数，默认256
+ * demo.sc.message.linger-micros   批次未满时最多等待的微秒数，默认0，即不等待
+ * demo.sc.message.queue-capacity  等待发送的消息队列的容量，队列满时send被阻塞，默认4096
+ *
+ * sendAsync把send交给{@link AsyncMessageSender}在后台执行，调用线程立即返回。后台执行的send通过容器中的代理调用，
+ * 与同步调用一样记录调用日志、进行中的调用和耗时，context停止之后同样被拒绝。
+ *
+ * 设置系统属性 demo.sc.journal.dir 后，每条消息在发送之前先追加到该目录下的{@link MappedJournal}中。
+ * 同一个目录同时只能被一个MappedJournal打开，因此SwappableContextHolder切换context时不能使用：
+ * demo.sc.journal.segment-size    段文件的大小，默认64MB
+ * demo.sc.journal.force-policy    刷盘策略，NONE、EVERY_RECORD 或 EVERY_N_RECORDS，默认NONE
+ * demo.sc.journal.force-interval  EVERY_N_RECORDS策略下每多少条记录刷盘一次，默认1000
+ */
 @Service
 @Scope(value = "singleton", proxyMode = ScopedProxyMode.NO)
-public class MessageServiceImpl implements MessageService {
+public class MessageServiceImpl implements MessageService, BeanFactoryAware, BeanNameAware, InitializingBean, DisposableBean {
+
+    private MessageTransport transport = new ConsoleMessageTransport();
+
+    @Value("${demo.sc.message.pipelined:false}")
+    private boolean pipelined;
+
+    @Value("${demo.sc.message.batch-size:256}")
+    private int batchSize = 256;
+
+    @Value("${demo.sc.message.linger-micros:0}")
+    private long lingerMicros;
+
+    @Value("${demo.sc.message.queue-capacity:4096}")
+    private int queueCapacity = 4096;
+
+    @Value("${demo.sc.journal.dir:}")
+    private String journalDir = "";
+
+    @Value("${demo.sc.journal.segment-size:67108864}")
+    private int journalSegmentSize = 64 * 1024 * 1024;
+
+    @Value("${demo.sc.journal.force-policy:NONE}")
+    private ForcePolicy journalForcePolicy = ForcePolicy.NONE;
+
+    @Value("${demo.sc.journal.force-interval:1000}")
+    private int journalForceInterval = 1000;
+
+    private MappedJournal journal;
+
+    private PipelinedMessageSender pipelinedSender;
+
+    @Autowired
+    private AsyncMessageSender asyncSender;
+
+    private BeanFactory beanFactory;
+
+    private String beanName;
+
+    /**
+     * 容器中的MessageService，即被代理之后的自己，第一次调用sendAsync时获取
+     */
+    private volatile MessageService self;
 
     public MessageServiceImpl() {
         System.out.println("MessageServiceImpl实例化了");
     }
 
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void setBeanName(String name) {
+        this.beanName = name;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        if (!this.journalDir.isEmpty()) {
+            this.journal = new MappedJournal(Paths.get(this.journalDir), this.journalSegmentSize,
+                    this.journalForcePolicy, this.journalForceInterval);
+            this.transport = new JournalingMessageTransport(this.journal, this.transport);
+        }
+        if (this.pipelined) {
+            this.pipelinedSender = new PipelinedMessageSender(this.transport, this.queueCapacity, this.batchSize,
+                    TimeUnit.MICROSECONDS.toNanos(this.lingerMicros));
+        }
+    }
+
     @Override
     public boolean send(String msg) {
-        System.out.println("发送消息：" + msg);
-        return true;
+        if (this.pipelinedSender != null) {
+            return this.pipelinedSender.send(msg);
+        }
+        boolean[] result = new boolean[1];
+        this.transport.send(Collections.singletonList(msg), result);
+        return result[0];
+    }
+
+    @Override
+    public List<Boolean> sendBatch(List<String> messages) {
+        List<Boolean> outcomes = new ArrayList<>(messages.size());
+        boolean[] results = new boolean[Math.min(messages.size(), this.batchSize)];
+        for (int from = 0; from < messages.size(); from += this.batchSize) {
+            List<String> chunk = messages.subList(from, Math.min(from + this.batchSize, messages.size()));
+            this.transport.send(chunk, results);
+            for (int i = 0; i < chunk.size(); i++) {
+                outcomes.add(results[i]);
+            }
+        }
+        return outcomes;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> sendAsync(String msg) {
+        MessageService self = self();
+        return this.asyncSender.submit(() -> self.send(msg));
+    }
+
+    /**
+     * 直接调用this.send()会绕过代理，切面不会记录后台执行的调用。不是由容器创建时没有代理，使用this
+     */
+    private MessageService self() {
+        MessageService self = this.self;
+        if (self == null) {
+            self = this.beanFactory == null ? this : this.beanFactory.getBean(this.beanName, MessageService.class);
+            this.self = self;
+        }
+        return self;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException, IOException {
+        if (this.pipelinedSender != null) {
+            this.pipelinedSender.close();
+        }
+        if (this.journal != null) {
+            this.journal.close();
+        }
     }
 
 }
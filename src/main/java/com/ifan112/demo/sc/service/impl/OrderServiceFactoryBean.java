@@ -1,7 +1,13 @@
 package com.ifan112.demo.sc.service.impl;
 
+import com.ifan112.demo.sc.order.IdempotencyFilter;
+import com.ifan112.demo.sc.order.OrderEngine;
 import com.ifan112.demo.sc.service.OrderService;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * 用于创建OrderService实例的工厂类
@@ -31,13 +37,43 @@ import org.springframework.beans.factory.FactoryBean;
  * 例如，在mybatis库中，一个很重要的组件是SqlSessionFactory。但是，spring无法直接
  * 创建原始的SqlSessionFactory。那么，就需要使用FactoryBean的机制使得spring能够管理
  * 和创建SqlSessionFactory。详细用法参考mybatis-spring库中的SqlSessionFactoryBean。
+ *
+ *
+ * FactoryBean创建的对象不会被context销毁，因此由OrderServiceFactoryBean在销毁时关闭订单引擎。
+ * 系统属性 demo.sc.order.ring-size 设置订单引擎环形缓冲区的槽位数，必须是2的幂，默认65536。
+ *
+ * 系统属性 demo.sc.order.idempotency.capacity 大于0时，返回的OrderService被{@link IdempotentOrderServiceImpl}装饰，
+ * 过滤重复的下单请求。该属性是过滤器的条目数，每个条目占用16字节堆外内存；
+ * demo.sc.order.idempotency.ttl-seconds 是每个请求的有效期，默认600秒。
+ *
+ * 返回的OrderService是单例，不做池化：订单计数和重复请求都必须在同一个订单引擎和过滤器上判断，
+ * 每个实例各自持有它们会让查询只看到一部分订单、重复的请求落到不同实例上时不能被识别；
+ * 而共享它们的实例之间没有其它状态，池化只会增加每次调用借出和归还的开销。
  */
 
-public class OrderServiceFactoryBean implements FactoryBean<OrderService> {
+public class OrderServiceFactoryBean implements FactoryBean<OrderService>, DisposableBean {
+
+    @Value("${demo.sc.order.ring-size:65536}")
+    private int ringSize = 65536;
+
+    @Value("${demo.sc.order.idempotency.capacity:0}")
+    private int idempotencyCapacity;
+
+    @Value("${demo.sc.order.idempotency.ttl-seconds:600}")
+    private long idempotencyTtlSeconds = 600;
+
+    private OrderEngine engine;
 
     @Override
     public OrderService getObject() {
-        return new OrderServiceImpl();
+        this.engine = new OrderEngine(this.ringSize, 1024);
+        OrderService orderService = new OrderServiceImpl(this.engine);
+        if (this.idempotencyCapacity > 0) {
+            IdempotencyFilter filter = new IdempotencyFilter(this.idempotencyCapacity,
+                    TimeUnit.SECONDS.toMillis(this.idempotencyTtlSeconds));
+            orderService = new IdempotentOrderServiceImpl(orderService, filter);
+        }
+        return orderService;
     }
 
     @Override
@@ -50,6 +86,13 @@ public class OrderServiceFactoryBean implements FactoryBean<OrderService> {
         return true;
     }
 
+    @Override
+    public void destroy() {
+        if (this.engine != null) {
+            this.engine.close();
+        }
+    }
+
     public void otherMethod() {
         System.out.println("我是OrderServiceFactoryBean");
     }
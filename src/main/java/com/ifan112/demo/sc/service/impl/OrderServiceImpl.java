@@ -1,24 +1,80 @@
 package com.ifan112.demo.sc.service.impl;
 
+import com.ifan112.demo.sc.order.OrderEngine;
+import com.ifan112.demo.sc.order.OrderSnapshot;
 import com.ifan112.demo.sc.service.OrderService;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.annotation.ConditionContext;
 import org.springframework.context.annotation.ConfigurationCondition;
 import org.springframework.core.type.AnnotatedTypeMetadata;
 import org.springframework.stereotype.Service;
 
+/**
+ * 订单服务，订单交给{@link OrderEngine}异步处理
+ *
+ * 通过无参构造方法创建时，engine由该实例自己持有，{@link #destroy()}时关闭；
+ * 传入的engine由调用方负责关闭，例如{@link OrderServiceFactoryBean}。
+ */
 // @Service
 // @Conditional(OrderServiceCondition.class)
-public class OrderServiceImpl implements OrderService {
+public class OrderServiceImpl implements OrderService, DisposableBean {
+
+    private final OrderEngine engine;
+
+    private final boolean ownsEngine;
 
     public OrderServiceImpl() {
+        this(new OrderEngine(65536, 1024), true);
+    }
+
+    public OrderServiceImpl(OrderEngine engine) {
+        this(engine, false);
+    }
+
+    private OrderServiceImpl(OrderEngine engine, boolean ownsEngine) {
         System.out.println("构造OrderServiceImpl");
+        this.engine = engine;
+        this.ownsEngine = ownsEngine;
     }
 
     @Override
     public void newOrder(String username, long goodId) {
-        System.out.println("----- 创建订单 ------");
-        System.out.println(username);
-        System.out.println(goodId);
+        this.engine.submit(username, goodId);
+    }
+
+    /**
+     * 没有开启重复请求过滤时，每个请求都被接受，参考{@link IdempotentOrderServiceImpl}
+     */
+    @Override
+    public boolean newOrder(String username, long goodId, String clientToken) {
+        this.engine.submit(username, goodId);
+        return true;
+    }
+
+    @Override
+    public long getOrderCount(String username) {
+        return this.engine.getUserOrderCount(username);
+    }
+
+    @Override
+    public long getGoodOrderCount(long goodId) {
+        return this.engine.getGoodOrderCount(goodId);
+    }
+
+    @Override
+    public OrderSnapshot getOrderSnapshot() {
+        return this.engine.snapshot();
+    }
+
+    public OrderEngine getEngine() {
+        return this.engine;
+    }
+
+    @Override
+    public void destroy() {
+        if (this.ownsEngine) {
+            this.engine.close();
+        }
     }
 }
 
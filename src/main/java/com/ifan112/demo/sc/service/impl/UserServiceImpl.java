@@ -4,23 +4,55 @@ import com.ifan112.demo.sc.entity.User;
 import com.ifan112.demo.sc.service.UserService;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 基于内存的用户存储
+ *
+ * 用户按firstName保存在ConcurrentHashMap中，并发的createUser不会互相覆盖不同名称的用户。
+ * getUser()返回当前线程最后一次创建的用户，不再是所有线程共享的一个静态变量。
+ *
+ * 返回的User对象在发布之后不会再被修改。这里不对User做池化：被替换或移除的User仍可能被调用方、
+ * 其它线程的lastCreated或异步的审计日志引用，复用它们会让这些引用读到其它用户的数据。
+ */
 @Service
 public class UserServiceImpl implements UserService {
 
-    private static User user;
+    private final ConcurrentMap<String, User> users = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<User> lastCreated = new ThreadLocal<>();
 
     @Override
     public User createUser(String firstName, String lastName, int age) {
-        user = new User();
+        User user = new User();
         user.setFirstName(firstName);
         user.setLastName(lastName);
         user.setAge(age);
 
+        // 对象在放入ConcurrentHashMap之前已经完成赋值，其它线程通过get获取到的是完整的对象
+        this.users.put(firstName, user);
+        this.lastCreated.set(user);
         return user;
     }
 
     @Override
     public User getUser() {
-        return user;
+        return this.lastCreated.get();
+    }
+
+    @Override
+    public User getUser(String firstName) {
+        return this.users.get(firstName);
+    }
+
+    @Override
+    public boolean removeUser(String firstName) {
+        return this.users.remove(firstName) != null;
+    }
+
+    @Override
+    public int getUserCount() {
+        return this.users.size();
     }
 }
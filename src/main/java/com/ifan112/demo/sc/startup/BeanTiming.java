@@ -0,0 +1,55 @@
+package com.ifan112.demo.sc.startup;
+
+/**
+ * 一个bean的创建耗时
+ *
+ * 所有时间的单位都是纳秒。
+ */
+public class BeanTiming {
+
+    private final String beanName;
+    private final String stack;
+    private final long totalNanos;
+    private final long selfNanos;
+    private final long proxyNanos;
+
+    BeanTiming(String beanName, String stack, long totalNanos, long selfNanos, long proxyNanos) {
+        this.beanName = beanName;
+        this.stack = stack;
+        this.totalNanos = totalNanos;
+        this.selfNanos = selfNanos;
+        this.proxyNanos = proxyNanos;
+    }
+
+    public String getBeanName() {
+        return beanName;
+    }
+
+    /**
+     * 创建该bean时的调用栈，以分号分隔。例如：refresh;instantiateBeans;userServiceImpl
+     */
+    public String getStack() {
+        return stack;
+    }
+
+    /**
+     * 从实例化开始到所有bean后置处理器处理完毕的总耗时，包含创建依赖bean的时间
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * 总耗时减去创建依赖bean的时间
+     */
+    public long getSelfNanos() {
+        return selfNanos;
+    }
+
+    /**
+     * 其中，AnnotationAwareAspectJAutoProxyCreator等后置处理器创建AOP代理所花的时间
+     */
+    public long getProxyNanos() {
+        return proxyNanos;
+    }
+}
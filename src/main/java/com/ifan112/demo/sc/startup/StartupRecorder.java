@@ -0,0 +1,310 @@
+package com.ifan112.demo.sc.startup;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+import org.springframework.beans.factory.support.AbstractBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录context刷新过程中各个阶段以及每个bean的创建耗时
+ *
+ * 它必须在context刷新之前通过{@link #attach(ConfigurableApplicationContext)}注册到context中，
+ * 而不能作为组件被扫描到，否则它自己被发现时扫描已经结束了。
+ *
+ * 1. 作为context直接持有的BeanDefinitionRegistryPostProcessor，它最先被调用，此时记为刷新开始。
+ *    在它的postProcessBeanFactory被调用时，ConfigurationClassPostProcessor已经完成了包扫描、配置类解析和条件判断。
+ * 2. 在postProcessBeanFactory中，它向beanFactory注册两个bean后置处理器：
+ *    head直接加入后置处理器列表，排在所有注册的后置处理器之前，在实例化之前记录开始时间；
+ *    tail以单例的方式注册，没有实现Ordered接口，排在AnnotationAwareAspectJAutoProxyCreator之后，
+ *    head与tail之间的耗时就是创建AOP代理等后置处理的时间。
+ * 3. 一个普通的BeanFactoryPostProcessor作为标记，它在其它BeanFactoryPostProcessor之后执行。
+ * 4. 收到ContextRefreshedEvent时，输出各阶段耗时、最慢的bean列表和火焰图格式的调用栈。
+ *    head和tail此后仍然留在后置处理器列表中，但不再记录，之后创建的prototype bean不会使记录无限增长。
+ *
+ * 火焰图使用collapsed stack格式，每行是“以分号分隔的调用栈 耗时（微秒）”，可以直接交给flamegraph.pl生成svg。
+ * 设置系统属性 demo.sc.startup.flame-graph 为文件路径时写入该文件，否则输出到日志中。
+ * 系统属性 demo.sc.startup.top 设置最慢bean列表的长度，默认10。
+ */
+public class StartupRecorder implements BeanDefinitionRegistryPostProcessor, ApplicationListener<ContextRefreshedEvent> {
+
+    private static final Logger LOGGER = LogManager.getLogger("startup");
+
+    private static final String ROOT = "refresh";
+
+    private static final String TAIL_NAME = StartupRecorder.class.getName() + ".tail";
+
+    private static final String MARKER_NAME = StartupRecorder.class.getName() + ".marker";
+
+    private final ConfigurableApplicationContext context;
+
+    private final ThreadLocal<Deque<Frame>> frames = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final ConcurrentLinkedQueue<BeanTiming> beanTimings = new ConcurrentLinkedQueue<>();
+
+    private final Tail tail = new Tail();
+
+    private AbstractBeanFactory beanFactory;
+
+    private volatile boolean tailRegistered;
+
+    private volatile long refreshStart;
+    private volatile long configurationParsed;
+    private volatile long factoryPostProcessed;
+    private volatile long refreshed;
+
+    private StartupRecorder(ConfigurableApplicationContext context) {
+        this.context = context;
+    }
+
+    /**
+     * 向尚未刷新的context注册StartupRecorder
+     */
+    public static StartupRecorder attach(ConfigurableApplicationContext context) {
+        if (context.isActive()) {
+            throw new IllegalStateException("context已经刷新，无法记录启动耗时");
+        }
+        StartupRecorder recorder = new StartupRecorder(context);
+        context.addBeanFactoryPostProcessor(recorder);
+        context.addApplicationListener(recorder);
+        return recorder;
+    }
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+        this.refreshStart = System.nanoTime();
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        this.configurationParsed = System.nanoTime();
+
+        if (beanFactory instanceof AbstractBeanFactory) {
+            this.beanFactory = (AbstractBeanFactory) beanFactory;
+        }
+        beanFactory.addBeanPostProcessor(new Head());
+        beanFactory.registerSingleton(TAIL_NAME, this.tail);
+        beanFactory.registerSingleton(MARKER_NAME, (BeanFactoryPostProcessor) bf -> this.factoryPostProcessed = System.nanoTime());
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (event.getApplicationContext() != this.context || this.refreshed != 0) {
+            return;
+        }
+        this.refreshed = System.nanoTime();
+        this.frames.remove();
+        report();
+    }
+
+    /**
+     * 刷新过程中各阶段的耗时，单位为纳秒
+     */
+    public Map<String, Long> getPhases() {
+        Map<String, Long> phases = new LinkedHashMap<>();
+        phases.put("parseConfiguration", this.configurationParsed - this.refreshStart);
+        phases.put("postProcessBeanFactory", this.factoryPostProcessed - this.configurationParsed);
+        phases.put("instantiateBeans", this.refreshed - this.factoryPostProcessed);
+        phases.put("total", this.refreshed - this.refreshStart);
+        return phases;
+    }
+
+    public List<BeanTiming> getBeanTimings() {
+        return new ArrayList<>(this.beanTimings);
+    }
+
+    /**
+     * 以collapsed stack格式输出火焰图数据，耗时单位为微秒
+     */
+    public void writeFlameGraph(Writer writer) throws IOException {
+        Map<String, Long> phases = getPhases();
+        phases.remove("total");
+        // 各阶段中属于bean创建的时间，阶段自身只保留剩余的部分，避免火焰图中重复计算
+        Map<String, Long> beanNanos = new LinkedHashMap<>();
+        for (BeanTiming timing : this.beanTimings) {
+            writer.write(timing.getStack() + " " + toMicros(timing.getSelfNanos() - timing.getProxyNanos()) + "\n");
+            if (timing.getProxyNanos() > 0) {
+                writer.write(timing.getStack() + ";[postProcessAfterInitialization] " + toMicros(timing.getProxyNanos()) + "\n");
+            }
+            String phase = timing.getStack().split(";", 3)[1];
+            beanNanos.merge(phase, timing.getSelfNanos(), Long::sum);
+        }
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            long rest = phase.getValue() - beanNanos.getOrDefault(phase.getKey(), 0L);
+            writer.write(ROOT + ";" + phase.getKey() + " " + toMicros(Math.max(rest, 0)) + "\n");
+        }
+    }
+
+    private void report() {
+        StringBuilder out = new StringBuilder("context刷新耗时（毫秒）：");
+        getPhases().forEach((phase, nanos) -> out.append(System.lineSeparator())
+                .append(String.format("  %-24s %10.3f", phase, nanos / 1e6)));
+
+        List<BeanTiming> timings = getBeanTimings();
+        timings.sort(Comparator.comparingLong(BeanTiming::getSelfNanos).reversed());
+        int top = Integer.getInteger("demo.sc.startup.top", 10);
+        out.append(System.lineSeparator()).append("最慢的").append(Math.min(top, timings.size())).append("个bean（毫秒）：")
+                .append(System.lineSeparator())
+                .append(String.format("  %-64s %10s %10s %10s", "bean", "self", "total", "proxy"));
+        for (BeanTiming timing : timings.subList(0, Math.min(top, timings.size()))) {
+            out.append(System.lineSeparator()).append(String.format("  %-64s %10.3f %10.3f %10.3f",
+                    timing.getBeanName(), timing.getSelfNanos() / 1e6, timing.getTotalNanos() / 1e6, timing.getProxyNanos() / 1e6));
+        }
+        LOGGER.info(out.toString());
+
+        try {
+            String file = System.getProperty("demo.sc.startup.flame-graph");
+            if (file != null) {
+                Path path = Paths.get(file);
+                try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                    writeFlameGraph(writer);
+                }
+                LOGGER.info("火焰图数据已写入：" + path.toAbsolutePath());
+            } else {
+                StringWriter writer = new StringWriter();
+                writeFlameGraph(writer);
+                LOGGER.info("火焰图数据（collapsed stack，微秒）：" + System.lineSeparator() + writer);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("无法输出火焰图数据", e);
+        }
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private String currentStack(Deque<Frame> stack) {
+        // BeanFactoryPostProcessor本身也是bean，它们在postProcessBeanFactory阶段被创建
+        StringBuilder sb = new StringBuilder(ROOT)
+                .append(this.factoryPostProcessed == 0 ? ";postProcessBeanFactory" : ";instantiateBeans");
+        List<Frame> path = new ArrayList<>(stack);
+        Collections.reverse(path);
+        for (Frame frame : path) {
+            sb.append(';').append(frame.beanName);
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * 正在创建中的bean
+     */
+    private static class Frame {
+        final String beanName;
+        final long start;
+        long childrenNanos;
+        long initialized;
+
+        Frame(String beanName, long start) {
+            this.beanName = beanName;
+            this.start = start;
+        }
+    }
+
+    /**
+     * bean创建完成，弹出对应的Frame并记录耗时
+     */
+    private void complete(String beanName) {
+        if (this.refreshed != 0) {
+            return;
+        }
+        Deque<Frame> stack = this.frames.get();
+        // FactoryBean创建的对象只经过初始化后的处理，没有对应的Frame，不记录
+        if (stack.stream().noneMatch(frame -> frame.beanName.equals(beanName))) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        // 创建失败的bean留下的Frame在这里一并弹出
+        String stackPath = currentStack(stack);
+        Frame frame = stack.pop();
+        while (!frame.beanName.equals(beanName)) {
+            stackPath = currentStack(stack);
+            frame = stack.pop();
+        }
+
+        long total = now - frame.start;
+        long proxy = frame.initialized == 0 ? 0 : now - frame.initialized;
+        this.beanTimings.add(new BeanTiming(beanName, stackPath, total, total - frame.childrenNanos, proxy));
+
+        Frame parent = stack.peek();
+        if (parent != null) {
+            parent.childrenNanos += total;
+        }
+    }
+
+    /**
+     * 排在所有已注册的bean后置处理器之前，记录bean实例化的开始时间和初始化结束的时间
+     *
+     * 在tail被加入后置处理器列表之前创建的bean，例如BeanPostProcessor自身，直接在这里记为创建完成。
+     */
+    private class Head implements InstantiationAwareBeanPostProcessor {
+
+        @Override
+        public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) {
+            if (refreshed != 0) {
+                return null;
+            }
+            frames.get().push(new Frame(beanName, System.nanoTime()));
+            return null;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (refreshed != 0) {
+                return bean;
+            }
+            if (!tailRegistered) {
+                tailRegistered = beanFactory != null && beanFactory.getBeanPostProcessors().contains(tail);
+                if (!tailRegistered) {
+                    complete(beanName);
+                    return bean;
+                }
+            }
+            Frame frame = frames.get().peek();
+            if (frame != null && frame.beanName.equals(beanName)) {
+                frame.initialized = System.nanoTime();
+            }
+            return bean;
+        }
+    }
+
+    /**
+     * 排在所有已注册的bean后置处理器之后，bean在此时已经创建完成
+     */
+    private class Tail implements BeanPostProcessor {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            complete(beanName);
+            return bean;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.ifan112.demo.sc.support;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 创建后台任务使用的线程池
+ *
+ * 运行在支持虚拟线程的jdk（21及以上）上时，使用每个任务一个虚拟线程的executor；
+ * 否则使用固定大小的线程池，线程均为守护线程。
+ *
+ * 项目以jdk8为编译目标，因此通过反射调用Executors.newVirtualThreadPerTaskExecutor()和Thread.isVirtual()。
+ */
+public final class ExecutorServices {
+
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private ExecutorServices() {
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * 线程是否是虚拟线程，不支持虚拟线程的jdk上总是返回false。不分配对象，可以在每次调用的路径上使用
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param name    线程名称前缀，仅对固定大小的线程池有效
+     * @param threads 固定大小线程池的线程数
+     */
+    public static ExecutorService newExecutor(String name, int threads) {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // 回退到固定大小的线程池
+            }
+        }
+        return Executors.newFixedThreadPool(threads, daemonThreadFactory(name));
+    }
+
+    public static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
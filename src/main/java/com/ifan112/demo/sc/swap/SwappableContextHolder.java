@@ -0,0 +1,333 @@
+package com.ifan112.demo.sc.swap;
+
+import com.ifan112.demo.sc.support.ExecutorServices;
+import com.ifan112.demo.sc.warmup.WarmUpCoordinator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.aop.TargetSource;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 可以在不中断服务的情况下替换context
+ *
+ * AnnotationConfigApplicationContext关闭之后不能再刷新，stop()/start()也不会重建bean，要使用新的配置只能重启。
+ * 这里通过{@link #getProxy(Class)}返回服务接口的代理，代理的每次调用从当前的context（代）中获取目标bean；
+ * {@link #swap()}在后台线程上：
+ * 1. 由contextFactory创建并刷新新的context，等待WarmUpCoordinator预热完成，获取所有代理的接口对应的bean；
+ * 2. 把当前代原子地替换为新的代，之后开始的调用都落在新的bean上；
+ * 3. 等待旧代上进行中的调用结束（最多drainTimeoutMillis毫秒），然后关闭旧的context。
+ * 新context创建、预热失败或者没有在warmUpTimeoutMillis毫秒内完成预热时关闭它，仍然使用旧的context。
+ *
+ * 每代记录进行中的调用个数：调用开始时加1，之后发现该代已经被替换时减1并改为使用新的代，因此被替换之后不会再有新的调用进入旧代。
+ * 切换期间新旧两个context同时存在，独占的资源（例如demo.sc.journal.dir指定的日志目录）在这段时间内会被打开两次。
+ */
+public class SwappableContextHolder implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger("startup");
+
+    private final Supplier<? extends ConfigurableApplicationContext> contextFactory;
+
+    private final Map<Class<?>, Object> proxies = new ConcurrentHashMap<>();
+
+    /**
+     * 已经被替换、正在等待调用结束的代
+     */
+    private final List<Generation> retiring = new CopyOnWriteArrayList<>();
+
+    private final ExecutorService swapExecutor =
+            Executors.newSingleThreadExecutor(ExecutorServices.daemonThreadFactory("context-swap"));
+
+    private long warmUpTimeoutMillis = 10_000;
+
+    private long drainTimeoutMillis = 30_000;
+
+    private volatile Generation current;
+
+    private volatile boolean closed;
+
+    public SwappableContextHolder(Supplier<? extends ConfigurableApplicationContext> contextFactory) {
+        this.contextFactory = contextFactory;
+    }
+
+    public void setWarmUpTimeoutMillis(long warmUpTimeoutMillis) {
+        this.warmUpTimeoutMillis = warmUpTimeoutMillis;
+    }
+
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    /**
+     * 在调用线程上创建第一代context
+     */
+    public synchronized void start() {
+        if (this.current != null || this.closed) {
+            throw new IllegalStateException("SwappableContextHolder已经启动或者已经关闭");
+        }
+        this.current = createGeneration(1);
+    }
+
+    /**
+     * 返回serviceType的代理，同一个接口总是返回同一个代理
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getProxy(Class<T> serviceType) {
+        return (T) this.proxies.computeIfAbsent(serviceType, type -> {
+            ProxyFactory proxyFactory = new ProxyFactory();
+            proxyFactory.addInterface(type);
+            proxyFactory.setTargetSource(new GenerationTargetSource(type));
+            return proxyFactory.getProxy(SwappableContextHolder.class.getClassLoader());
+        });
+    }
+
+    /**
+     * 在后台线程上创建新的context并替换当前的context，多次调用依次执行
+     *
+     * @return 旧的context关闭之后完成，结果为新的context；已经关闭时以IllegalStateException结束
+     */
+    public CompletableFuture<ConfigurableApplicationContext> swap() {
+        if (!this.closed) {
+            try {
+                return CompletableFuture.supplyAsync(this::doSwap, this.swapExecutor);
+            } catch (RejectedExecutionException e) {
+                // 检查之后被并发关闭
+            }
+        }
+        CompletableFuture<ConfigurableApplicationContext> future = new CompletableFuture<>();
+        future.completeExceptionally(new IllegalStateException("SwappableContextHolder已经关闭"));
+        return future;
+    }
+
+    private ConfigurableApplicationContext doSwap() {
+        Generation previous = this.current;
+        if (previous == null || this.closed) {
+            throw new IllegalStateException("SwappableContextHolder尚未启动或者已经关闭");
+        }
+
+        long start = System.nanoTime();
+        Generation next = createGeneration(previous.number + 1);
+        long ready = System.nanoTime();
+
+        this.retiring.add(previous);
+        this.current = next;
+        boolean drained = previous.retire(this.drainTimeoutMillis);
+        long end = System.nanoTime();
+        if (!drained) {
+            LOGGER.warn("第{}代context上仍有{}个调用没有结束，等待{}毫秒后强制关闭",
+                    previous.number, previous.inFlight.get(), this.drainTimeoutMillis);
+        }
+        previous.context.close();
+        this.retiring.remove(previous);
+
+        LOGGER.info("已切换到第{}代context，创建和预热耗时{}毫秒，等待旧context上的调用结束耗时{}毫秒",
+                next.number, TimeUnit.NANOSECONDS.toMillis(ready - start), TimeUnit.NANOSECONDS.toMillis(end - ready));
+        return next.context;
+    }
+
+    private Generation createGeneration(long number) {
+        ConfigurableApplicationContext context = this.contextFactory.get();
+        try {
+            WarmUpCoordinator warmUpCoordinator = context.getBeanProvider(WarmUpCoordinator.class).getIfAvailable();
+            if (warmUpCoordinator != null && !warmUpCoordinator.awaitWarm(this.warmUpTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("第" + number + "代context在" + this.warmUpTimeoutMillis + "毫秒内没有完成预热");
+            }
+            Generation generation = new Generation(number, context);
+            for (Class<?> serviceType : this.proxies.keySet()) {
+                generation.getBean(serviceType);
+            }
+            return generation;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            context.close();
+            throw new IllegalStateException("等待第" + number + "代context预热时被中断", e);
+        } catch (RuntimeException e) {
+            context.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 当前的context，尚未启动时返回null
+     */
+    public ConfigurableApplicationContext getContext() {
+        Generation generation = this.current;
+        return generation != null ? generation.context : null;
+    }
+
+    /**
+     * 当前是第几代context，从1开始
+     */
+    public long getGeneration() {
+        Generation generation = this.current;
+        return generation != null ? generation.number : 0;
+    }
+
+    /**
+     * 当前context上进行中的调用个数
+     */
+    public int getInFlightCount() {
+        Generation generation = this.current;
+        return generation != null ? generation.inFlight.get() : 0;
+    }
+
+    /**
+     * 等待进行中的切换完成，然后等待当前context上的调用结束并关闭它
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.swapExecutor.shutdown();
+        try {
+            this.swapExecutor.awaitTermination(this.drainTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Generation generation;
+        synchronized (this) {
+            generation = this.current;
+            if (generation != null) {
+                this.retiring.add(generation);
+            }
+            this.current = null;
+        }
+        if (generation != null) {
+            generation.retire(this.drainTimeoutMillis);
+            generation.context.close();
+            this.retiring.remove(generation);
+        }
+    }
+
+
+    /**
+     * 代理使用的TargetSource，每次调用从当前代获取目标bean，调用结束后把调用记录到目标bean所属的代上
+     */
+    private final class GenerationTargetSource implements TargetSource {
+
+        private final Class<?> serviceType;
+
+        GenerationTargetSource(Class<?> serviceType) {
+            this.serviceType = serviceType;
+        }
+
+        @Override
+        public Class<?> getTargetClass() {
+            return this.serviceType;
+        }
+
+        @Override
+        public boolean isStatic() {
+            return false;
+        }
+
+        @Override
+        public Object getTarget() {
+            while (true) {
+                Generation generation = current;
+                if (generation == null) {
+                    throw new IllegalStateException("SwappableContextHolder尚未启动或者已经关闭");
+                }
+                // 获取失败说明这一代刚刚被替换，重新读取当前代
+                if (generation.tryAcquire()) {
+                    try {
+                        return generation.getBean(this.serviceType);
+                    } catch (RuntimeException e) {
+                        generation.release();
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void releaseTarget(Object target) {
+            Generation generation = current;
+            if (generation != null && generation.owns(this.serviceType, target)) {
+                generation.release();
+                return;
+            }
+            for (Generation retired : retiring) {
+                if (retired.owns(this.serviceType, target)) {
+                    retired.release();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class Generation {
+
+        final long number;
+
+        final ConfigurableApplicationContext context;
+
+        final Map<Class<?>, Object> beans = new ConcurrentHashMap<>();
+
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        final CountDownLatch drained = new CountDownLatch(1);
+
+        volatile boolean retired;
+
+        Generation(long number, ConfigurableApplicationContext context) {
+            this.number = number;
+            this.context = context;
+        }
+
+        Object getBean(Class<?> serviceType) {
+            return this.beans.computeIfAbsent(serviceType, this.context::getBean);
+        }
+
+        boolean owns(Class<?> serviceType, Object target) {
+            return this.beans.get(serviceType) == target;
+        }
+
+        /**
+         * 先增加计数再检查是否已经被替换：retire()设置retired之后读到的计数一定包含了所有没有发现被替换的调用
+         */
+        boolean tryAcquire() {
+            this.inFlight.incrementAndGet();
+            if (this.retired) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        void release() {
+            if (this.inFlight.decrementAndGet() == 0 && this.retired) {
+                this.drained.countDown();
+            }
+        }
+
+        /**
+         * @return 在超时之前所有调用都已结束时返回true
+         */
+        boolean retire(long timeoutMillis) {
+            this.retired = true;
+            if (this.inFlight.get() == 0) {
+                return true;
+            }
+            try {
+                return this.drained.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
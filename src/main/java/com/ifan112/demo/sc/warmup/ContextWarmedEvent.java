@@ -0,0 +1,48 @@
+package com.ifan112.demo.sc.warmup;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ApplicationContextEvent;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link WarmUpCoordinator}完成预热后发布的事件
+ *
+ * 就绪检查可以监听该事件，或者调用{@link WarmUpCoordinator#awaitWarm(long, java.util.concurrent.TimeUnit)}等待。
+ */
+@SuppressWarnings("serial")
+public class ContextWarmedEvent extends ApplicationContextEvent {
+
+    private final List<String> warmedBeans;
+
+    private final List<String> failedBeans;
+
+    private final long elapsedNanos;
+
+    public ContextWarmedEvent(ApplicationContext source, List<String> warmedBeans, List<String> failedBeans,
+                              long elapsedNanos) {
+        super(source);
+        this.warmedBeans = Collections.unmodifiableList(warmedBeans);
+        this.failedBeans = Collections.unmodifiableList(failedBeans);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * 被提前获取的bean，以及执行成功的预热回调
+     */
+    public List<String> getWarmedBeans() {
+        return this.warmedBeans;
+    }
+
+    /**
+     * 获取失败的bean以及抛出异常的预热回调
+     */
+    public List<String> getFailedBeans() {
+        return this.failedBeans;
+    }
+
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+}
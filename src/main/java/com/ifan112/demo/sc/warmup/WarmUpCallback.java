@@ -0,0 +1,14 @@
+package com.ifan112.demo.sc.warmup;
+
+import org.springframework.context.ApplicationContext;
+
+/**
+ * 预热回调
+ *
+ * 实现该接口的bean由{@link WarmUpCoordinator}在预热线程上调用，通常反复调用热点方法，
+ * 使其在第一个真实请求到来之前就被JIT编译。回调中不应该产生对外可见的副作用。
+ */
+public interface WarmUpCallback {
+
+    void warmUp(ApplicationContext context) throws Exception;
+}
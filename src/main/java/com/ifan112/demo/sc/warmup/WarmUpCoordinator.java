@@ -0,0 +1,169 @@
+package com.ifan112.demo.sc.warmup;
+
+import com.ifan112.demo.sc.condition.ConditionalOnProperty;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.SmartFactoryBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * context刷新之后，在后台线程上预热
+ *
+ * FactoryBean的产品以及懒加载的单例只有在第一次被获取时才会创建，在生产环境中这次创建的开销落在了第一个请求上。
+ * 收到ContextRefreshedEvent之后，这里在一个守护线程上依次：
+ * 1. 获取需要预热的bean，对于FactoryBean即调用它的getObject()；
+ * 2. 调用所有{@link WarmUpCallback}类型的bean，使热点方法在真实请求到来之前被JIT编译；
+ * 3. 发布{@link ContextWarmedEvent}，并唤醒在{@link #awaitWarm(long, TimeUnit)}上等待的线程。
+ * 某个bean或回调失败时不影响其它bean，失败的名称记录在事件中。
+ *
+ * 系统属性 demo.sc.warmup.enabled=false 时不启用；
+ * demo.sc.warmup.beans 逗号分隔的bean名称，默认为所有非急切初始化的单例FactoryBean和懒加载的单例。
+ */
+@Component
+@ConditionalOnProperty(name = "demo.sc.warmup.enabled", matchIfMissing = true)
+public class WarmUpCoordinator implements ApplicationListener<ContextRefreshedEvent>, ApplicationContextAware {
+
+    private static final Logger LOGGER = LogManager.getLogger("startup");
+
+    @Value("${demo.sc.warmup.beans:}")
+    private String[] beanNames = new String[0];
+
+    private ApplicationContext applicationContext;
+
+    private volatile CountDownLatch warmed = new CountDownLatch(1);
+
+    private volatile ContextWarmedEvent lastEvent;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        // 忽略子context的刷新事件
+        if (event.getApplicationContext() != this.applicationContext) {
+            return;
+        }
+        // 可重复刷新的context再次刷新时，重新预热
+        if (this.warmed.getCount() == 0) {
+            this.warmed = new CountDownLatch(1);
+        }
+        CountDownLatch latch = this.warmed;
+        Thread thread = new Thread(() -> warmUp(latch), "warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void warmUp(CountDownLatch latch) {
+        long start = System.nanoTime();
+        List<String> warmedBeans = new ArrayList<>();
+        List<String> failedBeans = new ArrayList<>();
+        try {
+            for (String beanName : selectBeanNames()) {
+                try {
+                    this.applicationContext.getBean(beanName);
+                    warmedBeans.add(beanName);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("预热bean {}失败", beanName, e);
+                    failedBeans.add(beanName);
+                }
+            }
+
+            Map<String, WarmUpCallback> callbacks = this.applicationContext.getBeansOfType(WarmUpCallback.class);
+            for (Map.Entry<String, WarmUpCallback> entry : callbacks.entrySet()) {
+                try {
+                    entry.getValue().warmUp(this.applicationContext);
+                    warmedBeans.add(entry.getKey());
+                } catch (Exception e) {
+                    LOGGER.warn("预热回调 {}失败", entry.getKey(), e);
+                    failedBeans.add(entry.getKey());
+                }
+            }
+
+            ContextWarmedEvent event = new ContextWarmedEvent(this.applicationContext, warmedBeans, failedBeans,
+                    System.nanoTime() - start);
+            this.lastEvent = event;
+            LOGGER.info("预热完成，耗时{}毫秒，成功：{}，失败：{}",
+                    TimeUnit.NANOSECONDS.toMillis(event.getElapsedNanos()), warmedBeans, failedBeans);
+            this.applicationContext.publishEvent(event);
+        } catch (RuntimeException e) {
+            // 预热期间context被关闭
+            LOGGER.warn("预热被中断", e);
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    private List<String> selectBeanNames() {
+        List<String> names = new ArrayList<>();
+        for (String beanName : this.beanNames) {
+            if (!beanName.trim().isEmpty()) {
+                names.add(beanName.trim());
+            }
+        }
+        if (!names.isEmpty() || !(this.applicationContext instanceof ConfigurableApplicationContext)) {
+            return names;
+        }
+
+        ConfigurableListableBeanFactory beanFactory =
+                ((ConfigurableApplicationContext) this.applicationContext).getBeanFactory();
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getMergedBeanDefinition(beanName);
+            if (definition.isAbstract() || !definition.isSingleton()
+                    || definition.getRole() != BeanDefinition.ROLE_APPLICATION) {
+                continue;
+            }
+            if (definition.isLazyInit() || isLazyFactoryBean(beanFactory, beanName)) {
+                names.add(beanName);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 单例FactoryBean本身在刷新时已经创建，它的产品除非是SmartFactoryBean并且要求急切初始化，否则都是懒加载的
+     */
+    private static boolean isLazyFactoryBean(ConfigurableListableBeanFactory beanFactory, String beanName) {
+        if (!beanFactory.isFactoryBean(beanName)) {
+            return false;
+        }
+        Object factory = beanFactory.getBean(BeanFactory.FACTORY_BEAN_PREFIX + beanName);
+        return !(factory instanceof SmartFactoryBean && ((SmartFactoryBean<?>) factory).isEagerInit());
+    }
+
+    /**
+     * 等待预热完成
+     *
+     * @return 在超时之前完成时返回true
+     */
+    public boolean awaitWarm(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.warmed.await(timeout, unit);
+    }
+
+    public boolean isWarm() {
+        return this.warmed.getCount() == 0;
+    }
+
+    /**
+     * 最近一次预热完成时发布的事件，尚未完成时返回null
+     */
+    public ContextWarmedEvent getLastEvent() {
+        return this.lastEvent;
+    }
+}
@@ -0,0 +1,97 @@
+package com.ifan112.demo.sc.xml;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 预编译的bean定义文件的格式
+ *
+ * <pre>
+ * | magic（int） | version（short） | spring版本 | 激活的profile | 源文件个数 | （位置 | 长度（long） | crc32（long））... |
+ * | 字符串表：个数 | （字节数 | UTF-8）... |
+ * | bean定义个数 | （bean名称 | 别名 | bean定义）... |
+ * </pre>
+ * 头部的字符串直接写为 字节数 + UTF-8，检查是否过期时不需要读取字符串表；
+ * 之后所有的字符串都写为它在字符串表中的序号加1，0表示null。大量bean的类名、属性名相同，只需要保存一次。
+ * 个数、序号等非负整数都使用变长编码（每个字节7位，最高位表示后面还有字节）。
+ */
+final class BinaryBeanDefinitionFormat {
+
+    static final int MAGIC = 0x44534244;
+
+    static final short VERSION = 1;
+
+    /**
+     * 预编译的文件名等于XML文件名加上该后缀，例如application-context.xml.bin
+     */
+    static final String SUFFIX = ".bin";
+
+    // bean定义的类型
+
+    static final byte GENERIC_DEFINITION = 0;
+
+    static final byte ROOT_DEFINITION = 1;
+
+    // bean定义的标志位
+
+    static final int ABSTRACT = 1;
+
+    static final int LAZY_INIT = 1 << 1;
+
+    static final int AUTOWIRE_CANDIDATE = 1 << 2;
+
+    static final int PRIMARY = 1 << 3;
+
+    static final int NON_PUBLIC_ACCESS_ALLOWED = 1 << 4;
+
+    static final int LENIENT_CONSTRUCTOR_RESOLUTION = 1 << 5;
+
+    static final int ENFORCE_INIT_METHOD = 1 << 6;
+
+    static final int ENFORCE_DESTROY_METHOD = 1 << 7;
+
+    static final int SYNTHETIC = 1 << 8;
+
+    // 属性值、构造参数的类型
+
+    static final byte NULL = 0;
+
+    static final byte STRING = 1;
+
+    static final byte TYPED_STRING = 2;
+
+    static final byte BEAN_REFERENCE = 3;
+
+    static final byte BEAN_NAME_REFERENCE = 4;
+
+    static final byte BEAN_DEFINITION_HOLDER = 5;
+
+    static final byte BEAN_DEFINITION = 6;
+
+    static final byte LIST = 7;
+
+    static final byte ARRAY = 8;
+
+    static final byte SET = 9;
+
+    static final byte MAP = 10;
+
+    static final byte PROPERTIES = 11;
+
+    static final byte BOOLEAN = 12;
+
+    static final byte INTEGER = 13;
+
+    private BinaryBeanDefinitionFormat() {
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.ifan112.demo.sc.xml;
+
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.RuntimeBeanNameReference;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.AbstractBeanDefinitionReader;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.beans.factory.support.LookupOverride;
+import org.springframework.beans.factory.support.ManagedArray;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
+import org.springframework.beans.factory.support.ManagedProperties;
+import org.springframework.beans.factory.support.ManagedSet;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.core.SpringVersion;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static com.ifan112.demo.sc.xml.BinaryBeanDefinitionFormat.*;
+
+/**
+ * 读取{@link XmlBeanDefinitionCompiler}编译的bean定义文件
+ *
+ * 整个文件通过Resource的channel一次顺序读入ByteBuffer，然后依次解码字符串表和bean定义，不使用XML解析器，
+ * 也不需要XSD和命名空间处理器。注册到registry中的bean定义和别名与直接解析XML时相同（bean定义的source为null）。
+ *
+ * {@link #loadBeanDefinitionsIfUpToDate(Resource)}在XML的内容、spring的版本或者激活的profile与编译时不同时不注册任何bean定义，
+ * 由调用方回退到解析XML，参考{@link PrecompiledXmlApplicationContext}。
+ */
+public class BinaryBeanDefinitionReader extends AbstractBeanDefinitionReader {
+
+    private String[] strings;
+
+    public BinaryBeanDefinitionReader(BeanDefinitionRegistry registry) {
+        super(registry);
+    }
+
+    /**
+     * 文件已经过期时抛出BeanDefinitionStoreException
+     */
+    @Override
+    public int loadBeanDefinitions(Resource resource) throws BeanDefinitionStoreException {
+        int count = loadBeanDefinitionsIfUpToDate(resource);
+        if (count < 0) {
+            throw new BeanDefinitionStoreException(resource.getDescription(), "编译之后XML的内容、spring的版本或者激活的profile发生了变化");
+        }
+        return count;
+    }
+
+    /**
+     * @return 注册的bean定义的个数，文件已经过期时为-1
+     */
+    public synchronized int loadBeanDefinitionsIfUpToDate(Resource resource) throws BeanDefinitionStoreException {
+        try {
+            ByteBuffer buffer = read(resource);
+            if (!isUpToDate(buffer)) {
+                return -1;
+            }
+
+            int stringCount = readVarInt(buffer);
+            this.strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                this.strings[i] = readHeaderString(buffer);
+            }
+
+            BeanDefinitionRegistry registry = getRegistry();
+            int count = readVarInt(buffer);
+            for (int i = 0; i < count; i++) {
+                String beanName = readString(buffer);
+                String[] aliases = readStrings(buffer);
+                registry.registerBeanDefinition(beanName, readDefinition(buffer));
+                for (String alias : aliases) {
+                    registry.registerAlias(beanName, alias);
+                }
+            }
+            // <context:annotation-config/>在解析时除了注册bean定义，还会设置beanFactory的AutowireCandidateResolver，
+            // 否则@Value不会被解析。bean定义已经注册，这里只补上这一步
+            if (registry.containsBeanDefinition(AnnotationConfigUtils.AUTOWIRED_ANNOTATION_PROCESSOR_BEAN_NAME)) {
+                AnnotationConfigUtils.registerAnnotationConfigProcessors(registry);
+            }
+            return count;
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof BeanDefinitionStoreException) {
+                throw (BeanDefinitionStoreException) e;
+            }
+            throw new BeanDefinitionStoreException(resource.getDescription(), "读取预编译的bean定义失败", e);
+        } finally {
+            this.strings = null;
+        }
+    }
+
+    private boolean isUpToDate(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 6 || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+            return false;
+        }
+        if (!readHeaderString(buffer).equals(String.valueOf(SpringVersion.getVersion()))
+                || !readHeaderString(buffer).equals(XmlBeanDefinitionCompiler.activeProfiles(getEnvironment()))) {
+            return false;
+        }
+
+        ResourceLoader resourceLoader = getResourceLoader() != null ? getResourceLoader() : new DefaultResourceLoader();
+        int sourceCount = readVarInt(buffer);
+        for (int i = 0; i < sourceCount; i++) {
+            Resource source = resourceLoader.getResource(readHeaderString(buffer));
+            long length = buffer.getLong();
+            long crc = buffer.getLong();
+            if (!source.exists() || source.contentLength() != length) {
+                return false;
+            }
+            CRC32 sourceCrc = new CRC32();
+            sourceCrc.update(read(source));
+            if (sourceCrc.getValue() != crc) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private AbstractBeanDefinition readDefinition(ByteBuffer buffer) {
+        AbstractBeanDefinition definition = buffer.get() == ROOT_DEFINITION
+                ? new RootBeanDefinition() : new GenericBeanDefinition();
+        definition.setBeanClassName(readString(buffer));
+        definition.setParentName(readString(buffer));
+        definition.setScope(readString(buffer));
+        int flags = readVarInt(buffer);
+        definition.setAbstract((flags & ABSTRACT) != 0);
+        definition.setLazyInit((flags & LAZY_INIT) != 0);
+        definition.setAutowireCandidate((flags & AUTOWIRE_CANDIDATE) != 0);
+        definition.setPrimary((flags & PRIMARY) != 0);
+        definition.setNonPublicAccessAllowed((flags & NON_PUBLIC_ACCESS_ALLOWED) != 0);
+        definition.setLenientConstructorResolution((flags & LENIENT_CONSTRUCTOR_RESOLUTION) != 0);
+        definition.setEnforceInitMethod((flags & ENFORCE_INIT_METHOD) != 0);
+        definition.setEnforceDestroyMethod((flags & ENFORCE_DESTROY_METHOD) != 0);
+        definition.setSynthetic((flags & SYNTHETIC) != 0);
+        definition.setAutowireMode(readVarInt(buffer));
+        definition.setDependencyCheck(readVarInt(buffer));
+        definition.setRole(readVarInt(buffer));
+        definition.setDependsOn(readStrings(buffer));
+        definition.setFactoryBeanName(readString(buffer));
+        definition.setFactoryMethodName(readString(buffer));
+        definition.setInitMethodName(readString(buffer));
+        definition.setDestroyMethodName(readString(buffer));
+        definition.setDescription(readString(buffer));
+        definition.setResourceDescription(readString(buffer));
+
+        // 构造参数、属性值和方法覆盖在第一次获取时才创建，没有时不获取
+        for (int i = readVarInt(buffer); i > 0; i--) {
+            int index = readVarInt(buffer);
+            definition.getConstructorArgumentValues().addIndexedArgumentValue(index, readValueHolder(buffer));
+        }
+        for (int i = readVarInt(buffer); i > 0; i--) {
+            definition.getConstructorArgumentValues().addGenericArgumentValue(readValueHolder(buffer));
+        }
+
+        for (int i = readVarInt(buffer); i > 0; i--) {
+            String name = readString(buffer);
+            definition.getPropertyValues().addPropertyValue(new PropertyValue(name, readValue(buffer)));
+        }
+
+        for (int i = readVarInt(buffer); i > 0; i--) {
+            String methodName = readString(buffer);
+            definition.getMethodOverrides().addOverride(new LookupOverride(methodName, readString(buffer)));
+        }
+
+        for (int i = readVarInt(buffer); i > 0; i--) {
+            String name = readString(buffer);
+            definition.setAttribute(name, readString(buffer));
+        }
+        return definition;
+    }
+
+    private ConstructorArgumentValues.ValueHolder readValueHolder(ByteBuffer buffer) {
+        Object value = readValue(buffer);
+        String type = readString(buffer);
+        return new ConstructorArgumentValues.ValueHolder(value, type, readString(buffer));
+    }
+
+    private Object readValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(buffer);
+            case TYPED_STRING: {
+                String value = readString(buffer);
+                String targetTypeName = readString(buffer);
+                TypedStringValue typedValue = targetTypeName != null
+                        ? new TypedStringValue(value, targetTypeName) : new TypedStringValue(value);
+                if (buffer.get() != 0) {
+                    typedValue.setDynamic();
+                }
+                return typedValue;
+            }
+            case BEAN_REFERENCE: {
+                String beanName = readString(buffer);
+                return new RuntimeBeanReference(beanName, buffer.get() != 0);
+            }
+            case BEAN_NAME_REFERENCE:
+                return new RuntimeBeanNameReference(readString(buffer));
+            case BEAN_DEFINITION_HOLDER: {
+                String beanName = readString(buffer);
+                String[] aliases = readStrings(buffer);
+                return new BeanDefinitionHolder(readDefinition(buffer), beanName, aliases);
+            }
+            case BEAN_DEFINITION:
+                return readDefinition(buffer);
+            case ARRAY: {
+                String elementTypeName = readString(buffer);
+                boolean mergeEnabled = buffer.get() != 0;
+                int size = readVarInt(buffer);
+                ManagedArray array = new ManagedArray(elementTypeName, size);
+                array.setMergeEnabled(mergeEnabled);
+                readValues(buffer, size, array);
+                return array;
+            }
+            case LIST: {
+                String elementTypeName = readString(buffer);
+                boolean mergeEnabled = buffer.get() != 0;
+                int size = readVarInt(buffer);
+                ManagedList<Object> list = new ManagedList<>(size);
+                list.setElementTypeName(elementTypeName);
+                list.setMergeEnabled(mergeEnabled);
+                readValues(buffer, size, list);
+                return list;
+            }
+            case SET: {
+                String elementTypeName = readString(buffer);
+                boolean mergeEnabled = buffer.get() != 0;
+                int size = readVarInt(buffer);
+                ManagedSet<Object> set = new ManagedSet<>(size);
+                set.setElementTypeName(elementTypeName);
+                set.setMergeEnabled(mergeEnabled);
+                readValues(buffer, size, set);
+                return set;
+            }
+            case MAP: {
+                String keyTypeName = readString(buffer);
+                String valueTypeName = readString(buffer);
+                boolean mergeEnabled = buffer.get() != 0;
+                int size = readVarInt(buffer);
+                ManagedMap<Object, Object> map = new ManagedMap<>(size);
+                map.setKeyTypeName(keyTypeName);
+                map.setValueTypeName(valueTypeName);
+                map.setMergeEnabled(mergeEnabled);
+                readEntries(buffer, size, map);
+                return map;
+            }
+            case PROPERTIES: {
+                ManagedProperties properties = new ManagedProperties();
+                properties.setMergeEnabled(buffer.get() != 0);
+                readEntries(buffer, readVarInt(buffer), properties);
+                return properties;
+            }
+            case BOOLEAN:
+                return buffer.get() != 0;
+            case INTEGER:
+                return buffer.getInt();
+            default:
+                throw new IllegalStateException("未知的属性值类型：" + tag);
+        }
+    }
+
+    private void readValues(ByteBuffer buffer, int size, Collection<Object> values) {
+        for (int i = 0; i < size; i++) {
+            values.add(readValue(buffer));
+        }
+    }
+
+    private void readEntries(ByteBuffer buffer, int size, Map<Object, Object> map) {
+        for (int i = 0; i < size; i++) {
+            Object key = readValue(buffer);
+            map.put(key, readValue(buffer));
+        }
+    }
+
+    private String[] readStrings(ByteBuffer buffer) {
+        int count = readVarInt(buffer) - 1;
+        if (count < 0) {
+            return null;
+        }
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readString(buffer);
+        }
+        return values;
+    }
+
+    private String readString(ByteBuffer buffer) {
+        int index = readVarInt(buffer);
+        return index == 0 ? null : this.strings[index - 1];
+    }
+
+    private static String readHeaderString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * 通过channel把整个资源顺序读入堆内的ByteBuffer
+     */
+    private static ByteBuffer read(Resource resource) throws IOException {
+        long length = resource.contentLength();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException(resource.getDescription() + "过大：" + length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        try (ReadableByteChannel channel = resource.readableChannel()) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException(resource.getDescription() + "的长度与contentLength不一致");
+                }
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
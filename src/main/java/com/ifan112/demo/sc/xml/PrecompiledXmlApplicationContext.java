@@ -0,0 +1,76 @@
+package com.ifan112.demo.sc.xml;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+
+/**
+ * 优先读取预编译的bean定义文件的ClassPathXmlApplicationContext
+ *
+ * 对于每个配置文件，例如application-context.xml，如果存在由{@link XmlBeanDefinitionCompiler}生成的application-context.xml.bin，
+ * 并且编译之后XML没有被修改，就由{@link BinaryBeanDefinitionReader}注册bean定义，不再解析XML；
+ * 否则与ClassPathXmlApplicationContext相同，解析XML。
+ *
+ * 设置系统属性 demo.sc.xml.precompiled=false 时总是解析XML。
+ */
+public class PrecompiledXmlApplicationContext extends ClassPathXmlApplicationContext {
+
+    private static final Logger LOGGER = LogManager.getLogger("startup");
+
+    private int precompiledLocationCount;
+
+    public PrecompiledXmlApplicationContext(String... configLocations) throws BeansException {
+        super(configLocations, false, null);
+        refresh();
+    }
+
+    @Override
+    protected void loadBeanDefinitions(XmlBeanDefinitionReader reader) throws BeansException, IOException {
+        this.precompiledLocationCount = 0;
+        Resource[] configResources = getConfigResources();
+        if (configResources != null) {
+            reader.loadBeanDefinitions(configResources);
+        }
+        String[] configLocations = getConfigLocations();
+        if (configLocations == null) {
+            return;
+        }
+
+        boolean enabled = !"false".equalsIgnoreCase(getEnvironment().getProperty("demo.sc.xml.precompiled"));
+        BinaryBeanDefinitionReader binaryReader = new BinaryBeanDefinitionReader(reader.getRegistry());
+        binaryReader.setEnvironment(getEnvironment());
+        binaryReader.setResourceLoader(this);
+        for (String location : configLocations) {
+            if (enabled && loadPrecompiled(binaryReader, location)) {
+                this.precompiledLocationCount++;
+            } else {
+                reader.loadBeanDefinitions(location);
+            }
+        }
+    }
+
+    private boolean loadPrecompiled(BinaryBeanDefinitionReader binaryReader, String location) {
+        Resource binary = getResource(location + BinaryBeanDefinitionFormat.SUFFIX);
+        if (!binary.exists()) {
+            return false;
+        }
+        if (binaryReader.loadBeanDefinitionsIfUpToDate(binary) < 0) {
+            LOGGER.warn("{}编译之后XML的内容、spring的版本或者激活的profile发生了变化，改为解析{}",
+                    binary.getDescription(), location);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 最近一次刷新时，从预编译的文件中读取的配置文件的个数
+     */
+    public int getPrecompiledLocationCount() {
+        return this.precompiledLocationCount;
+    }
+}
@@ -0,0 +1,412 @@
+package com.ifan112.demo.sc.xml;
+
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.RuntimeBeanNameReference;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.beans.factory.parsing.EmptyReaderEventListener;
+import org.springframework.beans.factory.parsing.ImportDefinition;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.beans.factory.support.LookupOverride;
+import org.springframework.beans.factory.support.ManagedArray;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
+import org.springframework.beans.factory.support.ManagedProperties;
+import org.springframework.beans.factory.support.ManagedSet;
+import org.springframework.beans.factory.support.MethodOverride;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.SpringVersion;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import static com.ifan112.demo.sc.xml.BinaryBeanDefinitionFormat.*;
+
+/**
+ * 构建时把XML中的bean定义编译为二进制文件，由{@link BinaryBeanDefinitionReader}读取
+ *
+ * 与context刷新时一样，由XmlBeanDefinitionReader解析XML（包括XSD校验、import以及aop等命名空间的处理），
+ * 然后把注册到beanFactory中的bean定义、别名按注册的顺序写出。XML仍然是唯一需要维护的文件，
+ * XML（包括import的文件）的长度和CRC32、spring的版本以及激活的profile一起写入文件头部，用于运行时判断是否过期。
+ *
+ * 只支持XML能够产生的属性值类型；qualifier、replaced-method以及其它类型的属性值会抛出IllegalStateException，
+ * 这样的XML只能在运行时解析。
+ *
+ * 由pom.xml中的aot profile在compile阶段调用，文件写入输出目录中XML所在的位置：
+ * <pre>
+ * java XmlBeanDefinitionCompiler 输出目录 XML文件...
+ * </pre>
+ */
+public class XmlBeanDefinitionCompiler {
+
+    private final ResourceLoader resourceLoader;
+
+    private final Environment environment;
+
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+
+    private final List<String> strings = new ArrayList<>();
+
+    public XmlBeanDefinitionCompiler() {
+        this(new DefaultResourceLoader(), new StandardEnvironment());
+    }
+
+    public XmlBeanDefinitionCompiler(ResourceLoader resourceLoader, Environment environment) {
+        this.resourceLoader = resourceLoader;
+        this.environment = environment;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("用法：XmlBeanDefinitionCompiler 输出目录 XML文件...");
+            System.exit(1);
+        }
+        Path outputDirectory = Paths.get(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            String location = args[i];
+            Path file = outputDirectory.resolve(StringUtils.delete(location, ResourceLoader.CLASSPATH_URL_PREFIX) + SUFFIX);
+            int count = new XmlBeanDefinitionCompiler().compile(location, file);
+            System.out.println("生成bean定义文件：" + file + "，共" + count + "个bean定义");
+        }
+    }
+
+    /**
+     * 编译location指定的XML，写入file
+     *
+     * @return bean定义的个数
+     */
+    public int compile(String location, Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        byte[] bytes = compile(location, beanFactory);
+        Files.write(file, bytes);
+        return beanFactory.getBeanDefinitionCount();
+    }
+
+    /**
+     * 把location指定的XML解析到beanFactory中，并返回编译后的内容
+     */
+    public synchronized byte[] compile(String location, DefaultListableBeanFactory beanFactory) throws IOException {
+        Resource resource = this.resourceLoader.getResource(location);
+        Set<Resource> sources = new LinkedHashSet<>();
+        sources.add(resource);
+
+        XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(beanFactory);
+        reader.setResourceLoader(this.resourceLoader);
+        reader.setEnvironment(this.environment);
+        reader.setEventListener(new EmptyReaderEventListener() {
+            @Override
+            public void importProcessed(ImportDefinition importDefinition) {
+                sources.addAll(Arrays.asList(importDefinition.getActualResources()));
+            }
+        });
+        reader.loadBeanDefinitions(resource);
+
+        this.stringIndexes.clear();
+        this.strings.clear();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        String[] beanNames = beanFactory.getBeanDefinitionNames();
+        writeVarInt(out, beanNames.length);
+        for (String beanName : beanNames) {
+            writeString(out, beanName);
+            writeStrings(out, beanFactory.getAliases(beanName));
+            writeDefinition(out, beanName, beanFactory.getBeanDefinition(beanName));
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(body.size() + 1024);
+        DataOutputStream header = new DataOutputStream(result);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        writeHeaderString(header, String.valueOf(SpringVersion.getVersion()));
+        writeHeaderString(header, activeProfiles(this.environment));
+        writeVarInt(header, sources.size());
+        for (Resource source : sources) {
+            writeHeaderString(header, sourceLocation(source));
+            header.writeLong(source.contentLength());
+            header.writeLong(crc(source));
+        }
+        writeVarInt(header, this.strings.size());
+        for (String string : this.strings) {
+            writeHeaderString(header, string);
+        }
+        header.flush();
+        body.writeTo(result);
+        return result.toByteArray();
+    }
+
+    private void writeDefinition(DataOutputStream out, String beanName, BeanDefinition beanDefinition)
+            throws IOException {
+        if (!(beanDefinition instanceof RootBeanDefinition) && !(beanDefinition instanceof GenericBeanDefinition)) {
+            throw new IllegalStateException("bean " + beanName + "的定义类型不支持预编译：" + beanDefinition.getClass().getName());
+        }
+        AbstractBeanDefinition definition = (AbstractBeanDefinition) beanDefinition;
+        if (!definition.getQualifiers().isEmpty() || definition.getInstanceSupplier() != null) {
+            throw new IllegalStateException("bean " + beanName + "带有qualifier或者instance supplier，不支持预编译");
+        }
+
+        out.writeByte(definition instanceof RootBeanDefinition ? ROOT_DEFINITION : GENERIC_DEFINITION);
+        writeString(out, definition.getBeanClassName());
+        writeString(out, definition.getParentName());
+        writeString(out, definition.getScope());
+        int flags = 0;
+        flags |= definition.isAbstract() ? ABSTRACT : 0;
+        flags |= definition.isLazyInit() ? LAZY_INIT : 0;
+        flags |= definition.isAutowireCandidate() ? AUTOWIRE_CANDIDATE : 0;
+        flags |= definition.isPrimary() ? PRIMARY : 0;
+        flags |= definition.isNonPublicAccessAllowed() ? NON_PUBLIC_ACCESS_ALLOWED : 0;
+        flags |= definition.isLenientConstructorResolution() ? LENIENT_CONSTRUCTOR_RESOLUTION : 0;
+        flags |= definition.isEnforceInitMethod() ? ENFORCE_INIT_METHOD : 0;
+        flags |= definition.isEnforceDestroyMethod() ? ENFORCE_DESTROY_METHOD : 0;
+        flags |= definition.isSynthetic() ? SYNTHETIC : 0;
+        writeVarInt(out, flags);
+        writeVarInt(out, definition.getAutowireMode());
+        writeVarInt(out, definition.getDependencyCheck());
+        writeVarInt(out, definition.getRole());
+        writeStrings(out, definition.getDependsOn());
+        writeString(out, definition.getFactoryBeanName());
+        writeString(out, definition.getFactoryMethodName());
+        writeString(out, definition.getInitMethodName());
+        writeString(out, definition.getDestroyMethodName());
+        writeString(out, definition.getDescription());
+        writeString(out, definition.getResourceDescription());
+
+        ConstructorArgumentValues constructorArguments = definition.getConstructorArgumentValues();
+        writeVarInt(out, constructorArguments.getIndexedArgumentValues().size());
+        for (Map.Entry<Integer, ConstructorArgumentValues.ValueHolder> entry
+                : constructorArguments.getIndexedArgumentValues().entrySet()) {
+            writeVarInt(out, entry.getKey());
+            writeValueHolder(out, beanName, entry.getValue());
+        }
+        writeVarInt(out, constructorArguments.getGenericArgumentValues().size());
+        for (ConstructorArgumentValues.ValueHolder valueHolder : constructorArguments.getGenericArgumentValues()) {
+            writeValueHolder(out, beanName, valueHolder);
+        }
+
+        PropertyValue[] propertyValues = definition.getPropertyValues().getPropertyValues();
+        writeVarInt(out, propertyValues.length);
+        for (PropertyValue propertyValue : propertyValues) {
+            writeString(out, propertyValue.getName());
+            writeValue(out, beanName, propertyValue.getValue());
+        }
+
+        Set<MethodOverride> overrides = definition.getMethodOverrides().getOverrides();
+        writeVarInt(out, overrides.size());
+        for (MethodOverride override : overrides) {
+            if (!(override instanceof LookupOverride)) {
+                throw new IllegalStateException("bean " + beanName + "的replaced-method不支持预编译");
+            }
+            writeString(out, override.getMethodName());
+            writeString(out, ((LookupOverride) override).getBeanName());
+        }
+
+        String[] attributeNames = definition.attributeNames();
+        writeVarInt(out, attributeNames.length);
+        for (String attributeName : attributeNames) {
+            Object attribute = definition.getAttribute(attributeName);
+            if (attribute != null && !(attribute instanceof String)) {
+                throw new IllegalStateException("bean " + beanName + "的属性" + attributeName + "不是字符串，不支持预编译");
+            }
+            writeString(out, attributeName);
+            writeString(out, (String) attribute);
+        }
+    }
+
+    private void writeValueHolder(DataOutputStream out, String beanName,
+                                  ConstructorArgumentValues.ValueHolder valueHolder) throws IOException {
+        writeValue(out, beanName, valueHolder.getValue());
+        writeString(out, valueHolder.getType());
+        writeString(out, valueHolder.getName());
+    }
+
+    private void writeValue(DataOutputStream out, String beanName, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof TypedStringValue) {
+            TypedStringValue typedValue = (TypedStringValue) value;
+            out.writeByte(TYPED_STRING);
+            writeString(out, typedValue.getValue());
+            writeString(out, typedValue.getTargetTypeName());
+            out.writeBoolean(typedValue.isDynamic());
+        } else if (value instanceof RuntimeBeanReference) {
+            RuntimeBeanReference reference = (RuntimeBeanReference) value;
+            out.writeByte(BEAN_REFERENCE);
+            writeString(out, reference.getBeanName());
+            out.writeBoolean(reference.isToParent());
+        } else if (value instanceof RuntimeBeanNameReference) {
+            out.writeByte(BEAN_NAME_REFERENCE);
+            writeString(out, ((RuntimeBeanNameReference) value).getBeanName());
+        } else if (value instanceof BeanDefinitionHolder) {
+            BeanDefinitionHolder holder = (BeanDefinitionHolder) value;
+            out.writeByte(BEAN_DEFINITION_HOLDER);
+            writeString(out, holder.getBeanName());
+            writeStrings(out, holder.getAliases());
+            writeDefinition(out, holder.getBeanName(), holder.getBeanDefinition());
+        } else if (value instanceof BeanDefinition) {
+            out.writeByte(BEAN_DEFINITION);
+            writeDefinition(out, beanName, (BeanDefinition) value);
+        } else if (value instanceof ManagedArray) {
+            ManagedArray array = (ManagedArray) value;
+            out.writeByte(ARRAY);
+            writeString(out, array.getElementTypeName());
+            out.writeBoolean(array.isMergeEnabled());
+            writeValues(out, beanName, array);
+        } else if (value instanceof ManagedList) {
+            ManagedList<?> list = (ManagedList<?>) value;
+            out.writeByte(LIST);
+            writeString(out, list.getElementTypeName());
+            out.writeBoolean(list.isMergeEnabled());
+            writeValues(out, beanName, list);
+        } else if (value instanceof ManagedSet) {
+            ManagedSet<?> set = (ManagedSet<?>) value;
+            out.writeByte(SET);
+            writeString(out, set.getElementTypeName());
+            out.writeBoolean(set.isMergeEnabled());
+            writeValues(out, beanName, set);
+        } else if (value instanceof ManagedMap) {
+            ManagedMap<?, ?> map = (ManagedMap<?, ?>) value;
+            out.writeByte(MAP);
+            writeString(out, map.getKeyTypeName());
+            writeString(out, map.getValueTypeName());
+            out.writeBoolean(map.isMergeEnabled());
+            writeEntries(out, beanName, map);
+        } else if (value instanceof ManagedProperties) {
+            ManagedProperties properties = (ManagedProperties) value;
+            out.writeByte(PROPERTIES);
+            out.writeBoolean(properties.isMergeEnabled());
+            writeEntries(out, beanName, properties);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else {
+            throw new IllegalStateException("bean " + beanName + "的属性值类型不支持预编译：" + value.getClass().getName());
+        }
+    }
+
+    private void writeValues(DataOutputStream out, String beanName, Collection<?> values) throws IOException {
+        writeVarInt(out, values.size());
+        for (Object element : values) {
+            writeValue(out, beanName, element);
+        }
+    }
+
+    private void writeEntries(DataOutputStream out, String beanName, Map<?, ?> map) throws IOException {
+        writeVarInt(out, map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(out, beanName, entry.getKey());
+            writeValue(out, beanName, entry.getValue());
+        }
+    }
+
+    private void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        if (values == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, values.length + 1);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        Integer index = this.stringIndexes.get(value);
+        if (index == null) {
+            index = this.strings.size();
+            this.strings.add(value);
+            this.stringIndexes.put(value, index);
+        }
+        writeVarInt(out, index + 1);
+    }
+
+    private static void writeHeaderString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * 运行时用来重新获取源文件的位置，类路径中的文件使用classpath:前缀，与构建目录还是jar包无关
+     */
+    static String sourceLocation(Resource resource) throws IOException {
+        if (resource instanceof ClassPathResource) {
+            return ResourceLoader.CLASSPATH_URL_PREFIX + ((ClassPathResource) resource).getPath();
+        }
+        return resource.getURL().toString();
+    }
+
+    /**
+     * 排序后的激活的profile，没有激活的profile时为默认的profile
+     */
+    static String activeProfiles(Environment environment) {
+        String[] profiles = environment.getActiveProfiles();
+        if (profiles.length == 0) {
+            profiles = environment.getDefaultProfiles();
+        }
+        return StringUtils.collectionToCommaDelimitedString(new TreeSet<>(Arrays.asList(profiles)));
+    }
+
+    private static long crc(Resource resource) {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = resource.getInputStream()) {
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                crc.update(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return crc.getValue();
+    }
+}
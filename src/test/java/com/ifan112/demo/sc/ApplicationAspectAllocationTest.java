@@ -0,0 +1,159 @@
+package com.ifan112.demo.sc;
+
+import com.ifan112.demo.sc.audit.AuditLogger;
+import com.ifan112.demo.sc.audit.AuditMode;
+import com.ifan112.demo.sc.audit.OverflowPolicy;
+import com.ifan112.demo.sc.inflight.InFlightTracker;
+import com.ifan112.demo.sc.latency.LatencyRecorder;
+import com.ifan112.demo.sc.service.UserService;
+import com.ifan112.demo.sc.service.impl.UserServiceImpl;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 校验切面在预热之后，每次调用不再分配额外的对象
+ *
+ * 通过context中真实的代理调用UserService.createUser，经过ExposeInvocationInterceptor、Jdk动态代理、
+ * ApplicationAspectConfiguration的两个advice以及point.proceed()。代理本身每次调用都会创建MethodInvocation、
+ * MethodInvocationProceedingJoinPoint，createUser也会创建User，因此与advice链形状相同、但什么都不做的切面对比，
+ * 二者每次调用分配的字节数之差就是ApplicationAspectConfiguration自身的分配。
+ *
+ * 通过com.sun.management.ThreadMXBean统计调用线程分配的字节数，后台线程格式化日志时的分配不计算在内。
+ */
+public class ApplicationAspectAllocationTest {
+
+    private static final int WARM_UP = 200_000;
+    private static final int CALLS = 1_000_000;
+
+    private Level auditLevel;
+
+    @Before
+    public void disableAuditOutput() {
+        auditLevel = LogManager.getLogger("audit").getLevel();
+        Configurator.setLevel("audit", Level.OFF);
+    }
+
+    @After
+    public void restoreAuditOutput() {
+        Configurator.setLevel("audit", auditLevel);
+    }
+
+    @Test
+    public void adviceDoesNotAllocateAfterWarmUp() {
+        try (AnnotationConfigApplicationContext advisedContext = new AnnotationConfigApplicationContext(AuditAspectConfiguration.class);
+             AnnotationConfigApplicationContext baselineContext = new AnnotationConfigApplicationContext(NoOpAspectConfiguration.class)) {
+            UserService advisedService = advisedContext.getBean(UserService.class);
+            UserService baselineService = baselineContext.getBean(UserService.class);
+            Assert.assertTrue(AopUtils.isJdkDynamicProxy(advisedService));
+            Assert.assertTrue(AopUtils.isJdkDynamicProxy(baselineService));
+
+            // 两个代理共用spring中同一段调用advice的代码，先把两者都预热，再分别测量。
+            // 否则先测量的一方在JIT的类型profile还是单态时，advice参数数组可能被逃逸分析消除，二者不可比
+            invoke(advisedService, WARM_UP);
+            invoke(baselineService, WARM_UP);
+
+            double advised = bytesPerCall(advisedService);
+            double baseline = bytesPerCall(baselineService);
+            System.out.println("每次调用分配：不做任何事的切面" + baseline + "字节，ApplicationAspectConfiguration " + advised + "字节");
+
+            // 允许少量的测量误差，例如getThreadAllocatedBytes自身的分配；每次调用哪怕多分配一个对象也至少有16字节
+            Assert.assertTrue("advice在预热后仍然在分配对象：" + (advised - baseline) + "字节/次", advised - baseline < 1);
+        }
+    }
+
+    private static double bytesPerCall(UserService userService) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        invoke(userService, CALLS);
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        return (double) allocated / CALLS;
+    }
+
+    private static void invoke(UserService userService, int times) {
+        for (int i = 0; i < times; i++) {
+            if (userService.createUser("一凡", "无", 22) == null) {
+                throw new IllegalStateException("createUser返回了null");
+            }
+        }
+    }
+
+
+    @Configuration
+    @EnableAspectJAutoProxy
+    static class AuditAspectConfiguration {
+
+        @Bean
+        public ApplicationAspectConfiguration applicationAspectConfiguration() {
+            return new ApplicationAspectConfiguration();
+        }
+
+        @Bean
+        public AuditLogger auditLogger() {
+            return new AuditLogger(AuditMode.ASYNC, 1024, 256, OverflowPolicy.DROP);
+        }
+
+        @Bean
+        public InFlightTracker inFlightTracker() {
+            return new InFlightTracker();
+        }
+
+        @Bean
+        public LatencyRecorder latencyRecorder() {
+            return new LatencyRecorder(0, false);
+        }
+
+        @Bean
+        public UserServiceImpl userService() {
+            return new UserServiceImpl();
+        }
+    }
+
+    @Configuration
+    @EnableAspectJAutoProxy
+    static class NoOpAspectConfiguration {
+
+        @Bean
+        public NoOpAspect noOpAspect() {
+            return new NoOpAspect();
+        }
+
+        @Bean
+        public UserServiceImpl userService() {
+            return new UserServiceImpl();
+        }
+    }
+
+    /**
+     * 与ApplicationAspectConfiguration的advice链形状相同：一个@Around和一个@AfterReturning
+     */
+    @Aspect
+    static class NoOpAspect {
+
+        @Around("execution(* com.ifan112.demo.sc.service.impl.*ServiceImpl.*(..))")
+        public Object around(ProceedingJoinPoint point) throws Throwable {
+            return point.proceed();
+        }
+
+        @AfterReturning(value = "execution(* com.ifan112.demo.sc.service.impl.*ServiceImpl.*(..))", returning = "retVal")
+        public void afterReturning(Object retVal) {
+        }
+    }
+}
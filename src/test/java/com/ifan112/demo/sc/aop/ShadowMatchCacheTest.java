@@ -0,0 +1,108 @@
+package com.ifan112.demo.sc.aop;
+
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * 写入文件失败时条目仍然待保存；引用其它类中具名切点的表达式不被缓存
+ */
+public class ShadowMatchCacheTest {
+
+    private static final String OWN_POINTCUT = "servicePointcut()";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void entriesStayDirtyUntilFileIsReplaced() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("shadow-match.cache");
+        // 目标位置是非空的目录，替换失败
+        Files.createDirectories(file.resolve("occupied"));
+
+        ShadowMatchCache cache = new ShadowMatchCache(file);
+        cache.put(GreeterImpl.class, OwnPointcutAspect.class, OWN_POINTCUT, true);
+        Assert.assertTrue(cache.isDirty());
+        try {
+            cache.save();
+            Assert.fail("目标位置是非空的目录时，应当写入失败");
+        } catch (IOException expected) {
+        }
+        Assert.assertTrue(cache.isDirty());
+        // 临时文件已被删除
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            Assert.assertEquals(1, files.count());
+        }
+
+        // 下一次save重试
+        Files.delete(file.resolve("occupied"));
+        Files.delete(file);
+        cache.save();
+        Assert.assertFalse(cache.isDirty());
+
+        ShadowMatchCache loaded = new ShadowMatchCache(file);
+        loaded.load();
+        Assert.assertEquals(Boolean.TRUE, loaded.get(GreeterImpl.class, OwnPointcutAspect.class, OWN_POINTCUT));
+        Assert.assertEquals(1, loaded.getHits());
+    }
+
+    @Test
+    public void pointcutsDefinedInOtherClassesAreNotCacheable() {
+        ShadowMatchCache cache = new ShadowMatchCache(folder.getRoot().toPath().resolve("shadow-match.cache"));
+
+        Assert.assertTrue(cache.isCacheable(OwnPointcutAspect.class, OWN_POINTCUT));
+        Assert.assertTrue(cache.isCacheable(OwnPointcutAspect.class, "execution(* *.greet(..)) and " + OWN_POINTCUT));
+        Assert.assertFalse(cache.isCacheable(OwnPointcutAspect.class,
+                "execution(* *.greet(..)) && " + SharedPointcuts.class.getName() + ".greeting()"));
+        // 切面自己的具名切点又引用了其它类中的切点
+        Assert.assertFalse(cache.isCacheable(DelegatingPointcutAspect.class, "delegating()"));
+        // 找不到定义，或者无法解析
+        Assert.assertFalse(cache.isCacheable(OwnPointcutAspect.class, "missing()"));
+        Assert.assertFalse(cache.isCacheable(OwnPointcutAspect.class, "execution(* *.greet(..)"));
+    }
+
+
+    interface Greeter {
+
+        String greet(String name);
+    }
+
+    static class GreeterImpl implements Greeter {
+
+        @Override
+        public String greet(String name) {
+            return "hello " + name;
+        }
+    }
+
+    static class SharedPointcuts {
+
+        @Pointcut("execution(* com.ifan112.demo.sc.aop.ShadowMatchCacheTest.Greeter.greet(..))")
+        public void greeting() {
+        }
+    }
+
+    @Aspect
+    static class OwnPointcutAspect {
+
+        @Pointcut("execution(* com.ifan112.demo.sc.aop.ShadowMatchCacheTest.Greeter.*(..))")
+        public void servicePointcut() {
+        }
+    }
+
+    @Aspect
+    static class DelegatingPointcutAspect {
+
+        @Pointcut("com.ifan112.demo.sc.aop.ShadowMatchCacheTest.SharedPointcuts.greeting()")
+        public void delegating() {
+        }
+    }
+}
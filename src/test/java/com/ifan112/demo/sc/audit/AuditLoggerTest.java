@@ -0,0 +1,70 @@
+package com.ifan112.demo.sc.audit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.appender.WriterAppender;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+
+/**
+ * 异步模式下，抛出异常的调用同样输出参数，afterReturning的记录带有方法名称
+ *
+ * 在audit日志记录器上临时添加一个写入StringWriter的appender，destroy()输出剩余的记录之后读取。
+ */
+public class AuditLoggerTest {
+
+    private final StringWriter output = new StringWriter();
+
+    private final Logger logger = (Logger) LogManager.getLogger("audit");
+
+    private WriterAppender appender;
+
+    @Before
+    public void captureOutput() {
+        appender = WriterAppender.createAppender(PatternLayout.newBuilder().withPattern("%m%n").build(),
+                null, output, "AuditLoggerTest", false, true);
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @After
+    public void restoreOutput() {
+        logger.removeAppender(appender);
+        appender.stop();
+    }
+
+    @Test(timeout = 10_000)
+    public void failedAndReturningCallsArePublished() throws Exception {
+        AuditLogger auditLogger = new AuditLogger(AuditMode.ASYNC, 1024, 256, OverflowPolicy.DROP);
+        auditLogger.afterPropertiesSet();
+        Method method = Greeter.class.getMethod("greet", String.class);
+        MethodMetadata metadata = new MethodMetadataCache().get(method, Greeter.class);
+
+        Object[] args = {"一凡"};
+        auditLogger.logStart(metadata, args);
+        auditLogger.logFailure(metadata, args, new IllegalStateException("失败了"));
+        auditLogger.logStart(metadata, args);
+        auditLogger.logInvocation(metadata, args, "你好 一凡");
+        auditLogger.logReturning(metadata, "你好 一凡");
+        auditLogger.destroy();
+
+        String log = output.toString();
+        Assert.assertTrue(log, log.contains("greet方法开始执行！！参数："));
+        Assert.assertTrue(log, log.contains("greet方法执行异常！！异常：java.lang.IllegalStateException: 失败了"));
+        Assert.assertTrue(log, log.contains("greet方法执行结束！！结果：你好 一凡"));
+        Assert.assertTrue(log, log.contains("afterReturning --- greet：你好 一凡"));
+        Assert.assertEquals(0, auditLogger.getDroppedCount());
+    }
+
+
+    interface Greeter {
+
+        String greet(String name);
+    }
+}
@@ -0,0 +1,60 @@
+package com.ifan112.demo.sc.audit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+/**
+ * 同一个接口方法由不同的目标类实现时，各自使用目标类上的参数名称
+ */
+public class MethodMetadataCacheTest {
+
+    @Test
+    public void metadataIsCachedPerTargetClass() throws Exception {
+        MethodMetadataCache cache = new MethodMetadataCache();
+        Method method = Greeter.class.getMethod("greet", String.class);
+
+        MethodMetadata english = cache.get(method, EnglishGreeter.class);
+        MethodMetadata chinese = cache.get(method, ChineseGreeter.class);
+
+        Assert.assertArrayEquals(new String[]{"name"}, english.getParameterNames());
+        Assert.assertArrayEquals(new String[]{"nickname"}, chinese.getParameterNames());
+        Assert.assertSame(english, cache.get(method, EnglishGreeter.class));
+        Assert.assertSame(chinese, cache.get(method, ChineseGreeter.class));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void nullTargetClassUsesDeclaringClass() throws Exception {
+        MethodMetadataCache cache = new MethodMetadataCache();
+        Method method = EnglishGreeter.class.getMethod("greet", String.class);
+
+        MethodMetadata metadata = cache.get(method, null);
+        Assert.assertSame(metadata, cache.get(method, EnglishGreeter.class));
+        Assert.assertEquals("greet", metadata.getName());
+        Assert.assertEquals(1, cache.size());
+    }
+
+
+    interface Greeter {
+
+        String greet(String name);
+    }
+
+    static class EnglishGreeter implements Greeter {
+
+        @Override
+        public String greet(String name) {
+            return "hello " + name;
+        }
+    }
+
+    static class ChineseGreeter implements Greeter {
+
+        @Override
+        public String greet(String nickname) {
+            return "你好 " + nickname;
+        }
+    }
+}
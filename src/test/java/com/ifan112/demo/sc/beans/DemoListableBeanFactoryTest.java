@@ -0,0 +1,217 @@
+package com.ifan112.demo.sc.beans;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.NoUniqueBeanDefinitionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+
+/**
+ * 并行预实例化时，按类型注入会判断所有bean的类型，包括其它线程正在创建、持有创建锁的bean
+ *
+ * 按类型查找单例的缓存：命中、注册和销毁单例时失效，以及FactoryBean的产品和FactoryBean本身分别缓存。
+ */
+public class DemoListableBeanFactoryTest {
+
+    private static final int CONSTRUCT_MILLIS = 50;
+
+    private GenericApplicationContext context;
+
+    @After
+    public void close() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void parallelRefreshWithAutowiringAcrossGroupsFinishes() {
+        for (int round = 0; round < 10; round++) {
+            close();
+            context = newContext(4);
+            context.refresh();
+
+            Assert.assertSame(context.getBean(ProviderA.class), context.getBean(ConsumerA.class).provider);
+            Assert.assertSame(context.getBean(ProviderB.class), context.getBean(ConsumerB.class).provider);
+            Assert.assertSame(context.getBean(ProviderC.class), context.getBean(ConsumerC.class).provider);
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void serialRefreshIsUnchanged() {
+        context = newContext(1);
+        context.refresh();
+
+        Assert.assertSame(context.getBean(ProviderA.class), context.getBean(ConsumerA.class).provider);
+    }
+
+    @Test
+    public void resolvedTypeIsCachedAfterRefresh() {
+        context = newContext(1);
+        DemoListableBeanFactory beanFactory = (DemoListableBeanFactory) context.getBeanFactory();
+        beanFactory.setResolvedTypeCacheEnabled(true);
+        context.refresh();
+
+        ProviderA provider = context.getBean(ProviderA.class);
+        Assert.assertEquals(1, beanFactory.getResolvedTypeCacheSize());
+        Assert.assertSame(provider, context.getBean(ProviderA.class));
+        Assert.assertEquals(1, beanFactory.getResolvedTypeCacheSize());
+    }
+
+    @Test
+    public void registerSingletonInvalidatesCache() {
+        context = newContext(1);
+        DemoListableBeanFactory beanFactory = (DemoListableBeanFactory) context.getBeanFactory();
+        beanFactory.setResolvedTypeCacheEnabled(true);
+        context.refresh();
+        context.getBean(ProviderA.class);
+
+        beanFactory.registerSingleton("anotherProviderA", new ProviderA());
+        Assert.assertEquals(0, beanFactory.getResolvedTypeCacheSize());
+        try {
+            context.getBean(ProviderA.class);
+            Assert.fail("注册了同类型的单例之后，按类型查找不应返回缓存的结果");
+        } catch (NoUniqueBeanDefinitionException expected) {
+        }
+    }
+
+    @Test
+    public void destroySingletonInvalidatesCache() {
+        context = newContext(1);
+        DemoListableBeanFactory beanFactory = (DemoListableBeanFactory) context.getBeanFactory();
+        beanFactory.setResolvedTypeCacheEnabled(true);
+        context.refresh();
+        ProviderA provider = context.getBean(ProviderA.class);
+
+        beanFactory.destroySingleton("providerA");
+        Assert.assertEquals(0, beanFactory.getResolvedTypeCacheSize());
+        // 被销毁的单例重新创建，缓存中不能是销毁之前的对象
+        Assert.assertNotSame(provider, context.getBean(ProviderA.class));
+    }
+
+    @Test
+    public void factoryBeanProductAndFactoryAreCachedSeparately() {
+        context = newContext(1);
+        DemoListableBeanFactory beanFactory = (DemoListableBeanFactory) context.getBeanFactory();
+        beanFactory.setResolvedTypeCacheEnabled(true);
+        context.registerBean("product", ProductFactoryBean.class, ProductFactoryBean::new);
+        context.registerBean("prototypeProduct", PrototypeProductFactoryBean.class, PrototypeProductFactoryBean::new);
+        context.refresh();
+
+        Product product = context.getBean(Product.class);
+        Assert.assertSame(product, context.getBean(Product.class));
+        ProductFactoryBean factoryBean = context.getBean(ProductFactoryBean.class);
+        Assert.assertSame(factoryBean, context.getBean("&product"));
+        Assert.assertSame(factoryBean, context.getBean(ProductFactoryBean.class));
+        Assert.assertEquals(2, beanFactory.getResolvedTypeCacheSize());
+
+        // isSingleton()为false的FactoryBean，每次都创建新的产品，不缓存；FactoryBean本身仍是单例
+        Assert.assertNotSame(context.getBean(PrototypeProduct.class), context.getBean(PrototypeProduct.class));
+        Assert.assertEquals(2, beanFactory.getResolvedTypeCacheSize());
+        Assert.assertSame(context.getBean(PrototypeProductFactoryBean.class), context.getBean(PrototypeProductFactoryBean.class));
+        Assert.assertEquals(3, beanFactory.getResolvedTypeCacheSize());
+    }
+
+    private static GenericApplicationContext newContext(int parallelism) {
+        DemoListableBeanFactory beanFactory = new DemoListableBeanFactory();
+        beanFactory.setPreInstantiationParallelism(parallelism);
+        GenericApplicationContext context = new GenericApplicationContext(beanFactory);
+        AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+        // 三个Consumer各自在一个分组中，构造之后几乎同时开始按类型注入
+        context.registerBean("consumerA", ConsumerA.class, ConsumerA::new);
+        context.registerBean("consumerB", ConsumerB.class, ConsumerB::new);
+        context.registerBean("consumerC", ConsumerC.class, ConsumerC::new);
+        context.registerBean("providerA", ProviderA.class, ProviderA::new);
+        context.registerBean("providerB", ProviderB.class, ProviderB::new);
+        context.registerBean("providerC", ProviderC.class, ProviderC::new);
+        return context;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(CONSTRUCT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    static class ProviderA {
+    }
+
+    static class ProviderB {
+    }
+
+    static class ProviderC {
+    }
+
+    static class ConsumerA {
+
+        @Autowired
+        ProviderA provider;
+
+        ConsumerA() {
+            sleep();
+        }
+    }
+
+    static class ConsumerB {
+
+        @Autowired
+        ProviderB provider;
+
+        ConsumerB() {
+            sleep();
+        }
+    }
+
+    static class Product {
+    }
+
+    static class PrototypeProduct {
+    }
+
+    static class ProductFactoryBean implements FactoryBean<Product> {
+
+        @Override
+        public Product getObject() {
+            return new Product();
+        }
+
+        @Override
+        public Class<?> getObjectType() {
+            return Product.class;
+        }
+    }
+
+    static class PrototypeProductFactoryBean implements FactoryBean<PrototypeProduct> {
+
+        @Override
+        public PrototypeProduct getObject() {
+            return new PrototypeProduct();
+        }
+
+        @Override
+        public Class<?> getObjectType() {
+            return PrototypeProduct.class;
+        }
+
+        @Override
+        public boolean isSingleton() {
+            return false;
+        }
+    }
+
+    static class ConsumerC {
+
+        @Autowired
+        ProviderC provider;
+
+        ConsumerC() {
+            sleep();
+        }
+    }
+}
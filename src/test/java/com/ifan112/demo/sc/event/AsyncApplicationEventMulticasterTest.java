@@ -0,0 +1,72 @@
+package com.ifan112.demo.sc.event;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监听器在投递线程上再发布事件，队列已满时不能死锁；移除监听器时它的队列也被移除
+ */
+public class AsyncApplicationEventMulticasterTest {
+
+    private final AsyncApplicationEventMulticaster multicaster = new AsyncApplicationEventMulticaster(2, 2);
+
+    @After
+    public void destroy() throws InterruptedException {
+        multicaster.destroy();
+    }
+
+    @Test(timeout = 10_000)
+    public void listenerPublishingToItselfDoesNotDeadlock() throws InterruptedException {
+        // 每个事件再发布fanOut个下一层的事件，远多于队列的容量2
+        int fanOut = 5;
+        int depth = 3;
+        int total = 1 + 5 + 25 + 125;
+        CountDownLatch delivered = new CountDownLatch(total);
+        multicaster.addApplicationListener((ApplicationListener<DepthEvent>) event -> {
+            if (event.depth < depth) {
+                for (int i = 0; i < fanOut; i++) {
+                    multicaster.multicastEvent(new DepthEvent(this, event.depth + 1));
+                }
+            }
+            delivered.countDown();
+        });
+
+        multicaster.multicastEvent(new DepthEvent(this, 0));
+        Assert.assertTrue("事件没有全部送达，剩余" + delivered.getCount(), delivered.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10_000)
+    public void removedListenerChannelIsPruned() throws InterruptedException {
+        CountDownLatch delivered = new CountDownLatch(2);
+        ApplicationListener<DepthEvent> first = event -> delivered.countDown();
+        ApplicationListener<DepthEvent> second = event -> delivered.countDown();
+        multicaster.addApplicationListener(first);
+        multicaster.addApplicationListener(second);
+
+        multicaster.multicastEvent(new DepthEvent(this, 0));
+        Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, multicaster.getListenerChannels());
+
+        multicaster.removeApplicationListener(first);
+        Assert.assertEquals(1, multicaster.getListenerChannels());
+        multicaster.removeAllListeners();
+        Assert.assertEquals(0, multicaster.getListenerChannels());
+    }
+
+
+    static class DepthEvent extends ApplicationEvent {
+
+        final int depth;
+
+        DepthEvent(Object source, int depth) {
+            super(source);
+            this.depth = depth;
+        }
+    }
+}
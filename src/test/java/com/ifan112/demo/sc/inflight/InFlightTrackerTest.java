@@ -0,0 +1,183 @@
+package com.ifan112.demo.sc.inflight;
+
+import com.ifan112.demo.sc.ApplicationAspectConfiguration;
+import com.ifan112.demo.sc.audit.AuditLogger;
+import com.ifan112.demo.sc.audit.AuditMode;
+import com.ifan112.demo.sc.audit.OverflowPolicy;
+import com.ifan112.demo.sc.latency.LatencyRecorder;
+import com.ifan112.demo.sc.service.OrderService;
+import com.ifan112.demo.sc.service.impl.OrderServiceImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Scope;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * stop()等待进行中的调用结束时，这些调用内部的嵌套调用必须被放行，新的最外层调用按照policy处理
+ *
+ * 入口关闭之后，被代理的prototype bean仍然可以被销毁。
+ */
+public class InFlightTrackerTest {
+
+    private InFlightTracker tracker;
+
+    @Before
+    public void start() {
+        tracker = new InFlightTracker(AdmissionPolicy.REJECT, 10_000, 0);
+        tracker.start();
+    }
+
+    @After
+    public void destroy() {
+        tracker.destroy();
+    }
+
+    @Test(timeout = 10_000)
+    public void nestedCallPassesClosedGate() throws Exception {
+        InFlightCounter outer = tracker.enter(Outer.class);
+
+        CompletableFuture<Void> stopping = CompletableFuture.runAsync(tracker::stop);
+        while (tracker.isRunning()) {
+            Thread.yield();
+        }
+
+        // 进行中的调用再调用其他bean，入口已关闭也不会被拒绝
+        InFlightCounter nested = tracker.enter(Nested.class);
+        Assert.assertEquals(2, tracker.getInFlightCount());
+        InFlightCounter nestedAgain = tracker.enter(Outer.class);
+        tracker.exit(nestedAgain);
+        tracker.exit(nested);
+
+        // 其它线程上新的调用仍然被拒绝
+        try {
+            CompletableFuture.runAsync(() -> tracker.enter(Outer.class)).get();
+            Assert.fail("入口关闭之后，其它线程的调用应当被拒绝");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(1, tracker.getRejectedCount());
+        Assert.assertFalse("最外层的调用结束之前stop()不应返回", stopping.isDone());
+
+        tracker.exit(outer);
+        stopping.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(0, tracker.getInFlightCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void outermostCallOnSameThreadIsGatedAfterExit() {
+        tracker.exit(tracker.enter(Outer.class));
+        tracker.stop();
+
+        // 之前的调用已经全部结束，同一个线程的新调用是最外层调用
+        try {
+            tracker.enter(Outer.class);
+            Assert.fail("入口关闭之后，新的调用应当被拒绝");
+        } catch (RejectedExecutionException expected) {
+        }
+        Assert.assertEquals(0, tracker.getInFlightCount());
+
+        tracker.start();
+        tracker.exit(tracker.enter(Outer.class));
+        Assert.assertEquals(0, tracker.getInFlightCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void advisedPrototypeIsDestroyedAfterStop() throws Exception {
+        OrderService orderService;
+        OrderServiceImpl target;
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(PrototypeConfiguration.class)) {
+            orderService = context.getBean(PrototypeHolder.class).orderService;
+            target = (OrderServiceImpl) ((Advised) orderService).getTargetSource().getTarget();
+            orderService.newOrder("一凡", 1);
+            Assert.assertTrue(orderService instanceof DisposableBean);
+        }
+
+        // context关闭时入口先关闭，之后PrototypeHolder通过代理调用destroy()，它不应被拒绝
+        try {
+            target.getEngine().submit("一凡", 1);
+            Assert.fail("destroy()没有被调用，订单引擎仍在运行");
+        } catch (IllegalStateException expected) {
+        }
+        // 普通的调用仍然被拒绝
+        try {
+            orderService.getOrderCount("一凡");
+            Assert.fail("入口关闭之后，新的调用应当被拒绝");
+        } catch (RejectedExecutionException expected) {
+        }
+    }
+
+
+    @Configuration
+    @EnableAspectJAutoProxy
+    static class PrototypeConfiguration {
+
+        @Bean
+        public ApplicationAspectConfiguration applicationAspectConfiguration() {
+            return new ApplicationAspectConfiguration();
+        }
+
+        @Bean
+        public AuditLogger auditLogger() {
+            return new AuditLogger(AuditMode.ASYNC, 1024, 256, OverflowPolicy.DROP);
+        }
+
+        @Bean
+        public InFlightTracker inFlightTracker() {
+            return new InFlightTracker(AdmissionPolicy.REJECT, 10_000, 0);
+        }
+
+        @Bean
+        public LatencyRecorder latencyRecorder() {
+            return new LatencyRecorder(0, false);
+        }
+
+        @Bean
+        @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+        public OrderServiceImpl orderService() {
+            return new OrderServiceImpl();
+        }
+
+        @Bean
+        public PrototypeHolder prototypeHolder(ConfigurableBeanFactory beanFactory) {
+            return new PrototypeHolder(beanFactory, (OrderService) beanFactory.getBean("orderService"));
+        }
+    }
+
+    /**
+     * 容器不管理prototype bean的销毁，由持有者在自己销毁时销毁它
+     */
+    static class PrototypeHolder implements DisposableBean {
+
+        private final ConfigurableBeanFactory beanFactory;
+        private final OrderService orderService;
+
+        PrototypeHolder(ConfigurableBeanFactory beanFactory, OrderService orderService) {
+            this.beanFactory = beanFactory;
+            this.orderService = orderService;
+        }
+
+        @Override
+        public void destroy() {
+            beanFactory.destroyBean("orderService", orderService);
+        }
+    }
+
+    static class Outer {
+    }
+
+    static class Nested {
+    }
+}
@@ -0,0 +1,216 @@
+package com.ifan112.demo.sc.journal;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 段文件切换、重新打开后继续追加，以及最后一条记录只写了一部分时的恢复
+ *
+ * 同一个目录不能被同时打开；切换和关闭段文件时立即解除映射，通过名为mapped的BufferPoolMXBean统计映射的数量。
+ */
+public class MappedJournalTest {
+
+    private static final int HEADER_SIZE = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rollsToNewSegmentWhenRecordDoesNotFit() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        // 每条记录8 + 20字节，每个段正好放下两条
+        try (MappedJournal journal = new MappedJournal(directory, 56, ForcePolicy.NONE, 0)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(String.format("record-%013d", i));
+            }
+            try {
+                journal.append(new byte[56 - HEADER_SIZE + 1]);
+                Assert.fail("超过段文件大小的记录应当被拒绝");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+
+        List<String> segments = segmentNames(directory);
+        Assert.assertEquals(Arrays.asList("00000000000000000000.journal", "00000000000000000001.journal",
+                "00000000000000000002.journal"), segments);
+        List<String> records = replay(directory);
+        Assert.assertEquals(5, records.size());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(String.format("record-%013d", i), records.get(i));
+        }
+    }
+
+    @Test
+    public void reopenAppendsAfterLastRecord() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (MappedJournal journal = new MappedJournal(directory, 64, ForcePolicy.EVERY_RECORD, 0)) {
+            journal.append("第一条");
+            journal.append("第二条");
+            journal.append("第三条");
+        }
+        // 重新打开后从最后一个段的末尾继续追加，放不下时切换到下一个段
+        try (MappedJournal journal = new MappedJournal(directory, 64, ForcePolicy.EVERY_N_RECORDS, 2)) {
+            journal.append("第四条");
+            journal.append("第五条");
+        }
+        try (MappedJournal journal = new MappedJournal(directory, 64, ForcePolicy.NONE, 0)) {
+            journal.append("第六条");
+        }
+
+        Assert.assertEquals(Arrays.asList("第一条", "第二条", "第三条", "第四条", "第五条", "第六条"), replay(directory));
+        Assert.assertEquals(2, segmentNames(directory).size());
+    }
+
+    @Test
+    public void recoversToLastCompleteRecordAfterTornWrite() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        byte[] ghost = encode("幽灵记录".getBytes(StandardCharsets.UTF_8));
+        // 被截断的记录中间带有一条完整的记录编码，恢复之后追加的较短记录后面不能把它当成一条记录回放
+        ByteBuffer torn = ByteBuffer.allocate(1 + ghost.length + 32);
+        torn.put((byte) 'x').put(ghost);
+        while (torn.hasRemaining()) {
+            torn.put((byte) 'y');
+        }
+
+        int tornStart;
+        try (MappedJournal journal = new MappedJournal(directory, 4096, ForcePolicy.NONE, 0)) {
+            journal.append("a");
+            journal.append("b");
+            tornStart = 2 * (HEADER_SIZE + 1);
+            journal.append(torn.array());
+        }
+
+        // 模拟写入到一半时崩溃：截断在最后一条记录的内容中间
+        Path segment = directory.resolve("00000000000000000000.journal");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(tornStart + HEADER_SIZE + 1 + ghost.length + 5);
+        }
+        Assert.assertEquals(Arrays.asList("a", "b"), replay(directory));
+
+        try (MappedJournal journal = new MappedJournal(directory, 4096, ForcePolicy.NONE, 0)) {
+            journal.append("c");
+        }
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), replay(directory));
+
+        try (MappedJournal journal = new MappedJournal(directory, 4096, ForcePolicy.NONE, 0)) {
+            journal.append("d");
+        }
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "d"), replay(directory));
+    }
+
+    @Test
+    public void recoversWhenHeaderWasNotWritten() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (MappedJournal journal = new MappedJournal(directory, 4096, ForcePolicy.NONE, 0)) {
+            journal.append("a");
+        }
+
+        // header最后写入：崩溃时header仍是0，校验和与内容已经写入
+        Path segment = directory.resolve("00000000000000000000.journal");
+        byte[] ghost = encode("幽灵记录".getBytes(StandardCharsets.UTF_8));
+        ByteBuffer partial = ByteBuffer.allocate(HEADER_SIZE + 1 + ghost.length);
+        partial.putInt(0).putInt(12345).put((byte) 'x').put(ghost).flip();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(partial, HEADER_SIZE + 1);
+        }
+        Assert.assertEquals(Collections.singletonList("a"), replay(directory));
+
+        try (MappedJournal journal = new MappedJournal(directory, 4096, ForcePolicy.NONE, 0)) {
+            journal.append("b");
+        }
+        Assert.assertEquals(Arrays.asList("a", "b"), replay(directory));
+    }
+
+    @Test
+    public void directoryCannotBeOpenedTwice() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (MappedJournal journal = new MappedJournal(directory, 4096, ForcePolicy.NONE, 0)) {
+            journal.append("a");
+            try {
+                new MappedJournal(directory, 4096, ForcePolicy.NONE, 0);
+                Assert.fail("已经打开的目录不能再被打开");
+            } catch (IllegalStateException expected) {
+            }
+            journal.append("b");
+        }
+
+        // 关闭之后锁被释放
+        try (MappedJournal journal = new MappedJournal(directory, 4096, ForcePolicy.NONE, 0)) {
+            journal.append("c");
+        }
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), replay(directory));
+    }
+
+    @Test
+    public void retiredSegmentsAreUnmapped() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        long before = mappedBufferCount();
+        // 每个段放下两条记录，一共切换49次
+        try (MappedJournal journal = new MappedJournal(directory, 56, ForcePolicy.NONE, 0)) {
+            for (int i = 0; i < 100; i++) {
+                journal.append(String.format("record-%013d", i));
+            }
+            // 其它测试遗留的映射可能恰好被GC回收，只校验没有增加
+            Assert.assertTrue(mappedBufferCount() <= before + 1);
+        }
+        Assert.assertTrue(mappedBufferCount() <= before);
+
+        Assert.assertEquals(100, replay(directory).size());
+        Assert.assertTrue(mappedBufferCount() <= before);
+    }
+
+    private static long mappedBufferCount() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("mapped")) {
+                return pool.getCount();
+            }
+        }
+        throw new IllegalStateException("没有名为mapped的BufferPoolMXBean");
+    }
+
+    /**
+     * 与MappedJournal相同的记录格式
+     */
+    private static byte[] encode(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .putInt(payload.length + 1)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .array();
+    }
+
+    private static List<String> replay(Path directory) throws IOException {
+        List<String> records = new ArrayList<>();
+        MappedJournal.replay(directory, payload -> records.add(new String(payload, StandardCharsets.UTF_8)));
+        return records;
+    }
+
+    private static List<String> segmentNames(Path directory) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.journal")) {
+            stream.forEach(path -> names.add(path.getFileName().toString()));
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
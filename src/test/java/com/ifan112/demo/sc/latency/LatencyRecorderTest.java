@@ -0,0 +1,238 @@
+package com.ifan112.demo.sc.latency;
+
+import com.ifan112.demo.sc.ApplicationAspectConfiguration;
+import com.ifan112.demo.sc.audit.AuditLogger;
+import com.ifan112.demo.sc.audit.AuditMode;
+import com.ifan112.demo.sc.audit.OverflowPolicy;
+import com.ifan112.demo.sc.inflight.InFlightTracker;
+import com.ifan112.demo.sc.service.UserService;
+import com.ifan112.demo.sc.service.impl.UserServiceImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 通过真实的代理调用服务，手动切换区间后从平台MBeanServer读取耗时统计
+ *
+ * context中的LatencyRecorder不自动切换区间（interval为0），每个区间内的调用次数是确定的。
+ *
+ * 短暂的线程没有自己的直方图，记录在方法共用的SharedRecorder中，同样被计入区间的统计值。
+ */
+public class LatencyRecorderTest {
+
+    private static final int CALLS = 1000;
+
+    private static final String CREATE_USER = "UserServiceImpl.createUser(String,String,int)";
+
+    private AnnotationConfigApplicationContext context;
+
+    @After
+    public void close() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void exportsExactCountsAfterRollover() throws Exception {
+        context = new AnnotationConfigApplicationContext(LatencyConfiguration.class);
+        UserService userService = context.getBean(UserService.class);
+        LatencyRecorder latencyRecorder = context.getBean(LatencyRecorder.class);
+
+        for (int i = 0; i < CALLS; i++) {
+            userService.createUser("一凡", "无", i);
+        }
+        userService.getUserCount();
+        latencyRecorder.rollover();
+
+        Map<String, MethodLatencyMXBean> mBeans = latencyMBeans(context.getId());
+        MethodLatencyMXBean createUser = mBeans.get(CREATE_USER);
+        Assert.assertNotNull(createUser);
+        Assert.assertEquals(CALLS, createUser.getCount());
+        Assert.assertEquals(CALLS, createUser.getTotalCount());
+        Assert.assertTrue(createUser.getMaxNanos() > 0);
+        Assert.assertTrue(createUser.getP50Nanos() <= createUser.getP99Nanos());
+        Assert.assertTrue(createUser.getP99Nanos() <= createUser.getP999Nanos());
+        Assert.assertTrue(createUser.getP999Nanos() <= createUser.getMaxNanos());
+        Assert.assertEquals(1, mBeans.get("UserServiceImpl.getUserCount()").getCount());
+
+        // 没有新调用的区间结束后，区间内的统计值被清空，总次数保持不变
+        latencyRecorder.rollover();
+        Assert.assertEquals(0, createUser.getCount());
+        Assert.assertEquals(0, createUser.getMaxNanos());
+        Assert.assertEquals(CALLS, createUser.getTotalCount());
+
+        // context关闭时注销它的MBean
+        String contextId = context.getId();
+        context.close();
+        context = null;
+        Assert.assertTrue(latencyMBeans(contextId).isEmpty());
+    }
+
+    @Test
+    public void sameInterfaceMethodIsRecordedPerTargetClass() throws Exception {
+        LatencyRecorder latencyRecorder = new LatencyRecorder(0, false);
+        Method method = Greeter.class.getMethod("greet", String.class);
+
+        MethodLatency english = latencyRecorder.get(method, EnglishGreeter.class);
+        MethodLatency chinese = latencyRecorder.get(method, ChineseGreeter.class);
+        Assert.assertNotSame(english, chinese);
+        Assert.assertSame(english, latencyRecorder.get(method, EnglishGreeter.class));
+        Assert.assertEquals("EnglishGreeter.greet(String)", english.getMethod());
+        Assert.assertEquals("ChineseGreeter.greet(String)", chinese.getMethod());
+
+        english.record(100);
+        english.record(200);
+        chinese.record(300);
+        latencyRecorder.rollover();
+        Assert.assertEquals(2, english.getCount());
+        Assert.assertEquals(1, chinese.getCount());
+    }
+
+    @Test(timeout = 30_000)
+    public void shortLivedThreadsShareHistograms() throws Exception {
+        LatencyRecorder latencyRecorder = new LatencyRecorder(0, false);
+        MethodLatency latency = latencyRecorder.get(Greeter.class.getMethod("greet", String.class), EnglishGreeter.class);
+
+        // 每个任务一个线程，每个线程只调用几次
+        int tasks = 200;
+        Thread[] threads = new Thread[tasks];
+        for (int i = 0; i < tasks; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10; j++) {
+                    latency.record(1000);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        latencyRecorder.rollover();
+        Assert.assertEquals(0, latencyRecorder.getThreadRecorderCount());
+        Assert.assertEquals(tasks * 10, latency.getCount());
+        Assert.assertTrue(latency.getMaxNanos() >= 1000);
+    }
+
+    @Test(timeout = 30_000)
+    public void busyThreadSwitchesToOwnHistogramWithoutLosingCounts() throws Exception {
+        LatencyRecorder latencyRecorder = new LatencyRecorder(0, false);
+        MethodLatency latency = latencyRecorder.get(Greeter.class.getMethod("greet", String.class), EnglishGreeter.class);
+
+        int calls = ThreadRecorder.ACTIVATION_CALLS * 3;
+        Thread thread = new Thread(() -> {
+            for (int i = 0; i < calls; i++) {
+                latency.record(1000);
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertEquals(1, latencyRecorder.getThreadRecorderCount());
+
+        // 调用在区间中途从SharedRecorder切换到线程自己的直方图，两部分都被计入；已经结束的线程随后被移除
+        latencyRecorder.rollover();
+        Assert.assertEquals(calls, latency.getCount());
+        Assert.assertEquals(0, latencyRecorder.getThreadRecorderCount());
+    }
+
+    @Test
+    public void destroyReleasesThreadRecorders() throws Exception {
+        LatencyRecorder latencyRecorder = new LatencyRecorder(0, false);
+        MethodLatency latency = latencyRecorder.get(Greeter.class.getMethod("greet", String.class), EnglishGreeter.class);
+        for (int i = 0; i < ThreadRecorder.ACTIVATION_CALLS * 2; i++) {
+            latency.record(1000);
+        }
+        Assert.assertEquals(1, latencyRecorder.getThreadRecorderCount());
+        latencyRecorder.rollover();
+        Assert.assertEquals(ThreadRecorder.ACTIVATION_CALLS * 2, latency.getCount());
+
+        latencyRecorder.destroy();
+        Assert.assertEquals(0, latencyRecorder.getThreadRecorderCount());
+
+        // context关闭期间仍在进行的调用记录到SharedRecorder中
+        latency.record(1000);
+        latencyRecorder.rollover();
+        Assert.assertEquals(1, latency.getCount());
+        Assert.assertEquals(0, latencyRecorder.getThreadRecorderCount());
+    }
+
+    private static Map<String, MethodLatencyMXBean> latencyMBeans(String contextId) throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName(LatencyRecorder.DOMAIN + ":type=MethodLatency,context="
+                + ObjectName.quote(contextId) + ",*");
+        Map<String, MethodLatencyMXBean> mBeans = new HashMap<>();
+        for (ObjectName name : mBeanServer.queryNames(pattern, null)) {
+            MethodLatencyMXBean mBean = JMX.newMXBeanProxy(mBeanServer, name, MethodLatencyMXBean.class);
+            mBeans.put(mBean.getMethod(), mBean);
+        }
+        return mBeans;
+    }
+
+
+    @Configuration
+    @EnableAspectJAutoProxy
+    static class LatencyConfiguration {
+
+        @Bean
+        public ApplicationAspectConfiguration applicationAspectConfiguration() {
+            return new ApplicationAspectConfiguration();
+        }
+
+        @Bean
+        public AuditLogger auditLogger() {
+            return new AuditLogger(AuditMode.ASYNC, 1024, 256, OverflowPolicy.DROP);
+        }
+
+        @Bean
+        public InFlightTracker inFlightTracker() {
+            return new InFlightTracker();
+        }
+
+        /**
+         * 只能手动切换区间
+         */
+        @Bean
+        public LatencyRecorder latencyRecorder() {
+            return new LatencyRecorder(0, true);
+        }
+
+        @Bean
+        public UserServiceImpl userService() {
+            return new UserServiceImpl();
+        }
+    }
+
+    interface Greeter {
+
+        String greet(String name);
+    }
+
+    static class EnglishGreeter implements Greeter {
+
+        @Override
+        public String greet(String name) {
+            return "hello " + name;
+        }
+    }
+
+    static class ChineseGreeter implements Greeter {
+
+        @Override
+        public String greet(String name) {
+            return "你好 " + name;
+        }
+    }
+}
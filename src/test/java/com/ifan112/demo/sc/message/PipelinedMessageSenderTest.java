@@ -0,0 +1,75 @@
+package com.ifan112.demo.sc.message;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * transport抛出Error使后台线程退出时，正在发送、仍在队列中的消息以及之后的send调用都以该Error失败
+ */
+public class PipelinedMessageSenderTest {
+
+    private static final int WAITERS = 8;
+
+    @Test(timeout = 10_000)
+    public void waitersFailWhenSenderDies() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch queued = new CountDownLatch(1);
+        Error error = new Error("下游崩溃");
+        PipelinedMessageSender sender = new PipelinedMessageSender((messages, results) -> {
+            // 第一条消息发送期间，其余的调用线程都已经入队
+            sending.countDown();
+            await(queued);
+            throw error;
+        }, 64, 1, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(WAITERS);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> sender.send("first")));
+            sending.await();
+            for (int i = 1; i < WAITERS; i++) {
+                String message = "message-" + i;
+                futures.add(executor.submit(() -> sender.send(message)));
+            }
+            Thread.sleep(100);
+            queued.countDown();
+
+            for (Future<Boolean> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    Assert.fail("后台线程退出后，等待中的send应当失败");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+                    Assert.assertSame(error, e.getCause().getCause());
+                }
+            }
+
+            try {
+                sender.send("later");
+                Assert.fail("后台线程退出后，新的send应当直接失败");
+            } catch (IllegalStateException e) {
+                Assert.assertSame(error, e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+            sender.close();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.ifan112.demo.sc.order;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向容量为2^16的IdempotencyFilter写入远多于容量的不同请求，校验误判率、最近请求的保留率以及过期
+ *
+ * 过滤器只保存最近的请求，更早的请求被淘汰后，重试时不会被识别为重复请求。
+ */
+public class IdempotencyFilterTest {
+
+    private static final int CAPACITY = 1 << 16;
+    private static final long KEYS = 1 << 22;
+    private static final long PROBES = 1_000_000L;
+
+    @Test
+    public void keepsRecentRequestsWithoutFalsePositives() {
+        IdempotencyFilter filter = new IdempotencyFilter(CAPACITY, TimeUnit.HOURS.toMillis(1));
+        long now = System.currentTimeMillis();
+        Assert.assertEquals(CAPACITY, filter.getCapacity());
+        Assert.assertEquals(CAPACITY * 16L, filter.getMemoryBytes());
+
+        for (long i = 0; i < KEYS; i++) {
+            Assert.assertTrue(filter.tryAcquire(fingerprint("用户", i), now));
+        }
+
+        // 最近写入的CAPACITY / 2个请求，重试时应当被拒绝；用contains查询，避免未命中的请求被写入后淘汰其它请求
+        long recent = CAPACITY / 2;
+        long retained = 0;
+        for (long i = KEYS - recent; i < KEYS; i++) {
+            if (filter.contains(fingerprint("用户", i), now)) {
+                retained++;
+            }
+        }
+        Assert.assertTrue("最近的请求被淘汰：" + retained + " / " + recent, retained * 100 / recent >= 99);
+        Assert.assertFalse(filter.tryAcquire(fingerprint("用户", KEYS - 1), now));
+
+        // 从未写入过的请求，它们会被写入过滤器，因此在检查保留率之后进行
+        long falsePositives = 0;
+        for (long i = 0; i < PROBES; i++) {
+            if (!filter.tryAcquire(fingerprint("其他用户", i), now)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("误判率过高：" + falsePositives + " / " + PROBES, falsePositives * 1_000_000 / PROBES < 1);
+    }
+
+    @Test
+    public void expiredRequestIsAcceptedAgain() {
+        IdempotencyFilter filter = new IdempotencyFilter(CAPACITY, 1000);
+        long fingerprint = IdempotencyFilter.fingerprint("用户", 1, "token");
+
+        Assert.assertTrue(filter.tryAcquire(fingerprint, 0));
+        Assert.assertFalse(filter.tryAcquire(fingerprint, 999));
+        Assert.assertTrue(filter.tryAcquire(fingerprint, 1000));
+        Assert.assertTrue(filter.contains(fingerprint, 1999));
+        Assert.assertFalse(filter.contains(fingerprint, 2000));
+    }
+
+    @Test
+    public void releasedRequestIsAcceptedAgain() {
+        IdempotencyFilter filter = new IdempotencyFilter(IdempotencyFilter.WAYS, TimeUnit.HOURS.toMillis(1));
+        long[] fingerprints = new long[IdempotencyFilter.WAYS];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = fingerprint("用户", i);
+            Assert.assertTrue(filter.tryAcquire(fingerprints[i], 0));
+        }
+
+        // 只有一个桶，删除中间的条目之后其它条目仍然可以被找到
+        Assert.assertTrue(filter.release(fingerprints[3]));
+        Assert.assertFalse(filter.release(fingerprints[3]));
+        Assert.assertFalse(filter.contains(fingerprints[3], 0));
+        for (int i = 0; i < fingerprints.length; i++) {
+            Assert.assertEquals(i != 3, filter.contains(fingerprints[i], 0));
+        }
+
+        // 空出的条目被重新使用，不会淘汰其它请求
+        Assert.assertTrue(filter.tryAcquire(fingerprints[3], 0));
+        for (long fingerprint : fingerprints) {
+            Assert.assertTrue(filter.contains(fingerprint, 0));
+        }
+    }
+
+    @Test
+    public void fingerprintSeparatesFields() {
+        Assert.assertNotEquals(IdempotencyFilter.fingerprint("ab", 1, "c"), IdempotencyFilter.fingerprint("a", 1, "bc"));
+        Assert.assertNotEquals(IdempotencyFilter.fingerprint("a", 1, "b"), IdempotencyFilter.fingerprint("a", 2, "b"));
+        Assert.assertEquals(IdempotencyFilter.fingerprint("a", 1, "b"), IdempotencyFilter.fingerprint("a", 1, "b"));
+    }
+
+    private static long fingerprint(String username, long i) {
+        return IdempotencyFilter.fingerprint(username, i, "token");
+    }
+}
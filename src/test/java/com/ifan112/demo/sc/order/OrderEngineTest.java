@@ -0,0 +1,126 @@
+package com.ifan112.demo.sc.order;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 非法订单不能让sequencer线程停止，否则snapshot()和等待槽位的生产者会一直自旋；
+ * 与close()并发提交的订单要么被处理，要么submit抛出异常
+ */
+public class OrderEngineTest {
+
+    private OrderEngine engine;
+
+    @After
+    public void close() {
+        if (engine != null) {
+            engine.close();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void nullUsernameIsRejectedOnCallerThread() {
+        engine = new OrderEngine(8, 4);
+        try {
+            engine.submit(null, 1);
+            Assert.fail("username为null的订单应该被拒绝");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        // 环形缓冲区只有8个槽位，被拒绝的订单如果占用了序号，这里会一直等待
+        long last = -1;
+        for (int i = 0; i < 32; i++) {
+            last = engine.submit("用户" + (i % 4), i % 2);
+        }
+        engine.awaitProcessed(last);
+
+        OrderSnapshot snapshot = engine.snapshot();
+        Assert.assertEquals(32, snapshot.getTotalOrders());
+        Assert.assertEquals(8, engine.getUserOrderCount("用户0"));
+        Assert.assertEquals(16, engine.getGoodOrderCount(1));
+        Assert.assertEquals(0, engine.getFailedOrders());
+    }
+
+    @Test(timeout = 10_000)
+    public void failedOrderDoesNotStopSequencer() throws Exception {
+        engine = new OrderEngine(8, 4);
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> {
+        });
+        try {
+            engine.awaitProcessed(engine.submit("用户", 1));
+            // 绕过submit()的检查直接发布一个username为null的订单，模拟处理单个订单时抛出异常
+            engine.awaitProcessed(publishUnchecked(null, 2));
+
+            long last = -1;
+            for (int i = 0; i < 32; i++) {
+                last = engine.submit("用户", 1);
+            }
+            engine.awaitProcessed(last);
+
+            OrderSnapshot snapshot = engine.snapshot();
+            Assert.assertEquals(33, snapshot.getTotalOrders());
+            Assert.assertEquals(1, engine.getFailedOrders());
+            Assert.assertEquals(33, engine.getUserOrderCount("用户"));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void submitRacingCloseIsProcessedOrRejected() throws Exception {
+        Thread[] producers = new Thread[4];
+        long[] lastSequences = new long[producers.length];
+        for (int round = 0; round < 200; round++) {
+            OrderEngine closing = new OrderEngine(64, 16);
+            CountDownLatch started = new CountDownLatch(producers.length);
+            for (int i = 0; i < producers.length; i++) {
+                int producer = i;
+                lastSequences[producer] = -1;
+                producers[i] = new Thread(() -> {
+                    started.countDown();
+                    try {
+                        while (true) {
+                            lastSequences[producer] = closing.submit("用户" + producer, producer);
+                        }
+                    } catch (IllegalStateException closed) {
+                        // 引擎已关闭
+                    }
+                });
+                producers[i].start();
+            }
+            started.await();
+            closing.close();
+
+            // submit返回的每个序号都必须被处理，否则这里会一直等待
+            for (int i = 0; i < producers.length; i++) {
+                producers[i].join();
+                closing.awaitProcessed(lastSequences[i]);
+            }
+        }
+    }
+
+    /**
+     * 与submit()相同的申请、写入、发布顺序，但不检查参数
+     */
+    private long publishUnchecked(String username, long goodId) throws Exception {
+        long sequence = ((AtomicLong) field(OrderEngine.class, "producerCursor").get(engine)).getAndIncrement();
+        Object[] slots = (Object[]) field(OrderEngine.class, "slots").get(engine);
+        Object slot = slots[(int) sequence & (slots.length - 1)];
+        field(slot.getClass(), "username").set(slot, username);
+        field(slot.getClass(), "goodId").setLong(slot, goodId);
+        field(slot.getClass(), "sequence").setLong(slot, sequence);
+        return sequence;
+    }
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+}
@@ -0,0 +1,89 @@
+package com.ifan112.demo.sc.service.impl;
+
+import com.ifan112.demo.sc.order.IdempotencyFilter;
+import com.ifan112.demo.sc.order.OrderEngine;
+import com.ifan112.demo.sc.order.OrderSnapshot;
+import com.ifan112.demo.sc.service.OrderService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 被装饰的OrderService抛出异常时，客户端使用同一个令牌重试，不应被当作重复请求拒绝
+ */
+public class IdempotentOrderServiceImplTest {
+
+    private final OrderEngine engine = new OrderEngine(1024, 64);
+
+    @After
+    public void close() {
+        engine.close();
+    }
+
+    @Test
+    public void failedRequestCanBeRetried() {
+        FailingOrderService delegate = new FailingOrderService(new OrderServiceImpl(engine));
+        OrderService orderService = new IdempotentOrderServiceImpl(delegate,
+                new IdempotencyFilter(1024, TimeUnit.HOURS.toMillis(1)));
+
+        delegate.failures = 1;
+        try {
+            orderService.newOrder("一凡", 1, "token");
+            Assert.fail("被装饰的OrderService抛出的异常应当被原样抛出");
+        } catch (IllegalStateException expected) {
+        }
+
+        Assert.assertTrue(orderService.newOrder("一凡", 1, "token"));
+        Assert.assertFalse(orderService.newOrder("一凡", 1, "token"));
+        Assert.assertEquals(1, delegate.accepted);
+    }
+
+
+    /**
+     * 前failures次下单请求抛出异常
+     */
+    static class FailingOrderService implements OrderService {
+
+        private final OrderService delegate;
+
+        int failures;
+
+        int accepted;
+
+        FailingOrderService(OrderService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void newOrder(String username, long goodId) {
+            this.delegate.newOrder(username, goodId);
+        }
+
+        @Override
+        public boolean newOrder(String username, long goodId, String clientToken) {
+            if (this.failures > 0) {
+                this.failures--;
+                throw new IllegalStateException("订单引擎暂时不可用");
+            }
+            this.accepted++;
+            return this.delegate.newOrder(username, goodId, clientToken);
+        }
+
+        @Override
+        public long getOrderCount(String username) {
+            return this.delegate.getOrderCount(username);
+        }
+
+        @Override
+        public long getGoodOrderCount(long goodId) {
+            return this.delegate.getGoodOrderCount(goodId);
+        }
+
+        @Override
+        public OrderSnapshot getOrderSnapshot() {
+            return this.delegate.getOrderSnapshot();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.ifan112.demo.sc.service.impl;
+
+import com.ifan112.demo.sc.ApplicationAspectConfiguration;
+import com.ifan112.demo.sc.audit.AuditLogger;
+import com.ifan112.demo.sc.audit.AuditMode;
+import com.ifan112.demo.sc.audit.OverflowPolicy;
+import com.ifan112.demo.sc.inflight.InFlightTracker;
+import com.ifan112.demo.sc.latency.LatencyRecorder;
+import com.ifan112.demo.sc.latency.MethodLatency;
+import com.ifan112.demo.sc.message.AsyncMessageSender;
+import com.ifan112.demo.sc.service.MessageService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+
+/**
+ * sendAsync在后台线程上执行的send同样经过代理，被切面记录
+ */
+public class MessageServiceImplTest {
+
+    @Test(timeout = 10_000)
+    public void asyncSendIsAdvised() throws Exception {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(MessageConfiguration.class)) {
+            MessageService messageService = context.getBean(MessageService.class);
+            LatencyRecorder latencyRecorder = context.getBean(LatencyRecorder.class);
+            MethodLatency send = latencyRecorder.get(MessageService.class.getMethod("send", String.class), MessageServiceImpl.class);
+
+            Assert.assertTrue(messageService.sendAsync("异步消息").join());
+            Assert.assertTrue(messageService.sendAsync("另一条异步消息").join());
+            latencyRecorder.rollover();
+            Assert.assertEquals(2, send.getCount());
+        }
+    }
+
+
+    @Configuration
+    @EnableAspectJAutoProxy
+    static class MessageConfiguration {
+
+        @Bean
+        public ApplicationAspectConfiguration applicationAspectConfiguration() {
+            return new ApplicationAspectConfiguration();
+        }
+
+        @Bean
+        public AuditLogger auditLogger() {
+            return new AuditLogger(AuditMode.ASYNC, 1024, 256, OverflowPolicy.DROP);
+        }
+
+        @Bean
+        public InFlightTracker inFlightTracker() {
+            return new InFlightTracker();
+        }
+
+        /**
+         * 只能手动切换区间
+         */
+        @Bean
+        public LatencyRecorder latencyRecorder() {
+            return new LatencyRecorder(0, false);
+        }
+
+        @Bean
+        public AsyncMessageSender asyncMessageSender() {
+            return new AsyncMessageSender(2, 16);
+        }
+
+        @Bean
+        public MessageServiceImpl messageService() {
+            return new MessageServiceImpl();
+        }
+    }
+}
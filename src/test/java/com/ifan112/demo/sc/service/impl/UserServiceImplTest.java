@@ -0,0 +1,138 @@
+package com.ifan112.demo.sc.service.impl;
+
+import com.ifan112.demo.sc.entity.User;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 多线程并发调用UserServiceImpl
+ *
+ * 写入线程反复创建属于自己的KEYS个用户，age为本次写入的序号，所有线程还会不断替换和移除一个共享的用户；
+ * 读取线程同时读取其它线程写入的用户并持有一段时间。校验：
+ * 1. 没有丢失的更新，每个用户保存的都是该名称最后一次写入的值；
+ * 2. 任何线程拿到的User在被替换、移除之后，字段也不会再变化。
+ */
+public class UserServiceImplTest {
+
+    private static final int WRITERS = 8;
+    private static final int READERS = 4;
+    private static final int KEYS = 500;
+    private static final int WRITES = 50_000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 60_000)
+    public void concurrentWritesAreNotLostAndReturnedUsersNeverChange() throws Exception {
+        UserServiceImpl userService = new UserServiceImpl();
+
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < WRITERS; t++) {
+            int thread = t;
+            writers.add(executor.submit(() -> {
+                String[] names = new String[KEYS];
+                for (int k = 0; k < KEYS; k++) {
+                    names[k] = name(thread, k);
+                }
+                start.await();
+                User previous = null;
+                for (int i = 0; i < WRITES; i++) {
+                    User created = userService.createUser(names[i % KEYS], "无", i);
+                    Assert.assertSame("getUser()返回了其它线程创建的用户", created, userService.getUser());
+                    // 上一个返回的User可能已经被替换，它的字段仍然不能变化
+                    if (previous != null) {
+                        assertUser(previous, names[(i - 1) % KEYS], "无", i - 1);
+                    }
+                    previous = created;
+                    if (i % 64 == 0) {
+                        User shared = userService.createUser("shared", "共享", i);
+                        userService.removeUser("shared");
+                        assertUser(shared, "shared", "共享", i);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            readers.add(executor.submit(() -> {
+                start.await();
+                List<User> held = new ArrayList<>();
+                List<Integer> ages = new ArrayList<>();
+                int next = 0;
+                while (writing.get()) {
+                    String name = name(next % WRITERS, next % KEYS);
+                    next++;
+                    User user = userService.getUser(name);
+                    if (user == null) {
+                        continue;
+                    }
+                    Assert.assertEquals("读取到了其它用户的数据", name, user.getFirstName());
+                    held.add(user);
+                    ages.add(user.getAge());
+                    if (held.size() == 1024) {
+                        for (int i = 0; i < held.size(); i++) {
+                            Assert.assertEquals("其它线程返回的User被修改", ages.get(i).intValue(), held.get(i).getAge());
+                            Assert.assertEquals("无", held.get(i).getLastName());
+                        }
+                        held.clear();
+                        ages.clear();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : writers) {
+            future.get();
+        }
+        writing.set(false);
+        for (Future<?> future : readers) {
+            future.get();
+        }
+
+        Assert.assertEquals("用户个数不正确", WRITERS * KEYS, userService.getUserCount());
+        for (int t = 0; t < WRITERS; t++) {
+            for (int k = 0; k < KEYS; k++) {
+                User user = userService.getUser(name(t, k));
+                Assert.assertNotNull(user);
+                assertUser(user, name(t, k), "无", lastWrite(k));
+            }
+        }
+    }
+
+    private static void assertUser(User user, String firstName, String lastName, int age) {
+        Assert.assertEquals(firstName, user.getFirstName());
+        Assert.assertEquals(lastName, user.getLastName());
+        Assert.assertEquals(age, user.getAge());
+    }
+
+    private static String name(int thread, int k) {
+        return "user-" + thread + "-" + k;
+    }
+
+    /**
+     * 第k个名称最后一次写入时的序号
+     */
+    private static int lastWrite(int k) {
+        int last = WRITES - 1;
+        return last - ((last - k) % KEYS);
+    }
+}
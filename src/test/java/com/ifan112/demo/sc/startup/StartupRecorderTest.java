@@ -0,0 +1,49 @@
+package com.ifan112.demo.sc.startup;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
+
+/**
+ * 刷新过程中创建的bean被记录，刷新完成之后创建的prototype bean不再被记录
+ */
+public class StartupRecorderTest {
+
+    @Test
+    public void stopsRecordingAfterRefresh() {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.register(RecorderConfiguration.class);
+            StartupRecorder recorder = StartupRecorder.attach(context);
+            context.refresh();
+
+            int recorded = recorder.getBeanTimings().size();
+            Assert.assertTrue(recorder.getBeanTimings().stream()
+                    .anyMatch(timing -> timing.getBeanName().equals("singleton")));
+
+            for (int i = 0; i < 1000; i++) {
+                context.getBean("prototype");
+            }
+            Assert.assertEquals(recorded, recorder.getBeanTimings().size());
+        }
+    }
+
+
+    @Configuration
+    static class RecorderConfiguration {
+
+        @Bean
+        public Object singleton() {
+            return new Object();
+        }
+
+        @Bean
+        @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+        public Object prototype() {
+            return new Object();
+        }
+    }
+}
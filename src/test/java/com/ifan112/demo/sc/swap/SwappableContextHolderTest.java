@@ -0,0 +1,132 @@
+package com.ifan112.demo.sc.swap;
+
+import com.ifan112.demo.sc.warmup.WarmUpCallback;
+import com.ifan112.demo.sc.warmup.WarmUpCoordinator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 切换之后调用落在新context上、旧context被关闭；新context没有按时完成预热时不切换；关闭之后的swap()返回失败的future
+ */
+public class SwappableContextHolderTest {
+
+    /**
+     * 不为null时，预热回调等待它
+     */
+    private static volatile CountDownLatch warmUpGate;
+
+    private final List<AnnotationConfigApplicationContext> contexts = new CopyOnWriteArrayList<>();
+
+    private final SwappableContextHolder holder = new SwappableContextHolder(() -> {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(SwapConfiguration.class);
+        contexts.add(context);
+        return context;
+    });
+
+    @After
+    public void close() {
+        CountDownLatch gate = warmUpGate;
+        if (gate != null) {
+            gate.countDown();
+            warmUpGate = null;
+        }
+        holder.close();
+    }
+
+    @Test(timeout = 10_000)
+    public void swapClosesPreviousContext() {
+        holder.start();
+        Greeter greeter = holder.getProxy(Greeter.class);
+        Assert.assertEquals("hello 1", greeter.greet("1"));
+
+        Object swapped = holder.swap().join();
+        Assert.assertSame(contexts.get(1), swapped);
+        Assert.assertEquals(2, holder.getGeneration());
+        Assert.assertSame(contexts.get(1), holder.getContext());
+        Assert.assertFalse(contexts.get(0).isActive());
+        Assert.assertEquals("hello 2", greeter.greet("2"));
+        Assert.assertEquals(0, holder.getInFlightCount());
+
+        holder.close();
+        Assert.assertFalse(contexts.get(1).isActive());
+    }
+
+    @Test(timeout = 10_000)
+    public void warmUpTimeoutKeepsCurrentContext() {
+        holder.setWarmUpTimeoutMillis(200);
+        holder.start();
+        Greeter greeter = holder.getProxy(Greeter.class);
+        Assert.assertEquals("hello 1", greeter.greet("1"));
+
+        warmUpGate = new CountDownLatch(1);
+        try {
+            holder.swap().join();
+            Assert.fail("没有完成预热的context不应被切换");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        Assert.assertEquals(1, holder.getGeneration());
+        Assert.assertSame(contexts.get(0), holder.getContext());
+        Assert.assertTrue(contexts.get(0).isActive());
+        Assert.assertEquals(2, contexts.size());
+        Assert.assertFalse("没有完成预热的context应当被关闭", contexts.get(1).isActive());
+        Assert.assertEquals("hello 2", greeter.greet("2"));
+    }
+
+    @Test(timeout = 10_000)
+    public void swapAfterCloseReturnsFailedFuture() {
+        holder.start();
+        holder.close();
+
+        CompletableFuture<?> future = holder.swap();
+        Assert.assertTrue(future.isCompletedExceptionally());
+        try {
+            future.join();
+            Assert.fail();
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(1, contexts.size());
+    }
+
+
+    interface Greeter {
+
+        String greet(String name);
+    }
+
+    @Configuration
+    static class SwapConfiguration {
+
+        @Bean
+        public WarmUpCoordinator warmUpCoordinator() {
+            return new WarmUpCoordinator();
+        }
+
+        @Bean
+        public WarmUpCallback slowWarmUp() {
+            return context -> {
+                CountDownLatch gate = warmUpGate;
+                if (gate != null) {
+                    gate.await();
+                }
+            };
+        }
+
+        @Bean
+        public Greeter greeter() {
+            return name -> "hello " + name;
+        }
+    }
+}